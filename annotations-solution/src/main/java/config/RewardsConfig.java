@@ -2,9 +2,14 @@ package config;
 
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
+import org.springframework.jmx.support.RegistrationPolicy;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Configuration
 @ComponentScan("rewards")
+@EnableScheduling
+@EnableMBeanExport(registration = RegistrationPolicy.REPLACE_EXISTING)
 public class RewardsConfig {
 
 }
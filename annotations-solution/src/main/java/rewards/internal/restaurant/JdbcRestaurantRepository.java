@@ -4,6 +4,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,30 +15,71 @@ import javax.annotation.PreDestroy;
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
+import rewards.Dining;
+import rewards.internal.account.Account;
+
+import common.jdbc.MoneyColumns;
 import common.money.Percentage;
 
 /**
  * Loads restaurants from a data source using the JDBC API.
  *
  * This implementation caches restaurants to improve performance. The cache is populated on initialization and cleared
- * on destruction.
+ * on destruction. In between, it is refreshed in the background: only the rows whose LAST_MODIFIED timestamp is at or
+ * after the latest one already cached, less an overlap, are read again, so whoever changes a restaurant must also bump
+ * its LAST_MODIFIED. The overlap, at least as long as the longest transaction changing restaurants, catches a change
+ * stamped before the latest timestamp read but committed after it was read. Restaurants that were deleted, or changed
+ * without bumping LAST_MODIFIED, are noticed by a full reload, made periodically and on demand over JMX.
+ *
+ * Lookups never block: each refresh builds a new cache aside and swaps it in whole, so a lookup sees either the old or
+ * the new restaurants, never a mixture.
  */
 @Repository
+@ManagedResource(objectName = "rewards:name=restaurantRepository")
 public class JdbcRestaurantRepository implements RestaurantRepository {
 
+	private static final String SELECT_RESTAURANTS = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+			+ "BENEFIT_AVAILABILITY_POLICY, LAST_MODIFIED from T_RESTAURANT";
+
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int MERCHANT_NUMBER = 1;
+	private static final int NAME = 2;
+	private static final int BENEFIT_PERCENTAGE = 3;
+	private static final int BENEFIT_AVAILABILITY_POLICY = 4;
+	private static final int LAST_MODIFIED = 5;
+
 	private DataSource dataSource;
 
 	/**
-	 * The Restaurant object cache. Cached restaurants are indexed by their merchant numbers.
+	 * The Restaurant object cache. Cached restaurants are indexed by their merchant numbers. Never modified once
+	 * published; a refresh replaces it.
 	 */
-	private Map<String, Restaurant> restaurantCache;
+	private volatile Map<String, Restaurant> restaurantCache = Collections.emptyMap();
+
+	/**
+	 * The latest LAST_MODIFIED of the cached restaurants, where the next refresh picks up from.
+	 */
+	private volatile Timestamp lastModified;
+
+	private long refreshOverlap = 300000;
+
+	private volatile Date lastRefreshed;
+
+	private volatile long refreshCount;
+
+	private volatile int lastRefreshSize;
 
 	/**
 	 * The constructor sets the data source this repository will use to load restaurants.
-	 * When the instance of JdbcRestaurantRepository is created, a Restaurant cache is 
+	 * When the instance of JdbcRestaurantRepository is created, a Restaurant cache is
 	 * populated for read only access
 	 *
 	 * @param dataSource the data source
@@ -45,14 +89,25 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 		this.dataSource = dataSource;
 		this.populateRestaurantCache();
 	}
-	
+
 	public JdbcRestaurantRepository(){}
-	
+
 	@Autowired
 	public void setDataSource(DataSource dataSource) {
 		this.dataSource = dataSource;
 	}
 
+	/**
+	 * Sets how long before the latest LAST_MODIFIED cached a refresh starts reading, to pick up changes committed late.
+	 * Should be at least as long as the longest transaction changing restaurants. Defaults to 5 minutes.
+	 *
+	 * @param refreshOverlap the overlap, in milliseconds
+	 */
+	@Value("${rewards.restaurant.refreshOverlap:300000}")
+	public void setRefreshOverlap(long refreshOverlap) {
+		this.refreshOverlap = refreshOverlap;
+	}
+
 
 	public Restaurant findByMerchantNumber(String merchantNumber) {
 		return queryRestaurantCache(merchantNumber);
@@ -63,23 +118,137 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	 * table. Cached restaurants are indexed by their merchant numbers. This method is called on initialization.
 	 */
 	@PostConstruct
-	void populateRestaurantCache() {
-		restaurantCache = new HashMap<String, Restaurant>();
-		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE from T_RESTAURANT";
+	synchronized void populateRestaurantCache() {
+		Map<String, Restaurant> restaurants = new HashMap<String, Restaurant>();
+		Timestamp latest = loadRestaurants(SELECT_RESTAURANTS, null, restaurants);
+		publish(restaurants, latest, restaurants.size());
+	}
+
+	/**
+	 * Reads the restaurants changed since the last refresh into the cache. Called periodically, every
+	 * rewards.restaurant.refreshInterval milliseconds (a minute by default).
+	 *
+	 * Rows modified since the latest timestamp already cached less the {@link #setRefreshOverlap(long) overlap} are
+	 * read again. LAST_MODIFIED is stamped when a row is written, not when its transaction commits, so a change
+	 * committed after the last refresh may carry a timestamp before the latest one it read.
+	 */
+	@Scheduled(fixedDelayString = "${rewards.restaurant.refreshInterval:60000}")
+	public synchronized void refreshRestaurantCache() {
+		if (lastModified == null) {
+			populateRestaurantCache();
+			return;
+		}
+		Map<String, Restaurant> changed = new HashMap<String, Restaurant>();
+		Timestamp since = new Timestamp(lastModified.getTime() - refreshOverlap);
+		Timestamp latest = loadRestaurants(SELECT_RESTAURANTS + " where LAST_MODIFIED >= ?", since, changed);
+		Map<String, Restaurant> restaurants = new HashMap<String, Restaurant>(restaurantCache);
+		restaurants.putAll(changed);
+		publish(restaurants, latest.after(lastModified) ? latest : lastModified, changed.size());
+	}
+
+	/**
+	 * Reloads every restaurant, dropping those no longer in the database. Called periodically, every
+	 * rewards.restaurant.reloadInterval milliseconds (an hour by default).
+	 */
+	@ManagedOperation(description = "Reloads every restaurant, dropping deleted ones")
+	@Scheduled(fixedDelayString = "${rewards.restaurant.reloadInterval:3600000}",
+			initialDelayString = "${rewards.restaurant.reloadInterval:3600000}")
+	public void reloadRestaurantCache() {
+		populateRestaurantCache();
+	}
+
+	@ManagedAttribute(description = "Number of restaurants cached")
+	public int getCachedRestaurantCount() {
+		return restaurantCache.size();
+	}
+
+	@ManagedAttribute(description = "When the cache was last populated or refreshed")
+	public Date getLastRefreshed() {
+		return lastRefreshed;
+	}
+
+	@ManagedAttribute(description = "Latest LAST_MODIFIED of the cached restaurants")
+	public Date getLastModified() {
+		return lastModified;
+	}
+
+	@ManagedAttribute(description = "Number of restaurants read by the last refresh")
+	public int getLastRefreshSize() {
+		return lastRefreshSize;
+	}
+
+	@ManagedAttribute(description = "Number of times the cache was populated or refreshed")
+	public long getRefreshCount() {
+		return refreshCount;
+	}
+
+	/**
+	 * Helper method that simply queries the cache of restaurants.
+	 *
+	 * @param merchantNumber the restaurant's merchant number
+	 * @return the restaurant
+	 * @throws EmptyResultDataAccessException if no restaurant was found with that merchant number
+	 */
+	private Restaurant queryRestaurantCache(String merchantNumber) {
+		Restaurant restaurant = restaurantCache.get(merchantNumber);
+		if (restaurant == null) {
+			throw new EmptyResultDataAccessException(1);
+		}
+		return restaurant;
+	}
+
+	/**
+	 * Helper method that clears the cache of restaurants.  This method is called on destruction
+	 */
+	@PreDestroy
+	synchronized void clearRestaurantCache() {
+		restaurantCache = Collections.emptyMap();
+		lastModified = null;
+	}
+
+	/**
+	 * Swaps in a new cache of restaurants.
+	 */
+	private void publish(Map<String, Restaurant> restaurants, Timestamp latest, int size) {
+		restaurantCache = Collections.unmodifiableMap(restaurants);
+		lastModified = latest;
+		lastRefreshed = new Date();
+		lastRefreshSize = size;
+		refreshCount++;
+	}
+
+	/**
+	 * Runs a query of T_RESTAURANT, putting the restaurants found in a map indexed by their merchant numbers.
+	 *
+	 * @param sql the query, selecting the mapped columns
+	 * @param since the timestamp bound to the query's parameter, if it has one
+	 * @param restaurants the map to put the restaurants in
+	 * @return the latest LAST_MODIFIED of the restaurants found, or the epoch if none were
+	 */
+	private Timestamp loadRestaurants(String sql, Timestamp since, Map<String, Restaurant> restaurants) {
+		Timestamp latest = new Timestamp(0);
 		Connection conn = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		try {
 			conn = dataSource.getConnection();
 			ps = conn.prepareStatement(sql);
+			if (since != null) {
+				ps.setTimestamp(1, since);
+			}
 			rs = ps.executeQuery();
 			while (rs.next()) {
 				Restaurant restaurant = mapRestaurant(rs);
 				// index the restaurant by its merchant number
-				restaurantCache.put(restaurant.getNumber(), restaurant);
+				restaurants.put(restaurant.getNumber(), restaurant);
+				Timestamp modified = rs.getTimestamp(LAST_MODIFIED);
+				if (modified.after(latest)) {
+					latest = modified;
+				}
 			}
+			return latest;
 		} catch (SQLException e) {
-			throw new RuntimeException("SQL exception occurred finding by merchant number", e);
+			throw new RuntimeException("SQL exception occurred loading restaurants", e);
 		} finally {
 			if (rs != null) {
 				try {
@@ -106,41 +275,85 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	}
 
 	/**
-	 * Helper method that simply queries the cache of restaurants.
+	 * Maps a row returned from a query of T_RESTAURANT to a Restaurant object.
 	 *
-	 * @param merchantNumber the restaurant's merchant number
-	 * @return the restaurant
-	 * @throws EmptyResultDataAccessException if no restaurant was found with that merchant number
+	 * @param rs the result set with its cursor positioned at the current row
 	 */
-	private Restaurant queryRestaurantCache(String merchantNumber) {
-		Restaurant restaurant = restaurantCache.get(merchantNumber);
-		if (restaurant == null) {
-			throw new EmptyResultDataAccessException(1);
-		}
+	private Restaurant mapRestaurant(ResultSet rs) throws SQLException {
+		// get the row column data
+		String name = rs.getString(NAME);
+		String number = rs.getString(MERCHANT_NUMBER);
+		Percentage benefitPercentage = MoneyColumns.getPercentage(rs, BENEFIT_PERCENTAGE);
+		// map to the object
+		Restaurant restaurant = new Restaurant(number, name);
+		restaurant.setBenefitPercentage(benefitPercentage);
+		restaurant.setBenefitAvailabilityPolicy(mapBenefitAvailabilityPolicy(rs));
 		return restaurant;
 	}
 
 	/**
-	 * Helper method that clears the cache of restaurants.  This method is called on destruction
+	 * Helper method that maps benefit availability policy data in the ResultSet to a fully-configured
+	 * {@link BenefitAvailabilityPolicy} object. The key column is 'BENEFIT_AVAILABILITY_POLICY', which is a
+	 * discriminator column containing a code that identifies the type of policy. Currently supported types are: 'A' for
+	 * 'always available' and 'N' for 'never available'.
+	 *
+	 * More types could be added easily by enhancing this method. For example, 'W' for 'Weekdays only' or 'M' for 'Max
+	 * Rewards per Month'. Some of these types might require additional database column values to be configured, for
+	 * example a 'MAX_REWARDS_PER_MONTH' data column.
+	 *
+	 * @param rs the result set used to map the policy object from database column values
+	 * @return the matching benefit availability policy
+	 * @throws IllegalArgumentException if the mapping could not be performed
 	 */
-	@PreDestroy
-	void clearRestaurantCache() {
-		restaurantCache.clear();
+	private BenefitAvailabilityPolicy mapBenefitAvailabilityPolicy(ResultSet rs) throws SQLException {
+		return mapBenefitAvailabilityPolicy(rs.getString(BENEFIT_AVAILABILITY_POLICY));
 	}
 
 	/**
-	 * Maps a row returned from a query of T_RESTAURANT to a Restaurant object.
+	 * Maps the code of a benefit availability policy, the value of the 'BENEFIT_AVAILABILITY_POLICY' column, to the
+	 * policy.
 	 *
-	 * @param rs the result set with its cursor positioned at the current row
+	 * @param policyCode the policy code
+	 * @return the matching benefit availability policy
+	 * @throws IllegalArgumentException if the code is not supported
 	 */
-	private Restaurant mapRestaurant(ResultSet rs) throws SQLException {
-		// get the row column data
-		String name = rs.getString("NAME");
-		String number = rs.getString("MERCHANT_NUMBER");
-		Percentage benefitPercentage = Percentage.valueOf(rs.getString("BENEFIT_PERCENTAGE"));
-		// map to the object
-		Restaurant restaurant = new Restaurant(number, name);
-		restaurant.setBenefitPercentage(benefitPercentage);
-		return restaurant;
+	static BenefitAvailabilityPolicy mapBenefitAvailabilityPolicy(String policyCode) {
+		if ("A".equals(policyCode)) {
+			return AlwaysAvailable.INSTANCE;
+		} else if ("N".equals(policyCode)) {
+			return NeverAvailable.INSTANCE;
+		} else {
+			throw new IllegalArgumentException("Not a supported policy code " + policyCode);
+		}
+	}
+
+	/**
+	 * Returns true indicating benefit is always available.
+	 */
+	static class AlwaysAvailable implements BenefitAvailabilityPolicy {
+		static final BenefitAvailabilityPolicy INSTANCE = new AlwaysAvailable();
+
+		public boolean isBenefitAvailableFor(Account account, Dining dining) {
+			return true;
+		}
+
+		public String toString() {
+			return "alwaysAvailable";
+		}
+	}
+
+	/**
+	 * Returns false indicating benefit is never available.
+	 */
+	static class NeverAvailable implements BenefitAvailabilityPolicy {
+		static final BenefitAvailabilityPolicy INSTANCE = new NeverAvailable();
+
+		public boolean isBenefitAvailableFor(Account account, Dining dining) {
+			return false;
+		}
+
+		public String toString() {
+			return "neverAvailable";
+		}
 	}
-}
\ No newline at end of file
+}
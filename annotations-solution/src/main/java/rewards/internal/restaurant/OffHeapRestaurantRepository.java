@@ -0,0 +1,319 @@
+package rewards.internal.restaurant;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import common.jdbc.MoneyColumns;
+import common.money.Percentage;
+
+/**
+ * Finds restaurants in a directory of merchants kept off the heap, for networks with so many restaurants that caching
+ * them as objects would fill the old generation and lengthen collections.
+ *
+ * The directory holds no more of a restaurant than it takes to reward a dining there: its benefit percentage, in basis
+ * points, and the code of its benefit availability policy. They are kept in an open addressing table in a direct
+ * buffer, one slot of 16 bytes per merchant number, and a lightweight Restaurant is made from them for each lookup. The
+ * restaurant has no name.
+ *
+ * The directory is loaded from T_RESTAURANT on creation and reloaded in whole on demand: each reload builds a new table
+ * aside and swaps it in, so a lookup sees either the old or the new directory, never a mixture. The memory of a table
+ * swapped out is freed once its buffer is collected.
+ */
+@ManagedResource(objectName = "rewards:name=merchantDirectory")
+public class OffHeapRestaurantRepository implements RestaurantRepository {
+
+	private static final String SELECT_RESTAURANTS = "select MERCHANT_NUMBER, BENEFIT_PERCENTAGE, "
+			+ "BENEFIT_AVAILABILITY_POLICY from T_RESTAURANT";
+
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int MERCHANT_NUMBER = 1;
+	private static final int BENEFIT_PERCENTAGE = 2;
+	private static final int BENEFIT_AVAILABILITY_POLICY = 3;
+
+	private JdbcTemplate jdbcTemplate;
+
+	/**
+	 * The directory. Never modified once published; a reload replaces it.
+	 */
+	private volatile MerchantTable directory;
+
+	private volatile Date lastReloaded;
+
+	private volatile long reloadCount;
+
+	/**
+	 * Creates a new repository and loads its directory.
+	 * @param dataSource the data source to load restaurants from
+	 */
+	public OffHeapRestaurantRepository(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		reload();
+	}
+
+	public Restaurant findByMerchantNumber(String merchantNumber) {
+		MerchantTable table = directory;
+		int slot = table.find(merchantNumber);
+		if (slot < 0) {
+			throw new EmptyResultDataAccessException(1);
+		}
+		Restaurant restaurant = new Restaurant(merchantNumber, null);
+		restaurant.setBenefitPercentage(Percentage.valueOf(BigDecimal.valueOf(table.basisPoints(slot), 4)));
+		restaurant.setBenefitAvailabilityPolicy(table.policy(slot));
+		return restaurant;
+	}
+
+	/**
+	 * Loads every restaurant into a new directory, and swaps it in.
+	 */
+	@ManagedOperation(description = "Reloads every restaurant into a new directory")
+	public synchronized void reload() {
+		int expected = jdbcTemplate.queryForObject("select count(*) from T_RESTAURANT", Integer.class);
+		DirectoryLoader loader = new DirectoryLoader(MerchantTable.sizedFor(expected));
+		jdbcTemplate.query(SELECT_RESTAURANTS, loader);
+		directory = loader.table;
+		lastReloaded = new Date();
+		reloadCount++;
+	}
+
+	@ManagedAttribute(description = "Number of restaurants in the directory")
+	public int getRestaurantCount() {
+		return directory.size();
+	}
+
+	@ManagedAttribute(description = "Number of slots in the directory")
+	public int getCapacity() {
+		return directory.capacity();
+	}
+
+	@ManagedAttribute(description = "Bytes of memory taken off the heap by the directory")
+	public long getOffHeapBytes() {
+		return (long) directory.capacity() * MerchantTable.SLOT_BYTES;
+	}
+
+	@ManagedAttribute(description = "When the directory was last loaded")
+	public Date getLastReloaded() {
+		return lastReloaded;
+	}
+
+	@ManagedAttribute(description = "Number of times the directory was loaded")
+	public long getReloadCount() {
+		return reloadCount;
+	}
+
+	/**
+	 * Puts the restaurant of each row in a table, growing it should more rows be found than counted.
+	 */
+	private static class DirectoryLoader implements RowCallbackHandler {
+
+		private MerchantTable table;
+
+		DirectoryLoader(MerchantTable table) {
+			this.table = table;
+		}
+
+		public void processRow(ResultSet rs) throws SQLException {
+			table = table.put(rs.getString(MERCHANT_NUMBER), MoneyColumns.getPercentage(rs, BENEFIT_PERCENTAGE)
+					.basisPoints(), rs.getString(BENEFIT_AVAILABILITY_POLICY));
+		}
+	}
+
+	/**
+	 * An open addressing table of merchants in a direct buffer, probed linearly. Each slot holds:
+	 *
+	 * <pre>
+	 * byte  0      merchant number length + 1, 0 for an empty slot
+	 * bytes 1-10   merchant number, one byte per (ISO-8859-1) character
+	 * bytes 11-12  benefit percentage in basis points
+	 * byte  13     benefit availability policy code
+	 * bytes 14-15  unused
+	 * </pre>
+	 *
+	 * The policies of the codes in the table are mapped as they are put, so that unknown codes are rejected when the
+	 * table is filled rather than when it is read. Filled by a single thread, then only read.
+	 */
+	static final class MerchantTable {
+
+		static final int SLOT_BYTES = 16;
+
+		private static final int MAX_NUMBER_LENGTH = 10;
+
+		private static final int BASIS_POINTS = 1 + MAX_NUMBER_LENGTH;
+
+		private static final int POLICY_CODE = BASIS_POINTS + 2;
+
+		/**
+		 * The most slots filled, as a fraction of all; past it the table grows.
+		 */
+		private static final double MAX_LOAD = 0.75;
+
+		/**
+		 * The most slots a buffer addressed by int can hold.
+		 */
+		private static final int MAX_CAPACITY = 1 << 27;
+
+		private final ByteBuffer slots;
+
+		private final int mask;
+
+		/**
+		 * The policies by code.
+		 */
+		private final BenefitAvailabilityPolicy[] policies;
+
+		private int size;
+
+		private MerchantTable(int capacity, BenefitAvailabilityPolicy[] policies) {
+			if (capacity > MAX_CAPACITY) {
+				throw new IllegalArgumentException("Too many merchants for one directory");
+			}
+			this.slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+			this.mask = capacity - 1;
+			this.policies = policies;
+		}
+
+		/**
+		 * Creates an empty table.
+		 * @param expected the number of merchants expected, to size the table for
+		 */
+		static MerchantTable sizedFor(int expected) {
+			int capacity = 16;
+			while (capacity * MAX_LOAD < expected && capacity <= MAX_CAPACITY) {
+				capacity <<= 1;
+			}
+			return new MerchantTable(capacity, new BenefitAvailabilityPolicy[256]);
+		}
+
+		/**
+		 * Puts a merchant in the table, replacing one with the same number.
+		 * @param number the merchant number
+		 * @param basisPoints the benefit percentage in basis points
+		 * @param policyCode the code of the benefit availability policy
+		 * @return this table, or a larger copy if this one was full
+		 * @throws IllegalArgumentException if the number is too long, or the policy code unknown
+		 */
+		MerchantTable put(String number, int basisPoints, String policyCode) {
+			if (number.length() > MAX_NUMBER_LENGTH) {
+				throw new IllegalArgumentException("Merchant number '" + number + "' is longer than "
+						+ MAX_NUMBER_LENGTH + " characters");
+			}
+			BenefitAvailabilityPolicy policy = JdbcRestaurantRepository.mapBenefitAvailabilityPolicy(policyCode);
+			byte code = latin1(policyCode.charAt(0), number);
+			policies[code & 0xff] = policy;
+			if (size + 1 > capacity() * MAX_LOAD) {
+				MerchantTable larger = new MerchantTable(capacity() * 2, policies);
+				for (int slot = 0; slot < capacity(); slot++) {
+					if (slots.get(slot * SLOT_BYTES) != 0) {
+						String moved = number(slot);
+						larger.put(larger.probe(moved), moved, basisPoints(slot), slots.get(slot * SLOT_BYTES
+								+ POLICY_CODE));
+					}
+				}
+				return larger.put(number, basisPoints, policyCode);
+			}
+			put(probe(number), number, basisPoints, code);
+			return this;
+		}
+
+		/**
+		 * Fills a slot, as found by probing for the merchant number.
+		 */
+		private void put(int slot, String number, int basisPoints, byte policyCode) {
+			if (slot < 0) {
+				slot = -slot - 1;
+				size++;
+			}
+			int offset = slot * SLOT_BYTES;
+			slots.put(offset, (byte) (number.length() + 1));
+			for (int i = 0; i < number.length(); i++) {
+				slots.put(offset + 1 + i, latin1(number.charAt(i), number));
+			}
+			slots.putShort(offset + BASIS_POINTS, (short) basisPoints);
+			slots.put(offset + POLICY_CODE, policyCode);
+		}
+
+		/**
+		 * Returns the slot of a merchant, or -1 if the table does not hold it.
+		 */
+		int find(String number) {
+			int slot = probe(number);
+			return slot < 0 ? -1 : slot;
+		}
+
+		int basisPoints(int slot) {
+			return slots.getShort(slot * SLOT_BYTES + BASIS_POINTS);
+		}
+
+		BenefitAvailabilityPolicy policy(int slot) {
+			return policies[slots.get(slot * SLOT_BYTES + POLICY_CODE) & 0xff];
+		}
+
+		int size() {
+			return size;
+		}
+
+		int capacity() {
+			return mask + 1;
+		}
+
+		/**
+		 * Returns the slot holding a merchant number, or if there is none, -(the empty slot to put it in) - 1.
+		 */
+		private int probe(String number) {
+			int slot = hash(number) & mask;
+			while (true) {
+				int offset = slot * SLOT_BYTES;
+				int length = slots.get(offset) - 1;
+				if (length < 0) {
+					return -slot - 1;
+				}
+				if (length == number.length() && matches(offset, number)) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		private boolean matches(int offset, String number) {
+			for (int i = 0; i < number.length(); i++) {
+				if ((slots.get(offset + 1 + i) & 0xff) != number.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private String number(int slot) {
+			int offset = slot * SLOT_BYTES;
+			char[] chars = new char[slots.get(offset) - 1];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = (char) (slots.get(offset + 1 + i) & 0xff);
+			}
+			return new String(chars);
+		}
+
+		private static int hash(String number) {
+			// spread the bits of the string hash, as neighbouring merchant numbers differ in their last digits only
+			int h = number.hashCode() * 0x9e3779b9;
+			return h ^ (h >>> 16);
+		}
+
+		private static byte latin1(char c, String number) {
+			if (c > 0xff) {
+				throw new IllegalArgumentException("Merchant '" + number + "' has a character outside ISO-8859-1");
+			}
+			return (byte) c;
+		}
+	}
+}
@@ -10,7 +10,8 @@ import common.repository.Entity;
 /**
  * A restaurant establishment in the network. Like AppleBee's.
  * 
- * Restaurants calculate how much benefit may be awarded to an account for dining based on a benefit percentage.
+ * Restaurants calculate how much benefit may be awarded to an account for dining based on a availability policy and a
+ * benefit percentage.
  */
 public class Restaurant extends Entity {
 
@@ -20,6 +21,8 @@ public class Restaurant extends Entity {
 
 	private Percentage benefitPercentage;
 
+	private BenefitAvailabilityPolicy benefitAvailabilityPolicy;
+
 	@SuppressWarnings("unused")
 	private Restaurant() {
 	}
@@ -42,6 +45,14 @@ public class Restaurant extends Entity {
 		this.benefitPercentage = benefitPercentage;
 	}
 
+	/**
+	 * Sets the policy that determines if a dining by an account at this restaurant is eligible for benefit.
+	 * @param benefitAvailabilityPolicy the benefit availability policy
+	 */
+	public void setBenefitAvailabilityPolicy(BenefitAvailabilityPolicy benefitAvailabilityPolicy) {
+		this.benefitAvailabilityPolicy = benefitAvailabilityPolicy;
+	}
+
 	/**
 	 * Returns the name of this restaurant.
 	 */
@@ -63,6 +74,13 @@ public class Restaurant extends Entity {
 		return benefitPercentage;
 	}
 
+	/**
+	 * Returns this restaurant's benefit availability policy.
+	 */
+	public BenefitAvailabilityPolicy getBenefitAvailabilityPolicy() {
+		return benefitAvailabilityPolicy;
+	}
+
 	/**
 	 * Calculate the benefit eligible to this account for dining at this restaurant.
 	 * @param account the account that dined at this restaurant
@@ -70,10 +88,15 @@ public class Restaurant extends Entity {
 	 * @return the benefit amount eligible for reward
 	 */
 	public MonetaryAmount calculateBenefitFor(Account account, Dining dining) {
-		return dining.getAmount().multiplyBy(benefitPercentage);
+		if (benefitAvailabilityPolicy.isBenefitAvailableFor(account, dining)) {
+			return dining.getAmount().multiplyBy(benefitPercentage);
+		} else {
+			return MonetaryAmount.zero();
+		}
 	}
 
 	public String toString() {
-		return "Number = '" + number + "', name = '" + name + "', benefitPercentage = " + benefitPercentage;
+		return "Number = '" + number + "', name = '" + name + "', benefitPercentage = " + benefitPercentage
+				+ ", benefitAvailabilityPolicy = " + benefitAvailabilityPolicy;
 	}
 }
\ No newline at end of file
@@ -5,6 +5,9 @@ import java.util.Map;
 
 import org.springframework.dao.EmptyResultDataAccessException;
 
+import rewards.Dining;
+import rewards.internal.account.Account;
+import rewards.internal.restaurant.BenefitAvailabilityPolicy;
 import rewards.internal.restaurant.Restaurant;
 import rewards.internal.restaurant.RestaurantRepository;
 
@@ -25,6 +28,7 @@ public class StubRestaurantRepository implements RestaurantRepository {
 	public StubRestaurantRepository() {
 		Restaurant restaurant = new Restaurant("1234567890", "Apple Bees");
 		restaurant.setBenefitPercentage(Percentage.valueOf("8%"));
+		restaurant.setBenefitAvailabilityPolicy(new AlwaysReturnsTrue());
 		restaurantsByMerchantNumber.put(restaurant.getNumber(), restaurant);
 	}
 
@@ -35,4 +39,15 @@ public class StubRestaurantRepository implements RestaurantRepository {
 		}
 		return restaurant;
 	}
+
+	/**
+	 * A simple "dummy" benefit availability policy that always returns true. Only useful for testing--a real
+	 * availability policy might consider many factors such as the day of week of the dining, or the account's reward
+	 * history for the current month.
+	 */
+	private static class AlwaysReturnsTrue implements BenefitAvailabilityPolicy {
+		public boolean isBenefitAvailableFor(Account account, Dining dining) {
+			return true;
+		}
+	}
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package rewards.internal.restaurant;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import javax.sql.DataSource;
@@ -10,7 +11,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.dao.EmptyResultDataAccessException;
-
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 
 import common.money.Percentage;
@@ -23,6 +24,8 @@ public class JdbcRestaurantRepositoryTests {
 
 	private JdbcRestaurantRepository repository;
 
+	private JdbcTemplate jdbcTemplate;
+
 	@Before
 	public void setUp() throws Exception {
 		// simulate the Spring bean initialization lifecycle:
@@ -31,7 +34,9 @@ public class JdbcRestaurantRepositoryTests {
 		repository = new JdbcRestaurantRepository();
 
 		// then, inject its dependencies
-		repository.setDataSource(createTestDataSource());
+		DataSource dataSource = createTestDataSource();
+		repository.setDataSource(dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
 
 		// lastly, initialize the bean
 		repository.populateRestaurantCache();
@@ -52,6 +57,66 @@ public class JdbcRestaurantRepositoryTests {
 		assertEquals("number is wrong", "1234567890", restaurant.getNumber());
 		assertEquals("name is wrong", "AppleBees", restaurant.getName());
 		assertEquals("benefitPercentage is wrong", Percentage.valueOf("8%"), restaurant.getBenefitPercentage());
+		assertEquals("benefitAvailabilityPolicy is wrong", JdbcRestaurantRepository.AlwaysAvailable.INSTANCE,
+				restaurant.getBenefitAvailabilityPolicy());
+	}
+
+	@Test
+	public void refreshPicksUpChangedRestaurants() {
+		jdbcTemplate.update("insert into T_RESTAURANT (MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+				+ "BENEFIT_AVAILABILITY_POLICY, LAST_MODIFIED) values ('1234567891', 'Chilis', .05, 'N', "
+				+ "current_timestamp + 1 hour)");
+
+		repository.refreshRestaurantCache();
+
+		Restaurant added = repository.findByMerchantNumber("1234567891");
+		assertEquals("name is wrong", "Chilis", added.getName());
+		assertEquals("benefitAvailabilityPolicy is wrong", JdbcRestaurantRepository.NeverAvailable.INSTANCE,
+				added.getBenefitAvailabilityPolicy());
+		assertEquals(2, repository.getCachedRestaurantCount());
+
+		// a change that does not bump LAST_MODIFIED past the latest cached is only seen on a full reload
+		Restaurant unchanged = repository.findByMerchantNumber("1234567890");
+		jdbcTemplate.update("update T_RESTAURANT set NAME = 'AppleBees Grill' where MERCHANT_NUMBER = '1234567890'");
+		repository.refreshRestaurantCache();
+		assertEquals("only the latest restaurant should have been read again", 1, repository.getLastRefreshSize());
+		assertSame(unchanged, repository.findByMerchantNumber("1234567890"));
+
+		repository.reloadRestaurantCache();
+		assertEquals("name is wrong", "AppleBees Grill", repository.findByMerchantNumber("1234567890").getName());
+	}
+
+	@Test
+	public void refreshPicksUpChangesCommittedLate() {
+		jdbcTemplate.update("insert into T_RESTAURANT (MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+				+ "BENEFIT_AVAILABILITY_POLICY, LAST_MODIFIED) values ('1234567891', 'Chilis', .05, 'N', "
+				+ "current_timestamp + 1 hour)");
+		repository.refreshRestaurantCache();
+
+		// stamped before the latest change read, as by a transaction committing after the refresh
+		jdbcTemplate.update("insert into T_RESTAURANT (MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+				+ "BENEFIT_AVAILABILITY_POLICY, LAST_MODIFIED) values ('1234567892', 'Outback', .05, 'A', "
+				+ "current_timestamp + 59 minute)");
+		repository.refreshRestaurantCache();
+		assertEquals("name is wrong", "Outback", repository.findByMerchantNumber("1234567892").getName());
+
+		// no longer once it is older than the overlap
+		repository.setRefreshOverlap(0);
+		jdbcTemplate.update("insert into T_RESTAURANT (MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+				+ "BENEFIT_AVAILABILITY_POLICY, LAST_MODIFIED) values ('1234567893', 'Olive Garden', .05, 'A', "
+				+ "current_timestamp + 58 minute)");
+		repository.refreshRestaurantCache();
+		assertEquals(3, repository.getCachedRestaurantCount());
+	}
+
+	@Test
+	public void reloadDropsDeletedRestaurants() {
+		jdbcTemplate.update("delete from T_RESTAURANT where MERCHANT_NUMBER = '1234567890'");
+		repository.refreshRestaurantCache();
+		assertNotNull(repository.findByMerchantNumber("1234567890"));
+
+		repository.reloadRestaurantCache();
+		assertEquals(0, repository.getCachedRestaurantCount());
 	}
 
 	@Test
@@ -0,0 +1,135 @@
+package rewards.internal.restaurant;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+/**
+ * Latency of finding a restaurant among many, in the HashMap cache of {@link JdbcRestaurantRepository} against the
+ * off-heap directory of {@link OffHeapRestaurantRepository}. Merchants are looked up at random, so most lookups miss the
+ * processor caches.
+ *
+ * The memory each takes is printed as the trial starts: the growth of the heap, measured after a full collection, and
+ * for the directory the bytes it takes off the heap too. Heap growth is only an estimate.
+ *
+ * Run with the test classpath, passing any JMH options:
+ *
+ * <pre>
+ * mvn -pl annotations-solution test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-classpath %classpath rewards.internal.restaurant.MerchantDirectoryBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class MerchantDirectoryBenchmark {
+
+	private static final int BATCH_SIZE = 10000;
+
+	private static final int LOOKUP_KEYS = 1 << 16;
+
+	@Param({ "10000", "1000000" })
+	int merchants;
+
+	private JdbcRestaurantRepository hashMapRepository;
+
+	private OffHeapRestaurantRepository offHeapRepository;
+
+	private String[] merchantNumbers;
+
+	private int next;
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+				.include(MerchantDirectoryBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("classpath:rewards/testdb/schema.sql")
+			.build();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+		List<Object[]> rows = new ArrayList<Object[]>(BATCH_SIZE);
+		for (int i = 0; i < merchants; i++) {
+			rows.add(new Object[] { merchantNumber(i), "Restaurant " + i, (i % 10) / 100.0, i % 3 == 0 ? "N" : "A" });
+			if (rows.size() == BATCH_SIZE || i == merchants - 1) {
+				jdbcTemplate.batchUpdate("insert into T_RESTAURANT (MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+						+ "BENEFIT_AVAILABILITY_POLICY) values (?, ?, ?, ?)", rows);
+				rows.clear();
+			}
+		}
+
+		long baseline = usedHeap();
+		hashMapRepository = new JdbcRestaurantRepository(database);
+		long hashMapHeap = usedHeap() - baseline;
+		offHeapRepository = new OffHeapRestaurantRepository(database);
+		long offHeapHeap = usedHeap() - baseline - hashMapHeap;
+		database.shutdown();
+		System.out.printf("%n%d merchants: HashMap cache %,d bytes of heap; off-heap directory %,d bytes of heap, "
+				+ "%,d bytes off the heap%n", merchants, hashMapHeap, offHeapHeap, offHeapRepository.getOffHeapBytes());
+
+		Random random = new Random(42);
+		merchantNumbers = new String[LOOKUP_KEYS];
+		for (int i = 0; i < LOOKUP_KEYS; i++) {
+			merchantNumbers[i] = merchantNumber(random.nextInt(merchants));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		hashMapRepository = null;
+		offHeapRepository = null;
+	}
+
+	@Benchmark
+	public Restaurant hashMapLookup() {
+		return hashMapRepository.findByMerchantNumber(nextMerchantNumber());
+	}
+
+	@Benchmark
+	public Restaurant offHeapLookup() {
+		return offHeapRepository.findByMerchantNumber(nextMerchantNumber());
+	}
+
+	private String nextMerchantNumber() {
+		return merchantNumbers[next++ & (LOOKUP_KEYS - 1)];
+	}
+
+	private static String merchantNumber(int i) {
+		return String.valueOf(1000000000L + i);
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
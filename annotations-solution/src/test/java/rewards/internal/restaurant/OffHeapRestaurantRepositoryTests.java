@@ -0,0 +1,112 @@
+package rewards.internal.restaurant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import rewards.internal.restaurant.OffHeapRestaurantRepository.MerchantTable;
+
+import common.money.Percentage;
+
+/**
+ * Tests the off-heap restaurant repository with a test data source.
+ */
+public class OffHeapRestaurantRepositoryTests {
+
+	private OffHeapRestaurantRepository repository;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void setUp() {
+		DataSource dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		repository = new OffHeapRestaurantRepository(dataSource);
+	}
+
+	@Test
+	public void findRestaurantByMerchantNumber() {
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		assertEquals("number is wrong", "1234567890", restaurant.getNumber());
+		assertNull("the directory holds no names", restaurant.getName());
+		assertEquals("benefitPercentage is wrong", Percentage.valueOf("8%"), restaurant.getBenefitPercentage());
+		assertEquals("benefitAvailabilityPolicy is wrong", JdbcRestaurantRepository.AlwaysAvailable.INSTANCE,
+				restaurant.getBenefitAvailabilityPolicy());
+		assertEquals(1, repository.getRestaurantCount());
+		assertEquals(16 * 16, repository.getOffHeapBytes());
+	}
+
+	@Test
+	public void findRestaurantByBogusMerchantNumber() {
+		try {
+			repository.findByMerchantNumber("bogus");
+			fail("Should have thrown EmptyResultDataAccessException for a 'bogus' merchant number");
+		} catch (EmptyResultDataAccessException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void reloadSwapsInNewDirectory() {
+		jdbcTemplate.update("insert into T_RESTAURANT (MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+				+ "BENEFIT_AVAILABILITY_POLICY) values ('1234567891', 'Chilis', .05, 'N')");
+		jdbcTemplate.update("delete from T_RESTAURANT where MERCHANT_NUMBER = '1234567890'");
+
+		repository.reload();
+
+		Restaurant added = repository.findByMerchantNumber("1234567891");
+		assertEquals("benefitPercentage is wrong", Percentage.valueOf("5%"), added.getBenefitPercentage());
+		assertEquals("benefitAvailabilityPolicy is wrong", JdbcRestaurantRepository.NeverAvailable.INSTANCE,
+				added.getBenefitAvailabilityPolicy());
+		try {
+			repository.findByMerchantNumber("1234567890");
+			fail("Should have thrown EmptyResultDataAccessException for a deleted restaurant");
+		} catch (EmptyResultDataAccessException e) {
+			// expected
+		}
+		assertEquals(2, repository.getReloadCount());
+	}
+
+	@Test
+	public void tableGrowsPastItsSize() {
+		MerchantTable table = MerchantTable.sizedFor(0);
+		for (int i = 0; i < 1000; i++) {
+			table = table.put(String.valueOf(1000000000L + i), i % 100 * 100, i % 2 == 0 ? "A" : "N");
+		}
+		assertEquals(1000, table.size());
+		assertEquals(2048, table.capacity());
+		for (int i = 0; i < 1000; i++) {
+			int slot = table.find(String.valueOf(1000000000L + i));
+			assertEquals(i % 100 * 100, table.basisPoints(slot));
+			assertEquals(JdbcRestaurantRepository.mapBenefitAvailabilityPolicy(i % 2 == 0 ? "A" : "N"),
+					table.policy(slot));
+		}
+		assertEquals(-1, table.find("999999999"));
+		// a merchant put again is replaced
+		table = table.put("1000000000", 900, "N");
+		assertEquals(1000, table.size());
+		assertEquals(900, table.basisPoints(table.find("1000000000")));
+	}
+
+	@Test
+	public void unsupportedPolicyRejected() {
+		try {
+			MerchantTable.sizedFor(1).put("1234567890", 800, "W");
+			fail("Should have thrown IllegalArgumentException for an unsupported policy code");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package rewards.internal.account;
 
+import common.jdbc.MoneyColumns;
 import common.money.MonetaryAmount;
 import common.money.Percentage;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +19,14 @@ import java.sql.SQLException;
 @Repository
 public class JdbcAccountRepository implements AccountRepository {
 
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int ID = 1;
+	private static final int ACCOUNT_NUMBER = 2;
+	private static final int ACCOUNT_NAME = 3;
+	private static final int BENEFICIARY_NAME = 5;
+	private static final int BENEFICIARY_ALLOCATION_PERCENTAGE = 6;
+	private static final int BENEFICIARY_SAVINGS = 7;
+
 	private DataSource dataSource;
 
 	/**
@@ -113,11 +122,11 @@ public class JdbcAccountRepository implements AccountRepository {
 		Account account = null;
 		while (rs.next()) {
 			if (account == null) {
-				String number = rs.getString("ACCOUNT_NUMBER");
-				String name = rs.getString("ACCOUNT_NAME");
+				String number = rs.getString(ACCOUNT_NUMBER);
+				String name = rs.getString(ACCOUNT_NAME);
 				account = new Account(number, name);
 				// set internal entity identifier (primary key)
-				account.setEntityId(rs.getLong("ID"));
+				account.setEntityId(rs.getLong(ID));
 			}
 			account.restoreBeneficiary(mapBeneficiary(rs));
 		}
@@ -135,9 +144,9 @@ public class JdbcAccountRepository implements AccountRepository {
 	 * @throws SQLException an exception occurred extracting data from the result set
 	 */
 	private Beneficiary mapBeneficiary(ResultSet rs) throws SQLException {
-		String name = rs.getString("BENEFICIARY_NAME");
-		MonetaryAmount savings = MonetaryAmount.valueOf(rs.getString("BENEFICIARY_SAVINGS"));
-		Percentage allocationPercentage = Percentage.valueOf(rs.getString("BENEFICIARY_ALLOCATION_PERCENTAGE"));
+		String name = rs.getString(BENEFICIARY_NAME);
+		MonetaryAmount savings = MoneyColumns.getMonetaryAmount(rs, BENEFICIARY_SAVINGS);
+		Percentage allocationPercentage = MoneyColumns.getPercentage(rs, BENEFICIARY_ALLOCATION_PERCENTAGE);
 		return new Beneficiary(name, allocationPercentage, savings);
 	}
 }
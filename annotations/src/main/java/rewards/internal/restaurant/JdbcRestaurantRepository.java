@@ -1,5 +1,6 @@
 package rewards.internal.restaurant;
 
+import common.jdbc.MoneyColumns;
 import common.money.Percentage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
@@ -24,6 +25,11 @@ import java.util.Map;
 @Repository
 public class JdbcRestaurantRepository implements RestaurantRepository {
 
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int MERCHANT_NUMBER = 1;
+	private static final int NAME = 2;
+	private static final int BENEFIT_PERCENTAGE = 3;
+
 	private DataSource dataSource;
 
 	/**
@@ -131,9 +137,9 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	 */
 	private Restaurant mapRestaurant(ResultSet rs) throws SQLException {
 		// get the row column data
-		String name = rs.getString("NAME");
-		String number = rs.getString("MERCHANT_NUMBER");
-		Percentage benefitPercentage = Percentage.valueOf(rs.getString("BENEFIT_PERCENTAGE"));
+		String name = rs.getString(NAME);
+		String number = rs.getString(MERCHANT_NUMBER);
+		Percentage benefitPercentage = MoneyColumns.getPercentage(rs, BENEFIT_PERCENTAGE);
 		// map to the object
 		Restaurant restaurant = new Restaurant(number, name);
 		restaurant.setBenefitPercentage(benefitPercentage);
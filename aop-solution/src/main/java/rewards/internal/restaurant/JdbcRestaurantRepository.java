@@ -13,6 +13,7 @@ import rewards.Dining;
 import rewards.internal.account.Account;
 import rewards.internal.exception.RewardDataAccessException;
 
+import common.jdbc.MoneyColumns;
 import common.money.Percentage;
 
 /**
@@ -20,6 +21,12 @@ import common.money.Percentage;
  */
 public class JdbcRestaurantRepository implements RestaurantRepository {
 
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int MERCHANT_NUMBER = 1;
+	private static final int NAME = 2;
+	private static final int BENEFIT_PERCENTAGE = 3;
+	private static final int BENEFIT_AVAILABILITY_POLICY = 4;
+
 	private DataSource dataSource;
 
 	/**
@@ -77,9 +84,9 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	 */
 	private Restaurant mapRestaurant(ResultSet rs) throws SQLException {
 		// get the row column data
-		String name = rs.getString("NAME");
-		String number = rs.getString("MERCHANT_NUMBER");
-		Percentage benefitPercentage = Percentage.valueOf(rs.getString("BENEFIT_PERCENTAGE"));
+		String name = rs.getString(NAME);
+		String number = rs.getString(MERCHANT_NUMBER);
+		Percentage benefitPercentage = MoneyColumns.getPercentage(rs, BENEFIT_PERCENTAGE);
 		// map to the object
 		Restaurant restaurant = new Restaurant(number, name);
 		restaurant.setBenefitPercentage(benefitPercentage);
@@ -115,7 +122,7 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	 * @throws IllegalArgumentException if the mapping could not be performed
 	 */
 	private BenefitAvailabilityPolicy mapBenefitAvailabilityPolicy(ResultSet rs) throws SQLException {
-		String policyCode = rs.getString("BENEFIT_AVAILABILITY_POLICY");
+		String policyCode = rs.getString(BENEFIT_AVAILABILITY_POLICY);
 		if ("A".equals(policyCode)) {
 			return AlwaysAvailable.INSTANCE;
 		} else if ("N".equals(policyCode)) {
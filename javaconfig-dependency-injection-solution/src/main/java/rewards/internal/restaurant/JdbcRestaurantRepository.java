@@ -9,6 +9,7 @@ import javax.sql.DataSource;
 
 import org.springframework.dao.EmptyResultDataAccessException;
 
+import common.jdbc.MoneyColumns;
 import common.money.Percentage;
 
 /**
@@ -16,6 +17,11 @@ import common.money.Percentage;
  */
 public class JdbcRestaurantRepository implements RestaurantRepository {
 
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int MERCHANT_NUMBER = 1;
+	private static final int NAME = 2;
+	private static final int BENEFIT_PERCENTAGE = 3;
+
 	private DataSource dataSource;
 
 	/**
@@ -73,9 +79,9 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	 */
 	private Restaurant mapRestaurant(ResultSet rs) throws SQLException {
 		// get the row column data
-		String name = rs.getString("NAME");
-		String number = rs.getString("MERCHANT_NUMBER");
-		Percentage benefitPercentage = Percentage.valueOf(rs.getString("BENEFIT_PERCENTAGE"));
+		String name = rs.getString(NAME);
+		String number = rs.getString(MERCHANT_NUMBER);
+		Percentage benefitPercentage = MoneyColumns.getPercentage(rs, BENEFIT_PERCENTAGE);
 		// map to the object
 		Restaurant restaurant = new Restaurant(number, name);
 		restaurant.setBenefitPercentage(benefitPercentage);
@@ -11,6 +11,7 @@ import javax.sql.DataSource;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 
+import common.jdbc.MoneyColumns;
 import common.money.MonetaryAmount;
 import common.money.Percentage;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -22,23 +23,37 @@ import org.springframework.jdbc.core.RowMapper;
  */
 
 public class JdbcAccountRepository implements AccountRepository {
+
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int ID = 1;
+	private static final int ACCOUNT_NUMBER = 2;
+	private static final int ACCOUNT_NAME = 3;
+	private static final int BENEFICIARY_NAME = 5;
+	private static final int BENEFICIARY_ALLOCATION_PERCENTAGE = 6;
+	private static final int BENEFICIARY_SAVINGS = 7;
+
 	private JdbcTemplate jdbcTemplate;
 
 	public JdbcAccountRepository(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
+	/**
+	 * Extracts an Account object from rows returned from a join of T_ACCOUNT and T_ACCOUNT_BENEFICIARY.
+	 */
+	private ResultSetExtractor<Account> accountExtractor = new AccountExtractor();
+
 	private class AccountExtractor implements ResultSetExtractor<Account> {
 		@Override
 		public Account extractData(ResultSet rs) throws SQLException, DataAccessException {
 			Account account = null;
 			while (rs.next()) {
 				if (account == null) {
-					String number = rs.getString("ACCOUNT_NUMBER");
-					String name = rs.getString("ACCOUNT_NAME");
+					String number = rs.getString(ACCOUNT_NUMBER);
+					String name = rs.getString(ACCOUNT_NAME);
 					account = new Account(number, name);
 					// set internal entity identifier (primary key)
-					account.setEntityId(rs.getLong("ID"));
+					account.setEntityId(rs.getLong(ID));
 				}
 				account.restoreBeneficiary(mapBeneficiary(rs));
 			}
@@ -59,9 +74,9 @@ public class JdbcAccountRepository implements AccountRepository {
 		 * @throws SQLException an exception occurred extracting data from the result set
 		 */
 		private Beneficiary mapBeneficiary(ResultSet rs) throws SQLException {
-			String name = rs.getString("BENEFICIARY_NAME");
-			MonetaryAmount savings = MonetaryAmount.valueOf(rs.getString("BENEFICIARY_SAVINGS"));
-			Percentage allocationPercentage = Percentage.valueOf(rs.getString("BENEFICIARY_ALLOCATION_PERCENTAGE"));
+			String name = rs.getString(BENEFICIARY_NAME);
+			MonetaryAmount savings = MoneyColumns.getMonetaryAmount(rs, BENEFICIARY_SAVINGS);
+			Percentage allocationPercentage = MoneyColumns.getPercentage(rs, BENEFICIARY_ALLOCATION_PERCENTAGE);
 
 			return new Beneficiary(name, allocationPercentage, savings);
 		}
@@ -75,7 +90,7 @@ public class JdbcAccountRepository implements AccountRepository {
 			"on a.ID = b.ACCOUNT_ID " +
 			"where c.ACCOUNT_ID = a.ID and c.NUMBER = ?";
 
-		return jdbcTemplate.query(sql, new AccountExtractor(), creditCardNumber);
+		return jdbcTemplate.query(sql, accountExtractor, creditCardNumber);
 	}
 
 	public void updateBeneficiaries(Account account) {
@@ -14,24 +14,37 @@ import org.springframework.jdbc.core.RowMapper;
 import rewards.Dining;
 import rewards.internal.account.Account;
 
+import common.jdbc.MoneyColumns;
 import common.money.Percentage;
 
 /**
  * Loads restaurants from a data source using the JDBC API.
  */
 public class JdbcRestaurantRepository implements RestaurantRepository {
+
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int MERCHANT_NUMBER = 1;
+	private static final int NAME = 2;
+	private static final int BENEFIT_PERCENTAGE = 3;
+	private static final int BENEFIT_AVAILABILITY_POLICY = 4;
+
 	private JdbcTemplate jdbcTemplate;
 
 	public JdbcRestaurantRepository(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
+	/**
+	 * Maps a row returned from a query of T_RESTAURANT to a Restaurant object.
+	 */
+	private RowMapper<Restaurant> rowMapper = new RestaurantRowMapper();
+
 	private class RestaurantRowMapper implements RowMapper<Restaurant> {
 		@Override
 		public Restaurant mapRow(ResultSet rs, int rowNum) throws SQLException {
-			String name = rs.getString("NAME");
-			String number = rs.getString("MERCHANT_NUMBER");
-			Percentage benefitPercentage = Percentage.valueOf(rs.getString("BENEFIT_PERCENTAGE"));
+			String name = rs.getString(NAME);
+			String number = rs.getString(MERCHANT_NUMBER);
+			Percentage benefitPercentage = MoneyColumns.getPercentage(rs, BENEFIT_PERCENTAGE);
 
 			Restaurant restaurant = new Restaurant(number, name);
 			restaurant.setBenefitPercentage(benefitPercentage);
@@ -56,7 +69,7 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 		 * @throws IllegalArgumentException if the mapping could not be performed
 		 */
 		private BenefitAvailabilityPolicy mapBenefitAvailabilityPolicy(ResultSet rs) throws SQLException {
-			String policyCode = rs.getString("BENEFIT_AVAILABILITY_POLICY");
+			String policyCode = rs.getString(BENEFIT_AVAILABILITY_POLICY);
 			if ("A".equals(policyCode)) {
 				return AlwaysAvailable.INSTANCE;
 			} else if ("N".equals(policyCode)) {
@@ -70,7 +83,7 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	public Restaurant findByMerchantNumber(String merchantNumber) {
 		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY from T_RESTAURANT where MERCHANT_NUMBER = ?";
 
-		return jdbcTemplate.queryForObject(sql, new RestaurantRowMapper(), merchantNumber);
+		return jdbcTemplate.queryForObject(sql, rowMapper, merchantNumber);
 	}
 
 	/**
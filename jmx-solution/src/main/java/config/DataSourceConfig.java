@@ -0,0 +1,115 @@
+package config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import rewards.internal.monitor.tomcat.MonitoredDataSource;
+
+/**
+ * Persistence configuration in place of DbConfig, handing out the
+ * connections to the "rewards" database from a pool, caching their
+ * prepared statements and reporting the use of the pool to JMX.
+ *
+ * Size the pool with the rewards.pool.* properties, set for the
+ * 'dev' and 'production' profiles in pool-[profile].properties.
+ */
+@Configuration
+@Import({DbConfigJpa.class, DbConfigJpaELink.class, DbConfigHibernate.class})
+public class DataSourceConfig {
+
+	@Value("${rewards.pool.name:rewards}")
+	private String name;
+
+	@Value("${rewards.pool.initialSize:2}")
+	private int initialSize;
+
+	@Value("${rewards.pool.minIdle:2}")
+	private int minIdle;
+
+	@Value("${rewards.pool.maxIdle:10}")
+	private int maxIdle;
+
+	@Value("${rewards.pool.maxActive:10}")
+	private int maxActive;
+
+	/**
+	 * Milliseconds to wait for a connection when all are taken.
+	 */
+	@Value("${rewards.pool.maxWait:5000}")
+	private int maxWait;
+
+	/**
+	 * Most prepared statements kept open across the pool.
+	 */
+	@Value("${rewards.pool.statementCacheSize:50}")
+	private int statementCacheSize;
+
+	/**
+	 * Seconds a connection may be held before it is suspected
+	 * to be leaked.
+	 */
+	@Value("${rewards.pool.leakThreshold:60}")
+	private int leakThreshold;
+
+	@Value("${rewards.pool.leakStackTraces:false}")
+	private boolean leakStackTraces;
+
+	/**
+	 * Creates an in-memory "rewards" database populated
+	 * with test data, for the pool to connect to
+	 */
+	@Bean
+	public EmbeddedDatabase rewardsDatabase(){
+		return
+			(new EmbeddedDatabaseBuilder())
+			.addScript("classpath:rewards/testdb/schema.sql")
+			.addScript("classpath:rewards/testdb/data.sql")
+			.build();
+	}
+
+	/**
+	 * The pool of connections to the rewards database. The pool
+	 * logs connections held past the leak threshold itself too,
+	 * with where they were borrowed only if leak stack traces are
+	 * asked for: the pool then takes a stack trace on every borrow.
+	 */
+	@Bean
+	@Primary
+	public MonitoredDataSource dataSource(){
+		org.apache.tomcat.jdbc.pool.DataSource pool = new org.apache.tomcat.jdbc.pool.DataSource();
+		pool.setName(name);
+		pool.setDataSource(rewardsDatabase());
+		pool.setInitialSize(initialSize);
+		pool.setMinIdle(minIdle);
+		pool.setMaxIdle(maxIdle);
+		pool.setMaxActive(maxActive);
+		pool.setMaxWait(maxWait);
+		pool.setJdbcInterceptors(
+			"StatementCache(prepared=true,callable=false,max=" + statementCacheSize + ")");
+		pool.setSuspectTimeout(leakThreshold);
+		pool.setLogAbandoned(leakStackTraces);
+		MonitoredDataSource dataSource = new MonitoredDataSource(pool);
+		dataSource.setLeakThreshold(leakThreshold * 1000L);
+		dataSource.setLeakStackTraces(leakStackTraces);
+		return dataSource;
+	}
+
+	@Configuration
+	@Profile("dev")
+	@PropertySource("classpath:pool-dev.properties")
+	static class DevPoolConfig {
+	}
+
+	@Configuration
+	@Profile("production")
+	@PropertySource("classpath:pool-production.properties")
+	static class ProductionPoolConfig {
+	}
+}
@@ -1,12 +1,15 @@
 package config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Profile;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import rewards.AsyncRewardNetwork;
 import rewards.RewardNetwork;
+import rewards.internal.AsyncRewardNetworkImpl;
 import rewards.internal.RewardNetworkImpl;
 import rewards.internal.account.AccountRepository;
 import rewards.internal.restaurant.RestaurantRepository;
@@ -14,7 +17,7 @@ import rewards.internal.reward.RewardRepository;
 
 @Configuration
 @Import({
-	AppConfig.class, DbConfig.class, AspectsConfig.class, 
+	AppConfig.class, DataSourceConfig.class, AspectsConfig.class, 
 	JpaStatisticsConfig.class, HibernateStatisticsConfig.class})
 @Profile("jpa")
 @EnableTransactionManagement
@@ -32,5 +35,20 @@ public class RootConfig {
 			restaurantRepository, 
 			rewardRepository);
 	}	
+
+	/**
+	 * Rewards on a bounded pool of workers, each calling the transactional
+	 * RewardNetwork above. Size it with the rewards.async.threads and
+	 * rewards.async.queueCapacity properties.
+	 */
+	@Bean public AsyncRewardNetwork asyncRewardNetwork(
+			RewardNetwork rewardNetwork,
+			@Value("${rewards.async.threads:8}") int threads,
+			@Value("${rewards.async.queueCapacity:100}") int queueCapacity){
+		return new AsyncRewardNetworkImpl(
+			rewardNetwork,
+			threads,
+			queueCapacity);
+	}
 	
 }
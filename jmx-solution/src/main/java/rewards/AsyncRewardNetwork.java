@@ -0,0 +1,22 @@
+package rewards;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Rewards a member account for dining at a restaurant without blocking the caller.
+ *
+ * The asynchronous counterpart of {@link RewardNetwork}, for callers such as web request handlers and message listeners
+ * that should not hold their thread for the database work of a reward.
+ */
+public interface AsyncRewardNetwork {
+
+	/**
+	 * Reward an account for dining, in the background. Each reward is made in its own transaction, exactly as if
+	 * {@link RewardNetwork#rewardAccountFor(Dining)} had been called.
+	 *
+	 * @param dining a charge made to a credit card for dining at a restaurant
+	 * @return a future completed with confirmation of the reward, or completed exceptionally with the reason the dining
+	 * could not be rewarded, including a RejectedExecutionException when there is no capacity left to accept it
+	 */
+	public CompletableFuture<RewardConfirmation> rewardAccountFor(Dining dining);
+}
@@ -0,0 +1,205 @@
+package rewards.internal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import rewards.AsyncRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+/**
+ * Rewards accounts for dining on a bounded pool of worker threads, handing each dining to a {@link RewardNetwork}.
+ *
+ * Each worker calls the reward network it is given, so that network must be the transactional proxy of the
+ * application's RewardNetwork (the bean), not the raw implementation: the transaction of each reward is then begun,
+ * committed or rolled back on the worker thread, exactly as for a synchronous call.
+ *
+ * At most a fixed number of dinings wait in the queue. A dining submitted when every worker is busy and the queue is
+ * full is handed to the rejection policy, by default failing its future with a RejectedExecutionException so the caller
+ * can shed load; with a CallerRunsPolicy the caller rewards the dining itself instead, throttling submission.
+ *
+ * Queue depth, worker activity, outcomes and latency are exposed over JMX.
+ */
+@ManagedResource(objectName = "statistics:name=asyncRewardNetwork")
+public class AsyncRewardNetworkImpl implements AsyncRewardNetwork {
+
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+	private RewardNetwork rewardNetwork;
+
+	private ThreadPoolExecutor executor;
+
+	private RejectedExecutionHandler rejectionPolicy = new ThreadPoolExecutor.AbortPolicy();
+
+	private LongAdder completedCount = new LongAdder();
+
+	private LongAdder failedCount = new LongAdder();
+
+	private LongAdder rejectedCount = new LongAdder();
+
+	private LongAdder totalWaitNanos = new LongAdder();
+
+	private LongAdder totalLatencyNanos = new LongAdder();
+
+	private AtomicLong maximumLatencyNanos = new AtomicLong();
+
+	/**
+	 * Creates a new asynchronous reward network.
+	 * @param rewardNetwork the (transactional) reward network the workers reward accounts with
+	 * @param threads the number of worker threads
+	 * @param queueCapacity the most dinings that may wait for a worker
+	 */
+	public AsyncRewardNetworkImpl(RewardNetwork rewardNetwork, int threads, int queueCapacity) {
+		this.rewardNetwork = rewardNetwork;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new CustomizableThreadFactory("reward-"),
+				new Rejection());
+	}
+
+	/**
+	 * Sets the policy for dinings submitted when every worker is busy and the queue is full. Defaults to an
+	 * AbortPolicy. Whatever the policy, a dining it does not run fails with a RejectedExecutionException; policies that
+	 * discard other, already queued, dinings are not supported.
+	 * @param rejectionPolicy the rejection policy
+	 */
+	public void setRejectionPolicy(RejectedExecutionHandler rejectionPolicy) {
+		this.rejectionPolicy = rejectionPolicy;
+	}
+
+	public CompletableFuture<RewardConfirmation> rewardAccountFor(Dining dining) {
+		RewardTask task = new RewardTask(dining);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			// the future has already been failed, see Rejection
+		}
+		return task.result;
+	}
+
+	/**
+	 * Stops accepting dinings and waits for those already accepted to be rewarded.
+	 */
+	public void shutdown() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@ManagedAttribute(description = "Number of dinings waiting for a worker")
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	@ManagedAttribute(description = "Most dinings that may wait for a worker")
+	public int getQueueCapacity() {
+		return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+	}
+
+	@ManagedAttribute(description = "Number of workers rewarding a dining")
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	@ManagedAttribute(description = "Number of worker threads")
+	public int getPoolSize() {
+		return executor.getMaximumPoolSize();
+	}
+
+	@ManagedAttribute(description = "Number of dinings rewarded")
+	public long getCompletedCount() {
+		return completedCount.sum();
+	}
+
+	@ManagedAttribute(description = "Number of dinings that could not be rewarded")
+	public long getFailedCount() {
+		return failedCount.sum();
+	}
+
+	@ManagedAttribute(description = "Number of dinings submitted while the queue was full")
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	@ManagedAttribute(description = "Average time in ms a dining waited for a worker")
+	public long getAverageWaitTime() {
+		long count = completedCount.sum() + failedCount.sum();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum() / count);
+	}
+
+	@ManagedAttribute(description = "Average time in ms from submitting a dining to its outcome")
+	public long getAverageLatency() {
+		long count = completedCount.sum() + failedCount.sum();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.sum() / count);
+	}
+
+	@ManagedAttribute(description = "Longest time in ms from submitting a dining to its outcome")
+	public long getMaximumLatency() {
+		return TimeUnit.NANOSECONDS.toMillis(maximumLatencyNanos.get());
+	}
+
+	/**
+	 * Rewards one dining, on a worker thread or, when the rejection policy says so, on the submitting thread.
+	 */
+	private class RewardTask implements Runnable {
+
+		private final Dining dining;
+
+		private final CompletableFuture<RewardConfirmation> result = new CompletableFuture<RewardConfirmation>();
+
+		private final long submitted = System.nanoTime();
+
+		RewardTask(Dining dining) {
+			this.dining = dining;
+		}
+
+		public void run() {
+			long started = System.nanoTime();
+			totalWaitNanos.add(started - submitted);
+			try {
+				RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining);
+				record(completedCount);
+				result.complete(confirmation);
+			} catch (RuntimeException e) {
+				record(failedCount);
+				result.completeExceptionally(e);
+			}
+		}
+
+		private void record(LongAdder outcomeCount) {
+			long latency = System.nanoTime() - submitted;
+			totalLatencyNanos.add(latency);
+			maximumLatencyNanos.accumulateAndGet(latency, Math::max);
+			outcomeCount.increment();
+		}
+	}
+
+	/**
+	 * Counts dinings submitted while the queue is full and hands them to the configured rejection policy, failing those
+	 * the policy does not run.
+	 */
+	private class Rejection implements RejectedExecutionHandler {
+
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+			rejectedCount.increment();
+			try {
+				rejectionPolicy.rejectedExecution(runnable, executor);
+			} finally {
+				RewardTask task = (RewardTask) runnable;
+				if (!task.result.isDone()) {
+					task.result.completeExceptionally(new RejectedExecutionException("No capacity to reward "
+							+ task.dining + ": " + executor.getQueue().size() + " dinings queued"));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package rewards.internal.monitor;
+
+public interface ConnectionPoolStatistics {
+
+	String getPoolName();
+
+	int getMaxActive();
+
+	int getSize();
+
+	int getActiveCount();
+
+	int getIdleCount();
+
+	int getWaitingCount();
+
+	long getAcquireCount();
+
+	long getAverageAcquireTime();
+
+	long getMaximumAcquireTime();
+
+	long[] getAcquireTimeHistogram();
+
+	long[] getAcquireTimeHistogramLimits();
+
+	long acquireTimePercentile(double percentile);
+
+	int getLeakSuspectCount();
+
+	String[] leakSuspects();
+
+	void resetAcquireTimes();
+}
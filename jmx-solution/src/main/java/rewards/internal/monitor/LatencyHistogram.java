@@ -0,0 +1,127 @@
+package rewards.internal.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in buckets of powers of two microseconds: the first bucket holds latencies under a microsecond, bucket
+ * i those of at least 2^(i-1) and under 2^i microseconds, and the last bucket everything from about 4 seconds on.
+ * Recording a latency takes no lock and creates no objects, so it can be done on every call of a hot path.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 24;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final AtomicLong maximumNanos = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 * @param nanos the latency, in nanoseconds
+	 */
+	public void record(long nanos) {
+		counts.incrementAndGet(bucketOf(nanos));
+		totalNanos.add(nanos);
+		long maximum = maximumNanos.get();
+		while (nanos > maximum && !maximumNanos.compareAndSet(maximum, nanos)) {
+			maximum = maximumNanos.get();
+		}
+	}
+
+	static int bucketOf(long nanos) {
+		long micros = Math.max(nanos, 0) / 1000;
+		return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+	}
+
+	/**
+	 * Returns the number of latencies recorded in each bucket.
+	 */
+	public long[] getCounts() {
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns the exclusive upper limit of each bucket in microseconds, the last being Long.MAX_VALUE.
+	 */
+	public long[] getUpperLimitsMicros() {
+		long[] limits = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS - 1; i++) {
+			limits[i] = 1L << i;
+		}
+		limits[BUCKETS - 1] = Long.MAX_VALUE;
+		return limits;
+	}
+
+	/**
+	 * Returns the number of latencies recorded.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the average latency recorded in nanoseconds, or 0 if none was.
+	 */
+	public long getAverageNanos() {
+		long count = getCount();
+		return count == 0 ? 0 : totalNanos.sum() / count;
+	}
+
+	/**
+	 * Returns the longest latency recorded in nanoseconds.
+	 */
+	public long getMaximumNanos() {
+		return maximumNanos.get();
+	}
+
+	/**
+	 * Returns the upper limit in microseconds of the bucket holding a percentile of the latencies recorded, or 0 if
+	 * none was.
+	 * @param percentile the percentile, from 0 to 100
+	 */
+	public long percentileMicros(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Not a percentile " + percentile);
+		}
+		long[] snapshot = getCounts();
+		long count = 0;
+		for (long bucketCount : snapshot) {
+			count += bucketCount;
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long[] limits = getUpperLimitsMicros();
+		for (int i = 0; i < BUCKETS; i++) {
+			rank -= snapshot[i];
+			if (rank <= 0) {
+				return limits[i];
+			}
+		}
+		return limits[BUCKETS - 1];
+	}
+
+	/**
+	 * Forgets every latency recorded.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		totalNanos.reset();
+		maximumNanos.set(0);
+	}
+}
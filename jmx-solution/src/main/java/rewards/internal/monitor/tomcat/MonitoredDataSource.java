@@ -0,0 +1,263 @@
+package rewards.internal.monitor.tomcat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.jmx.support.ObjectNameManager;
+
+import rewards.internal.monitor.ConnectionPoolStatistics;
+import rewards.internal.monitor.LatencyHistogram;
+
+/**
+ * A DataSource handing out the connections of a Tomcat JDBC pool, and reporting the use of the pool: the connections
+ * active, idle and waited for, how long connections took to acquire, and which connections have been held so long they
+ * are likely leaked - borrowed and never closed.
+ *
+ * Every connection borrowed is tracked until it is closed. The connections held for longer than the leak threshold are
+ * the leak suspects; with leak stack traces on, each suspect shows where it was borrowed, at the cost of filling in a
+ * stack trace per connection borrowed.
+ *
+ * Exported to JMX under statistics:name=connectionPool,pool=[the name of the pool].
+ */
+@ManagedResource(description = "Use of a pool of database connections")
+public class MonitoredDataSource extends DelegatingDataSource implements ConnectionPoolStatistics, SelfNaming {
+
+	private final org.apache.tomcat.jdbc.pool.DataSource pool;
+
+	private final LatencyHistogram acquireTimes = new LatencyHistogram();
+
+	private final Set<Borrowing> borrowings = ConcurrentHashMap.newKeySet();
+
+	private volatile long leakThreshold = TimeUnit.MINUTES.toMillis(1);
+
+	private volatile boolean leakStackTraces;
+
+	public MonitoredDataSource(org.apache.tomcat.jdbc.pool.DataSource pool) {
+		super(pool);
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets how long a connection may be held before it is suspected to be leaked, in milliseconds.
+	 */
+	@ManagedAttribute
+	public void setLeakThreshold(long leakThreshold) {
+		this.leakThreshold = leakThreshold;
+	}
+
+	@ManagedAttribute(description = "Milliseconds a connection may be held before it is suspected to be leaked")
+	public long getLeakThreshold() {
+		return leakThreshold;
+	}
+
+	/**
+	 * Sets whether to keep where each connection was borrowed, to show for the leak suspects.
+	 */
+	@ManagedAttribute
+	public void setLeakStackTraces(boolean leakStackTraces) {
+		this.leakStackTraces = leakStackTraces;
+	}
+
+	@ManagedAttribute(description = "Whether to keep where each connection was borrowed")
+	public boolean isLeakStackTraces() {
+		return leakStackTraces;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		return borrowed(pool.getConnection(), start);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		long start = System.nanoTime();
+		return borrowed(pool.getConnection(username, password), start);
+	}
+
+	private Connection borrowed(Connection connection, long start) {
+		long borrowedAt = System.nanoTime();
+		acquireTimes.record(borrowedAt - start);
+		Borrowing borrowing = new Borrowing(connection, borrowedAt);
+		borrowings.add(borrowing);
+		return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+				new Class<?>[] { ConnectionProxy.class }, borrowing);
+	}
+
+	/**
+	 * Closes the pool, along with the connections it holds.
+	 */
+	public void close() {
+		pool.close();
+	}
+
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		return ObjectNameManager.getInstance("statistics:name=connectionPool,pool=" + getPoolName());
+	}
+
+	@ManagedAttribute(description = "Name of the pool")
+	public String getPoolName() {
+		return pool.getName();
+	}
+
+	@ManagedAttribute(description = "Most connections the pool opens")
+	public int getMaxActive() {
+		return pool.getMaxActive();
+	}
+
+	@ManagedAttribute(description = "Number of connections open")
+	public int getSize() {
+		return pool.getSize();
+	}
+
+	@ManagedAttribute(description = "Number of connections borrowed")
+	public int getActiveCount() {
+		return pool.getActive();
+	}
+
+	@ManagedAttribute(description = "Number of connections open and not borrowed")
+	public int getIdleCount() {
+		return pool.getIdle();
+	}
+
+	@ManagedAttribute(description = "Number of threads waiting for a connection")
+	public int getWaitingCount() {
+		return pool.getWaitCount();
+	}
+
+	@ManagedAttribute(description = "Number of connections acquired")
+	public long getAcquireCount() {
+		return acquireTimes.getCount();
+	}
+
+	@ManagedAttribute(description = "Average time to acquire a connection, in microseconds")
+	public long getAverageAcquireTime() {
+		return TimeUnit.NANOSECONDS.toMicros(acquireTimes.getAverageNanos());
+	}
+
+	@ManagedAttribute(description = "Longest time to acquire a connection, in microseconds")
+	public long getMaximumAcquireTime() {
+		return TimeUnit.NANOSECONDS.toMicros(acquireTimes.getMaximumNanos());
+	}
+
+	@ManagedAttribute(description = "Number of connections acquired within each limit of AcquireTimeHistogramLimits")
+	public long[] getAcquireTimeHistogram() {
+		return acquireTimes.getCounts();
+	}
+
+	@ManagedAttribute(description = "Exclusive upper limits of the buckets of AcquireTimeHistogram, in microseconds")
+	public long[] getAcquireTimeHistogramLimits() {
+		return acquireTimes.getUpperLimitsMicros();
+	}
+
+	@ManagedOperation(description = "Time within which a percentile of connections were acquired, in microseconds")
+	public long acquireTimePercentile(double percentile) {
+		return acquireTimes.percentileMicros(percentile);
+	}
+
+	@ManagedAttribute(description = "Number of connections held for longer than the leak threshold")
+	public int getLeakSuspectCount() {
+		long now = System.nanoTime();
+		int count = 0;
+		for (Borrowing borrowing : borrowings) {
+			if (borrowing.isLeakSuspect(now)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@ManagedOperation(description = "Describes the connections held for longer than the leak threshold")
+	public String[] leakSuspects() {
+		long now = System.nanoTime();
+		List<String> suspects = new ArrayList<String>();
+		for (Borrowing borrowing : borrowings) {
+			if (borrowing.isLeakSuspect(now)) {
+				suspects.add(borrowing.describe(now));
+			}
+		}
+		return suspects.toArray(new String[suspects.size()]);
+	}
+
+	@ManagedOperation(description = "Forgets the times taken to acquire connections so far")
+	public void resetAcquireTimes() {
+		acquireTimes.reset();
+	}
+
+	/**
+	 * A connection borrowed from the pool, until it is closed. Closing it returns the pooled connection, and
+	 * closing it again does nothing.
+	 */
+	private class Borrowing implements InvocationHandler {
+
+		private final Connection connection;
+
+		private final long borrowedAt;
+
+		private final String thread = Thread.currentThread().getName();
+
+		private final Throwable borrowedBy = leakStackTraces ? new Throwable("Borrowed") : null;
+
+		Borrowing(Connection connection, long borrowedAt) {
+			this.connection = connection;
+			this.borrowedAt = borrowedAt;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("equals".equals(name)) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(name)) {
+				return "Monitored " + connection;
+			} else if ("getTargetConnection".equals(name)) {
+				return connection;
+			} else if ("close".equals(name)) {
+				if (borrowings.remove(this)) {
+					connection.close();
+				}
+				return null;
+			}
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+
+		boolean isLeakSuspect(long now) {
+			return now - borrowedAt > TimeUnit.MILLISECONDS.toNanos(leakThreshold);
+		}
+
+		String describe(long now) {
+			StringBuilder description = new StringBuilder("Held for ")
+				.append(TimeUnit.NANOSECONDS.toMillis(now - borrowedAt)).append(" ms, borrowed by thread ")
+				.append(thread);
+			if (borrowedBy != null) {
+				for (StackTraceElement element : borrowedBy.getStackTrace()) {
+					description.append("\n\tat ").append(element);
+				}
+			}
+			return description.toString();
+		}
+	}
+}
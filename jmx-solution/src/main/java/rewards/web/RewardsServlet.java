@@ -1,8 +1,12 @@
 package rewards.web;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.servlet.RequestDispatcher;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -11,27 +15,37 @@ import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
+import rewards.AsyncRewardNetwork;
 import rewards.Dining;
 import rewards.RewardConfirmation;
-import rewards.RewardNetwork;
 
 /**
  * Accepts HTTP requests from browser user agents to reward for dining. Maps HTTP requests to application operations.
  * 
+ * Requests are processed asynchronously: the container thread is released as soon as the dining has been handed to the
+ * reward network, and the response is rendered when the reward is confirmed or has failed. A request whose reward is
+ * not known within the timeout, or whose connection fails first, is answered with the error page there and then, and
+ * the reward's outcome is no longer rendered when it arrives.
+ * 
  * A controller. Part of the presentation layer. A client of the application layer.
  */
 public class RewardsServlet extends HttpServlet {
 
 	private static final long serialVersionUID = -5991988549223471196L;
 
-	private RewardNetwork rewardNetwork;
+	/**
+	 * How long in ms a request may wait for its reward before the container fails it.
+	 */
+	private static final long REWARD_TIMEOUT = 30000;
+
+	private AsyncRewardNetwork rewardNetwork;
 
 	@Override
 	public void init() throws ServletException {
 		// lookup the bean container hosting the application
 		BeanFactory beanFactory = WebApplicationContextUtils.getRequiredWebApplicationContext(getServletContext());
 		// lookup the entry-point into the application, our reward network
-		rewardNetwork = beanFactory.getBean(RewardNetwork.class);
+		rewardNetwork = beanFactory.getBean(AsyncRewardNetwork.class);
 	}
 
 	@Override
@@ -47,18 +61,66 @@ public class RewardsServlet extends HttpServlet {
 		// expose in "request scope" for other resources to access
 		request.setAttribute("dining", dining);
 
-		try {
-			// invoke application
-			RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining);
-			// expose in "request scope" for other resources to access
-			request.setAttribute("rewardConfirmation", confirmation);
-			RequestDispatcher dispatcher = request.getRequestDispatcher("/WEB-INF/views/rewardConfirmation.jsp");
-			// forward to a confirmation JSP resource for rendering
-			dispatcher.forward(request, response);
-		} catch (Exception e) {
-			RequestDispatcher dispatcher = request.getRequestDispatcher("/WEB-INF/views/rewardError.jsp");
-			// forward to an error JSP resource for rendering
-			dispatcher.forward(request, response);
+		AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout(REWARD_TIMEOUT);
+		AtomicBoolean answered = new AtomicBoolean();
+		asyncContext.addListener(new ErrorListener(answered));
+
+		// invoke application, rendering the outcome once known
+		CompletableFuture<RewardConfirmation> reward = rewardNetwork.rewardAccountFor(dining);
+		reward.whenComplete((confirmation, failure) -> {
+			if (!answered.compareAndSet(false, true)) {
+				// already answered by the timeout or error; the response is no longer ours
+				return;
+			}
+			if (failure == null) {
+				// expose in "request scope" for other resources to access
+				asyncContext.getRequest().setAttribute("rewardConfirmation", confirmation);
+				// forward to a confirmation JSP resource for rendering
+				asyncContext.dispatch("/WEB-INF/views/rewardConfirmation.jsp");
+			} else {
+				// forward to an error JSP resource for rendering
+				asyncContext.dispatch("/WEB-INF/views/rewardError.jsp");
+			}
+		});
+	}
+
+	/**
+	 * Answers a request with the error page when it times out or fails before its reward is known, unless the reward
+	 * has been rendered already.
+	 */
+	private static class ErrorListener implements AsyncListener {
+
+		private final AtomicBoolean answered;
+
+		ErrorListener(AtomicBoolean answered) {
+			this.answered = answered;
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			if (answered.compareAndSet(false, true)) {
+				// forward to an error JSP resource for rendering
+				event.getAsyncContext().dispatch("/WEB-INF/views/rewardError.jsp");
+			}
+		}
+
+		@Override
+		public void onError(AsyncEvent event) throws IOException {
+			if (answered.compareAndSet(false, true)) {
+				// the connection has failed, there is nobody to render for
+				event.getAsyncContext().complete();
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) throws IOException {
+			// the response has been sent; a reward arriving later must not touch it
+			answered.set(true);
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) throws IOException {
 		}
 	}
-}
\ No newline at end of file
+}
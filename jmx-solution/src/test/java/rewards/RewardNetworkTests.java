@@ -2,6 +2,9 @@ package rewards;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,6 +16,8 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import rewards.internal.monitor.tomcat.MonitoredDataSource;
+
 import common.money.MonetaryAmount;
 import config.RootConfig;
 
@@ -36,6 +41,12 @@ public class RewardNetworkTests {
 	@Autowired
 	private RewardNetwork rewardNetwork;
 
+	@Autowired
+	private AsyncRewardNetwork asyncRewardNetwork;
+
+	@Autowired
+	private MonitoredDataSource dataSource;
+
 	@Test
 	public void testRewardForDining() {
 		// create a new dining of 100.00 charged to credit card '1234123412341234' by merchant '123457890' as test input
@@ -64,5 +75,21 @@ public class RewardNetworkTests {
 		// each distribution should be 4.00 (as both have a 50% allocation)
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Annabelle").getAmount());
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Corgan").getAmount());
+
+		// the reward took connections from the pool, and gave them all back
+		assertTrue(dataSource.getAcquireCount() > 0);
+		assertEquals(0, dataSource.getActiveCount());
+	}
+
+	@Test
+	public void testRewardForDiningAsynchronously() throws Exception {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+		// the reward is made on a worker thread, in its own transaction
+		RewardConfirmation confirmation = asyncRewardNetwork.rewardAccountFor(dining).get(10, TimeUnit.SECONDS);
+
+		assertNotNull(confirmation.getConfirmationNumber());
+		assertEquals("123456789", confirmation.getAccountContribution().getAccountNumber());
+		assertEquals(MonetaryAmount.valueOf("8.00"), confirmation.getAccountContribution().getAmount());
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package rewards.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.orm.ObjectRetrievalFailureException;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.internal.account.StubAccountRepository;
+import rewards.internal.restaurant.StubRestaurantRepository;
+import rewards.internal.reward.StubRewardRepository;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Unit tests for rewarding asynchronously on a bounded pool of workers, with stub repositories.
+ */
+public class AsyncRewardNetworkImplTests {
+
+	private RewardNetwork rewardNetwork = new RewardNetworkImpl(new StubAccountRepository(),
+			new StubRestaurantRepository(), new StubRewardRepository());
+
+	private Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+	private CountDownLatch release = new CountDownLatch(1);
+
+	private AsyncRewardNetworkImpl asyncRewardNetwork;
+
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+		asyncRewardNetwork.shutdown();
+	}
+
+	@Test
+	public void testRewardForDining() throws Exception {
+		asyncRewardNetwork = new AsyncRewardNetworkImpl(rewardNetwork, 2, 10);
+		RewardConfirmation confirmation = asyncRewardNetwork.rewardAccountFor(dining).get(5, TimeUnit.SECONDS);
+		assertNotNull(confirmation.getConfirmationNumber());
+		assertEquals(MonetaryAmount.valueOf("8.00"), confirmation.getAccountContribution().getAmount());
+		assertEquals(1, asyncRewardNetwork.getCompletedCount());
+		assertEquals(0, asyncRewardNetwork.getFailedCount());
+	}
+
+	@Test
+	public void testRewardForDiningFails() throws Exception {
+		asyncRewardNetwork = new AsyncRewardNetworkImpl(rewardNetwork, 2, 10);
+		Dining bogus = Dining.createDining("100.00", "bogus", "1234567890");
+		try {
+			asyncRewardNetwork.rewardAccountFor(bogus).get(5, TimeUnit.SECONDS);
+			fail("Should have failed for an unknown credit card");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ObjectRetrievalFailureException);
+		}
+		assertEquals(1, asyncRewardNetwork.getFailedCount());
+	}
+
+	@Test
+	public void testRewardRejectedWhenQueueFull() throws Exception {
+		asyncRewardNetwork = new AsyncRewardNetworkImpl(blockingRewardNetwork(), 1, 1);
+		CompletableFuture<RewardConfirmation> running = asyncRewardNetwork.rewardAccountFor(dining);
+		CompletableFuture<RewardConfirmation> queued = asyncRewardNetwork.rewardAccountFor(dining);
+		CompletableFuture<RewardConfirmation> rejected = asyncRewardNetwork.rewardAccountFor(dining);
+		try {
+			rejected.getNow(null);
+			fail("Should have been rejected");
+		} catch (Exception e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		assertEquals(1, asyncRewardNetwork.getRejectedCount());
+		assertEquals(1, asyncRewardNetwork.getQueueDepth());
+
+		release.countDown();
+		assertNotNull(running.get(5, TimeUnit.SECONDS));
+		assertNotNull(queued.get(5, TimeUnit.SECONDS));
+		assertEquals(2, asyncRewardNetwork.getCompletedCount());
+	}
+
+	@Test
+	public void testCallerRunsWhenQueueFull() throws Exception {
+		asyncRewardNetwork = new AsyncRewardNetworkImpl(blockingRewardNetwork(), 1, 1);
+		asyncRewardNetwork.setRejectionPolicy(new ThreadPoolExecutor.CallerRunsPolicy());
+		asyncRewardNetwork.rewardAccountFor(dining);
+		asyncRewardNetwork.rewardAccountFor(dining);
+		// the worker and queue are taken, so this dining is rewarded on the calling thread before returning
+		CompletableFuture<RewardConfirmation> callerRuns = asyncRewardNetwork.rewardAccountFor(dining);
+		assertTrue(callerRuns.isDone());
+		assertNotNull(callerRuns.get().getConfirmationNumber());
+		assertEquals(1, asyncRewardNetwork.getRejectedCount());
+		assertEquals(1, asyncRewardNetwork.getCompletedCount());
+	}
+
+	/**
+	 * Returns a reward network that holds each reward made on a worker thread until the test releases it, keeping the
+	 * worker busy.
+	 */
+	private RewardNetwork blockingRewardNetwork() {
+		Thread testThread = Thread.currentThread();
+		return dining -> {
+			try {
+				if (Thread.currentThread() != testThread) {
+					release.await(5, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return rewardNetwork.rewardAccountFor(dining);
+		};
+	}
+}
@@ -0,0 +1,66 @@
+package rewards.internal.monitor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the histogram of latencies.
+ */
+public class LatencyHistogramTests {
+
+	private LatencyHistogram histogram = new LatencyHistogram();
+
+	@Test
+	public void testBuckets() {
+		assertEquals(0, LatencyHistogram.bucketOf(999));
+		assertEquals(1, LatencyHistogram.bucketOf(1000));
+		assertEquals(1, LatencyHistogram.bucketOf(1999));
+		assertEquals(2, LatencyHistogram.bucketOf(2000));
+		assertEquals(11, LatencyHistogram.bucketOf(1024000));
+		assertEquals(23, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+		assertEquals(0, LatencyHistogram.bucketOf(-1));
+		long[] limits = histogram.getUpperLimitsMicros();
+		assertEquals(1, limits[0]);
+		assertEquals(2048, limits[11]);
+		assertEquals(Long.MAX_VALUE, limits[23]);
+	}
+
+	@Test
+	public void testRecord() {
+		for (int i = 0; i < 98; i++) {
+			histogram.record(500);
+		}
+		histogram.record(3000);
+		histogram.record(100000000);
+		long[] counts = histogram.getCounts();
+		assertEquals(98, counts[0]);
+		assertEquals(1, counts[2]);
+		assertEquals(1, counts[17]);
+		assertEquals(100, histogram.getCount());
+		assertEquals(100000000, histogram.getMaximumNanos());
+		assertEquals((98 * 500 + 3000 + 100000000) / 100, histogram.getAverageNanos());
+		assertEquals(1, histogram.percentileMicros(50));
+		assertEquals(1, histogram.percentileMicros(98));
+		assertEquals(4, histogram.percentileMicros(99));
+		assertEquals(131072, histogram.percentileMicros(100));
+	}
+
+	@Test
+	public void testReset() {
+		histogram.record(3000);
+		histogram.reset();
+		assertArrayEquals(new long[24], histogram.getCounts());
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMaximumNanos());
+		assertEquals(0, histogram.percentileMicros(99));
+		try {
+			histogram.percentileMicros(101);
+			fail("Should have thrown IllegalArgumentException for a percentile over 100");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
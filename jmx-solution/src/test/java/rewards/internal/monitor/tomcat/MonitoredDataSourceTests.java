@@ -0,0 +1,125 @@
+package rewards.internal.monitor.tomcat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jmx.export.annotation.AnnotationMBeanExporter;
+
+/**
+ * Unit tests for the DataSource reporting the use of a pool of connections to an in-memory database.
+ */
+public class MonitoredDataSourceTests {
+
+	private EmbeddedDatabase database;
+
+	private MonitoredDataSource dataSource;
+
+	@Before
+	public void setUp() {
+		database = new EmbeddedDatabaseBuilder().addScript("classpath:rewards/testdb/schema.sql").build();
+		org.apache.tomcat.jdbc.pool.DataSource pool = new org.apache.tomcat.jdbc.pool.DataSource();
+		pool.setName("test");
+		pool.setDataSource(database);
+		pool.setInitialSize(1);
+		pool.setMaxActive(2);
+		pool.setJdbcInterceptors("StatementCache(prepared=true,callable=false,max=10)");
+		dataSource = new MonitoredDataSource(pool);
+	}
+
+	@After
+	public void tearDown() {
+		dataSource.close();
+		database.shutdown();
+	}
+
+	@Test
+	public void testConnectionsCounted() throws Exception {
+		Connection first = dataSource.getConnection();
+		Connection second = dataSource.getConnection();
+		assertEquals(2, dataSource.getActiveCount());
+		assertEquals(0, dataSource.getIdleCount());
+		assertEquals(2, dataSource.getSize());
+		first.close();
+		// closing again neither returns the connection again nor fails
+		first.close();
+		assertTrue(first.isClosed());
+		assertEquals(1, dataSource.getActiveCount());
+		assertEquals(1, dataSource.getIdleCount());
+		second.close();
+		assertEquals(0, dataSource.getActiveCount());
+		assertEquals(2, dataSource.getAcquireCount());
+		long acquired = 0;
+		for (long count : dataSource.getAcquireTimeHistogram()) {
+			acquired += count;
+		}
+		assertEquals(2, acquired);
+		assertTrue(dataSource.acquireTimePercentile(100) > 0);
+		dataSource.resetAcquireTimes();
+		assertEquals(0, dataSource.getAcquireCount());
+	}
+
+	@Test
+	public void testLeakSuspects() throws Exception {
+		dataSource.setLeakStackTraces(true);
+		Connection leaked = dataSource.getConnection();
+		assertEquals(0, dataSource.getLeakSuspectCount());
+		dataSource.setLeakThreshold(0);
+		Thread.sleep(1);
+		assertEquals(1, dataSource.getLeakSuspectCount());
+		String[] suspects = dataSource.leakSuspects();
+		assertEquals(1, suspects.length);
+		assertTrue(suspects[0], suspects[0].contains("borrowed by thread " + Thread.currentThread().getName()));
+		assertTrue(suspects[0], suspects[0].contains("testLeakSuspects"));
+		leaked.close();
+		assertEquals(0, dataSource.getLeakSuspectCount());
+	}
+
+	@Test
+	public void testPreparedStatementsCached() throws Exception {
+		String sql = "select NUMBER from T_ACCOUNT where ID = ?";
+		Connection connection = dataSource.getConnection();
+		Connection pooled = ((ConnectionProxy) connection).getTargetConnection().unwrap(Connection.class);
+		PreparedStatement statement = connection.prepareStatement(sql);
+		PreparedStatement prepared = statement.unwrap(PreparedStatement.class);
+		statement.close();
+		connection.close();
+		connection = dataSource.getConnection();
+		// the pool's one connection, with the statement closed above still open
+		assertSame(pooled, connection.unwrap(Connection.class));
+		PreparedStatement cached = connection.prepareStatement(sql);
+		assertSame(prepared, cached.unwrap(PreparedStatement.class));
+		cached.close();
+		connection.close();
+	}
+
+	@Test
+	public void testExportedToJmx() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		AnnotationMBeanExporter exporter = new AnnotationMBeanExporter();
+		exporter.setServer(server);
+		exporter.setEnsureUniqueRuntimeObjectNames(false);
+		exporter.registerManagedResource(dataSource);
+		ObjectName name = new ObjectName("statistics:name=connectionPool,pool=test");
+		Connection connection = dataSource.getConnection();
+		assertEquals(1, server.getAttribute(name, "ActiveCount"));
+		assertEquals(2, server.getAttribute(name, "MaxActive"));
+		assertEquals(1L, server.getAttribute(name, "AcquireCount"));
+		assertEquals(0, server.getAttribute(name, "LeakSuspectCount"));
+		connection.close();
+		exporter.destroy();
+	}
+}
@@ -4,12 +4,21 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.orm.ObjectRetrievalFailureException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import accounts.AccountManager;
+import accounts.AccountPage;
+import accounts.InvalidPageRequestException;
 import rewards.internal.account.Account;
 
 /**
@@ -32,26 +41,44 @@ public class AccountController {
 	public AccountController(AccountManager accountManager) {
 		this.accountManager = accountManager;
 
-		logger.info("AccountRepository says system has "
-				+ accountManager.getAllAccounts().size() + " accounts");
+		// Counting the accounts would load them all, more than fit in memory
+		logger.info("AccountController using " + accountManager.getInfo()
+				+ " AccountManager");
 	}
 
 	/**
-	 * Fetch an account with the specified account number.
+	 * Fetch a page of accounts, in order of entityId. Unless it is the last
+	 * page, the Link header of the response has the URL of the next page,
+	 * as rel="next".
 	 * 
-	 * @param accountNumber
-	 *            A numeric, 9 digit account number.
-	 * @return The account if found.
-	 * @throws AccountNotFoundException
-	 *             If the number is not recognized.
+	 * @param pageToken
+	 *            The token of the page, from the Link of the page before.
+	 *            None for the first page.
+	 * @param size
+	 *            The most accounts on the page, cut to
+	 *            {@link AccountPage#MAX_SIZE}.
+	 * @return The accounts of the page.
 	 */
 	@GetMapping("/accounts")
-	public Account[] all() {
+	public ResponseEntity<Account[]> all(
+			@RequestParam(required = false) String pageToken,
+			@RequestParam(defaultValue = "" + AccountPage.DEFAULT_SIZE) int size) {
 
 		logger.info("accounts-microservice all() invoked");
-		List<Account> accounts = accountManager.getAllAccounts();
-		logger.info("accounts-microservice all() found: " + accounts.size());
-		return accounts.toArray(new Account[accounts.size()]);
+		AccountPage page = accountManager.getAccounts(pageToken, size);
+		List<Account> accounts = page.getAccounts();
+		logger.info("accounts-microservice all() found: " + page);
+		Account[] body = accounts.toArray(new Account[accounts.size()]);
+
+		if (page.isLast()) {
+			return ResponseEntity.ok(body);
+		}
+		String next = ServletUriComponentsBuilder.fromCurrentRequest()
+				.replaceQueryParam("pageToken", page.getNextPageToken())
+				.toUriString();
+		return ResponseEntity.ok()
+				.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+				.body(body);
 	}
 
 	/**
@@ -84,4 +111,13 @@ public class AccountController {
 		}
 	}
 
+	/**
+	 * Maps InvalidPageRequestException to a 400 Bad Request HTTP status code.
+	 */
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ExceptionHandler(InvalidPageRequestException.class)
+	public void handleInvalidPage(InvalidPageRequestException e) {
+		logger.info("accounts-microservice all() failed: " + e.getMessage());
+	}
+
 }
@@ -10,6 +10,7 @@ import org.springframework.context.annotation.Bean;
 
 import accounts.AccountManager;
 import accounts.internal.JpaAccountManager;
+import rewards.internal.account.AccountJsonModule;
 
 /**
  * Run as a micro-service, registering with the Discovery Server (Eureka).
@@ -45,4 +46,15 @@ public class AccountsMicroservice {
 		return new JpaAccountManager();
 	}
 
+	/**
+	 * Accounts are returned as JSON using hand-written streaming serializers.
+	 * Spring Boot registers any Jackson module bean with its ObjectMapper.
+	 * 
+	 * @return The Jackson module for accounts and their beneficiaries.
+	 */
+	@Bean
+	public AccountJsonModule accountJsonModule() {
+		return new AccountJsonModule();
+	}
+
 }
@@ -1,11 +1,15 @@
 package accounts;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import rewards.internal.account.Account;
 import common.money.Percentage;
@@ -41,9 +45,47 @@ public class RemoteAccountManager implements AccountManager {
 
 	@Override
 	public List<Account> getAllAccounts() {
-		Account[] accounts = restTemplate.getForObject(
-				serviceUrl + "/accounts", Account[].class);
-		return Arrays.asList(accounts);
+		// The microservice returns its accounts a page at a time
+		AccountPage page = getAccounts(null, AccountPage.MAX_SIZE);
+		List<Account> accounts = new ArrayList<Account>(page.getAccounts());
+		while (!page.isLast()) {
+			page = getAccounts(page.getNextPageToken(), AccountPage.MAX_SIZE);
+			accounts.addAll(page.getAccounts());
+		}
+		return accounts;
+	}
+
+	@Override
+	public AccountPage getAccounts(String pageToken, int pageSize) {
+		UriComponentsBuilder url = UriComponentsBuilder
+				.fromHttpUrl(serviceUrl + "/accounts")
+				.queryParam("size", pageSize);
+		if (pageToken != null) {
+			url.queryParam("pageToken", pageToken);
+		}
+		ResponseEntity<Account[]> response = restTemplate.getForEntity(
+				url.build().toUri(), Account[].class);
+		return new AccountPage(Arrays.asList(response.getBody()),
+				nextPageToken(response.getHeaders()));
+	}
+
+	/**
+	 * Returns the token of the page the Link headers of a page give as
+	 * rel="next", or null if there is no next page.
+	 */
+	private String nextPageToken(HttpHeaders headers) {
+		List<String> links = headers.get(HttpHeaders.LINK);
+		if (links != null) {
+			for (String link : links) {
+				if (link.contains("rel=\"next\"")) {
+					String next = link.substring(link.indexOf('<') + 1,
+							link.indexOf('>'));
+					return UriComponentsBuilder.fromUriString(next).build()
+							.getQueryParams().getFirst("pageToken");
+				}
+			}
+		}
+		return null;
 	}
 
 	// No need to implement all the rest for this lab.
@@ -117,6 +117,16 @@ public class Percentage implements Serializable {
 		return new Percentage(value.add(percentage.value));
 	}
 
+	/**
+	 * Return this percentage in basis points, for example 2500 for 25%. Useful
+	 * for exact integer arithmetic.
+	 * 
+	 * @return this percentage in basis points, between 0 and 10000
+	 */
+	public int basisPoints() {
+		return value.movePointRight(4).intValue();
+	}
+
 	/**
 	 * Return this percentage as a double. Useful for when a double type is
 	 * needed by an external API or system.
@@ -53,6 +53,11 @@ public class RemoteAccountManager implements AccountManager {
 
 	// Ignore the remaining methods to keep lab shorter.
 
+	@Override
+	public AccountPage getAccounts(String pageToken, int pageSize) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public Account save(Account account) {
 		// DO NOT MODIFY THIS CODE
@@ -2,10 +2,12 @@ package accounts;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 
 import config.AppConfig;
 import config.DbConfig;
+import rewards.internal.account.AccountJsonModule;
 
 @SpringBootApplication
 @Import({AppConfig.class,DbConfig.class})
@@ -14,5 +16,13 @@ public class RestWsApplication {
     public static void main(String[] args) {
         SpringApplication.run(RestWsApplication.class, args);
     }
+
+    /**
+     * Streaming JSON mapping for accounts; Spring Boot registers any Jackson module bean with its ObjectMapper.
+     */
+    @Bean
+    public AccountJsonModule accountJsonModule() {
+        return new AccountJsonModule();
+    }
        
 }
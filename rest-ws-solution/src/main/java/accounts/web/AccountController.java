@@ -7,6 +7,7 @@ import java.util.List;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -16,11 +17,14 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import accounts.AccountManager;
+import accounts.AccountPage;
+import accounts.InvalidPageRequestException;
 import common.money.Percentage;
 import rewards.internal.account.Account;
 import rewards.internal.account.Beneficiary;
@@ -45,11 +49,20 @@ public class AccountController {
 	}
 
 	/**
-	 * Provide a list of all accounts.
+	 * Provide a page of accounts, in order of id, of at most the given size.
+	 * Unless it is the last page, the Link header of the response has the
+	 * URL of the next page, as rel="next".
 	 */
 	@GetMapping(value = "/accounts")
-	public @ResponseBody List<Account> accountSummary() {
-		return accountManager.getAllAccounts();
+	public ResponseEntity<List<Account>> accountSummary(@RequestParam(required = false) String pageToken,
+			@RequestParam(defaultValue = "" + AccountPage.DEFAULT_SIZE) int size) {
+		AccountPage page = accountManager.getAccounts(pageToken, size);
+		if (page.isLast()) {
+			return ResponseEntity.ok(page.getAccounts());
+		}
+		String next = ServletUriComponentsBuilder.fromCurrentRequest()
+				.replaceQueryParam("pageToken", page.getNextPageToken()).toUriString();
+		return ResponseEntity.ok().header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"").body(page.getAccounts());
 	}
 
 	/**
@@ -136,6 +149,16 @@ public class AccountController {
 		// just return empty 501
 	}
 
+	/**
+	 * Maps InvalidPageRequestException to a 400 Bad Request HTTP status code.
+	 */
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ExceptionHandler(InvalidPageRequestException.class)
+	public void handleInvalidPage(Exception ex) {
+		logger.error("Exception is: ", ex);
+		// return empty 400
+	}
+
 	/**
 	 * Maps IllegalArgumentExceptions to a 404 Not Found HTTP status code.
 	 */
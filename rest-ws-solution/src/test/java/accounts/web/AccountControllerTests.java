@@ -2,6 +2,7 @@ package accounts.web;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.util.List;
@@ -10,10 +11,13 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
+import accounts.AccountPage;
 import accounts.internal.StubAccountManager;
 import rewards.internal.account.Account;
 import rewards.internal.account.Beneficiary;
@@ -39,10 +43,33 @@ public class AccountControllerTests {
 
 	@Test
 	public void testHandleSummaryRequest() {
-		List<Account> accounts = controller.accountSummary();
+		ResponseEntity<List<Account>> result = controller.accountSummary(null, AccountPage.DEFAULT_SIZE);
+		List<Account> accounts = result.getBody();
 		assertNotNull(accounts);
 		assertEquals(1, accounts.size());
 		assertEquals(Long.valueOf(0), accounts.get(0).getEntityId());
+		// the last page links to no next page
+		assertNull(result.getHeaders().getFirst(HttpHeaders.LINK));
+	}
+
+	@Test
+	public void testHandleSummaryRequestInPages() {
+		StubAccountManager accountManager = new StubAccountManager();
+		accountManager.save(new Account("11223344", "Test"));
+		controller = new AccountController(accountManager);
+		setupFakeRequest("http://localhost/accounts");
+
+		ResponseEntity<List<Account>> result = controller.accountSummary(null, 1);
+		assertEquals(1, result.getBody().size());
+		assertEquals(Long.valueOf(0), result.getBody().get(0).getEntityId());
+		String pageToken = AccountPage.tokenAfter(0);
+		assertEquals("<http://localhost/accounts?pageToken=" + pageToken + ">; rel=\"next\"",
+				result.getHeaders().getFirst(HttpHeaders.LINK));
+
+		result = controller.accountSummary(pageToken, 1);
+		assertEquals(1, result.getBody().size());
+		assertEquals("11223344", result.getBody().get(0).getNumber());
+		assertNull(result.getHeaders().getFirst(HttpHeaders.LINK));
 	}
 
 	@Test
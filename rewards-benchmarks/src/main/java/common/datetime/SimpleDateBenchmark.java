@@ -0,0 +1,46 @@
+package common.datetime;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of obtaining today's date, as every new dining and reward confirmation does, and of comparing dates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimpleDateBenchmark {
+
+	private SimpleDate date = new SimpleDate(12, 29, 1977);
+
+	private SimpleDate sameDate = new SimpleDate(12, 29, 1977);
+
+	private SimpleDate laterDate = new SimpleDate(1, 1, 1978);
+
+	@Benchmark
+	public SimpleDate today() {
+		return SimpleDate.today();
+	}
+
+	@Benchmark
+	public boolean equals() {
+		return date.equals(sameDate);
+	}
+
+	@Benchmark
+	public int compareTo() {
+		return date.compareTo(laterDate);
+	}
+}
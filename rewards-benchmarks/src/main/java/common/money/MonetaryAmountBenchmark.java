@@ -0,0 +1,49 @@
+package common.money;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the MonetaryAmount operations on the reward path: parsing a dining amount, crediting savings and
+ * computing a benefit or distribution from a percentage.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MonetaryAmountBenchmark {
+
+	private String text = "$100.00";
+
+	private MonetaryAmount savings = MonetaryAmount.valueOf("8.00");
+
+	private MonetaryAmount contribution = MonetaryAmount.valueOf("4.00");
+
+	private Percentage percentage = Percentage.valueOf("50%");
+
+	@Benchmark
+	public MonetaryAmount valueOf() {
+		return MonetaryAmount.valueOf(text);
+	}
+
+	@Benchmark
+	public MonetaryAmount add() {
+		return savings.add(contribution);
+	}
+
+	@Benchmark
+	public MonetaryAmount multiplyByPercentage() {
+		return savings.multiplyBy(percentage);
+	}
+}
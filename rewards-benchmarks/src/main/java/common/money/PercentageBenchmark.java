@@ -0,0 +1,49 @@
+package common.money;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of Percentage parsing, in both the "50%" and "0.5" notations, and of the addition used when validating
+ * beneficiary allocations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PercentageBenchmark {
+
+	private String percentText = "50%";
+
+	private String decimalText = "0.5";
+
+	private Percentage half = Percentage.valueOf("50%");
+
+	private Percentage quarter = Percentage.valueOf("25%");
+
+	@Benchmark
+	public Percentage valueOfWithPercentSign() {
+		return Percentage.valueOf(percentText);
+	}
+
+	@Benchmark
+	public Percentage valueOfWithoutPercentSign() {
+		return Percentage.valueOf(decimalText);
+	}
+
+	@Benchmark
+	public Percentage add() {
+		return half.add(quarter);
+	}
+}
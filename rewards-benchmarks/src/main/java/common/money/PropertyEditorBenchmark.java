@@ -0,0 +1,46 @@
+package common.money;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of a text to value to text round trip through the MonetaryAmount and Percentage property editors, as
+ * performed by data binding. Editors are stateful so each thread has its own.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PropertyEditorBenchmark {
+
+	private MonetaryAmountEditor monetaryAmountEditor = new MonetaryAmountEditor();
+
+	private PercentageEditor percentageEditor = new PercentageEditor();
+
+	private String amountText = "$100.00";
+
+	private String percentageText = "50%";
+
+	@Benchmark
+	public String monetaryAmountRoundTrip() {
+		monetaryAmountEditor.setAsText(amountText);
+		return monetaryAmountEditor.getAsText();
+	}
+
+	@Benchmark
+	public String percentageRoundTrip() {
+		percentageEditor.setAsText(percentageText);
+		return percentageEditor.getAsText();
+	}
+}
@@ -0,0 +1,99 @@
+package rewards.internal.account;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Throughput of writing and reading an account as JSON, as the /accounts endpoints do, with the streaming
+ * {@link AccountJsonModule} against Jackson's reflective bean mapping. The reflective mapper is given the same
+ * annotations as the JSON copies of MonetaryAmount and Percentage in the web modules.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountJsonBenchmark {
+
+	private ObjectMapper reflective = new ObjectMapper().addMixIn(MonetaryAmount.class, MonetaryAmountJson.class)
+			.addMixIn(Percentage.class, PercentageJson.class);
+
+	private ObjectMapper streaming = new ObjectMapper().registerModule(new AccountJsonModule());
+
+	private Account account = new Account("123456789", "Keith and Keri Donald");
+
+	private byte[] reflectiveJson;
+
+	private byte[] streamingJson;
+
+	@Setup
+	public void setUp() throws IOException {
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("50%"));
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+		account.getBeneficiary("Annabelle").credit(MonetaryAmount.valueOf("8.00"));
+		account.getBeneficiary("Corgan").credit(MonetaryAmount.valueOf("8.00"));
+		reflectiveJson = reflective.writeValueAsBytes(account);
+		streamingJson = streaming.writeValueAsBytes(account);
+	}
+
+	@Benchmark
+	public byte[] writeReflective() throws IOException {
+		return reflective.writeValueAsBytes(account);
+	}
+
+	@Benchmark
+	public byte[] writeStreaming() throws IOException {
+		return streaming.writeValueAsBytes(account);
+	}
+
+	@Benchmark
+	public Account readReflective() throws IOException {
+		return reflective.readValue(reflectiveJson, Account.class);
+	}
+
+	@Benchmark
+	public Account readStreaming() throws IOException {
+		return streaming.readValue(streamingJson, Account.class);
+	}
+
+	abstract static class MonetaryAmountJson {
+
+		@JsonCreator
+		MonetaryAmountJson(BigDecimal value) {
+		}
+
+		@JsonValue
+		abstract BigDecimal asBigDecimal();
+	}
+
+	abstract static class PercentageJson {
+
+		@JsonCreator
+		PercentageJson(BigDecimal value) {
+		}
+
+		@JsonValue
+		abstract BigDecimal asBigDecimal();
+	}
+}
@@ -1,5 +1,8 @@
 package common.datetime;
 
+/**
+ * A span of days from a start date to an end date, both inclusive.
+ */
 public class DateInterval {
 
 	private SimpleDate start;
@@ -18,4 +21,21 @@ public class DateInterval {
 	public SimpleDate getEnd() {
 		return end;
 	}
+
+	/**
+	 * Returns true if the date falls on or between the start and end dates of this interval.
+	 * @param date the date to test
+	 */
+	public boolean contains(SimpleDate date) {
+		int day = date.epochDay();
+		return day >= start.epochDay() && day <= end.epochDay();
+	}
+
+	/**
+	 * Returns true if this interval and the other interval share at least one day.
+	 * @param other the interval to test
+	 */
+	public boolean overlaps(DateInterval other) {
+		return start.epochDay() <= other.end.epochDay() && other.start.epochDay() <= end.epochDay();
+	}
 }
@@ -1,50 +1,85 @@
 package common.datetime;
 
 import java.io.Serializable;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
+import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
 
 /**
- * A simple wrapper around a calendar for working with dates like 12/29/1977. Does not consider time.
+ * A simple value type for working with dates like 12/29/1977. Does not consider time.
+ *
+ * Held as the number of days since 1970-01-01 in the default time zone, so comparisons are plain int comparisons.
  */
 public class SimpleDate implements Serializable {
 
-	private static final long serialVersionUID = 2285962420279644602L;
+	private static final long serialVersionUID = -4870434516382916484L;
 
-	private GregorianCalendar base;
+	private static final ThreadLocal<DateFormat> FORMAT = ThreadLocal.withInitial(SimpleDateFormat::new);
 
 	/**
-	 * Create a new simple date.
+	 * Today's date together with the span of time for which it is valid. Replaced as a whole when the day rolls over.
+	 */
+	private static volatile Today today = new Today(System.currentTimeMillis());
+
+	private final int epochDay;
+
+	/**
+	 * Create a new simple date. Out of range values roll over as they would with a lenient calendar; for example
+	 * month 13 of 2016 is January 2017.
 	 * @param month the month
 	 * @param day the day
 	 * @param year the year
 	 */
 	public SimpleDate(int month, int day, int year) {
-		init(new GregorianCalendar(year, month - 1, day));
+		this(LocalDate.of(year, 1, 1).plusMonths(month - 1).plusDays(day - 1));
 	}
 
 	SimpleDate(long time) {
-		GregorianCalendar cal = new GregorianCalendar();
-		cal.setTimeInMillis(time);
-		init(cal);
+		this(toLocalDate(time));
 	}
 
-	private SimpleDate() {
-		init(new GregorianCalendar());
+	private SimpleDate(LocalDate date) {
+		this.epochDay = Math.toIntExact(date.toEpochDay());
 	}
 
-	private void init(GregorianCalendar cal) {
-		this.base = trimToDays(cal);
+	private static LocalDate toLocalDate(long time) {
+		return Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+
+	/**
+	 * Returns the number of days between 1970-01-01 and this date. Negative for earlier dates.
+	 */
+	int epochDay() {
+		return epochDay;
+	}
+
+	/**
+	 * Returns the day of the week this date falls on.
+	 */
+	public DayOfWeek getDayOfWeek() {
+		// 1970-01-01 was a Thursday
+		return DayOfWeek.of(Math.floorMod(epochDay + 3, 7) + 1);
 	}
 
-	private GregorianCalendar trimToDays(GregorianCalendar cal) {
-		cal.set(Calendar.HOUR_OF_DAY, 0);
-		cal.set(Calendar.MINUTE, 0);
-		cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.MILLISECOND, 0);
-		return cal;
+	/**
+	 * Returns the number of months between January 1970 and the month of this date, so that dates of the same month
+	 * share a number and later months have larger ones. Computed arithmetically, without creating objects.
+	 */
+	public int getEpochMonth() {
+		// the civil-from-days algorithm, counting years from March so that leap days fall at their end
+		int days = epochDay + 719468;
+		int era = Math.floorDiv(days, 146097);
+		int dayOfEra = days - era * 146097;
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int monthFromMarch = (5 * dayOfYear + 2) / 153;
+		int year = yearOfEra + era * 400 + (monthFromMarch >= 10 ? 1 : 0);
+		int month = monthFromMarch < 10 ? monthFromMarch + 2 : monthFromMarch - 10;
+		return (year - 1970) * 12 + month;
 	}
 
 	/**
@@ -52,7 +87,7 @@ public class SimpleDate implements Serializable {
 	 * @return this simple date as a Date
 	 */
 	public Date asDate() {
-		return base.getTime();
+		return new Date(inMilliseconds());
 	}
 
 	/**
@@ -60,12 +95,12 @@ public class SimpleDate implements Serializable {
 	 * @return
 	 */
 	public long inMilliseconds() {
-		return asDate().getTime();
+		return LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
 	}
 
 	public int compareTo(Object date) {
 		SimpleDate other = (SimpleDate) date;
-		return asDate().compareTo(other.asDate());
+		return Integer.compare(epochDay, other.epochDay);
 	}
 
 	public boolean equals(Object day) {
@@ -73,18 +108,24 @@ public class SimpleDate implements Serializable {
 			return false;
 		}
 		SimpleDate other = (SimpleDate) day;
-		return (base.equals(other.base));
+		return epochDay == other.epochDay;
 	}
 
 	public int hashCode() {
-		return 29 * base.hashCode();
+		return 29 * epochDay;
 	}
 
 	/**
-	 * Returns todays date. A convenient static factory method.
+	 * Returns todays date. A convenient static factory method. The same instance is returned until midnight.
 	 */
 	public static SimpleDate today() {
-		return new SimpleDate();
+		long now = System.currentTimeMillis();
+		Today current = today;
+		if (now < current.start || now >= current.end) {
+			current = new Today(now);
+			today = current;
+		}
+		return current.date;
 	}
 
 	/**
@@ -104,10 +145,27 @@ public class SimpleDate implements Serializable {
 	public static SimpleDate valueOf(long time) {
 		return new SimpleDate(time);
 	}
-	
+
 	@Override
 	public String toString() {
-        return new SimpleDateFormat().format(base.getTime());
-    }
+		return FORMAT.get().format(asDate());
+	}
+
+	private static final class Today {
+
+		private final SimpleDate date;
+
+		private final long start;
+
+		private final long end;
+
+		Today(long now) {
+			ZoneId zone = ZoneId.systemDefault();
+			LocalDate day = toLocalDate(now);
+			this.date = new SimpleDate(day);
+			this.start = day.atStartOfDay(zone).toInstant().toEpochMilli();
+			this.end = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+		}
+	}
 
-}
\ No newline at end of file
+}
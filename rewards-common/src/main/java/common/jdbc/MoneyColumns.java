@@ -0,0 +1,54 @@
+package common.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Reads DECIMAL columns of a result set straight into the money value types.
+ *
+ * Columns are addressed by their position in the select list and read with {@link ResultSet#getBigDecimal(int)}, so
+ * mapping a row neither looks up column labels nor formats and re-parses a String per value.
+ */
+public final class MoneyColumns {
+
+	private MoneyColumns() {
+	}
+
+	/**
+	 * Returns the value of a DECIMAL column in the current row as a monetary amount.
+	 * @param rs the result set with its cursor positioned at the current row
+	 * @param columnIndex the position of the column in the select list, starting at 1
+	 * @return the monetary amount
+	 * @throws SQLException an exception occurred reading the column
+	 * @throws IllegalArgumentException if the column is null
+	 */
+	public static MonetaryAmount getMonetaryAmount(ResultSet rs, int columnIndex) throws SQLException {
+		return new MonetaryAmount(getRequiredValue(rs, columnIndex, "monetary amount"));
+	}
+
+	/**
+	 * Returns the value of a DECIMAL column in the current row as a percentage. The column holds the decimal form of
+	 * the percentage, for example 0.25 for 25%.
+	 * @param rs the result set with its cursor positioned at the current row
+	 * @param columnIndex the position of the column in the select list, starting at 1
+	 * @return the shared canonical percentage
+	 * @throws SQLException an exception occurred reading the column
+	 * @throws IllegalArgumentException if the column is null or not between 0 and 1
+	 */
+	public static Percentage getPercentage(ResultSet rs, int columnIndex) throws SQLException {
+		return Percentage.valueOf(getRequiredValue(rs, columnIndex, "percentage"));
+	}
+
+	private static BigDecimal getRequiredValue(ResultSet rs, int columnIndex, String type) throws SQLException {
+		BigDecimal value = rs.getBigDecimal(columnIndex);
+		if (value == null) {
+			throw new IllegalArgumentException("The " + type + " value is required but column " + columnIndex
+					+ " is null");
+		}
+		return value;
+	}
+}
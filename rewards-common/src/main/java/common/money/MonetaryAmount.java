@@ -4,11 +4,17 @@ import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.Embeddable;
+import javax.persistence.Transient;
 
 /**
  * A representation of money.
- * 
+ *
+ * Amounts are held as a whole number of cents whenever they fit in a long and fall back to a BigDecimal otherwise, so
+ * everyday arithmetic does not allocate intermediate decimals. Rounding is always HALF_EVEN to two decimal places.
+ *
  * A value object. Immutable.
  */
 @Embeddable
@@ -16,6 +22,34 @@ public class MonetaryAmount implements Serializable {
 
 	private static final long serialVersionUID = -3734467432803577280L;
 
+	private static final int SCALE = 2;
+
+	/**
+	 * Largest number of cents held in compact form (18 digits). Keeping a margin below Long.MAX_VALUE means the sum of
+	 * two compact amounts can never overflow a long.
+	 */
+	private static final long MAX_COMPACT_CENTS = 999999999999999999L;
+
+	/**
+	 * Marks an amount that is too large for the compact form; its value lives in {@link #value} only.
+	 */
+	private static final long INFLATED = Long.MIN_VALUE;
+
+	private static final long BASIS_POINTS_PER_UNIT = 10000;
+
+	/**
+	 * Largest number of cents that can be multiplied by a percentage in basis points without overflowing a long.
+	 */
+	private static final long MAX_PERCENTAGE_MULTIPLICAND = Long.MAX_VALUE / BASIS_POINTS_PER_UNIT;
+
+	@Transient
+	private long cents;
+
+	/**
+	 * The amount as a decimal with scale 2. Authoritative when {@link #cents} is INFLATED, otherwise a lazily created
+	 * cache of the compact value.
+	 */
+	@Transient
 	private BigDecimal value;
 
 	/**
@@ -34,12 +68,25 @@ public class MonetaryAmount implements Serializable {
 		initValue(BigDecimal.valueOf(value));
 	}
 
-	@SuppressWarnings("unused")
 	private MonetaryAmount() {
 	}
 
 	private void initValue(BigDecimal value) {
-		this.value = value.setScale(2, RoundingMode.HALF_EVEN);
+		BigDecimal scaled = value.setScale(SCALE, RoundingMode.HALF_EVEN);
+		this.cents = scaled.precision() <= 18 ? scaled.unscaledValue().longValue() : INFLATED;
+		this.value = scaled;
+	}
+
+	/**
+	 * Create a monetary amount from a number of cents, inflating to a decimal when outside the compact range.
+	 */
+	private static MonetaryAmount ofCents(long cents) {
+		if (cents > MAX_COMPACT_CENTS || cents < -MAX_COMPACT_CENTS) {
+			return new MonetaryAmount(BigDecimal.valueOf(cents, SCALE));
+		}
+		MonetaryAmount amount = new MonetaryAmount();
+		amount.cents = cents;
+		return amount;
 	}
 
 	/**
@@ -63,7 +110,7 @@ public class MonetaryAmount implements Serializable {
 	 * Returns the zero (0.00) monetary amount.
 	 */
 	public static MonetaryAmount zero() {
-		return new MonetaryAmount(0);
+		return ofCents(0);
 	}
 
 	/**
@@ -72,7 +119,10 @@ public class MonetaryAmount implements Serializable {
 	 * @return the sum
 	 */
 	public MonetaryAmount add(MonetaryAmount amount) {
-		return new MonetaryAmount(value.add(amount.value));
+		if (isCompact() && amount.isCompact()) {
+			return ofCents(cents + amount.cents);
+		}
+		return new MonetaryAmount(asBigDecimal().add(amount.asBigDecimal()));
 	}
 
 	/**
@@ -81,7 +131,10 @@ public class MonetaryAmount implements Serializable {
 	 * @return the difference
 	 */
 	public MonetaryAmount subtract(MonetaryAmount amount) {
-		return new MonetaryAmount(value.subtract(amount.value));
+		if (isCompact() && amount.isCompact()) {
+			return ofCents(cents - amount.cents);
+		}
+		return new MonetaryAmount(asBigDecimal().subtract(amount.asBigDecimal()));
 	}
 
 	/**
@@ -90,7 +143,7 @@ public class MonetaryAmount implements Serializable {
 	 * @return the product
 	 */
 	public MonetaryAmount multiplyBy(BigDecimal amount) {
-		return new MonetaryAmount(value.multiply(amount));
+		return new MonetaryAmount(asBigDecimal().multiply(amount));
 	}
 
 	/**
@@ -99,7 +152,7 @@ public class MonetaryAmount implements Serializable {
 	 * @return the quotient
 	 */
 	public BigDecimal divide(MonetaryAmount amount) {
-		return value.divide(amount.value);
+		return asBigDecimal().divide(amount.asBigDecimal());
 	}
 
 	/**
@@ -108,7 +161,7 @@ public class MonetaryAmount implements Serializable {
 	 * @return the quotient
 	 */
 	public MonetaryAmount divideBy(BigDecimal amount) {
-		return new MonetaryAmount(value.divide(amount));
+		return new MonetaryAmount(asBigDecimal().divide(amount));
 	}
 
 	/**
@@ -117,7 +170,10 @@ public class MonetaryAmount implements Serializable {
 	 * @return the percentage amount
 	 */
 	public MonetaryAmount multiplyBy(Percentage percentage) {
-		return new MonetaryAmount(value.multiply(percentage.asBigDecimal()));
+		if (isCompact() && Math.abs(cents) <= MAX_PERCENTAGE_MULTIPLICAND) {
+			return ofCents(divideHalfEven(cents * percentage.basisPoints(), BASIS_POINTS_PER_UNIT));
+		}
+		return new MonetaryAmount(asBigDecimal().multiply(percentage.asBigDecimal()));
 	}
 
 	/**
@@ -126,7 +182,10 @@ public class MonetaryAmount implements Serializable {
 	 * @return true or false
 	 */
 	public boolean greaterThan(MonetaryAmount amount) {
-		return value.compareTo(amount.value) > 0;
+		if (isCompact() && amount.isCompact()) {
+			return cents > amount.cents;
+		}
+		return asBigDecimal().compareTo(amount.asBigDecimal()) > 0;
 	}
 
 	/**
@@ -134,7 +193,12 @@ public class MonetaryAmount implements Serializable {
 	 * @return this amount as a double
 	 */
 	public double asDouble() {
-		return value.doubleValue();
+		if (isCompact() && Math.abs(cents) < 1L << 53) {
+			// not exact for most amounts, but the double nearest them, as BigDecimal.doubleValue() returns: below 2^53
+			// both the cents and 100 are exact doubles, so the division rounds only once
+			return cents / 100.0;
+		}
+		return asBigDecimal().doubleValue();
 	}
 
 	/**
@@ -142,22 +206,81 @@ public class MonetaryAmount implements Serializable {
 	 * @return this amount as a big decimal
 	 */
 	public BigDecimal asBigDecimal() {
-		return value;
+		BigDecimal result = value;
+		if (result == null) {
+			// racy single-check caching is safe: BigDecimal is immutable and recomputing gives an equal value
+			result = BigDecimal.valueOf(cents, SCALE);
+			value = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Integer division rounding HALF_EVEN, as BigDecimal.setScale would. The divisor must be positive.
+	 */
+	private static long divideHalfEven(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		long twiceRemainder = Math.abs(dividend % divisor) * 2;
+		if (twiceRemainder > divisor || (twiceRemainder == divisor && (quotient & 1) != 0)) {
+			quotient += Long.signum(dividend);
+		}
+		return quotient;
+	}
+
+	private boolean isCompact() {
+		return cents != INFLATED;
+	}
+
+	// Internal methods for JPA only - the embedded "value" attribute maps to a single DECIMAL column.
+
+	@Access(AccessType.PROPERTY)
+	@SuppressWarnings("unused")
+	private BigDecimal getValue() {
+		return asBigDecimal();
+	}
+
+	@SuppressWarnings("unused")
+	private void setValue(BigDecimal value) {
+		initValue(value);
+	}
+
+	/**
+	 * Normalize deserialized amounts, including those written before the compact form existed.
+	 */
+	private Object readResolve() {
+		return value != null ? new MonetaryAmount(value) : this;
 	}
 
 	public boolean equals(Object o) {
 		if (!(o instanceof MonetaryAmount)) {
 			return false;
 		}
-		return value.equals(((MonetaryAmount) o).value);
+		MonetaryAmount other = (MonetaryAmount) o;
+		if (isCompact() && other.isCompact()) {
+			return cents == other.cents;
+		}
+		return asBigDecimal().equals(other.asBigDecimal());
 	}
 
 	public int hashCode() {
-		return value.hashCode();
+		return isCompact() ? Long.hashCode(cents) : value.hashCode();
 	}
 
 	public String toString() {
-		return "$" + value.toString();
+		if (!isCompact()) {
+			return "$" + value.toString();
+		}
+		long units = Math.abs(cents);
+		StringBuilder builder = new StringBuilder(24).append('$');
+		if (cents < 0) {
+			builder.append('-');
+		}
+		builder.append(units / 100).append('.');
+		long fraction = units % 100;
+		if (fraction < 10) {
+			builder.append('0');
+		}
+		return builder.append(fraction).toString();
 	}
 
-}
\ No newline at end of file
+}
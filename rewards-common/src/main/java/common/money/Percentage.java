@@ -2,12 +2,20 @@ package common.money;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.Embeddable;
+import javax.persistence.Transient;
 
 /**
  * A percentage. Represented as a decimal value with scale 2 between 0.00 and 1.00.
- * 
+ *
+ * Internally the value is held in basis points (0 to 10000). Because values are rounded to whole percents there are
+ * only 101 legal percentages; {@link #valueOf(String)}, {@link #zero()}, {@link #oneHundred()} and
+ * {@link #add(Percentage)} return shared canonical instances of these rather than allocating.
+ *
  * A value object. Immutable.
  */
 @Embeddable
@@ -15,8 +23,29 @@ public class Percentage implements Serializable {
 
 	private static final long serialVersionUID = 8077279865855620752L;
 
+	private static final int BASIS_POINTS_PER_PERCENT = 100;
+
+	private static final int MAX_BASIS_POINTS = 10000;
+
+	private static final Percentage[] VALUES = new Percentage[MAX_BASIS_POINTS / BASIS_POINTS_PER_PERCENT + 1];
+
+	static {
+		for (int i = 0; i < VALUES.length; i++) {
+			VALUES[i] = new Percentage(i * BASIS_POINTS_PER_PERCENT, BigDecimal.valueOf(i, 2), true);
+		}
+	}
+
+	@Transient
+	private int basisPoints;
+
+	@Transient
 	private BigDecimal value;
 
+	/**
+	 * True for the shared canonical instances, which must never be changed by a persistence provider.
+	 */
+	private transient boolean canonical;
+
 	/**
 	 * Create a new percentage from the specified value. Value must be between 0 and 1. For example, value .45
 	 * represents 45%. If the value has more than two digits past the decimal point it will be rounded up. For example,
@@ -43,12 +72,30 @@ public class Percentage implements Serializable {
 	private Percentage() {
 	}
 
+	private Percentage(int basisPoints, BigDecimal value, boolean canonical) {
+		this.basisPoints = basisPoints;
+		this.value = value;
+		this.canonical = canonical;
+	}
+
 	private void initValue(BigDecimal value) {
-		value = value.setScale(2, BigDecimal.ROUND_HALF_UP);
-		if (value.compareTo(BigDecimal.ZERO) == -1 || value.compareTo(BigDecimal.ONE) == 1) {
+		Percentage canonical = VALUES[toIndex(value)];
+		this.basisPoints = canonical.basisPoints;
+		this.value = canonical.value;
+	}
+
+	/**
+	 * Round the value to two decimal places and return its index in the canonical table.
+	 * @throws IllegalArgumentException if the value is not between 0 and 1
+	 */
+	private static int toIndex(BigDecimal value) {
+		value = value.setScale(2, RoundingMode.HALF_UP);
+		// anything with more than three digits at scale 2 is at least 10.00 and so out of range
+		int index = value.signum() < 0 || value.precision() > 3 ? -1 : value.unscaledValue().intValue();
+		if (index < 0 || index >= VALUES.length) {
 			throw new IllegalArgumentException("Percentage value must be between 0 and 1; your value was " + value);
 		}
-		this.value = value;
+		return index;
 	}
 
 	/**
@@ -61,29 +108,88 @@ public class Percentage implements Serializable {
 			throw new IllegalArgumentException("The percentage value is required");
 		}
 		boolean percent = string.endsWith("%");
+		int index = parseIndex(string, percent ? string.length() - 1 : string.length(), percent);
+		if (index >= 0) {
+			return VALUES[index];
+		}
 		if (percent) {
-			int index = string.lastIndexOf('%');
-			string = string.substring(0, index);
+			string = string.substring(0, string.lastIndexOf('%'));
 		}
 		BigDecimal value = new BigDecimal(string);
 		if (percent) {
 			value = value.divide(new BigDecimal(100));
 		}
-		return new Percentage(value);
+		return VALUES[toIndex(value)];
+	}
+
+	/**
+	 * Convert a decimal percentage value (e.g. 0.25 for 25%) to a Percentage object. Rounds as the
+	 * {@link #Percentage(BigDecimal) constructor} does, but returns the shared canonical instance instead of allocating.
+	 * @param value the percentage value
+	 * @return the percentage object
+	 * @throws IllegalArgumentException if the value is not between 0 and 1
+	 */
+	public static Percentage valueOf(BigDecimal value) {
+		return VALUES[toIndex(value)];
+	}
+
+	/**
+	 * Parse plain decimal notation such as "0.25", ".255" or (as a percent) "25.5" straight to a canonical index,
+	 * rounding half up to a whole percent. Returns -1 for anything else, including out of range values, so the caller
+	 * can fall back to BigDecimal parsing and its error reporting.
+	 */
+	private static int parseIndex(String string, int end, boolean percent) {
+		// digits that make up whole hundredths: all integer digits, plus two fractional digits unless a percent
+		int wholeFractionDigits = percent ? 0 : 2;
+		int hundredths = 0;
+		int fractionDigits = -1;
+		boolean digits = false;
+		boolean roundUp = false;
+		for (int i = 0; i < end; i++) {
+			char c = string.charAt(i);
+			if (c == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else if (c >= '0' && c <= '9') {
+				digits = true;
+				if (fractionDigits < 0 || fractionDigits < wholeFractionDigits) {
+					hundredths = hundredths * 10 + (c - '0');
+					if (hundredths > MAX_BASIS_POINTS) {
+						return -1;
+					}
+				} else if (fractionDigits == wholeFractionDigits) {
+					roundUp = c >= '5';
+				}
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+			} else {
+				return -1;
+			}
+		}
+		if (!digits) {
+			return -1;
+		}
+		for (int i = Math.max(fractionDigits, 0); i < wholeFractionDigits; i++) {
+			hundredths *= 10;
+		}
+		if (roundUp) {
+			hundredths++;
+		}
+		return hundredths < VALUES.length ? hundredths : -1;
 	}
 
 	/**
 	 * Returns zero percent.
 	 */
 	public static Percentage zero() {
-		return new Percentage(0);
+		return VALUES[0];
 	}
 
 	/**
 	 * Returns one hundred percent.
 	 */
 	public static Percentage oneHundred() {
-		return new Percentage(1);
+		return VALUES[VALUES.length - 1];
 	}
 
 	/**
@@ -93,7 +199,20 @@ public class Percentage implements Serializable {
 	 * @throws IllegalArgumentException if the new percentage exceeds 1
 	 */
 	public Percentage add(Percentage percentage) throws IllegalArgumentException {
-		return new Percentage(value.add(percentage.value));
+		int sum = basisPoints + percentage.basisPoints;
+		if (sum > MAX_BASIS_POINTS) {
+			throw new IllegalArgumentException("Percentage value must be between 0 and 1; your value was "
+					+ value.add(percentage.value));
+		}
+		return VALUES[sum / BASIS_POINTS_PER_PERCENT];
+	}
+
+	/**
+	 * Return this percentage in basis points, for example 2500 for 25%. Useful for exact integer arithmetic.
+	 * @return this percentage in basis points, between 0 and 10000
+	 */
+	public int basisPoints() {
+		return basisPoints;
 	}
 
 	/**
@@ -101,7 +220,7 @@ public class Percentage implements Serializable {
 	 * @return this percentage as a double
 	 */
 	public double asDouble() {
-		return value.doubleValue();
+		return basisPoints / (double) MAX_BASIS_POINTS;
 	}
 
 	/**
@@ -113,18 +232,44 @@ public class Percentage implements Serializable {
 		return value;
 	}
 
+	// Internal methods for JPA only - the embedded "value" attribute maps to a single DECIMAL column.
+
+	@Access(AccessType.PROPERTY)
+	@SuppressWarnings("unused")
+	private BigDecimal getValue() {
+		return value;
+	}
+
+	@SuppressWarnings("unused")
+	private void setValue(BigDecimal value) {
+		if (canonical && (value == null || value.compareTo(this.value) != 0)) {
+			throw new UnsupportedOperationException("Canonical percentage " + this + " cannot be changed");
+		}
+		if (value != null) {
+			initValue(value);
+		}
+	}
+
+	/**
+	 * Replace deserialized percentages, including those written before basis points existed, by the canonical
+	 * instance.
+	 */
+	private Object readResolve() {
+		return VALUES[toIndex(value)];
+	}
+
 	public boolean equals(Object o) {
 		if (!(o instanceof Percentage)) {
 			return false;
 		}
-		return value.equals(((Percentage) o).value);
+		return basisPoints == ((Percentage) o).basisPoints;
 	}
 
 	public int hashCode() {
-		return value.hashCode();
+		return basisPoints;
 	}
 
 	public String toString() {
-		return value.multiply(new BigDecimal("100")).setScale(0) + "%";
+		return basisPoints / BASIS_POINTS_PER_PERCENT + "%";
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,198 @@
+package common.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.locks.StampedLock;
+
+import common.util.LongLongMap;
+
+/**
+ * An index of the accounts of credit cards held in memory, so that an account repository can load an account by its
+ * id rather than look its credit card up in T_ACCOUNT_CREDIT_CARD first.
+ *
+ * Each card number, sixteen digits, is packed in a long and mapped to the id of its account in a {@link LongLongMap}:
+ * neither card numbers nor ids are kept as objects. Card numbers of any other form are never indexed.
+ *
+ * The index is loaded whole from T_ACCOUNT_CREDIT_CARD, on start up, and trusted from then on: the account
+ * repository using it has to be the only way credit cards are added to, moved between and removed from accounts, and
+ * removes each card it changes. A card it does not hold is looked up in the table as before, and put in the index once
+ * found, unless a card was removed while it was looked up: the lookup may then have found the card's old account.
+ * Lookups take no lock unless they overlap a change.
+ */
+public class CreditCardIndex {
+
+	/**
+	 * Selects the rows to {@link #load(ResultSet) load} the index from.
+	 */
+	public static final String SELECT_CREDIT_CARDS = "select NUMBER, ACCOUNT_ID from T_ACCOUNT_CREDIT_CARD";
+
+	/**
+	 * The account id found for a card the index does not hold.
+	 */
+	public static final long NOT_INDEXED = -1;
+
+	private static final int CARD_NUMBER_LENGTH = 16;
+
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * The account ids by packed card number. Never replaced: a load swaps the new entries into it, so that a lookup
+	 * racing the load still reads a whole map, before it is retried under the lock.
+	 */
+	private final LongLongMap accountIds = new LongLongMap(0);
+
+	/**
+	 * The number of cards removed so far. Guarded by the write lock.
+	 */
+	private volatile long removalCount;
+
+	/**
+	 * Returns the id of the account of a credit card.
+	 * @param creditCardNumber the credit card number
+	 * @return the account id, or {@link #NOT_INDEXED} if the index does not hold the card
+	 */
+	public long findAccountId(String creditCardNumber) {
+		long card = pack(creditCardNumber);
+		if (card < 0) {
+			return NOT_INDEXED;
+		}
+		long stamp = lock.tryOptimisticRead();
+		long accountId = accountIds.get(card, NOT_INDEXED);
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				accountId = accountIds.get(card, NOT_INDEXED);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return accountId;
+	}
+
+	/**
+	 * Puts a credit card in the index, replacing the account it was held for if any. Cards that are not sixteen digits
+	 * are ignored.
+	 * @param creditCardNumber the credit card number
+	 * @param accountId the id of its account
+	 */
+	public void put(String creditCardNumber, long accountId) {
+		if (accountId < 0) {
+			throw new IllegalArgumentException("Account id " + accountId + " is negative");
+		}
+		long card = pack(creditCardNumber);
+		if (card < 0) {
+			return;
+		}
+		long stamp = lock.writeLock();
+		try {
+			accountIds.put(card, accountId);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Puts a credit card looked up in T_ACCOUNT_CREDIT_CARD in the index, unless a card was removed since the lookup
+	 * started. Cards that are not sixteen digits are ignored.
+	 * @param creditCardNumber the credit card number
+	 * @param accountId the id of its account
+	 * @param removalCountBefore the {@link #getRemovalCount() removal count} taken before the lookup
+	 */
+	public void put(String creditCardNumber, long accountId, long removalCountBefore) {
+		if (accountId < 0) {
+			throw new IllegalArgumentException("Account id " + accountId + " is negative");
+		}
+		long card = pack(creditCardNumber);
+		if (card < 0) {
+			return;
+		}
+		long stamp = lock.writeLock();
+		try {
+			if (removalCount == removalCountBefore) {
+				accountIds.put(card, accountId);
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Returns the number of cards removed from the index so far, to take before looking a card up.
+	 */
+	public long getRemovalCount() {
+		return removalCount;
+	}
+
+	/**
+	 * Removes a credit card from the index.
+	 * @param creditCardNumber the credit card number
+	 */
+	public void remove(String creditCardNumber) {
+		long card = pack(creditCardNumber);
+		if (card < 0) {
+			return;
+		}
+		long stamp = lock.writeLock();
+		try {
+			accountIds.remove(card);
+			removalCount++;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Loads the index from rows of credit card numbers and account ids, as selected by {@link #SELECT_CREDIT_CARDS},
+	 * replacing what it held. The rows are read into a new map, swapped in once complete.
+	 * @param rs the rows, with the card number and account id in the first and second columns
+	 * @return this index
+	 * @throws SQLException an exception occurred reading the rows
+	 */
+	public CreditCardIndex load(ResultSet rs) throws SQLException {
+		LongLongMap loaded = new LongLongMap(0);
+		while (rs.next()) {
+			long card = pack(rs.getString(1));
+			if (card >= 0) {
+				loaded.put(card, rs.getLong(2));
+			}
+		}
+		long stamp = lock.writeLock();
+		try {
+			accountIds.swap(loaded);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the number of credit cards in the index.
+	 */
+	public int size() {
+		long stamp = lock.readLock();
+		try {
+			return accountIds.size();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Packs a card number of sixteen digits in a long, without parsing it into an object.
+	 * @return the packed number, or -1 if the card number is not sixteen digits
+	 */
+	static long pack(String creditCardNumber) {
+		if (creditCardNumber == null || creditCardNumber.length() != CARD_NUMBER_LENGTH) {
+			return -1;
+		}
+		long packed = 0;
+		for (int i = 0; i < CARD_NUMBER_LENGTH; i++) {
+			int digit = creditCardNumber.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			packed = packed * 10 + digit;
+		}
+		return packed;
+	}
+}
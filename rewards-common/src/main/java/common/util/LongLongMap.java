@@ -0,0 +1,239 @@
+package common.util;
+
+/**
+ * A map of long keys to long values that boxes neither. Entries are kept in an open addressing table, probed linearly,
+ * each key next to its value in a single array so that finding one finds the other on the same cache line.
+ *
+ * A key of zero marks an empty slot in the table, so an entry with the key zero is held aside.
+ *
+ * Not thread-safe. A read running alongside a write may miss an entry or see a stale value, but always returns, so
+ * reads may be made under an optimistic lock and retried should a write have intervened.
+ */
+public final class LongLongMap {
+
+	private static final long EMPTY = 0;
+
+	/**
+	 * The most slots filled, as a fraction of all; past it the table grows.
+	 */
+	private static final double MAX_LOAD = 0.75;
+
+	/**
+	 * The most slots a table of keys and values in one array can hold.
+	 */
+	private static final int MAX_CAPACITY = 1 << 29;
+
+	/**
+	 * The keys and values, key of slot i at 2i and its value at 2i + 1.
+	 */
+	private long[] table;
+
+	private int size;
+
+	private boolean hasZeroKey;
+
+	private long zeroKeyValue;
+
+	/**
+	 * Creates an empty map.
+	 * @param expectedSize the number of entries expected, to size the table for
+	 */
+	public LongLongMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity * MAX_LOAD < expectedSize && capacity < MAX_CAPACITY) {
+			capacity <<= 1;
+		}
+		this.table = new long[capacity * 2];
+	}
+
+	/**
+	 * Returns the value of a key.
+	 * @param key the key
+	 * @param missingValue the value to return if the map holds no entry for the key
+	 * @return the value, or the missing value
+	 */
+	public long get(long key, long missingValue) {
+		if (key == EMPTY) {
+			return hasZeroKey ? zeroKeyValue : missingValue;
+		}
+		long[] table = this.table;
+		int mask = (table.length >> 1) - 1;
+		int slot = hash(key) & mask;
+		// bounded, so that a read racing a write cannot probe forever
+		for (int probes = 0; probes <= mask; probes++) {
+			long k = table[slot << 1];
+			if (k == key) {
+				return table[(slot << 1) + 1];
+			}
+			if (k == EMPTY) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return missingValue;
+	}
+
+	/**
+	 * Returns whether the map holds an entry for a key.
+	 */
+	public boolean containsKey(long key) {
+		if (key == EMPTY) {
+			return hasZeroKey;
+		}
+		return probe(key) >= 0;
+	}
+
+	/**
+	 * Puts an entry in the map, replacing the value of the key if it has one.
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void put(long key, long value) {
+		if (key == EMPTY) {
+			if (!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+			zeroKeyValue = value;
+			return;
+		}
+		int slot = probe(key);
+		if (slot < 0) {
+			if (size + 1 > capacity() * MAX_LOAD) {
+				grow();
+				slot = probe(key);
+			}
+			slot = -slot - 1;
+			// the value first: a read finding the key then finds its value
+			table[(slot << 1) + 1] = value;
+			table[slot << 1] = key;
+			size++;
+			return;
+		}
+		table[(slot << 1) + 1] = value;
+	}
+
+	/**
+	 * Removes the entry of a key, if the map holds one.
+	 * @param key the key
+	 * @return true if an entry was removed
+	 */
+	public boolean remove(long key) {
+		if (key == EMPTY) {
+			if (!hasZeroKey) {
+				return false;
+			}
+			hasZeroKey = false;
+			zeroKeyValue = 0;
+			size--;
+			return true;
+		}
+		int slot = probe(key);
+		if (slot < 0) {
+			return false;
+		}
+		// shift the entries that follow back over the gap, rather than leave a marker probes have to step over
+		int mask = capacity() - 1;
+		int gap = slot;
+		int next = gap;
+		while (true) {
+			next = (next + 1) & mask;
+			long k = table[next << 1];
+			if (k == EMPTY) {
+				break;
+			}
+			int home = hash(k) & mask;
+			boolean homeBetween = gap <= next ? gap < home && home <= next : gap < home || home <= next;
+			if (!homeBetween) {
+				table[gap << 1] = k;
+				table[(gap << 1) + 1] = table[(next << 1) + 1];
+				gap = next;
+			}
+		}
+		table[gap << 1] = EMPTY;
+		table[(gap << 1) + 1] = 0;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Exchanges the entries of this map with those of another.
+	 * @param other the other map
+	 */
+	public void swap(LongLongMap other) {
+		long[] table = this.table;
+		int size = this.size;
+		boolean hasZeroKey = this.hasZeroKey;
+		long zeroKeyValue = this.zeroKeyValue;
+		this.table = other.table;
+		this.size = other.size;
+		this.hasZeroKey = other.hasZeroKey;
+		this.zeroKeyValue = other.zeroKeyValue;
+		other.table = table;
+		other.size = size;
+		other.hasZeroKey = hasZeroKey;
+		other.zeroKeyValue = zeroKeyValue;
+	}
+
+	/**
+	 * Returns the number of entries in the map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots in the table.
+	 */
+	public int capacity() {
+		return table.length >> 1;
+	}
+
+	/**
+	 * Returns the slot holding a key, or if there is none, -(the empty slot to put it in) - 1.
+	 */
+	private int probe(long key) {
+		int mask = capacity() - 1;
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = table[slot << 1];
+			if (k == key) {
+				return slot;
+			}
+			if (k == EMPTY) {
+				return -slot - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Moves every entry to a table twice the size, filled before it replaces this one.
+	 */
+	private void grow() {
+		if (capacity() >= MAX_CAPACITY) {
+			throw new IllegalStateException("Too many entries for one map");
+		}
+		long[] old = table;
+		long[] larger = new long[old.length * 2];
+		int mask = (larger.length >> 1) - 1;
+		for (int i = 0; i < old.length; i += 2) {
+			long k = old[i];
+			if (k != EMPTY) {
+				int slot = hash(k) & mask;
+				while (larger[slot << 1] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				larger[slot << 1] = k;
+				larger[(slot << 1) + 1] = old[i + 1];
+			}
+		}
+		table = larger;
+	}
+
+	private static int hash(long key) {
+		// spread the bits, as neighbouring keys often differ in their low digits only
+		long h = key * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
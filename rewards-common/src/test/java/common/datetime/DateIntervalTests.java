@@ -0,0 +1,32 @@
+package common.datetime;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the inclusive day span checks of DateInterval.
+ */
+public class DateIntervalTests {
+
+	private DateInterval january = new DateInterval(new SimpleDate(1, 1, 2016), new SimpleDate(1, 31, 2016));
+
+	@Test
+	public void testContains() {
+		assertTrue(january.contains(new SimpleDate(1, 1, 2016)));
+		assertTrue(january.contains(new SimpleDate(1, 15, 2016)));
+		assertTrue(january.contains(new SimpleDate(1, 31, 2016)));
+		assertFalse(january.contains(new SimpleDate(12, 31, 2015)));
+		assertFalse(january.contains(new SimpleDate(2, 1, 2016)));
+	}
+
+	@Test
+	public void testOverlaps() {
+		assertTrue(january.overlaps(new DateInterval(new SimpleDate(1, 31, 2016), new SimpleDate(2, 5, 2016))));
+		assertTrue(january.overlaps(new DateInterval(new SimpleDate(1, 10, 2016), new SimpleDate(1, 12, 2016))));
+		assertTrue(january.overlaps(new DateInterval(new SimpleDate(12, 1, 2015), new SimpleDate(3, 1, 2016))));
+		assertFalse(january.overlaps(new DateInterval(new SimpleDate(2, 1, 2016), new SimpleDate(2, 5, 2016))));
+		assertFalse(january.overlaps(new DateInterval(new SimpleDate(12, 1, 2015), new SimpleDate(12, 31, 2015))));
+	}
+}
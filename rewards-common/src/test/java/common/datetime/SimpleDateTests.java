@@ -1,7 +1,11 @@
 package common.datetime;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -40,4 +44,47 @@ public class SimpleDateTests {
 		SimpleDate today2 = SimpleDate.valueOf(time);
 		assertEquals(today, today2);
 	}
+
+	@Test
+	public void testTodayIsCached() {
+		assertSame(SimpleDate.today(), SimpleDate.today());
+	}
+
+	@Test
+	public void testAsDate() {
+		SimpleDate date = new SimpleDate(12, 29, 1977);
+		assertEquals(new GregorianCalendar(1977, Calendar.DECEMBER, 29).getTime(), date.asDate());
+		assertEquals(date, SimpleDate.valueOf(date.inMilliseconds() + 13 * 60 * 60 * 1000));
+	}
+
+	@Test
+	public void testRollsOverLikeALenientCalendar() {
+		assertEquals(new SimpleDate(1, 1, 2017), new SimpleDate(13, 1, 2016));
+		assertEquals(new SimpleDate(3, 1, 2016), new SimpleDate(2, 30, 2016));
+		assertEquals(new SimpleDate(12, 31, 2015), new SimpleDate(1, 0, 2016));
+	}
+
+	@Test
+	public void testCompareTo() {
+		SimpleDate earlier = new SimpleDate(12, 31, 2015);
+		SimpleDate later = new SimpleDate(1, 1, 2016);
+		assertTrue(earlier.compareTo(later) < 0);
+		assertTrue(later.compareTo(earlier) > 0);
+		assertEquals(0, later.compareTo(new SimpleDate(1, 1, 2016)));
+		assertEquals(later.hashCode(), new SimpleDate(1, 1, 2016).hashCode());
+	}
+
+	@Test
+	public void testDayOfWeekAndEpochMonth() {
+		assertEquals(DayOfWeek.THURSDAY, new SimpleDate(1, 1, 1970).getDayOfWeek());
+		assertEquals(DayOfWeek.MONDAY, new SimpleDate(12, 29, 1969).getDayOfWeek());
+		assertEquals(0, new SimpleDate(1, 31, 1970).getEpochMonth());
+		assertEquals(-1, new SimpleDate(12, 31, 1969).getEpochMonth());
+		// every day of four centuries around 1970, leap days and all
+		for (LocalDate date = LocalDate.of(1800, 1, 1); date.getYear() < 2200; date = date.plusDays(1)) {
+			SimpleDate simpleDate = new SimpleDate(date.getMonthValue(), date.getDayOfMonth(), date.getYear());
+			assertEquals(date.getDayOfWeek(), simpleDate.getDayOfWeek());
+			assertEquals((date.getYear() - 1970) * 12 + date.getMonthValue() - 1, simpleDate.getEpochMonth());
+		}
+	}
 }
@@ -0,0 +1,62 @@
+package common.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Unit tests that read money columns from an in-memory database.
+ */
+public class MoneyColumnsTests {
+
+	private Connection connection;
+
+	private ResultSet rs;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:hsqldb:mem:moneycolumns", "sa", "");
+		Statement statement = connection.createStatement();
+		rs = statement.executeQuery("select cast(500.00 as decimal(8,2)), cast(0.50 as decimal(3,2)), "
+				+ "cast(null as decimal(8,2)), cast(1.5 as decimal(3,2)) from (values(0))");
+		assertTrue(rs.next());
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Test
+	public void testGetMonetaryAmount() throws SQLException {
+		assertEquals(MonetaryAmount.valueOf("500.00"), MoneyColumns.getMonetaryAmount(rs, 1));
+	}
+
+	@Test
+	public void testGetPercentageIsCanonical() throws SQLException {
+		assertSame(Percentage.valueOf("50%"), MoneyColumns.getPercentage(rs, 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullColumn() throws SQLException {
+		MoneyColumns.getMonetaryAmount(rs, 3);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPercentageOutOfRange() throws SQLException {
+		MoneyColumns.getPercentage(rs, 4);
+	}
+}
@@ -1,6 +1,7 @@
 package common.money;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
 
@@ -59,4 +60,54 @@ public class MonetaryAmountTests {
 		MonetaryAmount amt = MonetaryAmount.valueOf(".1");
 		assertEquals(new BigDecimal(".10"), amt.asBigDecimal());
 	}
+
+	@Test
+	public void testSubtractToNegative() {
+		MonetaryAmount amt = MonetaryAmount.valueOf("1.05").subtract(MonetaryAmount.valueOf("1.10"));
+		assertEquals("$-0.05", amt.toString());
+		assertEquals(new BigDecimal("-0.05"), amt.asBigDecimal());
+	}
+
+	@Test
+	public void testRoundsHalfEven() {
+		assertEquals("$0.12", MonetaryAmount.valueOf("0.125").toString());
+		assertEquals("$0.14", MonetaryAmount.valueOf("0.135").toString());
+	}
+
+	@Test
+	public void testAddBeyondLongRange() {
+		MonetaryAmount large = MonetaryAmount.valueOf("9999999999999999.99");
+		MonetaryAmount sum = large.add(large).add(large);
+		assertEquals(new BigDecimal("29999999999999999.97"), sum.asBigDecimal());
+		assertEquals(large, sum.subtract(large).subtract(large));
+		assertEquals(MonetaryAmount.valueOf("0.01"), sum.subtract(large.add(large).add(large)).add(MonetaryAmount.valueOf("0.01")));
+	}
+
+	@Test
+	public void testEqualityAcrossConstruction() {
+		MonetaryAmount fromDecimal = new MonetaryAmount(new BigDecimal("12.30"));
+		MonetaryAmount fromSum = MonetaryAmount.valueOf("10.00").add(MonetaryAmount.valueOf("2.3"));
+		assertEquals(fromDecimal, fromSum);
+		assertEquals(fromDecimal.hashCode(), fromSum.hashCode());
+		assertEquals(12.3, fromSum.asDouble(), 0);
+		assertTrue(fromSum.greaterThan(MonetaryAmount.valueOf("12.29")));
+	}
+
+	@Test
+	public void testAsDoubleNearest() {
+		for (String amount : new String[] { "0.01", "12.30", "8.29", "-0.07", "90071992547409.93",
+				"9999999999999999.99", "-1234567890123456.78" }) {
+			assertEquals(amount, new BigDecimal(amount).doubleValue(), MonetaryAmount.valueOf(amount).asDouble(), 0);
+		}
+	}
+
+	@Test
+	public void testMultiplyByPercentageRoundsHalfEven() {
+		assertEquals(MonetaryAmount.valueOf("0.12"), MonetaryAmount.valueOf("0.25").multiplyBy(Percentage.valueOf("50%")));
+		assertEquals(MonetaryAmount.valueOf("0.38"), MonetaryAmount.valueOf("0.75").multiplyBy(Percentage.valueOf("50%")));
+		assertEquals(MonetaryAmount.valueOf("-0.12"), MonetaryAmount.valueOf("-0.25").multiplyBy(Percentage.valueOf("50%")));
+		MonetaryAmount large = MonetaryAmount.valueOf("99999999999999999.99");
+		assertEquals(new MonetaryAmount(large.asBigDecimal().multiply(new BigDecimal("0.33"))),
+				large.multiplyBy(Percentage.valueOf("33%")));
+	}
 }
@@ -1,6 +1,9 @@
 package common.money;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
 
 import org.junit.Test;
 
@@ -16,6 +19,11 @@ public class PercentageTests {
 		assertEquals("100%", percentage.toString());
 	}
 
+	@Test
+	public void testPercentageValueOfBigDecimal() {
+		assertSame(Percentage.valueOf("25%"), Percentage.valueOf(new BigDecimal(".245")));
+	}
+
 	@Test
 	public void testPercentage() {
 		assertEquals(Percentage.valueOf("0.01"), Percentage.valueOf("1%"));
@@ -39,4 +47,43 @@ public class PercentageTests {
 		Percentage p = new Percentage(.255555);
 		assertEquals("26%", p.toString());
 	}
+
+	@Test
+	public void testValueOfReturnsCanonicalInstances() {
+		assertSame(Percentage.valueOf("25%"), Percentage.valueOf(".25"));
+		assertSame(Percentage.zero(), Percentage.valueOf("0"));
+		assertSame(Percentage.oneHundred(), Percentage.valueOf("1"));
+		assertSame(Percentage.oneHundred(), Percentage.valueOf("50%").add(Percentage.valueOf("0.5")));
+	}
+
+	@Test
+	public void testValueOfWithRounding() {
+		assertEquals("26%", Percentage.valueOf("0.255").toString());
+		assertEquals("25%", Percentage.valueOf("0.2549").toString());
+		assertEquals("13%", Percentage.valueOf("12.5%").toString());
+		assertEquals(Percentage.valueOf("1.5e-1"), Percentage.valueOf("15%"));
+	}
+
+	@Test
+	public void testBasisPoints() {
+		assertEquals(2500, Percentage.valueOf("25%").basisPoints());
+		assertEquals(2600, new Percentage(.255555).basisPoints());
+		assertEquals(new BigDecimal("0.26"), new Percentage(.255555).asBigDecimal());
+		assertEquals(0.26, new Percentage(.255555).asDouble(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testValueOfOverOneHundredPercent() {
+		Percentage.valueOf("101%");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativePercentage() {
+		new Percentage(-0.01);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddOverOneHundredPercent() {
+		Percentage.valueOf("60%").add(Percentage.valueOf("41%"));
+	}
 }
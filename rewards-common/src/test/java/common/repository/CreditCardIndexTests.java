@@ -0,0 +1,91 @@
+package common.repository;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests that load the credit card index from an in-memory database.
+ */
+public class CreditCardIndexTests {
+
+	private Connection connection;
+
+	private CreditCardIndex index = new CreditCardIndex();
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:hsqldb:mem:creditcardindex", "sa", "");
+		Statement statement = connection.createStatement();
+		statement.execute("create table T_ACCOUNT_CREDIT_CARD (ID integer identity primary key, ACCOUNT_ID integer, "
+				+ "NUMBER varchar(16))");
+		statement.execute("insert into T_ACCOUNT_CREDIT_CARD (ACCOUNT_ID, NUMBER) values (0, '1234123412341234'), "
+				+ "(1, '1234123412340001'), (1, '0000000000000000'), (2, 'not-a-card')");
+		index.load(statement.executeQuery(CreditCardIndex.SELECT_CREDIT_CARDS));
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		connection.createStatement().execute("drop table T_ACCOUNT_CREDIT_CARD");
+		connection.close();
+	}
+
+	@Test
+	public void testLoad() {
+		assertEquals(3, index.size());
+		assertEquals(0, index.findAccountId("1234123412341234"));
+		assertEquals(1, index.findAccountId("1234123412340001"));
+		assertEquals(1, index.findAccountId("0000000000000000"));
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("not-a-card"));
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("1234123412340002"));
+	}
+
+	@Test
+	public void testCardsAddedMovedAndRemoved() {
+		index.put("1234123412340002", 2);
+		index.put("1234123412341234", 1);
+		index.remove("1234123412340001");
+		assertEquals(2, index.findAccountId("1234123412340002"));
+		assertEquals(1, index.findAccountId("1234123412341234"));
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("1234123412340001"));
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	public void testLookupOverlappingRemovalNotPut() {
+		long removalCount = index.getRemovalCount();
+		// the card moves while it is looked up
+		index.remove("1234123412341234");
+		index.put("1234123412341234", 0, removalCount);
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("1234123412341234"));
+		index.put("1234123412341234", 1, index.getRemovalCount());
+		assertEquals(1, index.findAccountId("1234123412341234"));
+	}
+
+	@Test
+	public void testReloadReplacesCards() throws SQLException {
+		index.put("1234123412340002", 2);
+		Statement statement = connection.createStatement();
+		statement.execute("delete from T_ACCOUNT_CREDIT_CARD where ACCOUNT_ID = 1");
+		index.load(statement.executeQuery(CreditCardIndex.SELECT_CREDIT_CARDS));
+		assertEquals(1, index.size());
+		assertEquals(0, index.findAccountId("1234123412341234"));
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("1234123412340002"));
+	}
+
+	@Test
+	public void testPack() {
+		assertEquals(1234123412341234L, CreditCardIndex.pack("1234123412341234"));
+		assertEquals(9999999999999999L, CreditCardIndex.pack("9999999999999999"));
+		assertEquals(-1, CreditCardIndex.pack("123412341234123"));
+		assertEquals(-1, CreditCardIndex.pack("123412341234123x"));
+		assertEquals(-1, CreditCardIndex.pack(null));
+	}
+}
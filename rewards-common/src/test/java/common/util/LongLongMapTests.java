@@ -0,0 +1,97 @@
+package common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the primitive long to long map.
+ */
+public class LongLongMapTests {
+
+	@Test
+	public void testPutAndGet() {
+		LongLongMap map = new LongLongMap(0);
+		map.put(1234123412341234L, 0);
+		map.put(1234123412340001L, 1);
+		assertEquals(0, map.get(1234123412341234L, -1));
+		assertEquals(1, map.get(1234123412340001L, -1));
+		assertEquals(-1, map.get(1234123412340002L, -1));
+		assertEquals(2, map.size());
+
+		map.put(1234123412340001L, 7);
+		assertEquals(7, map.get(1234123412340001L, -1));
+		assertEquals(2, map.size());
+	}
+
+	@Test
+	public void testZeroKey() {
+		LongLongMap map = new LongLongMap(0);
+		assertFalse(map.containsKey(0));
+		map.put(0, 5);
+		assertTrue(map.containsKey(0));
+		assertEquals(5, map.get(0, -1));
+		assertEquals(1, map.size());
+		assertTrue(map.remove(0));
+		assertEquals(-1, map.get(0, -1));
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	public void testGrowsPastItsSize() {
+		LongLongMap map = new LongLongMap(0);
+		for (long key = 1; key <= 1000; key++) {
+			map.put(key, key * 2);
+		}
+		assertEquals(1000, map.size());
+		assertEquals(2048, map.capacity());
+		for (long key = 1; key <= 1000; key++) {
+			assertEquals(key * 2, map.get(key, -1));
+		}
+	}
+
+	@Test
+	public void testRemoveKeepsOtherEntriesReachable() {
+		// keys and removals at random, checked against a HashMap
+		Random random = new Random(42);
+		LongLongMap map = new LongLongMap(0);
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		for (int i = 0; i < 20000; i++) {
+			long key = 1 + random.nextInt(2000);
+			if (random.nextBoolean()) {
+				map.put(key, i);
+				expected.put(key, (long) i);
+			} else {
+				assertEquals(expected.remove(key) != null, map.remove(key));
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for (long key = 1; key <= 2000; key++) {
+			Long value = expected.get(key);
+			assertEquals(value == null ? -1 : value, map.get(key, -1));
+		}
+	}
+
+	@Test
+	public void testSwap() {
+		LongLongMap map = new LongLongMap(0);
+		map.put(1, 1);
+		LongLongMap other = new LongLongMap(0);
+		other.put(2, 2);
+		other.put(0, 3);
+
+		map.swap(other);
+		assertEquals(-1, map.get(1, -1));
+		assertEquals(2, map.get(2, -1));
+		assertEquals(3, map.get(0, -1));
+		assertEquals(2, map.size());
+		assertEquals(1, other.get(1, -1));
+		assertEquals(1, other.size());
+	}
+}
@@ -28,6 +28,24 @@ public interface AccountManager {
 	 */
 	public List<Account> getAllAccounts();
 
+	/**
+	 * Get a page of accounts, with their beneficiaries, in order of entity
+	 * id. Use instead of {@link #getAllAccounts()} where there may be more
+	 * accounts than fit in memory at once.
+	 *
+	 * @param pageToken
+	 *            the token of the page, from the page before it, or null
+	 *            for the first page
+	 * @param pageSize
+	 *            the most accounts on the page, cut to
+	 *            {@link AccountPage#MAX_SIZE}
+	 * @return the page, with no accounts if there are none after the
+	 *         page before it
+	 * @throws InvalidPageRequestException
+	 *             if the token is not one of a page or the size is under 1
+	 */
+	public AccountPage getAccounts(String pageToken, int pageSize);
+
 	/**
 	 * Find an account by its number.
 	 * 
@@ -0,0 +1,121 @@
+package accounts;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import rewards.internal.account.Account;
+
+/**
+ * A page of accounts, in order of entity id, with the token of the page
+ * that follows it.
+ * <p>
+ * Pages are found by keyset (seek) rather than by offset: a page token
+ * stands for the entity id of the last account of the page before, and
+ * the next page starts at the first account after it. Finding a page so
+ * costs the same however far into the accounts it is, and accounts added
+ * or removed meanwhile neither repeat nor skip accounts on later pages.
+ * Tokens are opaque to clients.
+ */
+public class AccountPage {
+
+	/**
+	 * Number of accounts on a page unless asked otherwise.
+	 */
+	public static final int DEFAULT_SIZE = 50;
+
+	/**
+	 * Most accounts on a page; larger pages asked for are cut to this size.
+	 */
+	public static final int MAX_SIZE = 500;
+
+	private final List<Account> accounts;
+
+	private final String nextPageToken;
+
+	/**
+	 * Creates a page of accounts.
+	 *
+	 * @param accounts
+	 *            the accounts of the page, in order of entity id
+	 * @param nextPageToken
+	 *            the token of the next page, null if this is the last
+	 */
+	public AccountPage(List<Account> accounts, String nextPageToken) {
+		this.accounts = Collections.unmodifiableList(accounts);
+		this.nextPageToken = nextPageToken;
+	}
+
+	/**
+	 * Returns the accounts of this page, in order of entity id.
+	 */
+	public List<Account> getAccounts() {
+		return accounts;
+	}
+
+	/**
+	 * Returns the token of the next page, or null if this is the last.
+	 */
+	public String getNextPageToken() {
+		return nextPageToken;
+	}
+
+	/**
+	 * Returns whether this is the last page.
+	 */
+	public boolean isLast() {
+		return nextPageToken == null;
+	}
+
+	/**
+	 * Returns the token of the page after the account with an entity id.
+	 */
+	public static String tokenAfter(long entityId) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(Long.toString(entityId).getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Returns the entity id the page of a token starts after.
+	 *
+	 * @param pageToken
+	 *            the token, null for the first page
+	 * @return the entity id, -1 for the first page as entity ids start at 0
+	 * @throws InvalidPageRequestException
+	 *             if the token is not one of a page
+	 */
+	public static long entityIdBefore(String pageToken) {
+		if (pageToken == null) {
+			return -1;
+		}
+		try {
+			long entityId = Long.parseLong(new String(Base64.getUrlDecoder().decode(pageToken),
+					StandardCharsets.US_ASCII));
+			if (entityId >= 0) {
+				return entityId;
+			}
+		} catch (IllegalArgumentException e) {
+			// NumberFormatException too
+		}
+		throw new InvalidPageRequestException("Not a page token " + pageToken);
+	}
+
+	/**
+	 * Returns the size of the pages to find when asked for a size.
+	 *
+	 * @throws InvalidPageRequestException
+	 *             if the size is under 1
+	 */
+	public static int boundedSize(int pageSize) {
+		if (pageSize < 1) {
+			throw new InvalidPageRequestException("Not a page size " + pageSize);
+		}
+		return Math.min(pageSize, MAX_SIZE);
+	}
+
+	@Override
+	public String toString() {
+		return accounts.size() + " accounts" + (isLast() ? ", last page" : ", next page " + nextPageToken);
+	}
+}
@@ -0,0 +1,14 @@
+package accounts;
+
+/**
+ * Thrown when asked for a page of accounts with a token that is not one
+ * of a page, or a size that is not one of a page.
+ */
+public class InvalidPageRequestException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidPageRequestException(String message) {
+		super(message);
+	}
+}
@@ -1,6 +1,7 @@
 package accounts.internal;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -15,6 +16,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import rewards.internal.account.Account;
 import accounts.AccountManager;
+import accounts.AccountPage;
 import common.money.Percentage;
 
 /**
@@ -48,18 +50,42 @@ public class HibernateAccountManager implements AccountManager {
 	@Transactional(readOnly = true)
 	@SuppressWarnings("unchecked")
 	public List<Account> getAllAccounts() {
-		List<Account> l = getCurrentSession().createQuery("from Account").list();
+		List<Account> l = getCurrentSession().createQuery(
+				"from Account a left join fetch a.beneficiaries").list();
 		
-		// Use of "JOIN FETCH" produces duplicate accounts, and DISTINCT does
-		// not address this. So we have to filter it manually.
-		List<Account> result = new ArrayList<Account>();
+		// Use of "JOIN FETCH" produces the same account once per beneficiary.
+		// One instance per account in the session, so filter it by hash
+		// rather than by scanning the result for every row.
+		return new ArrayList<Account>(new LinkedHashSet<Account>(l));
+	}
 
-		for (Account a : l) {
-			if (!result.contains(a))
-				result.add(a);
+	@Override
+	@Transactional(readOnly = true)
+	@SuppressWarnings("unchecked")
+	public AccountPage getAccounts(String pageToken, int pageSize) {
+		int size = AccountPage.boundedSize(pageSize);
+		long after = AccountPage.entityIdBefore(pageToken);
+
+		// Seek the ids of the page on the primary key: a "JOIN FETCH" cannot
+		// be limited in the database, only in memory after loading every row
+		List<Long> ids = getCurrentSession().createQuery(
+				"select a.entityId from Account a where a.entityId > :after order by a.entityId")
+				.setLong("after", after)
+				.setMaxResults(size + 1)
+				.list();
+		if (ids.isEmpty()) {
+			return new AccountPage(new ArrayList<Account>(), null);
 		}
-
-		return result;		
+		long last = ids.get(Math.min(ids.size(), size) - 1);
+
+		List<Account> l = getCurrentSession().createQuery(
+				"from Account a left join fetch a.beneficiaries"
+						+ " where a.entityId > :after and a.entityId <= :last order by a.entityId")
+				.setLong("after", after)
+				.setLong("last", last)
+				.list();
+		return new AccountPage(new ArrayList<Account>(new LinkedHashSet<Account>(l)),
+				ids.size() > size ? AccountPage.tokenAfter(last) : null);
 	}
 
 	@Override
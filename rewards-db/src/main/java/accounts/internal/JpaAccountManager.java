@@ -1,6 +1,7 @@
 package accounts.internal;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -14,6 +15,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import rewards.internal.account.Account;
 import accounts.AccountManager;
+import accounts.AccountPage;
 
 import common.money.Percentage;
 
@@ -53,22 +55,43 @@ public class JpaAccountManager implements AccountManager {
 
 	@Override
 	@Transactional(readOnly = true)
-	@SuppressWarnings("unchecked")
 	public List<Account> getAllAccounts() {
 		List<Account> l = entityManager.createQuery(
-				"select a from Account a LEFT JOIN FETCH a.beneficiaries")
+				"select a from Account a LEFT JOIN FETCH a.beneficiaries", Account.class)
 				.getResultList();
 
-		// Use of "JOIN FETCH" produces duplicate accounts, and DISTINCT does
-		// not address this. So we have to filter it manually.
-		List<Account> result = new ArrayList<Account>();
+		// Use of "JOIN FETCH" produces the same account once per beneficiary.
+		// One instance per account in the persistence context, so filter it
+		// by hash rather than by scanning the result for every row.
+		return new ArrayList<Account>(new LinkedHashSet<Account>(l));
+	}
 
-		for (Account a : l) {
-			if (!result.contains(a))
-				result.add(a);
+	@Override
+	@Transactional(readOnly = true)
+	public AccountPage getAccounts(String pageToken, int pageSize) {
+		int size = AccountPage.boundedSize(pageSize);
+		long after = AccountPage.entityIdBefore(pageToken);
+
+		// Seek the ids of the page on the primary key: a "JOIN FETCH" cannot
+		// be limited in the database, only in memory after loading every row
+		List<Long> ids = entityManager.createQuery(
+				"select a.entityId from Account a where a.entityId > :after order by a.entityId", Long.class)
+				.setParameter("after", after)
+				.setMaxResults(size + 1)
+				.getResultList();
+		if (ids.isEmpty()) {
+			return new AccountPage(new ArrayList<Account>(), null);
 		}
+		long last = ids.get(Math.min(ids.size(), size) - 1);
 
-		return result;
+		List<Account> l = entityManager.createQuery(
+				"select a from Account a LEFT JOIN FETCH a.beneficiaries"
+						+ " where a.entityId > :after and a.entityId <= :last order by a.entityId", Account.class)
+				.setParameter("after", after)
+				.setParameter("last", last)
+				.getResultList();
+		return new AccountPage(new ArrayList<Account>(new LinkedHashSet<Account>(l)),
+				ids.size() > size ? AccountPage.tokenAfter(last) : null);
 	}
 
 	@Override
@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
@@ -13,6 +14,7 @@ import org.springframework.orm.ObjectRetrievalFailureException;
 import rewards.internal.account.Account;
 import rewards.internal.account.Beneficiary;
 import accounts.AccountManager;
+import accounts.AccountPage;
 
 import common.money.Percentage;
 
@@ -58,6 +60,19 @@ public class StubAccountManager implements AccountManager {
 		return new ArrayList<Account>(accountsById.values());
 	}
 
+	@Override
+	public AccountPage getAccounts(String pageToken, int pageSize) {
+		int size = AccountPage.boundedSize(pageSize);
+		List<Account> accounts = new ArrayList<Account>();
+		for (Long id : new TreeSet<Long>(accountsById.keySet()).tailSet(AccountPage.entityIdBefore(pageToken), false)) {
+			if (accounts.size() == size) {
+				return new AccountPage(accounts, AccountPage.tokenAfter(accounts.get(size - 1).getEntityId()));
+			}
+			accounts.add(accountsById.get(id));
+		}
+		return new AccountPage(accounts, null);
+	}
+
 	@Override
 	public Account getAccount(Long id) {
 		Account account = accountsById.get(id);
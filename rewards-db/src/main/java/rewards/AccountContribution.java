@@ -1,6 +1,11 @@
 package rewards;
 
 import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import common.money.MonetaryAmount;
@@ -20,6 +25,11 @@ public class AccountContribution implements Serializable {
 
 	private Set<Distribution> distributions;
 
+	/**
+	 * Distributions by beneficiary name, built on the first call to {@link #getDistribution(String)}.
+	 */
+	private transient Map<String, Distribution> distributionsByBeneficiary;
+
 	/**
 	 * Creates a new account contribution.
 	 * @param accountNumber the number of the account the contribution was made
@@ -32,6 +42,17 @@ public class AccountContribution implements Serializable {
 		this.distributions = distributions;
 	}
 
+	/**
+	 * Creates a new account contribution from distributions computed in a single pass over an account's
+	 * beneficiaries. The array is used as is, without copying it into a hashed set.
+	 * @param accountNumber the number of the account the contribution was made
+	 * @param amount the total contribution amount
+	 * @param distributions how the contribution was distributed among the account's beneficiaries, one per beneficiary
+	 */
+	public AccountContribution(String accountNumber, MonetaryAmount amount, Distribution... distributions) {
+		this(accountNumber, amount, new DistributionSet(distributions));
+	}
+
 	/**
 	 * Returns the number of the account this contribution was made to.
 	 * @return the account number
@@ -62,12 +83,47 @@ public class AccountContribution implements Serializable {
 	 * @return a summary of how the contribution amount was distributed to the beneficiary
 	 */
 	public Distribution getDistribution(String beneficiary) {
-		for (Distribution d : distributions) {
-			if (d.beneficiary.equals(beneficiary)) {
-				return d;
+		Map<String, Distribution> index = distributionsByBeneficiary;
+		if (index == null) {
+			index = new HashMap<String, Distribution>(distributions.size() * 2);
+			for (Distribution d : distributions) {
+				if (!index.containsKey(d.beneficiary)) {
+					index.put(d.beneficiary, d);
+				}
 			}
+			distributionsByBeneficiary = index;
+		}
+		Distribution distribution = index.get(beneficiary);
+		if (distribution == null) {
+			throw new IllegalArgumentException("No such distribution for '" + beneficiary + "'");
+		}
+		return distribution;
+	}
+
+	/**
+	 * An unmodifiable set view of an array of distributions. Each beneficiary receives exactly one distribution, so
+	 * the elements are distinct by construction.
+	 */
+	private static class DistributionSet extends AbstractSet<Distribution> implements Serializable {
+
+		private static final long serialVersionUID = 4416287365498761452L;
+
+		private final Distribution[] distributions;
+
+		DistributionSet(Distribution[] distributions) {
+			this.distributions = distributions;
+		}
+
+		@Override
+		public Iterator<Distribution> iterator() {
+			// Arrays.asList iterators do not support removal
+			return Arrays.asList(distributions).iterator();
+		}
+
+		@Override
+		public int size() {
+			return distributions.length;
 		}
-		throw new IllegalArgumentException("No such distribution for '" + beneficiary + "'");
 	}
 
 	/**
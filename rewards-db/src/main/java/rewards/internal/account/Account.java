@@ -1,7 +1,9 @@
 package rewards.internal.account;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.CascadeType;
@@ -12,7 +14,10 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToMany;
+import javax.persistence.PostLoad;
 import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.Version;
 
 import rewards.AccountContribution;
 import rewards.AccountContribution.Distribution;
@@ -44,10 +49,29 @@ public class Account {
 	@Column(name = "NAME")
 	private String name;
 
+	/**
+	 * Incremented on every update, so that an update made from a stale copy
+	 * of the account fails rather than overwrites a newer one.
+	 */
+	@Version
+	@Column(name = "VERSION")
+	private Integer version;
+
 	@OneToMany(cascade = CascadeType.ALL)
 	@JoinColumn(name = "ACCOUNT_ID")
 	private Set<Beneficiary> beneficiaries = new HashSet<Beneficiary>();
 
+	/**
+	 * The beneficiaries with their allocations and the outcome of the 100%
+	 * check, computed once and reused for every contribution until the
+	 * beneficiaries change. Discarded by every change rather than checked
+	 * on use: by the mutators here, by a beneficiary whose allocation
+	 * percentage is set, and when the persistence provider loads or
+	 * refreshes the account.
+	 */
+	@Transient
+	private AllocationTable allocations;
+
 	protected Account() {
 	}
 
@@ -142,8 +166,25 @@ public class Account {
 	 */
 	public void addBeneficiary(String beneficiaryName,
 			Percentage allocationPercentage) {
-		beneficiaries
-				.add(new Beneficiary(beneficiaryName, allocationPercentage));
+		Beneficiary beneficiary = new Beneficiary(beneficiaryName,
+				allocationPercentage);
+		beneficiary.setAccount(this);
+		beneficiaries.add(beneficiary);
+		allocations = null;
+	}
+
+	/**
+	 * Restores a beneficiary, including its savings, to this account. Should
+	 * only be called by privileged objects responsible for reconstituting an
+	 * existing Account object from some external form such as a JSON document.
+	 *
+	 * @param beneficiary
+	 *            the beneficiary to restore
+	 */
+	void restoreBeneficiary(Beneficiary beneficiary) {
+		beneficiary.setAccount(this);
+		beneficiaries.add(beneficiary);
+		allocations = null;
 	}
 
 	/**
@@ -169,13 +210,12 @@ public class Account {
 	 * @return the beneficiary object
 	 */
 	public Beneficiary getBeneficiary(String name) {
-		for (Beneficiary b : beneficiaries) {
-			if (b.getName().equals(name)) {
-				return b;
-			}
+		Beneficiary beneficiary = allocations().beneficiariesByName.get(name);
+		if (beneficiary == null) {
+			throw new IllegalArgumentException("No such beneficiary with name '"
+					+ name + "'");
 		}
-		throw new IllegalArgumentException("No such beneficiary with name '"
-				+ name + "'");
+		return beneficiary;
 	}
 
 	/**
@@ -185,7 +225,10 @@ public class Account {
 	 *            the name of the beneficiary (should be unique)
 	 */
 	public void removeBeneficiary(String beneficiaryName) {
-		beneficiaries.remove(getBeneficiary(beneficiaryName));
+		Beneficiary beneficiary = getBeneficiary(beneficiaryName);
+		beneficiaries.remove(beneficiary);
+		beneficiary.setAccount(null);
+		allocations = null;
 	}
 
 	/**
@@ -193,21 +236,7 @@ public class Account {
 	 * allocation adds up to 100%.
 	 */
 	public boolean isValid() {
-		Percentage totalPercentage = Percentage.zero();
-		for (Beneficiary b : beneficiaries) {
-			try {
-				totalPercentage = totalPercentage.add(b
-						.getAllocationPercentage());
-			} catch (IllegalArgumentException e) {
-				// total would have been over 100% - return invalid
-				return false;
-			}
-		}
-		if (totalPercentage.equals(Percentage.oneHundred())) {
-			return true;
-		} else {
-			return false;
-		}
+		return allocations().valid;
 	}
 
 	public void setValid(boolean valid) {
@@ -225,36 +254,109 @@ public class Account {
 	 *            the contribution summary
 	 */
 	public AccountContribution makeContribution(MonetaryAmount amount) {
-		if (!isValid()) {
+		AllocationTable table = allocations();
+		if (!table.valid) {
 			throw new IllegalStateException(
 					"Cannot make contributions to this account: it has invalid beneficiary allocations");
 		}
-		Set<Distribution> distributions = distribute(amount);
+		Distribution[] distributions = distribute(table, amount);
 		return new AccountContribution(getNumber(), amount, distributions);
 	}
 
 	/**
 	 * Distribute the contribution amount among this account's beneficiaries.
 	 * 
+	 * @param table
+	 *            the current allocation table
 	 * @param amount
 	 *            the total contribution amount
 	 * @return the individual beneficiary distributions
 	 */
-	private Set<Distribution> distribute(MonetaryAmount amount) {
-		Set<Distribution> distributions = new HashSet<Distribution>(
-				beneficiaries.size());
-		for (Beneficiary beneficiary : beneficiaries) {
-			MonetaryAmount distributionAmount = amount.multiplyBy(beneficiary
-					.getAllocationPercentage());
+	private Distribution[] distribute(AllocationTable table,
+			MonetaryAmount amount) {
+		Beneficiary[] beneficiaries = table.beneficiaries;
+		Percentage[] percentages = table.percentages;
+		Distribution[] distributions = new Distribution[beneficiaries.length];
+		for (int i = 0; i < beneficiaries.length; i++) {
+			Beneficiary beneficiary = beneficiaries[i];
+			MonetaryAmount distributionAmount = amount
+					.multiplyBy(percentages[i]);
 			beneficiary.credit(distributionAmount);
-			Distribution distribution = new Distribution(beneficiary.getName(),
-					distributionAmount, beneficiary.getAllocationPercentage(),
+			distributions[i] = new Distribution(beneficiary.getName(),
+					distributionAmount, percentages[i],
 					beneficiary.getSavings());
-			distributions.add(distribution);
 		}
 		return distributions;
 	}
 
+	/**
+	 * Returns the allocation table, building it if the beneficiaries have
+	 * changed since it was last built.
+	 */
+	private AllocationTable allocations() {
+		AllocationTable table = allocations;
+		if (table == null) {
+			table = new AllocationTable(beneficiaries);
+			for (Beneficiary beneficiary : table.beneficiaries) {
+				beneficiary.setAccount(this);
+			}
+			allocations = table;
+		}
+		return table;
+	}
+
+	/**
+	 * Discards the allocation table, for a beneficiary whose allocation
+	 * percentage has been set.
+	 */
+	void allocationsChanged() {
+		allocations = null;
+	}
+
+	/**
+	 * Discards the allocation table once the persistence provider has loaded
+	 * or refreshed the beneficiaries.
+	 */
+	@PostLoad
+	void loaded() {
+		allocations = null;
+	}
+
+	/**
+	 * A snapshot of an account's beneficiaries in iteration order, their
+	 * allocation percentages, a name index and whether the allocations add up
+	 * to exactly 100%.
+	 */
+	private static class AllocationTable {
+
+		private final Beneficiary[] beneficiaries;
+
+		private final Percentage[] percentages;
+
+		private final Map<String, Beneficiary> beneficiariesByName;
+
+		private final boolean valid;
+
+		AllocationTable(Set<Beneficiary> beneficiaries) {
+			this.beneficiaries = beneficiaries
+					.toArray(new Beneficiary[beneficiaries.size()]);
+			this.percentages = new Percentage[this.beneficiaries.length];
+			this.beneficiariesByName = new HashMap<String, Beneficiary>(
+					this.beneficiaries.length * 2);
+			int totalBasisPoints = 0;
+			for (int i = 0; i < this.beneficiaries.length; i++) {
+				Beneficiary beneficiary = this.beneficiaries[i];
+				percentages[i] = beneficiary.getAllocationPercentage();
+				totalBasisPoints += percentages[i].basisPoints();
+				if (!beneficiariesByName.containsKey(beneficiary.getName())) {
+					beneficiariesByName.put(beneficiary.getName(), beneficiary);
+				}
+			}
+			this.valid = totalBasisPoints == Percentage.oneHundred()
+					.basisPoints();
+		}
+	}
+
 	/**
 	 * String representation for debugging.
 	 */
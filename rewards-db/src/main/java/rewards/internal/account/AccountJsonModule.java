@@ -0,0 +1,336 @@
+package rewards.internal.account;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * A Jackson module that reads and writes accounts, beneficiaries, monetary
+ * amounts and percentages with hand-written streaming serializers rather than
+ * reflective bean introspection.
+ * <p>
+ * Monetary amounts and percentages are written as plain JSON numbers, and
+ * derived properties such as {@link Account#isValid()} are not written.
+ * Otherwise the JSON is the same as the default bean mapping, for example:
+ *
+ * <pre>
+ * {"entityId":0,"number":"123456789","name":"Keith and Keri Donald",
+ *  "beneficiaries":[{"entityId":0,"name":"Annabelle","allocationPercentage":0.50,"savings":0.00}]}
+ * </pre>
+ *
+ * Unknown properties, including a "valid" property sent by older clients, are
+ * ignored when reading.
+ * <p>
+ * Register it with an ObjectMapper, or in Spring Boot simply declare it as a
+ * bean.
+ */
+@SuppressWarnings("serial")
+public class AccountJsonModule extends SimpleModule {
+
+	private static final SerializableString ENTITY_ID = new SerializedString(
+			"entityId");
+
+	private static final SerializableString NUMBER = new SerializedString(
+			"number");
+
+	private static final SerializableString NAME = new SerializedString(
+			"name");
+
+	private static final SerializableString BENEFICIARIES = new SerializedString(
+			"beneficiaries");
+
+	private static final SerializableString ALLOCATION_PERCENTAGE = new SerializedString(
+			"allocationPercentage");
+
+	private static final SerializableString SAVINGS = new SerializedString(
+			"savings");
+
+	public AccountJsonModule() {
+		super("AccountJsonModule");
+		addSerializer(Account.class, new AccountSerializer());
+		addSerializer(Beneficiary.class, new BeneficiarySerializer());
+		addSerializer(MonetaryAmount.class, new MonetaryAmountSerializer());
+		addSerializer(Percentage.class, new PercentageSerializer());
+		addDeserializer(Account.class, new AccountDeserializer());
+		addDeserializer(Beneficiary.class, new BeneficiaryDeserializer());
+		addDeserializer(MonetaryAmount.class, new MonetaryAmountDeserializer());
+		addDeserializer(Percentage.class, new PercentageDeserializer());
+	}
+
+	// Writing
+
+	private static void writeBeneficiary(Beneficiary beneficiary,
+			JsonGenerator gen) throws IOException {
+		gen.writeStartObject();
+		writeEntityId(beneficiary.getEntityId(), gen);
+		gen.writeFieldName(NAME);
+		gen.writeString(beneficiary.getName());
+		gen.writeFieldName(ALLOCATION_PERCENTAGE);
+		writeDecimal(beneficiary.getAllocationPercentage() == null ? null
+				: beneficiary.getAllocationPercentage().asBigDecimal(), gen);
+		gen.writeFieldName(SAVINGS);
+		writeDecimal(beneficiary.getSavings() == null ? null : beneficiary
+				.getSavings().asBigDecimal(), gen);
+		gen.writeEndObject();
+	}
+
+	private static void writeEntityId(Long entityId, JsonGenerator gen)
+			throws IOException {
+		gen.writeFieldName(ENTITY_ID);
+		if (entityId == null) {
+			gen.writeNull();
+		} else {
+			gen.writeNumber(entityId.longValue());
+		}
+	}
+
+	private static void writeDecimal(BigDecimal value, JsonGenerator gen)
+			throws IOException {
+		if (value == null) {
+			gen.writeNull();
+		} else {
+			gen.writeNumber(value);
+		}
+	}
+
+	// Reading
+
+	private static Beneficiary readBeneficiary(JsonParser p,
+			DeserializationContext ctxt) throws IOException {
+		if (!startObject(p)) {
+			return (Beneficiary) ctxt.handleUnexpectedToken(Beneficiary.class, p);
+		}
+		Long entityId = null;
+		String name = null;
+		Percentage allocationPercentage = null;
+		MonetaryAmount savings = MonetaryAmount.zero();
+		for (; p.getCurrentToken() == JsonToken.FIELD_NAME; p.nextToken()) {
+			String field = p.getCurrentName();
+			p.nextToken();
+			if ("entityId".equals(field)) {
+				entityId = readLong(p);
+			} else if ("name".equals(field)) {
+				name = p.getValueAsString();
+			} else if ("allocationPercentage".equals(field)) {
+				BigDecimal value = readDecimal(p, ctxt);
+				allocationPercentage = value == null ? null : new Percentage(
+						value);
+			} else if ("savings".equals(field)) {
+				BigDecimal value = readDecimal(p, ctxt);
+				savings = value == null ? null : new MonetaryAmount(value);
+			} else {
+				p.skipChildren();
+			}
+		}
+		Beneficiary beneficiary = new Beneficiary(name, allocationPercentage,
+				savings);
+		beneficiary.setEntityId(entityId);
+		return beneficiary;
+	}
+
+	/**
+	 * Moves the parser to the first field of the object it is positioned at.
+	 * Deserializers may be called either at the start of the object or at its
+	 * first field.
+	 *
+	 * @return false if the parser is not positioned at an object
+	 */
+	private static boolean startObject(JsonParser p) throws IOException {
+		JsonToken token = p.getCurrentToken();
+		if (token == JsonToken.START_OBJECT) {
+			p.nextToken();
+			return true;
+		}
+		return token == JsonToken.FIELD_NAME || token == JsonToken.END_OBJECT;
+	}
+
+	private static Long readLong(JsonParser p) throws IOException {
+		return p.getCurrentToken() == JsonToken.VALUE_NULL ? null : p
+				.getValueAsLong();
+	}
+
+	private static BigDecimal readDecimal(JsonParser p,
+			DeserializationContext ctxt) throws IOException {
+		switch (p.getCurrentToken()) {
+		case VALUE_NUMBER_INT:
+		case VALUE_NUMBER_FLOAT:
+			return p.getDecimalValue();
+		case VALUE_STRING:
+			String text = p.getText().trim();
+			return text.isEmpty() ? null : new BigDecimal(text);
+		case VALUE_NULL:
+			return null;
+		default:
+			return (BigDecimal) ctxt.handleUnexpectedToken(BigDecimal.class, p);
+		}
+	}
+
+	private static class AccountSerializer extends StdSerializer<Account> {
+
+		AccountSerializer() {
+			super(Account.class);
+		}
+
+		@Override
+		public void serialize(Account account, JsonGenerator gen,
+				SerializerProvider provider) throws IOException {
+			gen.writeStartObject();
+			writeEntityId(account.getEntityId(), gen);
+			gen.writeFieldName(NUMBER);
+			gen.writeString(account.getNumber());
+			gen.writeFieldName(NAME);
+			gen.writeString(account.getName());
+			gen.writeFieldName(BENEFICIARIES);
+			gen.writeStartArray();
+			for (Beneficiary beneficiary : account.getBeneficiaries()) {
+				writeBeneficiary(beneficiary, gen);
+			}
+			gen.writeEndArray();
+			gen.writeEndObject();
+		}
+	}
+
+	private static class BeneficiarySerializer extends
+			StdSerializer<Beneficiary> {
+
+		BeneficiarySerializer() {
+			super(Beneficiary.class);
+		}
+
+		@Override
+		public void serialize(Beneficiary beneficiary, JsonGenerator gen,
+				SerializerProvider provider) throws IOException {
+			writeBeneficiary(beneficiary, gen);
+		}
+	}
+
+	private static class MonetaryAmountSerializer extends
+			StdSerializer<MonetaryAmount> {
+
+		MonetaryAmountSerializer() {
+			super(MonetaryAmount.class);
+		}
+
+		@Override
+		public void serialize(MonetaryAmount amount, JsonGenerator gen,
+				SerializerProvider provider) throws IOException {
+			gen.writeNumber(amount.asBigDecimal());
+		}
+	}
+
+	private static class PercentageSerializer extends
+			StdSerializer<Percentage> {
+
+		PercentageSerializer() {
+			super(Percentage.class);
+		}
+
+		@Override
+		public void serialize(Percentage percentage, JsonGenerator gen,
+				SerializerProvider provider) throws IOException {
+			gen.writeNumber(percentage.asBigDecimal());
+		}
+	}
+
+	private static class AccountDeserializer extends StdDeserializer<Account> {
+
+		AccountDeserializer() {
+			super(Account.class);
+		}
+
+		@Override
+		public Account deserialize(JsonParser p, DeserializationContext ctxt)
+				throws IOException {
+			if (!startObject(p)) {
+				return (Account) ctxt.handleUnexpectedToken(Account.class, p);
+			}
+			Long entityId = null;
+			String number = null;
+			String name = null;
+			List<Beneficiary> beneficiaries = new ArrayList<Beneficiary>();
+			for (; p.getCurrentToken() == JsonToken.FIELD_NAME; p.nextToken()) {
+				String field = p.getCurrentName();
+				p.nextToken();
+				if ("entityId".equals(field)) {
+					entityId = readLong(p);
+				} else if ("number".equals(field)) {
+					number = p.getValueAsString();
+				} else if ("name".equals(field)) {
+					name = p.getValueAsString();
+				} else if ("beneficiaries".equals(field)
+						&& p.getCurrentToken() == JsonToken.START_ARRAY) {
+					while (p.nextToken() != JsonToken.END_ARRAY) {
+						beneficiaries.add(readBeneficiary(p, ctxt));
+					}
+				} else {
+					p.skipChildren();
+				}
+			}
+			Account account = new Account(number, name);
+			account.setEntityId(entityId);
+			for (Beneficiary beneficiary : beneficiaries) {
+				account.restoreBeneficiary(beneficiary);
+			}
+			return account;
+		}
+	}
+
+	private static class BeneficiaryDeserializer extends
+			StdDeserializer<Beneficiary> {
+
+		BeneficiaryDeserializer() {
+			super(Beneficiary.class);
+		}
+
+		@Override
+		public Beneficiary deserialize(JsonParser p, DeserializationContext ctxt)
+				throws IOException {
+			return readBeneficiary(p, ctxt);
+		}
+	}
+
+	private static class MonetaryAmountDeserializer extends
+			StdDeserializer<MonetaryAmount> {
+
+		MonetaryAmountDeserializer() {
+			super(MonetaryAmount.class);
+		}
+
+		@Override
+		public MonetaryAmount deserialize(JsonParser p,
+				DeserializationContext ctxt) throws IOException {
+			BigDecimal value = readDecimal(p, ctxt);
+			return value == null ? null : new MonetaryAmount(value);
+		}
+	}
+
+	private static class PercentageDeserializer extends
+			StdDeserializer<Percentage> {
+
+		PercentageDeserializer() {
+			super(Percentage.class);
+		}
+
+		@Override
+		public Percentage deserialize(JsonParser p, DeserializationContext ctxt)
+				throws IOException {
+			BigDecimal value = readDecimal(p, ctxt);
+			return value == null ? null : new Percentage(value);
+		}
+	}
+}
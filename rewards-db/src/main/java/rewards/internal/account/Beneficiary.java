@@ -8,6 +8,8 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.Version;
 
 import common.money.MonetaryAmount;
 import common.money.Percentage;
@@ -37,6 +39,21 @@ public class Beneficiary {
 	@AttributeOverride(name = "value", column = @Column(name = "SAVINGS"))
 	private MonetaryAmount savings = MonetaryAmount.zero();
 
+	/**
+	 * Incremented on every update, so that savings credited to a stale copy
+	 * of the beneficiary are never written over newer savings.
+	 */
+	@Version
+	@Column(name = "VERSION")
+	private Integer version;
+
+	/**
+	 * The account this beneficiary is allocated to, told when the allocation
+	 * percentage changes; null until the account first uses the beneficiary.
+	 */
+	@Transient
+	private Account account;
+
 	protected Beneficiary() {
 	}
 
@@ -120,6 +137,16 @@ public class Beneficiary {
 	 */
 	public void setAllocationPercentage(Percentage allocationPercentage) {
 		this.allocationPercentage = allocationPercentage;
+		if (account != null) {
+			account.allocationsChanged();
+		}
+	}
+
+	/**
+	 * Links this beneficiary to the account it is allocated to.
+	 */
+	void setAccount(Account account) {
+		this.account = account;
 	}
 
 	/**
@@ -15,6 +15,8 @@ public class HibernateAccountRepository implements AccountRepository {
 
 	private SessionFactory sessionFactory;
 
+	private LockOptions lockOptions = LockOptions.NONE;
+
 	/**
 	 * Creates a new Hibernate account manager.
 	 * 
@@ -28,6 +30,20 @@ public class HibernateAccountRepository implements AccountRepository {
 				"Created HibernateAccountManager");
 	}
 
+	/**
+	 * Sets the lock taken on an account as it is loaded. Accounts and their
+	 * beneficiaries are versioned, so by default none is taken: a reward
+	 * made from an account changed meanwhile fails when flushed, and can be
+	 * retried. Set {@link LockOptions#UPGRADE} to lock the account for the
+	 * rest of the transaction instead.
+	 * 
+	 * @param lockOptions
+	 *            the lock to take
+	 */
+	public void setLockOptions(LockOptions lockOptions) {
+		this.lockOptions = lockOptions;
+	}
+
 	@Override
 	public String getInfo() {
 		return INFO;
@@ -42,7 +58,7 @@ public class HibernateAccountRepository implements AccountRepository {
 				.setParameter("ccn", creditCardNumber).uniqueResult();
 
 		Account account = (Account) getCurrentSession().load(Account.class,
-				accountId.longValue(), LockOptions.UPGRADE);
+				accountId.longValue(), lockOptions);
 
 		// Force beneficiaries to load too - avoid Hibernate lazy loading error
 		account.getBeneficiaries().size();
@@ -2,10 +2,14 @@ package accounts.internal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -18,6 +22,8 @@ import org.springframework.transaction.annotation.Transactional;
 import rewards.internal.account.Account;
 import rewards.internal.account.Beneficiary;
 import accounts.AccountManager;
+import accounts.AccountPage;
+import accounts.InvalidPageRequestException;
 
 import common.money.MonetaryAmount;
 import common.money.Percentage;
@@ -55,6 +61,57 @@ public abstract class AbstractAccountManagerTests {
 		assertEquals("Wrong number of accounts", getNumAccountsExpected(), accounts.size());
 	}
 
+	@Test
+	@Transactional
+	public void testGetAccountsInPages() {
+		Set<Long> ids = new HashSet<Long>();
+		long lastId = Long.MIN_VALUE;
+		String pageToken = null;
+		int pages = 0;
+		do {
+			AccountPage page = accountManager.getAccounts(pageToken, 4);
+			assertTrue("Page too large", page.getAccounts().size() <= 4);
+			for (Account account : page.getAccounts()) {
+				assertTrue("Accounts out of order", account.getEntityId() > lastId);
+				lastId = account.getEntityId();
+				assertTrue("Account on two pages", ids.add(lastId));
+				// fetched with the page
+				account.getBeneficiaries().size();
+			}
+			pageToken = page.getNextPageToken();
+			pages++;
+		} while (pageToken != null);
+		assertEquals("Wrong number of accounts", getNumAccountsExpected(), ids.size());
+		assertEquals("Wrong number of pages", (getNumAccountsExpected() + 3) / 4, pages);
+
+		AccountPage first = accountManager.getAccounts(null, 1);
+		assertEquals(1, first.getAccounts().size());
+		assertEquals(2, first.getAccounts().get(0).getBeneficiaries().size());
+		assertEquals(getNumAccountsExpected() > 1, !first.isLast());
+		assertEquals(Math.min(getNumAccountsExpected(), AccountPage.MAX_SIZE),
+				accountManager.getAccounts(null, Integer.MAX_VALUE).getAccounts().size());
+	}
+
+	@Test
+	@Transactional
+	public void testGetAccountsRejectsInvalidPages() {
+		// "eA" is "x" in Base64
+		for (String pageToken : new String[] { "not a token", "eA" }) {
+			try {
+				accountManager.getAccounts(pageToken, 10);
+				fail("Should have thrown InvalidPageRequestException for '" + pageToken + "'");
+			} catch (InvalidPageRequestException e) {
+				// expected
+			}
+		}
+		try {
+			accountManager.getAccounts(null, 0);
+			fail("Should have thrown InvalidPageRequestException for an empty page");
+		} catch (InvalidPageRequestException e) {
+			// expected
+		}
+	}
+
 	@Test
 	@Transactional
 	public void getAccount() {
@@ -0,0 +1,73 @@
+package rewards.internal.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Unit tests for the streaming JSON mapping of accounts and their beneficiaries.
+ */
+public class AccountJsonModuleTests {
+
+	private ObjectMapper mapper = new ObjectMapper().registerModule(new AccountJsonModule());
+
+	private Account account = new Account("123456789", "Keith and Keri Donald");
+
+	@Before
+	public void setUp() {
+		account.setEntityId(0L);
+		account.restoreBeneficiary(new Beneficiary("Annabelle", Percentage.valueOf("50%"), new MonetaryAmount(8.25)));
+		account.restoreBeneficiary(new Beneficiary("Corgan", Percentage.valueOf("50%"), MonetaryAmount.zero()));
+	}
+
+	@Test
+	public void writesMoneyAsPlainNumbersWithoutDerivedProperties() throws Exception {
+		JsonNode json = mapper.readTree(mapper.writeValueAsString(account));
+		assertEquals(0L, json.get("entityId").longValue());
+		assertEquals("123456789", json.get("number").textValue());
+		assertEquals("Keith and Keri Donald", json.get("name").textValue());
+		assertFalse(json.has("valid"));
+		assertEquals(2, json.get("beneficiaries").size());
+		JsonNode beneficiary = json.get("beneficiaries").get(0);
+		assertTrue(beneficiary.get("allocationPercentage").isNumber());
+		assertTrue(beneficiary.get("savings").isNumber());
+	}
+
+	@Test
+	public void roundTripsAccount() throws Exception {
+		Account copy = mapper.readValue(mapper.writeValueAsString(account), Account.class);
+		assertEquals(Long.valueOf(0), copy.getEntityId());
+		assertEquals("123456789", copy.getNumber());
+		assertEquals("Keith and Keri Donald", copy.getName());
+		assertTrue(copy.isValid());
+		assertEquals(new MonetaryAmount(8.25), copy.getBeneficiary("Annabelle").getSavings());
+		assertEquals(Percentage.valueOf("50%"), copy.getBeneficiary("Corgan").getAllocationPercentage());
+	}
+
+	@Test
+	public void readsReflectiveFormatIgnoringDerivedProperties() throws Exception {
+		String json = "{\"beneficiaries\":[{\"name\":\"Annabelle\",\"allocationPercentage\":\"1.00\",\"savings\":null,"
+				+ "\"entityId\":null}],\"valid\":true,\"number\":\"123456789\",\"name\":\"Keith and Keri Donald\"}";
+		Account copy = mapper.readValue(json, Account.class);
+		assertEquals("123456789", copy.getNumber());
+		assertEquals(Percentage.oneHundred(), copy.getBeneficiary("Annabelle").getAllocationPercentage());
+		assertTrue(copy.isValid());
+	}
+
+	@Test
+	public void roundTripsMoney() throws Exception {
+		assertEquals("8.25", mapper.writeValueAsString(new MonetaryAmount(8.25)));
+		assertEquals("0.25", mapper.writeValueAsString(Percentage.valueOf("25%")));
+		assertEquals(new MonetaryAmount(8.25), mapper.readValue("8.25", MonetaryAmount.class));
+		assertEquals(Percentage.valueOf("25%"), mapper.readValue("0.25", Percentage.class));
+	}
+}
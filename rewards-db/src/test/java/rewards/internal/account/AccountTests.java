@@ -54,4 +54,54 @@ public class AccountTests {
 		assertEquals(MonetaryAmount.valueOf("50.00"), contribution.getDistribution("Annabelle").getAmount());
 		assertEquals(MonetaryAmount.valueOf("50.00"), contribution.getDistribution("Corgan").getAmount());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void validityIsRecomputedWhenBeneficiaryAdded() {
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+		assertTrue(account.isValid());
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+		assertFalse(account.isValid());
+	}
+
+	@Test
+	public void makeContributionDistributesToEveryBeneficiary() {
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+		account.makeContribution(MonetaryAmount.valueOf("10.00"));
+		account.addBeneficiary("Corgan", Percentage.zero());
+		AccountContribution contribution = account.makeContribution(MonetaryAmount.valueOf("100.00"));
+		assertEquals(2, contribution.getDistributions().size());
+		assertEquals(MonetaryAmount.valueOf("110.00"), contribution.getDistribution("Annabelle").getTotalSavings());
+		assertEquals(MonetaryAmount.zero(), contribution.getDistribution("Corgan").getAmount());
+		assertEquals(MonetaryAmount.valueOf("110.00"), account.getBeneficiary("Annabelle").getSavings());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getBeneficiaryWithUnknownName() {
+		account.addBeneficiary("Annabelle");
+		account.getBeneficiary("Corgan");
+	}
+
+	@Test
+	public void validityIsRecomputedWhenAllocationChanged() {
+		account.addBeneficiary("Annabelle", Percentage.valueOf("50%"));
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+		assertTrue(account.isValid());
+		account.getBeneficiary("Corgan").setAllocationPercentage(Percentage.valueOf("40%"));
+		assertFalse(account.isValid());
+		account.removeBeneficiary("Corgan");
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+		assertTrue(account.isValid());
+	}
+
+	@Test
+	public void makeContributionUsesChangedAllocation() {
+		account.addBeneficiary("Annabelle", Percentage.valueOf("50%"));
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+		account.makeContribution(MonetaryAmount.valueOf("100.00"));
+		account.getBeneficiary("Annabelle").setAllocationPercentage(Percentage.valueOf("80%"));
+		account.getBeneficiary("Corgan").setAllocationPercentage(Percentage.valueOf("20%"));
+		AccountContribution contribution = account.makeContribution(MonetaryAmount.valueOf("100.00"));
+		assertEquals(MonetaryAmount.valueOf("80.00"), contribution.getDistribution("Annabelle").getAmount());
+		assertEquals(MonetaryAmount.valueOf("20.00"), contribution.getDistribution("Corgan").getAmount());
+	}
+}
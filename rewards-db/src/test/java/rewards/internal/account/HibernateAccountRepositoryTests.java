@@ -5,9 +5,11 @@ import javax.sql.DataSource;
 import org.junit.Assert;
 
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.orm.hibernate4.HibernateTransactionManager;
 import org.springframework.orm.hibernate4.LocalSessionFactoryBean;
@@ -15,6 +17,8 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 
+import common.money.MonetaryAmount;
+
 /**
  * Manually configured integration test for the Hibernate based account
  * repository implementation. Tests repository behavior and verifies the Account
@@ -27,9 +31,14 @@ public class HibernateAccountRepositoryTests extends
 
 	private TransactionStatus status;
 
+	private SessionFactory sessionFactory;
+
+	private DataSource dataSource;
+
 	@Before
 	public void setUp() throws Exception {
-		SessionFactory sessionFactory = createTestSessionFactory();
+		dataSource = createTestDataSource();
+		sessionFactory = createTestSessionFactory();
 		accountRepository = new HibernateAccountRepository(sessionFactory);
 		transactionManager = new HibernateTransactionManager(sessionFactory);
 		status = transactionManager
@@ -43,6 +52,23 @@ public class HibernateAccountRepositoryTests extends
 				accountRepository instanceof HibernateAccountRepository);
 	}
 
+	@Test
+	public void staleBeneficiaryNotOverwritten() {
+		Account account = accountRepository
+				.findByCreditCard("1234123412341234");
+		// credited and committed by someone else meanwhile
+		new JdbcTemplate(dataSource)
+				.update("update T_ACCOUNT_BENEFICIARY set SAVINGS = 1.00, VERSION = VERSION + 1 where NAME = 'Annabelle'");
+
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		try {
+			sessionFactory.getCurrentSession().flush();
+			Assert.fail("Should have thrown StaleStateException");
+		} catch (StaleStateException e) {
+			// expected
+		}
+	}
+
 	@After
 	public void tearDown() throws Exception {
 		// rollback the transaction to avoid corrupting other tests
@@ -53,7 +79,7 @@ public class HibernateAccountRepositoryTests extends
 	private SessionFactory createTestSessionFactory() throws Exception {
 		// simulate the Spring bean initialization lifecycle
 		LocalSessionFactoryBean factoryBean = new LocalSessionFactoryBean();
-		factoryBean.setDataSource(createTestDataSource());
+		factoryBean.setDataSource(dataSource);
 		Class<?>[] annotatedClasses = new Class<?>[] { Account.class,
 				Beneficiary.class };
 		factoryBean.setAnnotatedClasses(annotatedClasses);
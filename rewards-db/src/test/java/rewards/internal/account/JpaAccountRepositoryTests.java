@@ -4,6 +4,7 @@ import java.util.Properties;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.OptimisticLockException;
 import javax.sql.DataSource;
 
 import org.junit.Assert;
@@ -11,6 +12,7 @@ import org.junit.Assert;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
@@ -19,6 +21,8 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 
+import common.money.MonetaryAmount;
+
 /**
  * Manually configured integration test for the JPA based account repository
  * implementation.Tests repository behavior and verifies the Account
@@ -30,11 +34,15 @@ public class JpaAccountRepositoryTests extends AbstractAccountRepositoryTests {
 
 	private TransactionStatus transactionStatus;
 
+	private EntityManager entityManager;
+
+	private DataSource dataSource;
+
 	@Before
 	public void setUp() throws Exception {
+		dataSource = createTestDataSource();
 		EntityManagerFactory entityManagerFactory = createEntityManagerFactory();
-		EntityManager entityManager = entityManagerFactory
-				.createEntityManager();
+		entityManager = entityManagerFactory.createEntityManager();
 		accountRepository = new JpaAccountRepository(entityManager);
 
 		// begin a transaction
@@ -50,6 +58,29 @@ public class JpaAccountRepositoryTests extends AbstractAccountRepositoryTests {
 				accountRepository instanceof JpaAccountRepository);
 	}
 
+	@Test
+	public void staleBeneficiaryNotOverwritten() {
+		// flush in a transaction of the repository's own entity manager
+		transactionManager.rollback(transactionStatus);
+		transactionManager = null;
+		entityManager.getTransaction().begin();
+		try {
+			Account account = accountRepository
+					.findByCreditCard("1234123412341234");
+			// credited and committed by someone else meanwhile
+			new JdbcTemplate(dataSource)
+					.update("update T_ACCOUNT_BENEFICIARY set SAVINGS = 1.00, VERSION = VERSION + 1 where NAME = 'Annabelle'");
+
+			account.makeContribution(MonetaryAmount.valueOf("8.00"));
+			entityManager.flush();
+			Assert.fail("Should have thrown OptimisticLockException");
+		} catch (OptimisticLockException e) {
+			// expected
+		} finally {
+			entityManager.getTransaction().rollback();
+		}
+	}
+
 	@After
 	public void tearDown() throws Exception {
 		// rollback the transaction to avoid corrupting other tests
@@ -60,7 +91,7 @@ public class JpaAccountRepositoryTests extends AbstractAccountRepositoryTests {
 	private EntityManagerFactory createEntityManagerFactory() throws Exception {
 		// create a FactoryBean to help create a Jpa SessionFactory
 		LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
-		factoryBean.setDataSource(createTestDataSource());
+		factoryBean.setDataSource(dataSource);
 		factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
 		factoryBean.setJpaProperties(createJpaProperties());
 
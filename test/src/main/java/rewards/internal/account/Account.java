@@ -1,7 +1,9 @@
 package rewards.internal.account;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import rewards.AccountContribution;
@@ -28,6 +30,12 @@ public class Account extends Entity {
 
 	private Set<Beneficiary> beneficiaries = new HashSet<Beneficiary>();
 
+	/**
+	 * The beneficiaries with their allocations and the outcome of the 100% check, computed once and reused for every
+	 * contribution until a beneficiary is added.
+	 */
+	private AllocationTable allocations;
+
 	@SuppressWarnings("unused")
 	private Account() {
 	}
@@ -71,26 +79,14 @@ public class Account extends Entity {
 	 */
 	public void addBeneficiary(String beneficiaryName, Percentage allocationPercentage) {
 		beneficiaries.add(new Beneficiary(beneficiaryName, allocationPercentage));
+		allocations = null;
 	}
 
 	/**
 	 * Validation check that returns true only if the total beneficiary allocation adds up to 100%.
 	 */
 	public boolean isValid() {
-		Percentage totalPercentage = Percentage.zero();
-		for (Beneficiary b : beneficiaries) {
-			try {
-				totalPercentage = totalPercentage.add(b.getAllocationPercentage());
-			} catch (IllegalArgumentException e) {
-				// total would have been over 100% - return invalid
-				return false;
-			}
-		}
-		if (totalPercentage.equals(Percentage.oneHundred())) {
-			return true;
-		} else {
-			return false;
-		}
+		return allocations().valid;
 	}
 
 	/**
@@ -100,31 +96,47 @@ public class Account extends Entity {
 	 * @param contribution the contribution summary
 	 */
 	public AccountContribution makeContribution(MonetaryAmount amount) {
-		if (!isValid()) {
+		AllocationTable table = allocations();
+		if (!table.valid) {
 			throw new IllegalStateException(
 					"Cannot make contributions to this account: it has invalid beneficiary allocations");
 		}
-		Set<Distribution> distributions = distribute(amount);
+		Distribution[] distributions = distribute(table, amount);
 		return new AccountContribution(getNumber(), amount, distributions);
 	}
 
 	/**
 	 * Distribute the contribution amount among this account's beneficiaries.
+	 * @param table the current allocation table
 	 * @param amount the total contribution amount
 	 * @return the individual beneficiary distributions
 	 */
-	private Set<Distribution> distribute(MonetaryAmount amount) {
-		Set<Distribution> distributions = new HashSet<Distribution>(beneficiaries.size());
-		for (Beneficiary beneficiary : beneficiaries) {
-			MonetaryAmount distributionAmount = amount.multiplyBy(beneficiary.getAllocationPercentage());
+	private Distribution[] distribute(AllocationTable table, MonetaryAmount amount) {
+		Beneficiary[] beneficiaries = table.beneficiaries;
+		Percentage[] percentages = table.percentages;
+		Distribution[] distributions = new Distribution[beneficiaries.length];
+		for (int i = 0; i < beneficiaries.length; i++) {
+			Beneficiary beneficiary = beneficiaries[i];
+			MonetaryAmount distributionAmount = amount.multiplyBy(percentages[i]);
 			beneficiary.credit(distributionAmount);
-			Distribution distribution = new Distribution(beneficiary.getName(), distributionAmount, beneficiary
-					.getAllocationPercentage(), beneficiary.getSavings());
-			distributions.add(distribution);
+			distributions[i] = new Distribution(beneficiary.getName(), distributionAmount, percentages[i], beneficiary
+					.getSavings());
 		}
 		return distributions;
 	}
 
+	/**
+	 * Returns the allocation table, building it first if the beneficiaries changed since it was last used.
+	 */
+	private AllocationTable allocations() {
+		AllocationTable table = allocations;
+		if (table == null) {
+			table = new AllocationTable(beneficiaries);
+			allocations = table;
+		}
+		return table;
+	}
+
 	/**
 	 * Returns the beneficiaries for this account. Callers should not attempt to hold on or modify the returned set.
 	 * This method should only be used transitively; for example, called to facilitate account reporting.
@@ -141,12 +153,11 @@ public class Account extends Entity {
 	 * @return the beneficiary object
 	 */
 	public Beneficiary getBeneficiary(String name) {
-		for (Beneficiary b : beneficiaries) {
-			if (b.getName().equals(name)) {
-				return b;
-			}
+		Beneficiary beneficiary = allocations().beneficiariesByName.get(name);
+		if (beneficiary == null) {
+			throw new IllegalArgumentException("No such beneficiary with name '" + name + "'");
 		}
-		throw new IllegalArgumentException("No such beneficiary with name '" + name + "'");
+		return beneficiary;
 	}
 
 	/**
@@ -156,9 +167,41 @@ public class Account extends Entity {
 	 */
 	void restoreBeneficiary(Beneficiary beneficiary) {
 		beneficiaries.add(beneficiary);
+		allocations = null;
 	}
 
 	public String toString() {
 		return "Number = '" + number + "', name = " + name + "', beneficiaries = " + beneficiaries;
 	}
+
+	/**
+	 * A snapshot of an account's beneficiaries in iteration order, their allocation percentages, a name index and
+	 * whether the allocations add up to exactly 100%.
+	 */
+	private static class AllocationTable {
+
+		private final Beneficiary[] beneficiaries;
+
+		private final Percentage[] percentages;
+
+		private final Map<String, Beneficiary> beneficiariesByName;
+
+		private final boolean valid;
+
+		AllocationTable(Set<Beneficiary> beneficiaries) {
+			this.beneficiaries = beneficiaries.toArray(new Beneficiary[beneficiaries.size()]);
+			this.percentages = new Percentage[this.beneficiaries.length];
+			this.beneficiariesByName = new HashMap<String, Beneficiary>(this.beneficiaries.length * 2);
+			int totalBasisPoints = 0;
+			for (int i = 0; i < this.beneficiaries.length; i++) {
+				Beneficiary beneficiary = this.beneficiaries[i];
+				percentages[i] = beneficiary.getAllocationPercentage();
+				totalBasisPoints += percentages[i].basisPoints();
+				if (!beneficiariesByName.containsKey(beneficiary.getName())) {
+					beneficiariesByName.put(beneficiary.getName(), beneficiary);
+				}
+			}
+			this.valid = totalBasisPoints == Percentage.oneHundred().basisPoints();
+		}
+	}
 }
\ No newline at end of file
@@ -1,56 +1,255 @@
 package config;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jmx.support.RegistrationPolicy;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import rewards.RewardNetwork;
+import rewards.internal.IdempotentRewardNetwork;
+import rewards.internal.JdbcRewardContextRepository;
+import rewards.internal.RetryingRewardNetwork;
 import rewards.internal.RewardNetworkImpl;
 import rewards.internal.account.AccountRepository;
+import rewards.internal.account.CachingAccountRepository;
 import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.restaurant.BenefitAvailabilityPolicies;
+import rewards.internal.restaurant.CachingRestaurantRepository;
 import rewards.internal.restaurant.JdbcRestaurantRepository;
 import rewards.internal.restaurant.RestaurantRepository;
+import rewards.internal.reward.ConfirmationNumberAllocator;
 import rewards.internal.reward.JdbcRewardRepository;
 import rewards.internal.reward.RewardRepository;
+import rewards.internal.reward.WriteBehindRewardRepository;
+
+import common.repository.CreditCardIndex;
 
 
 @Configuration
 @EnableTransactionManagement
+@EnableMBeanExport(registration = RegistrationPolicy.REPLACE_EXISTING)
 public class RewardsConfig {
 
 	@Autowired
 	DataSource dataSource;
+	
+	@Autowired
+	PlatformTransactionManager transactionManager;
+	
+	@Value("${rewards.confirmationNumbers.blockSize:100}")
+	int confirmationNumberBlockSize;
+	
+	@Value("${rewards.retry.enabled:false}")
+	boolean retry;
+	
+	@Value("${rewards.retry.maxAttempts:3}")
+	int retryMaxAttempts;
+	
+	@Value("${rewards.retry.backOff:10}")
+	long retryBackOff;
+	
+	@Value("${rewards.idempotent.enabled:false}")
+	boolean idempotent;
+	
+	@Value("${rewards.idempotent.capacity:100000}")
+	int idempotentCapacity;
+	
+	@Value("${rewards.idempotent.window:10}")
+	long idempotentWindow;
+	
+	@Value("${rewards.combinedLookup:false}")
+	boolean combinedLookup;
+	
+	@Value("${rewards.creditCardIndex.enabled:false}")
+	boolean creditCardIndexEnabled;
+	
+	@Value("${rewards.incrementSavings:false}")
+	boolean incrementSavings;
+	
+	@Value("${rewards.writeBehind.enabled:false}")
+	boolean writeBehind;
+	
+	@Value("${rewards.writeBehind.capacity:10000}")
+	int writeBehindCapacity;
 		
+	/**
+	 * The reward network the application uses: the transactional
+	 * one behind a retrying one. With rewards.idempotent.enabled
+	 * set, a dining submitted again is rejected rather than
+	 * rewarded twice. The last 100000 dinings of the last 10
+	 * minutes are remembered in memory, unless configured
+	 * otherwise; the rewards recorded settle the rest, unless
+	 * written behind.
+	 */
 	@Bean
+	@Primary
 	public RewardNetwork rewardNetwork(){
-		return new RewardNetworkImpl(
+		if (!idempotent) {
+			return retryingRewardNetwork();
+		}
+		IdempotentRewardNetwork rewardNetwork = new IdempotentRewardNetwork(
+			retryingRewardNetwork(), idempotentCapacity, idempotentWindow, TimeUnit.MINUTES);
+		if (!writeBehind) {
+			JdbcRewardRepository rewards = new JdbcRewardRepository();
+			rewards.setConfirmationNumberAllocator(confirmationNumberAllocator());
+			rewards.setDataSource(dataSource);
+			rewardNetwork.setRecordedCheck(rewards::isRecorded);
+		}
+		return rewardNetwork;
+	}
+	
+	/**
+	 * With rewards.retry.enabled set, rewards failing on savings
+	 * written meanwhile by another reward are retried: up to 3
+	 * attempts in all, at least 10ms apart at random, unless
+	 * configured otherwise. Otherwise each reward is attempted
+	 * once. Not a bean of its own, so that no instance is ever
+	 * registered under two names: it is the rewardNetwork bean
+	 * itself, its retries exported over JMX, unless rewards are
+	 * idempotent, when it is wrapped in that bean.
+	 */
+	private RetryingRewardNetwork retryingRewardNetwork(){
+		RetryingRewardNetwork rewardNetwork = new RetryingRewardNetwork(
+			transactionalRewardNetwork(), retry ? retryMaxAttempts : 1);
+		rewardNetwork.setBackOff(retryBackOff, TimeUnit.MILLISECONDS);
+		return rewardNetwork;
+	}
+	
+	/**
+	 * With rewards.combinedLookup set, the account and restaurant
+	 * of a dining are loaded with a single query, at the cost of
+	 * bypassing their caches: one round trip per reward for sure,
+	 * rather than none on a hit and two on a miss.
+	 */
+	@Bean
+	public RewardNetwork transactionalRewardNetwork(){
+		RewardNetworkImpl rewardNetwork = new RewardNetworkImpl(
 			accountRepository(), 
 			restaurantRepository(), 
 			rewardRepository());
+		if (combinedLookup) {
+			JdbcAccountRepository accounts = new JdbcAccountRepository();
+			accounts.setDataSource(dataSource);
+			JdbcRestaurantRepository restaurants = new JdbcRestaurantRepository();
+			restaurants.setDataSource(dataSource);
+			restaurants.setBenefitAvailabilityPolicies(benefitAvailabilityPolicies());
+			JdbcRewardContextRepository contexts =
+				new JdbcRewardContextRepository(accounts, restaurants, dataSource);
+			if (creditCardIndexEnabled) {
+				accounts.setCreditCardIndex(creditCardIndex());
+				contexts.setCreditCardIndex(creditCardIndex());
+			}
+			rewardNetwork.setRewardContextRepository(contexts);
+		}
+		return rewardNetwork;
 	}
 	
+	/**
+	 * The accounts of up to 10000 credit cards are cached, their
+	 * savings kept up to date as rewards are committed. With
+	 * rewards.incrementSavings set, savings are written as
+	 * increments, so rewards of an account may overlap.
+	 */
 	@Bean
 	public AccountRepository accountRepository(){
 		JdbcAccountRepository repository = new JdbcAccountRepository();
 		repository.setDataSource(dataSource);
-		return repository;
+		repository.setIncrementSavings(incrementSavings);
+		if (creditCardIndexEnabled) {
+			repository.setCreditCardIndex(creditCardIndex());
+		}
+		return new CachingAccountRepository(repository, 10000);
+	}
+	
+	/**
+	 * With rewards.creditCardIndex.enabled set, the accounts of all
+	 * credit cards are indexed in memory on start up, so accounts
+	 * are loaded by id. Credit cards are then only to be added,
+	 * moved or removed through the accountRepository bean, which
+	 * takes them out of the index.
+	 */
+	@Bean
+	public CreditCardIndex creditCardIndex(){
+		CreditCardIndex index = new CreditCardIndex();
+		if (creditCardIndexEnabled) {
+			new JdbcTemplate(dataSource).query(CreditCardIndex.SELECT_CREDIT_CARDS,
+				(ResultSetExtractor<CreditCardIndex>) index::load);
+		}
+		return index;
 	}
 	
+	/**
+	 * Restaurants rarely change, so they are cached in front of the
+	 * database: up to 1000 of them for 10 minutes, unknown merchant
+	 * numbers for 1 minute.
+	 */
 	@Bean
 	public RestaurantRepository restaurantRepository(){
 		JdbcRestaurantRepository repository = new JdbcRestaurantRepository();
 		repository.setDataSource(dataSource);
-		return repository;
+		repository.setBenefitAvailabilityPolicies(benefitAvailabilityPolicies());
+		CachingRestaurantRepository cache = new CachingRestaurantRepository(
+			repository, 1000, 10, TimeUnit.MINUTES);
+		cache.setNegativeTimeToLive(1, TimeUnit.MINUTES);
+		return cache;
+	}
+	
+	/**
+	 * The benefit availability rules of restaurants are compiled
+	 * once, and shared by every repository loading restaurants,
+	 * so their monthly caps count every dining. Caps start the
+	 * count of each account from the rewards recorded.
+	 */
+	@Bean
+	public BenefitAvailabilityPolicies benefitAvailabilityPolicies(){
+		JdbcRewardRepository rewards = new JdbcRewardRepository();
+		rewards.setConfirmationNumberAllocator(confirmationNumberAllocator());
+		rewards.setDataSource(dataSource);
+		BenefitAvailabilityPolicies policies = new BenefitAvailabilityPolicies();
+		policies.setRewardedDinings(rewards::countRewardedDinings);
+		return policies;
 	}
 	
+	/**
+	 * With rewards.writeBehind.enabled set, reward records are
+	 * queued and inserted in batches in the background, through a
+	 * connection kept for the purpose, so callers waiting for their
+	 * records cannot hold every one the flusher could use. Otherwise,
+	 * when rewards are idempotent, each is recorded with the
+	 * fingerprint of its dining, a unique key: a duplicate then
+	 * fails its own reward rather than a whole batch of records.
+	 */
 	@Bean
 	public RewardRepository rewardRepository(){
 		JdbcRewardRepository repository = new JdbcRewardRepository();
+		repository.setConfirmationNumberAllocator(confirmationNumberAllocator());
 		repository.setDataSource(dataSource);
+		repository.setRecordFingerprints(idempotent && !writeBehind);
+		if (writeBehind) {
+			return new WriteBehindRewardRepository(
+				repository, transactionManager, writeBehindCapacity, dataSource);
+		}
 		return repository;
 	}
 	
+	/**
+	 * Confirmation numbers are reserved from the database sequence
+	 * in blocks, 100 at a time unless configured otherwise.
+	 */
+	@Bean
+	public ConfirmationNumberAllocator confirmationNumberAllocator(){
+		return new ConfirmationNumberAllocator(dataSource, confirmationNumberBlockSize);
+	}
+	
 }
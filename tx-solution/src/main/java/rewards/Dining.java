@@ -105,7 +105,11 @@ public class Dining {
 	}
 
 	public int hashCode() {
-		return amount.hashCode() + creditCardNumber.hashCode() + merchantNumber.hashCode() + date.hashCode();
+		// mix the attributes in order, so that dinings differing in more than one attribute still hash apart
+		int hash = amount.hashCode();
+		hash = 31 * hash + creditCardNumber.hashCode();
+		hash = 31 * hash + merchantNumber.hashCode();
+		return 31 * hash + date.hashCode();
 	}
 
 	public String toString() {
@@ -0,0 +1,101 @@
+package rewards;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifies a dining by everything that makes it the dining it is: the credit card charged, the merchant charging it,
+ * the amount and the date. Two dinings have the same fingerprint if and only if they are equal, but for the odd
+ * collision of a 128 bit digest, so a fingerprint seen before marks a dining submitted before.
+ *
+ * The fingerprint is the first 128 bits of the SHA-256 digest of the dining's attributes, and is written as 32
+ * hexadecimal digits.
+ *
+ * A value object. Immutable.
+ */
+public class DiningFingerprint {
+
+	private final long high;
+
+	private final long low;
+
+	private DiningFingerprint(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	/**
+	 * Returns the fingerprint of a dining.
+	 * @param dining the dining
+	 * @return its fingerprint
+	 */
+	public static DiningFingerprint of(Dining dining) {
+		// separate the attributes, so that no two dinings are written the same
+		String attributes = dining.getCreditCardNumber() + '\0' + dining.getMerchantNumber() + '\0'
+				+ dining.getAmount().asBigDecimal().toPlainString() + '\0'
+				+ new java.sql.Date(dining.getDate().inMilliseconds()).toLocalDate().toEpochDay();
+		ByteBuffer digest = ByteBuffer.wrap(sha256().digest(attributes.getBytes(StandardCharsets.UTF_8)));
+		return new DiningFingerprint(digest.getLong(), digest.getLong());
+	}
+
+	/**
+	 * Parses a fingerprint written as 32 hexadecimal digits.
+	 * @param fingerprint the fingerprint as returned by {@link #toString()}
+	 * @return the fingerprint
+	 */
+	public static DiningFingerprint valueOf(String fingerprint) {
+		if (fingerprint.length() != 32) {
+			throw new IllegalArgumentException("A dining fingerprint has 32 hexadecimal digits, not '" + fingerprint
+					+ "'");
+		}
+		return new DiningFingerprint(Long.parseUnsignedLong(fingerprint.substring(0, 16), 16),
+				Long.parseUnsignedLong(fingerprint.substring(16), 16));
+	}
+
+	/**
+	 * Returns the first 64 bits of the fingerprint.
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * Returns the last 64 bits of the fingerprint.
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof DiningFingerprint)) {
+			return false;
+		}
+		DiningFingerprint other = (DiningFingerprint) o;
+		return high == other.high && low == other.low;
+	}
+
+	public int hashCode() {
+		// the bits of a digest are evenly spread already
+		return (int) low;
+	}
+
+	public String toString() {
+		return hex(high) + hex(low);
+	}
+
+	private static String hex(long bits) {
+		String digits = Long.toHexString(bits);
+		return "0000000000000000".substring(digits.length()) + digits;
+	}
+}
@@ -0,0 +1,31 @@
+package rewards;
+
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * Thrown when a dining is submitted for reward again while its first submission is still being rewarded. Unlike a
+ * {@link DuplicateDiningException}, the dining is not known to be rewarded: should the first submission fail, the
+ * dining is to be submitted again. A concurrency failure, so retrying it after a while is safe.
+ */
+@SuppressWarnings("serial")
+public class DiningInProgressException extends ConcurrencyFailureException {
+
+	private DiningFingerprint fingerprint;
+
+	/**
+	 * Creates a new exception.
+	 * @param dining the dining submitted again
+	 * @param fingerprint the fingerprint it was recognized by
+	 */
+	public DiningInProgressException(Dining dining, DiningFingerprint fingerprint) {
+		super(dining + " is being rewarded (fingerprint " + fingerprint + ")");
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Returns the fingerprint of the dining submitted again.
+	 */
+	public DiningFingerprint getFingerprint() {
+		return fingerprint;
+	}
+}
@@ -0,0 +1,38 @@
+package rewards;
+
+/**
+ * Thrown when a dining is submitted for reward again, for instance by a redelivered message or a retried request. The
+ * account was rewarded for the dining, or is being rewarded for it, by the first submission.
+ */
+@SuppressWarnings("serial")
+public class DuplicateDiningException extends RuntimeException {
+
+	private DiningFingerprint fingerprint;
+
+	/**
+	 * Creates a new exception.
+	 * @param dining the dining submitted again
+	 * @param fingerprint the fingerprint it was recognized by
+	 */
+	public DuplicateDiningException(Dining dining, DiningFingerprint fingerprint) {
+		this(dining, fingerprint, null);
+	}
+
+	/**
+	 * Creates a new exception.
+	 * @param dining the dining submitted again
+	 * @param fingerprint the fingerprint it was recognized by
+	 * @param cause the failure that revealed the duplicate, such as a violated unique key
+	 */
+	public DuplicateDiningException(Dining dining, DiningFingerprint fingerprint, Throwable cause) {
+		super(dining + " was submitted before (fingerprint " + fingerprint + ")", cause);
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Returns the fingerprint of the dining submitted again.
+	 */
+	public DiningFingerprint getFingerprint() {
+		return fingerprint;
+	}
+}
@@ -1,5 +1,7 @@
 package rewards;
 
+import java.util.List;
+
 /**
  * Rewards a member account for dining at a restaurant.
  * 
@@ -25,4 +27,16 @@ public interface RewardNetwork {
 	 * @return confirmation of the reward
 	 */
 	public RewardConfirmation rewardAccountFor(Dining dining);
+
+	/**
+	 * Reward accounts for a batch of dinings as a single unit of work.
+	 * 
+	 * Each dining is subject to the same eligibility rules as {@link #rewardAccountFor(Dining)}. A dining that is not
+	 * eligible does not prevent the others from being rewarded; its result reports why instead. Dinings charged to the
+	 * same account are applied in the order given.
+	 * 
+	 * @param dinings the charges made to credit cards for dining at restaurants
+	 * @return one result per dining, in the same order as the dinings
+	 */
+	public List<RewardResult> rewardAccountsFor(List<Dining> dinings);
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package rewards;
+
+/**
+ * The outcome of rewarding an account for one dining of a batch: either the confirmation of the reward, or the reason
+ * the dining could not be rewarded.
+ *
+ * A value object. Immutable.
+ */
+public class RewardResult {
+
+	private Dining dining;
+
+	private RewardConfirmation confirmation;
+
+	private RuntimeException failure;
+
+	private RewardResult(Dining dining, RewardConfirmation confirmation, RuntimeException failure) {
+		this.dining = dining;
+		this.confirmation = confirmation;
+		this.failure = failure;
+	}
+
+	/**
+	 * Creates the result of a dining that was rewarded.
+	 * @param dining the dining
+	 * @param confirmation confirmation of the reward
+	 */
+	public static RewardResult confirmed(Dining dining, RewardConfirmation confirmation) {
+		return new RewardResult(dining, confirmation, null);
+	}
+
+	/**
+	 * Creates the result of a dining that could not be rewarded.
+	 * @param dining the dining
+	 * @param failure the reason the dining was not rewarded
+	 */
+	public static RewardResult failed(Dining dining, RuntimeException failure) {
+		return new RewardResult(dining, null, failure);
+	}
+
+	/**
+	 * Returns the dining this is the result for.
+	 */
+	public Dining getDining() {
+		return dining;
+	}
+
+	/**
+	 * Returns true if the dining was rewarded.
+	 */
+	public boolean isConfirmed() {
+		return confirmation != null;
+	}
+
+	/**
+	 * Returns confirmation of the reward, or null if the dining was not rewarded.
+	 */
+	public RewardConfirmation getConfirmation() {
+		return confirmation;
+	}
+
+	/**
+	 * Returns the reason the dining was not rewarded, or null if it was.
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+
+	public String toString() {
+		return isConfirmed() ? "Reward " + confirmation + " for " + dining : "No reward for " + dining + ": "
+				+ failure.getMessage();
+	}
+}
@@ -0,0 +1,273 @@
+package rewards.internal;
+
+import java.time.Clock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.util.Assert;
+
+import rewards.DiningFingerprint;
+
+/**
+ * Remembers the fingerprints of the dinings submitted for reward over a window of time, so that a dining submitted
+ * again within the window is recognized without going to the database.
+ *
+ * Fingerprints are claimed in a concurrent map, which holds at most a fixed number of them: past the window, or once
+ * the map is full, the oldest are evicted. Behind the map, a pair of Bloom filters remembers every fingerprint claimed
+ * over the last one to two windows, however many there were. A fingerprint the filters have not seen is certainly
+ * new; one they may have seen, but missing from the map, is a suspect: either it was evicted early, or the filters
+ * answered falsely. Suspects should be checked against the rewards recorded.
+ *
+ * A claim is in progress until the dining is rewarded, when it is completed, or fails to be, when it is released. A
+ * dining claimed again meanwhile is told apart from one rewarded already, as it may yet have to be rewarded.
+ *
+ * Thread-safe.
+ */
+class DiningIndex {
+
+	/**
+	 * The false positive rate the filters are sized for, at their capacity.
+	 */
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+
+	private final int capacity;
+
+	private final long window;
+
+	private final ConcurrentHashMap<DiningFingerprint, Claim> claims =
+			new ConcurrentHashMap<DiningFingerprint, Claim>();
+
+	/**
+	 * The claims in the order made, for eviction. May still hold claims released since.
+	 */
+	private final Queue<Claim> order = new ConcurrentLinkedQueue<Claim>();
+
+	private volatile Generation current;
+
+	private volatile Generation previous;
+
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	private Clock clock = Clock.systemUTC();
+
+	/**
+	 * Creates a new dining index.
+	 * @param capacity the most fingerprints held in the map
+	 * @param window how long a fingerprint is remembered
+	 * @param unit the unit of the window
+	 */
+	DiningIndex(int capacity, long window, TimeUnit unit) {
+		Assert.isTrue(capacity > 0, "The capacity must be positive");
+		Assert.isTrue(window > 0, "The window must be positive");
+		this.capacity = capacity;
+		this.window = unit.toMillis(window);
+	}
+
+	/**
+	 * Sets the clock that decides when fingerprints expire. For testing.
+	 */
+	void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Claims a fingerprint for a dining being rewarded.
+	 * @param fingerprint the fingerprint of the dining
+	 * @return the outcome of the claim
+	 */
+	Outcome claim(DiningFingerprint fingerprint) {
+		long now = clock.millis();
+		boolean seen = filtered(fingerprint, now);
+		Claim claim = new Claim(fingerprint, now);
+		Claim existing = claims.putIfAbsent(fingerprint, claim);
+		while (existing != null) {
+			if (existing.claimed + window > now) {
+				return existing.completed ? Outcome.DUPLICATE : Outcome.IN_PROGRESS;
+			}
+			// not evicted yet, but past the window
+			if (claims.replace(fingerprint, existing, claim)) {
+				break;
+			}
+			existing = claims.putIfAbsent(fingerprint, claim);
+		}
+		order.offer(claim);
+		evict(now);
+		return seen ? Outcome.SUSPECT : Outcome.NEW;
+	}
+
+	/**
+	 * Completes the claim of a dining that was rewarded, or found to be rewarded already.
+	 * @param fingerprint the fingerprint of the dining
+	 */
+	void complete(DiningFingerprint fingerprint) {
+		Claim claim = claims.get(fingerprint);
+		if (claim != null) {
+			claim.completed = true;
+		}
+	}
+
+	/**
+	 * Forgets the claim of a dining that could not be rewarded, so that it may be submitted again. The filters still
+	 * remember it, so it will be a suspect.
+	 * @param fingerprint the fingerprint of the dining
+	 */
+	void release(DiningFingerprint fingerprint) {
+		claims.remove(fingerprint);
+	}
+
+	/**
+	 * Returns the number of fingerprints held in the map.
+	 */
+	int size() {
+		return claims.size();
+	}
+
+	/**
+	 * Returns the number of fingerprints evicted from the map before the end of their window, for want of room.
+	 */
+	long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	/**
+	 * Evicts the claims past the window, and the oldest claims while the map is over capacity.
+	 */
+	private void evict(long now) {
+		Claim oldest;
+		while ((oldest = order.peek()) != null) {
+			boolean expired = oldest.claimed + window <= now;
+			if (!expired && claims.size() <= capacity) {
+				return;
+			}
+			if (order.remove(oldest) && claims.remove(oldest.fingerprint, oldest) && !expired) {
+				evictedCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Adds a fingerprint to the filters, first starting a new generation if there is none yet or the current one is a
+	 * window old.
+	 * @return true if the filters may have seen the fingerprint before
+	 */
+	private boolean filtered(DiningFingerprint fingerprint, long now) {
+		Generation generation = current;
+		if (generation == null || generation.started + window <= now) {
+			synchronized (this) {
+				generation = current;
+				if (generation == null || generation.started + window <= now) {
+					// after a quiet spell, the current generation may be too old to keep
+					previous = generation != null && generation.started + 2 * window > now ? generation : null;
+					generation = new Generation(now, capacity);
+					current = generation;
+				}
+			}
+		}
+		Generation older = previous;
+		boolean seen = generation.put(fingerprint);
+		return seen || (older != null && older.mightContain(fingerprint));
+	}
+
+	/**
+	 * The outcome of claiming a fingerprint.
+	 */
+	enum Outcome {
+
+		/**
+		 * Certainly not claimed within the window.
+		 */
+		NEW,
+
+		/**
+		 * Not held in the map, but possibly claimed within the window.
+		 */
+		SUSPECT,
+
+		/**
+		 * Claimed within the window by a dining being rewarded, which may yet fail.
+		 */
+		IN_PROGRESS,
+
+		/**
+		 * Claimed within the window by a dining rewarded already.
+		 */
+		DUPLICATE
+	}
+
+	private static class Claim {
+
+		final DiningFingerprint fingerprint;
+
+		final long claimed;
+
+		volatile boolean completed;
+
+		Claim(DiningFingerprint fingerprint, long claimed) {
+			this.fingerprint = fingerprint;
+			this.claimed = claimed;
+		}
+	}
+
+	/**
+	 * A Bloom filter of the fingerprints claimed over one window. The bits probed for a fingerprint are derived from
+	 * its two halves, which are independent hashes already.
+	 */
+	private static class Generation {
+
+		final long started;
+
+		private final AtomicLongArray words;
+
+		private final long bits;
+
+		private final int probes;
+
+		Generation(long started, int expected) {
+			this.started = started;
+			long size = (long) Math.ceil(-expected * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+			int wordCount = (int) Math.max(1, (size + 63) / 64);
+			this.words = new AtomicLongArray(wordCount);
+			this.bits = wordCount * 64L;
+			this.probes = Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+		}
+
+		/**
+		 * Sets the bits of a fingerprint.
+		 * @return true if they were all set already
+		 */
+		boolean put(DiningFingerprint fingerprint) {
+			boolean seen = true;
+			for (int i = 0; i < probes; i++) {
+				long bit = bit(fingerprint, i);
+				int word = (int) (bit >>> 6);
+				long mask = 1L << bit;
+				long value = words.get(word);
+				if ((value & mask) == 0) {
+					seen = false;
+					while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask)) {
+						value = words.get(word);
+					}
+				}
+			}
+			return seen;
+		}
+
+		boolean mightContain(DiningFingerprint fingerprint) {
+			for (int i = 0; i < probes; i++) {
+				long bit = bit(fingerprint, i);
+				if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private long bit(DiningFingerprint fingerprint, int probe) {
+			return Math.floorMod(fingerprint.getHigh() + probe * fingerprint.getLow(), bits);
+		}
+	}
+}
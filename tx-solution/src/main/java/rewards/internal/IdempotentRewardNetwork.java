@@ -0,0 +1,224 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import rewards.Dining;
+import rewards.DiningFingerprint;
+import rewards.DiningInProgressException;
+import rewards.DuplicateDiningException;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+/**
+ * Rewards each dining once, however many times it is submitted: a redelivered message or a retried request is
+ * rejected with a DuplicateDiningException rather than rewarded again. One submitted while the first submission is
+ * still being rewarded is rejected with a DiningInProgressException instead, to be retried: the first submission may
+ * yet fail.
+ *
+ * Dinings are recognized by their fingerprint. The fingerprints submitted recently are kept in a bounded index in
+ * memory, which rejects a dining submitted again within its window without a database read. A dining the index has
+ * certainly not seen, the common case, is rewarded straight away. Only a dining the index may have seen, but no longer
+ * holds, is checked against the rewards recorded first. Rewards recorded with their fingerprint back all this with a
+ * unique key, which settles dinings submitted to different nodes, or submitted again after the window.
+ *
+ * A dining that could not be rewarded is forgotten, so that it may be submitted again.
+ */
+@ManagedResource(objectName = "rewards:name=rewardNetworkDuplicates")
+public class IdempotentRewardNetwork implements RewardNetwork {
+
+	private RewardNetwork rewardNetwork;
+
+	private DiningIndex index;
+
+	private Predicate<DiningFingerprint> recorded;
+
+	private final AtomicLong submittedCount = new AtomicLong();
+
+	private final AtomicLong duplicateCount = new AtomicLong();
+
+	private final AtomicLong inProgressCount = new AtomicLong();
+
+	private final AtomicLong suspectCount = new AtomicLong();
+
+	private final AtomicLong recordedDuplicateCount = new AtomicLong();
+
+	/**
+	 * Creates a new idempotent reward network.
+	 * @param rewardNetwork the reward network to reward new dinings with
+	 * @param capacity the most dinings held in the index
+	 * @param window how long a dining is held in the index
+	 * @param unit the unit of the window
+	 */
+	public IdempotentRewardNetwork(RewardNetwork rewardNetwork, int capacity, long window, TimeUnit unit) {
+		this(rewardNetwork, new DiningIndex(capacity, window, unit));
+	}
+
+	IdempotentRewardNetwork(RewardNetwork rewardNetwork, DiningIndex index) {
+		this.rewardNetwork = rewardNetwork;
+		this.index = index;
+	}
+
+	/**
+	 * Sets the check whether a reward was recorded for a dining, by its fingerprint. Made for the dinings the index no
+	 * longer holds, and on a violated unique key. Defaults to none: dinings are only checked against the index, and a
+	 * violated unique key is taken for a duplicate.
+	 * @param recorded the check, typically JdbcRewardRepository.isRecorded
+	 */
+	public void setRecordedCheck(Predicate<DiningFingerprint> recorded) {
+		this.recorded = recorded;
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		DiningFingerprint fingerprint = claim(dining, Collections.<DiningFingerprint> emptyList());
+		try {
+			RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining);
+			index.complete(fingerprint);
+			return confirmation;
+		} catch (DuplicateKeyException e) {
+			// the reward was rolled back, but another submission may have been recorded meanwhile
+			throw duplicateRecorded(dining, fingerprint, e);
+		} catch (RuntimeException e) {
+			index.release(fingerprint);
+			throw e;
+		}
+	}
+
+	/**
+	 * Rewards a batch of dinings, failing the dinings of the batch submitted before or being rewarded. Should the rest
+	 * of the batch fail as a whole, all of it is forgotten.
+	 */
+	public List<RewardResult> rewardAccountsFor(List<Dining> dinings) {
+		RewardResult[] results = new RewardResult[dinings.size()];
+		List<Integer> claimed = new ArrayList<Integer>(dinings.size());
+		List<Dining> claimedDinings = new ArrayList<Dining>(dinings.size());
+		List<DiningFingerprint> fingerprints = new ArrayList<DiningFingerprint>(dinings.size());
+		for (int i = 0; i < results.length; i++) {
+			Dining dining = dinings.get(i);
+			try {
+				fingerprints.add(claim(dining, fingerprints));
+				claimedDinings.add(dining);
+				claimed.add(i);
+			} catch (DuplicateDiningException e) {
+				results[i] = RewardResult.failed(dining, e);
+			} catch (DiningInProgressException e) {
+				results[i] = RewardResult.failed(dining, e);
+			}
+		}
+
+		List<RewardResult> rewarded;
+		try {
+			rewarded = claimedDinings.isEmpty() ? new ArrayList<RewardResult>()
+					: rewardNetwork.rewardAccountsFor(claimedDinings);
+		} catch (RuntimeException e) {
+			for (DiningFingerprint fingerprint : fingerprints) {
+				index.release(fingerprint);
+			}
+			throw e;
+		}
+		for (int j = 0; j < rewarded.size(); j++) {
+			RewardResult result = rewarded.get(j);
+			if (result.isConfirmed()) {
+				index.complete(fingerprints.get(j));
+			} else {
+				index.release(fingerprints.get(j));
+			}
+			results[claimed.get(j)] = result;
+		}
+		return new ArrayList<RewardResult>(Arrays.asList(results));
+	}
+
+	@ManagedAttribute(description = "Number of dinings submitted")
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of dinings rejected as submitted before")
+	public long getDuplicateCount() {
+		return duplicateCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of dinings rejected as being rewarded by an earlier submission")
+	public long getInProgressCount() {
+		return inProgressCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of dinings checked against the rewards recorded")
+	public long getSuspectCount() {
+		return suspectCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of duplicate dinings found among the rewards recorded")
+	public long getRecordedDuplicateCount() {
+		return recordedDuplicateCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of dinings held in the index")
+	public int getIndexSize() {
+		return index.size();
+	}
+
+	@ManagedAttribute(description = "Number of dinings evicted from the index early for want of room")
+	public long getEvictedCount() {
+		return index.getEvictedCount();
+	}
+
+	/**
+	 * Claims a dining for reward.
+	 * @param claimedBefore the fingerprints claimed already by the same submission, such as earlier in a batch
+	 * @return its fingerprint
+	 * @throws DuplicateDiningException if the dining was rewarded before
+	 * @throws DiningInProgressException if the dining is being rewarded
+	 */
+	private DiningFingerprint claim(Dining dining, Collection<DiningFingerprint> claimedBefore) {
+		submittedCount.incrementAndGet();
+		DiningFingerprint fingerprint = DiningFingerprint.of(dining);
+		switch (index.claim(fingerprint)) {
+		case DUPLICATE:
+			duplicateCount.incrementAndGet();
+			throw new DuplicateDiningException(dining, fingerprint);
+		case IN_PROGRESS:
+			if (claimedBefore.contains(fingerprint)) {
+				// by the same submission, which rewards it or fails as a whole
+				duplicateCount.incrementAndGet();
+				throw new DuplicateDiningException(dining, fingerprint);
+			}
+			inProgressCount.incrementAndGet();
+			throw new DiningInProgressException(dining, fingerprint);
+		case SUSPECT:
+			suspectCount.incrementAndGet();
+			if (recorded != null && recorded.test(fingerprint)) {
+				// leave the claim, so the next submission is rejected by the index
+				index.complete(fingerprint);
+				recordedDuplicateCount.incrementAndGet();
+				duplicateCount.incrementAndGet();
+				throw new DuplicateDiningException(dining, fingerprint);
+			}
+			return fingerprint;
+		default:
+			return fingerprint;
+		}
+	}
+
+	private RuntimeException duplicateRecorded(Dining dining, DiningFingerprint fingerprint, DuplicateKeyException e) {
+		if (recorded == null || recorded.test(fingerprint)) {
+			index.complete(fingerprint);
+			recordedDuplicateCount.incrementAndGet();
+			duplicateCount.incrementAndGet();
+			return new DuplicateDiningException(dining, fingerprint, e);
+		}
+		index.release(fingerprint);
+		return e;
+	}
+}
@@ -0,0 +1,109 @@
+package rewards.internal;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import rewards.internal.account.Account;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.restaurant.Restaurant;
+
+import common.repository.CreditCardIndex;
+
+/**
+ * Loads the account and restaurant of a dining from a data source with a single query, joining the restaurant to the
+ * account, beneficiary and credit card tables. The restaurant's columns are repeated on every beneficiary row.
+ *
+ * The rows are mapped by the JDBC account and restaurant repositories, so the objects loaded are the same as theirs.
+ * Should the query find nothing, the two are asked to load the account and restaurant themselves, to report which one
+ * is not known.
+ */
+public class JdbcRewardContextRepository implements RewardContextRepository {
+
+	/**
+	 * The position of the first restaurant column, following the columns of the account.
+	 */
+	private static final int RESTAURANT_COLUMNS = 10;
+
+	private JdbcAccountRepository accountRepository;
+
+	private JdbcRestaurantRepository restaurantRepository;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private CreditCardIndex creditCardIndex;
+
+	/**
+	 * Creates a new JDBC reward context repository.
+	 * @param accountRepository the repository mapping the account columns
+	 * @param restaurantRepository the repository mapping the restaurant columns
+	 * @param dataSource the data source holding both
+	 */
+	public JdbcRewardContextRepository(JdbcAccountRepository accountRepository,
+			JdbcRestaurantRepository restaurantRepository, DataSource dataSource) {
+		this.accountRepository = accountRepository;
+		this.restaurantRepository = restaurantRepository;
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	/**
+	 * Sets the index of the accounts of credit cards. The account of a card it holds is then joined by id, leaving
+	 * T_ACCOUNT_CREDIT_CARD out of the query. The index is trusted, as it is by the account repositories sharing it,
+	 * through which alone cards are changed. Defaults to none.
+	 * @param creditCardIndex the index, loaded
+	 */
+	public void setCreditCardIndex(CreditCardIndex creditCardIndex) {
+		this.creditCardIndex = creditCardIndex;
+	}
+
+	public RewardContext findRewardContext(String creditCardNumber, String merchantNumber) {
+		long accountId = creditCardIndex != null ? creditCardIndex.findAccountId(creditCardNumber)
+				: CreditCardIndex.NOT_INDEXED;
+		if (accountId != CreditCardIndex.NOT_INDEXED) {
+			String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, cast(null as char(16)) as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS, b.ID as BENEFICIARY_ID, b.VERSION as BENEFICIARY_VERSION, r.MERCHANT_NUMBER, r.NAME, r.BENEFIT_PERCENTAGE, r.BENEFIT_AVAILABILITY_POLICY, r.BENEFIT_AVAILABILITY_RULES from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_RESTAURANT r where a.ID = b.ACCOUNT_ID and a.ID = ? and r.MERCHANT_NUMBER = ?";
+			RewardContext context = jdbcTemplate.query(sql, new Object[] { accountId, merchantNumber },
+					new RewardContextExtractor());
+			if (context != null) {
+				return context;
+			}
+			// the account is gone, or the restaurant not known: the join by credit card settles which
+		}
+		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS, b.ID as BENEFICIARY_ID, b.VERSION as BENEFICIARY_VERSION, r.MERCHANT_NUMBER, r.NAME, r.BENEFIT_PERCENTAGE, r.BENEFIT_AVAILABILITY_POLICY, r.BENEFIT_AVAILABILITY_RULES from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c, T_RESTAURANT r where a.ID = b.ACCOUNT_ID and a.ID = c.ACCOUNT_ID and c.NUMBER = ? and r.MERCHANT_NUMBER = ?";
+		RewardContext context = jdbcTemplate.query(sql, new Object[] { creditCardNumber, merchantNumber },
+				new RewardContextExtractor());
+		if (context == null) {
+			// one or the other is not known: let the repositories say which
+			return new RewardContext(accountRepository.findByCreditCard(creditCardNumber),
+					restaurantRepository.findByMerchantNumber(merchantNumber));
+		}
+		return context;
+	}
+
+	/**
+	 * Maps the rows of the account with the restaurant, or returns null if there are none.
+	 */
+	private class RewardContextExtractor implements ResultSetExtractor<RewardContext> {
+
+		private Restaurant restaurant;
+
+		public RewardContext extractData(ResultSet rs) throws SQLException, DataAccessException {
+			try {
+				Account account = accountRepository.mapAccount(rs, row -> {
+					if (restaurant == null) {
+						restaurant = restaurantRepository.mapRestaurant(row, RESTAURANT_COLUMNS);
+					}
+				});
+				return new RewardContext(account, restaurant);
+			} catch (EmptyResultDataAccessException e) {
+				return null;
+			}
+		}
+	}
+}
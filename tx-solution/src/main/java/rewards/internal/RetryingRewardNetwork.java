@@ -0,0 +1,155 @@
+package rewards.internal;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.Assert;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+/**
+ * Retries rewards that fail on a concurrent change to the accounts they reward, such as savings written by another
+ * transaction since they were loaded.
+ *
+ * Rewards are made by the reward network it is given, which should be the transactional RewardNetwork bean: every
+ * attempt is then made in a transaction of its own, rolled back by the time it is retried, and loads the accounts
+ * afresh. A reward is attempted at most a fixed number of times. Between attempts it waits a random back-off, whose
+ * bound doubles with every attempt, so that rewards colliding on a popular account do not collide again in lock step.
+ * Failures other than concurrency failures are not retried.
+ */
+@ManagedResource(objectName = "rewards:name=rewardNetworkRetries")
+public class RetryingRewardNetwork implements RewardNetwork {
+
+	private RewardNetwork rewardNetwork;
+
+	private int maxAttempts;
+
+	private long backOffNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final AtomicLong invocationCount = new AtomicLong();
+
+	private final AtomicLong attemptCount = new AtomicLong();
+
+	private final AtomicLong conflictCount = new AtomicLong();
+
+	private final AtomicLong retriedCount = new AtomicLong();
+
+	private final AtomicLong exhaustedCount = new AtomicLong();
+
+	/**
+	 * Creates a new retrying reward network.
+	 * @param rewardNetwork the (transactional) reward network to make each attempt with
+	 * @param maxAttempts the most times a reward is attempted, 1 for no retries
+	 */
+	public RetryingRewardNetwork(RewardNetwork rewardNetwork, int maxAttempts) {
+		Assert.isTrue(maxAttempts > 0, "The maximum number of attempts must be positive");
+		this.rewardNetwork = rewardNetwork;
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Sets the bound of the random wait before the first retry, doubled before each retry after. Defaults to 10
+	 * milliseconds.
+	 * @param backOff the bound of the first wait, 0 to retry straight away
+	 * @param unit the unit of the back-off
+	 */
+	public void setBackOff(long backOff, TimeUnit unit) {
+		this.backOffNanos = unit.toNanos(backOff);
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		return execute(() -> rewardNetwork.rewardAccountFor(dining));
+	}
+
+	/**
+	 * Rewards a batch of dinings, retrying the whole batch should writing it conflict.
+	 */
+	public List<RewardResult> rewardAccountsFor(List<Dining> dinings) {
+		return execute(() -> rewardNetwork.rewardAccountsFor(dinings));
+	}
+
+	@ManagedAttribute(description = "Most times a reward is attempted")
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	@ManagedAttribute(description = "Number of rewards and batches of rewards asked for")
+	public long getInvocationCount() {
+		return invocationCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of attempts made, first attempts and retries")
+	public long getAttemptCount() {
+		return attemptCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of attempts failed on a concurrent change")
+	public long getConflictCount() {
+		return conflictCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of rewards retried at least once")
+	public long getRetriedCount() {
+		return retriedCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of rewards still conflicting after the last attempt")
+	public long getExhaustedCount() {
+		return exhaustedCount.get();
+	}
+
+	@ManagedAttribute(description = "Fraction of attempts failed on a concurrent change, from 0 to 1")
+	public double getConflictRate() {
+		long attempts = attemptCount.get();
+		return attempts == 0 ? 0 : (double) conflictCount.get() / attempts;
+	}
+
+	@ManagedAttribute(description = "Fraction of rewards retried at least once, from 0 to 1")
+	public double getRetryRate() {
+		long invocations = invocationCount.get();
+		return invocations == 0 ? 0 : (double) retriedCount.get() / invocations;
+	}
+
+	private <T> T execute(Supplier<T> reward) {
+		invocationCount.incrementAndGet();
+		for (int attempt = 1;; attempt++) {
+			attemptCount.incrementAndGet();
+			try {
+				return reward.get();
+			} catch (ConcurrencyFailureException e) {
+				conflictCount.incrementAndGet();
+				if (attempt >= maxAttempts) {
+					exhaustedCount.incrementAndGet();
+					throw e;
+				}
+				if (attempt == 1) {
+					retriedCount.incrementAndGet();
+				}
+				backOff(attempt, e);
+			}
+		}
+	}
+
+	private void backOff(int attempt, ConcurrencyFailureException conflict) {
+		long bound = backOffNanos << Math.min(attempt - 1, 16);
+		if (bound <= 0) {
+			return;
+		}
+		try {
+			TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(bound));
+		} catch (InterruptedException e) {
+			// give up retrying, but leave the interrupt for the caller to see
+			Thread.currentThread().interrupt();
+			throw conflict;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package rewards.internal;
+
+import rewards.internal.account.Account;
+import rewards.internal.restaurant.Restaurant;
+
+/**
+ * What is needed to reward a dining: the account of the credit card charged and the restaurant dined at.
+ */
+public class RewardContext {
+
+	private Account account;
+
+	private Restaurant restaurant;
+
+	/**
+	 * Creates a new reward context.
+	 * @param account the account of the credit card charged
+	 * @param restaurant the restaurant dined at
+	 */
+	public RewardContext(Account account, Restaurant restaurant) {
+		this.account = account;
+		this.restaurant = restaurant;
+	}
+
+	/**
+	 * Returns the account to reward.
+	 */
+	public Account getAccount() {
+		return account;
+	}
+
+	/**
+	 * Returns the restaurant determining the reward.
+	 */
+	public Restaurant getRestaurant() {
+		return restaurant;
+	}
+}
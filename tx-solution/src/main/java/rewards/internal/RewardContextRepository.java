@@ -0,0 +1,19 @@
+package rewards.internal;
+
+/**
+ * Loads the account and restaurant of a dining together. Called by the reward network in place of looking the account
+ * and restaurant up one after another, saving a round trip to the database per reward.
+ *
+ * Objects returned by this repository are guaranteed to be fully-initialized and ready to use.
+ */
+public interface RewardContextRepository {
+
+	/**
+	 * Load the account of a credit card and the restaurant of a merchant.
+	 * @param creditCardNumber the credit card number
+	 * @param merchantNumber the merchant number
+	 * @return the account and restaurant
+	 */
+	public RewardContext findRewardContext(String creditCardNumber, String merchantNumber);
+
+}
@@ -1,11 +1,22 @@
 package rewards.internal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.transaction.annotation.Transactional;
 
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
 import rewards.RewardNetwork;
+import rewards.RewardResult;
 import rewards.internal.account.Account;
 import rewards.internal.account.AccountRepository;
 import rewards.internal.restaurant.Restaurant;
@@ -30,6 +41,8 @@ public class RewardNetworkImpl implements RewardNetwork {
 
 	private RewardRepository rewardRepository;
 
+	private RewardContextRepository rewardContextRepository;
+
 	/**
 	 * Creates a new reward network.
 	 * @param accountRepository the repository for loading accounts to reward
@@ -43,13 +56,103 @@ public class RewardNetworkImpl implements RewardNetwork {
 		this.rewardRepository = rewardRepository;
 	}
 
+	/**
+	 * Sets the repository to load the account and restaurant of a dining with, both at once. When not set they are
+	 * loaded from the account and restaurant repositories one after the other.
+	 * @param rewardContextRepository the repository for loading the account and restaurant of a dining together
+	 */
+	public void setRewardContextRepository(RewardContextRepository rewardContextRepository) {
+		this.rewardContextRepository = rewardContextRepository;
+	}
+
 	@Transactional
 	public RewardConfirmation rewardAccountFor(Dining dining) {
-		Account account = accountRepository.findByCreditCard(dining.getCreditCardNumber());
-		Restaurant restaurant = restaurantRepository.findByMerchantNumber(dining.getMerchantNumber());
+		Account account;
+		Restaurant restaurant;
+		if (rewardContextRepository != null) {
+			RewardContext context = rewardContextRepository.findRewardContext(dining.getCreditCardNumber(),
+					dining.getMerchantNumber());
+			account = context.getAccount();
+			restaurant = context.getRestaurant();
+		} else {
+			account = accountRepository.findByCreditCard(dining.getCreditCardNumber());
+			restaurant = restaurantRepository.findByMerchantNumber(dining.getMerchantNumber());
+		}
 		MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
 		AccountContribution contribution = account.makeContribution(amount);
+		if (amount.greaterThan(MonetaryAmount.zero())) {
+			restaurant.benefitContributed(account, dining);
+		}
 		accountRepository.updateBeneficiaries(account);
 		return rewardRepository.confirmReward(contribution, dining);
 	}
+
+	/**
+	 * Rewards a batch of dinings with a constant number of database round trips: the accounts and restaurants of all
+	 * dinings are each loaded with set-based queries, the contributions are made in memory, and the changed
+	 * beneficiaries and reward records are written with JDBC batches. A dining whose credit card or merchant is not
+	 * known, or whose account cannot take contributions, is reported as failed. Errors writing to the database roll back
+	 * the whole batch.
+	 */
+	@Transactional
+	public List<RewardResult> rewardAccountsFor(List<Dining> dinings) {
+		Set<String> creditCardNumbers = new HashSet<String>();
+		Set<String> merchantNumbers = new HashSet<String>();
+		for (Dining dining : dinings) {
+			creditCardNumbers.add(dining.getCreditCardNumber());
+			merchantNumbers.add(dining.getMerchantNumber());
+		}
+		Map<String, Account> accounts = accountRepository.findByCreditCards(creditCardNumbers);
+		Map<String, Restaurant> restaurants = restaurantRepository.findByMerchantNumbers(merchantNumbers);
+
+		RewardResult[] results = new RewardResult[dinings.size()];
+		List<Integer> rewarded = new ArrayList<Integer>(dinings.size());
+		List<Dining> rewardedDinings = new ArrayList<Dining>(dinings.size());
+		List<AccountContribution> contributions = new ArrayList<AccountContribution>(dinings.size());
+		Set<Account> changedAccounts = Collections.newSetFromMap(new IdentityHashMap<Account, Boolean>());
+		for (int i = 0; i < results.length; i++) {
+			Dining dining = dinings.get(i);
+			try {
+				Account account = accounts.get(dining.getCreditCardNumber());
+				if (account == null) {
+					throw new EmptyResultDataAccessException("No account for credit card "
+							+ dining.getCreditCardNumber(), 1);
+				}
+				Restaurant restaurant = restaurants.get(dining.getMerchantNumber());
+				if (restaurant == null) {
+					throw new EmptyResultDataAccessException("No restaurant for merchant " + dining.getMerchantNumber(),
+							1);
+				}
+				MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
+				AccountContribution contribution;
+				try {
+					contribution = account.makeContribution(amount);
+				} catch (RuntimeException e) {
+					if (amount.greaterThan(MonetaryAmount.zero())) {
+						// released at once, not at commit, so later dinings of the batch are not held back by it
+						restaurant.benefitNotContributed(account, dining);
+					}
+					throw e;
+				}
+				contributions.add(contribution);
+				if (amount.greaterThan(MonetaryAmount.zero())) {
+					// counted only once contributed, so that dinings failing here do not count against a cap
+					restaurant.benefitContributed(account, dining);
+				}
+				changedAccounts.add(account);
+				rewardedDinings.add(dining);
+				rewarded.add(i);
+			} catch (RuntimeException e) {
+				results[i] = RewardResult.failed(dining, e);
+			}
+		}
+
+		accountRepository.updateBeneficiaries(changedAccounts);
+		List<RewardConfirmation> confirmations = rewardRepository.confirmRewards(contributions, rewardedDinings);
+		for (int j = 0; j < confirmations.size(); j++) {
+			int i = rewarded.get(j);
+			results[i] = RewardResult.confirmed(dinings.get(i), confirmations.get(j));
+		}
+		return Arrays.asList(results);
+	}
 }
\ No newline at end of file
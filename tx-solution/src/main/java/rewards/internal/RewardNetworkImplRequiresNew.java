@@ -1,5 +1,8 @@
 package rewards.internal;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -7,6 +10,7 @@ import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
 import rewards.RewardNetwork;
+import rewards.RewardResult;
 import rewards.internal.account.Account;
 import rewards.internal.account.AccountRepository;
 import rewards.internal.restaurant.Restaurant;
@@ -48,9 +52,53 @@ public class RewardNetworkImplRequiresNew implements RewardNetwork {
 	public RewardConfirmation rewardAccountFor(Dining dining) {
 		Account account = accountRepository.findByCreditCard(dining.getCreditCardNumber());
 		Restaurant restaurant = restaurantRepository.findByMerchantNumber(dining.getMerchantNumber());
-		MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
-		AccountContribution contribution = account.makeContribution(amount);
+		AccountContribution contribution = contribute(account, restaurant, dining);
 		accountRepository.updateBeneficiaries(account);
 		return rewardRepository.confirmReward(contribution, dining);
 	}
+
+	/**
+	 * Rewards each dining in turn, within a single new transaction. A dining whose credit card or merchant is not known,
+	 * or whose account cannot take contributions, is reported as failed, before anything of it is written. Errors
+	 * writing to the database roll back the whole batch, as the dining's beneficiaries may have been written already.
+	 */
+	@Transactional(propagation=Propagation.REQUIRES_NEW)
+	public List<RewardResult> rewardAccountsFor(List<Dining> dinings) {
+		List<RewardResult> results = new ArrayList<RewardResult>(dinings.size());
+		for (Dining dining : dinings) {
+			Account account;
+			AccountContribution contribution;
+			try {
+				account = accountRepository.findByCreditCard(dining.getCreditCardNumber());
+				Restaurant restaurant = restaurantRepository.findByMerchantNumber(dining.getMerchantNumber());
+				contribution = contribute(account, restaurant, dining);
+			} catch (RuntimeException e) {
+				results.add(RewardResult.failed(dining, e));
+				continue;
+			}
+			accountRepository.updateBeneficiaries(account);
+			results.add(RewardResult.confirmed(dining, rewardRepository.confirmReward(contribution, dining)));
+		}
+		return results;
+	}
+
+	/**
+	 * Contributes the benefit of a dining to the account, in memory, and tells the restaurant whether it was.
+	 */
+	private AccountContribution contribute(Account account, Restaurant restaurant, Dining dining) {
+		MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
+		AccountContribution contribution;
+		try {
+			contribution = account.makeContribution(amount);
+		} catch (RuntimeException e) {
+			if (amount.greaterThan(MonetaryAmount.zero())) {
+				restaurant.benefitNotContributed(account, dining);
+			}
+			throw e;
+		}
+		if (amount.greaterThan(MonetaryAmount.zero())) {
+			restaurant.benefitContributed(account, dining);
+		}
+		return contribution;
+	}
 }
\ No newline at end of file
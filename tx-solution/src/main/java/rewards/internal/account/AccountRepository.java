@@ -1,5 +1,8 @@
 package rewards.internal.account;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Loads account aggregates. Called by the reward network to find and reconstitute Account entities from an external
  * form such as a set of RDMS rows.
@@ -15,6 +18,14 @@ public interface AccountRepository {
 	 */
 	public Account findByCreditCard(String creditCardNumber);
 
+	/**
+	 * Load the accounts of several credit cards at once. Credit cards of the same account map to the same Account
+	 * object, so changes made through one card are seen through the others.
+	 * @param creditCardNumbers the credit card numbers
+	 * @return the account objects indexed by credit card number; credit cards without an account are not included
+	 */
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers);
+
 	/**
 	 * Updates the 'savings' of each account beneficiary. The new savings balance contains the amount distributed for a
 	 * contribution made during a reward transaction.
@@ -26,4 +37,26 @@ public interface AccountRepository {
 	 */
 	public void updateBeneficiaries(Account account);
 
+	/**
+	 * Updates the 'savings' of each beneficiary of several accounts at once.
+	 * @param accounts the accounts whose beneficiary savings have changed
+	 * @see #updateBeneficiaries(Account)
+	 */
+	public void updateBeneficiaries(Collection<Account> accounts);
+
+	/**
+	 * Gives a credit card to an account: adds the card, or moves it from the account that had it. Credit cards are to
+	 * be changed through this repository only, as what it keeps of them in memory is only brought up to date here.
+	 * @param creditCardNumber the credit card number
+	 * @param account the account to give it to
+	 */
+	public void assignCreditCard(String creditCardNumber, Account account);
+
+	/**
+	 * Removes a credit card from its account, if it has one.
+	 * @param creditCardNumber the credit card number
+	 * @see #assignCreditCard(String, Account)
+	 */
+	public void removeCreditCard(String creditCardNumber);
+
 }
\ No newline at end of file
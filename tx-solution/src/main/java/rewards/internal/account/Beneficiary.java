@@ -16,6 +16,16 @@ public class Beneficiary extends Entity {
 
 	private MonetaryAmount savings = MonetaryAmount.valueOf("0.00");
 
+	/**
+	 * The amount credited since this beneficiary was loaded or last saved.
+	 */
+	private MonetaryAmount unsavedCredit = MonetaryAmount.zero();
+
+	/**
+	 * The version of the beneficiary's savings when loaded or last saved, for detecting changes made by others since.
+	 */
+	private int version;
+
 	@SuppressWarnings("unused")
 	private Beneficiary() {
 	}
@@ -37,11 +47,13 @@ public class Beneficiary extends Entity {
 	 * @param name the name of the beneficiary
 	 * @param allocationPercentage the beneficiary's allocation percentage within its account
 	 * @param savings the total amount saved to-date for this beneficiary
+	 * @param version the version of the savings
 	 */
-	Beneficiary(String name, Percentage allocationPercentage, MonetaryAmount savings) {
+	Beneficiary(String name, Percentage allocationPercentage, MonetaryAmount savings, int version) {
 		this.name = name;
 		this.allocationPercentage = allocationPercentage;
 		this.savings = savings;
+		this.version = version;
 	}
 
 	/**
@@ -70,7 +82,55 @@ public class Beneficiary extends Entity {
 	 * @param amount the amount to credit
 	 */
 	public void credit(MonetaryAmount amount) {
-		savings = savings.add(amount);
+		MonetaryAmount credited = savings.add(amount);
+		if (!credited.equals(savings)) {
+			savings = credited;
+			unsavedCredit = unsavedCredit.add(amount);
+		}
+	}
+
+	/**
+	 * Returns true if savings have been credited to this beneficiary since it was loaded or last saved, so its savings
+	 * have to be written.
+	 */
+	boolean isCredited() {
+		return !unsavedCredit.equals(MonetaryAmount.zero());
+	}
+
+	/**
+	 * Returns the amount credited to this beneficiary since it was loaded or last saved, to be added to the savings
+	 * saved.
+	 */
+	MonetaryAmount getUnsavedCredit() {
+		return unsavedCredit;
+	}
+
+	/**
+	 * Returns the version of the savings of this beneficiary when it was loaded or last saved. Savings are only written
+	 * over if their version has not changed since.
+	 */
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Records that the savings of this beneficiary have been written, as the next version.
+	 */
+	void markSaved() {
+		unsavedCredit = MonetaryAmount.zero();
+		version++;
+	}
+
+	/**
+	 * Records that the credits of this beneficiary have been added to its savings saved, bringing them to the given
+	 * total, which includes what others have credited meanwhile.
+	 * @param savings the savings saved
+	 * @param version the version of the savings saved
+	 */
+	void markSaved(MonetaryAmount savings, int version) {
+		this.savings = savings;
+		this.unsavedCredit = MonetaryAmount.zero();
+		this.version = version;
 	}
 
 	public String toString() {
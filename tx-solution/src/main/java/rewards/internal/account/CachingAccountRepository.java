@@ -0,0 +1,509 @@
+package rewards.internal.account;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * An account repository that remembers the accounts loaded by another repository by credit card number, so that
+ * repeat diners are found without joining the account, beneficiary and credit card tables again.
+ *
+ * The cache holds a snapshot of each account's state, never the Account objects handed out: every lookup gets its own
+ * Account, so contributions made to it only reach the cache once they are written. Beneficiary savings are written
+ * through to the other repository straight away, and to the cache once the surrounding transaction commits. Should it
+ * roll back instead, the accounts it wrote are evicted, to be loaded again when next asked for. Outside a transaction
+ * the cache is updated at once.
+ *
+ * An account read from the cache while a transaction has written it but not yet completed is counted as a stale read:
+ * it does not show savings that may be about to be committed. Savings credited to a stale account fail to be written,
+ * as their version has moved on (see JdbcAccountRepository), and the account is evicted so that the transaction is
+ * retried with the account loaded afresh. Transactions committing one after another may complete out of order; the
+ * cache keeps whichever state of an account has the latest versions.
+ *
+ * At most a fixed number of credit cards are cached, the least recently used being evicted first. Changes made to the
+ * accounts by other means are not seen until they are evicted or invalidated. Safe for concurrent use.
+ */
+@ManagedResource(objectName = "rewards:name=accountCache")
+public class CachingAccountRepository implements AccountRepository {
+
+	private AccountRepository targetRepository;
+
+	private int maximumSize;
+
+	/**
+	 * The cached accounts by credit card number, least recently used first. Credit cards of the same account share an
+	 * entry. Guarded by itself, as are all the fields below.
+	 */
+	private Map<String, CachedAccount> entries;
+
+	/**
+	 * The cached accounts by entity id, to find the entry to update when an account is written.
+	 */
+	private Map<Long, CachedAccount> entriesById = new HashMap<Long, CachedAccount>();
+
+	/**
+	 * The number of uncompleted transactions that have written each account.
+	 */
+	private Map<Long, Integer> pendingWrites = new HashMap<Long, Integer>();
+
+	/**
+	 * Counts the writes applied or evicted, so a load overlapping with one is not cached.
+	 */
+	private long writeCount;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long staleReadCount;
+
+	private long evictionCount;
+
+	private long rollbackEvictionCount;
+
+	private long conflictEvictionCount;
+
+	/**
+	 * Creates a new caching account repository.
+	 * @param targetRepository the repository to load accounts with and write their beneficiaries to
+	 * @param maximumSize the most credit cards to cache
+	 */
+	public CachingAccountRepository(AccountRepository targetRepository, int maximumSize) {
+		this.targetRepository = targetRepository;
+		this.maximumSize = maximumSize;
+		this.entries = new LinkedHashMap<String, CachedAccount>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedAccount> eldest) {
+				if (size() > CachingAccountRepository.this.maximumSize) {
+					unindex(eldest.getKey(), eldest.getValue());
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public Account findByCreditCard(String creditCardNumber) {
+		AccountState state = lookup(creditCardNumber);
+		if (state != null) {
+			return state.toAccount();
+		}
+		long writes = getWriteCount();
+		Account account = targetRepository.findByCreditCard(creditCardNumber);
+		cache(Collections.singletonMap(creditCardNumber, account), writes);
+		return account;
+	}
+
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers) {
+		Map<String, Account> accounts = new HashMap<String, Account>();
+		// one Account object per account, however many of its credit cards are asked for
+		Map<Long, Account> accountsById = new HashMap<Long, Account>();
+		List<String> missing = new ArrayList<String>();
+		for (String creditCardNumber : creditCardNumbers) {
+			if (accounts.containsKey(creditCardNumber)) {
+				continue;
+			}
+			AccountState state = lookup(creditCardNumber);
+			if (state == null) {
+				missing.add(creditCardNumber);
+			} else {
+				Account account = accountsById.get(state.entityId);
+				if (account == null) {
+					account = state.toAccount();
+					accountsById.put(state.entityId, account);
+				}
+				accounts.put(creditCardNumber, account);
+			}
+		}
+		if (!missing.isEmpty()) {
+			long writes = getWriteCount();
+			Map<String, Account> loaded = targetRepository.findByCreditCards(missing);
+			cache(loaded, writes);
+			for (Map.Entry<String, Account> entry : loaded.entrySet()) {
+				Account account = entry.getValue();
+				Account existing = accountsById.putIfAbsent(account.getEntityId(), account);
+				accounts.put(entry.getKey(), existing != null ? existing : account);
+			}
+		}
+		return accounts;
+	}
+
+	public void updateBeneficiaries(Account account) {
+		try {
+			targetRepository.updateBeneficiaries(account);
+		} catch (OptimisticLockingFailureException e) {
+			evictConflicting(Collections.singletonList(account));
+			throw e;
+		}
+		written(Collections.singletonList(new AccountState(account)));
+	}
+
+	public void updateBeneficiaries(Collection<Account> accounts) {
+		try {
+			targetRepository.updateBeneficiaries(accounts);
+		} catch (OptimisticLockingFailureException e) {
+			evictConflicting(accounts);
+			throw e;
+		}
+		List<AccountState> states = new ArrayList<AccountState>(accounts.size());
+		for (Account account : accounts) {
+			states.add(new AccountState(account));
+		}
+		written(states);
+	}
+
+	/**
+	 * Changes the credit card through the other repository, then forgets it, and again once the transaction changing it
+	 * completes.
+	 */
+	public void assignCreditCard(String creditCardNumber, Account account) {
+		targetRepository.assignCreditCard(creditCardNumber, account);
+		creditCardChanged(creditCardNumber);
+	}
+
+	public void removeCreditCard(String creditCardNumber) {
+		targetRepository.removeCreditCard(creditCardNumber);
+		creditCardChanged(creditCardNumber);
+	}
+
+	/**
+	 * Forgets the account of a credit card, so it is loaded again when next asked for. Call it when the account is
+	 * changed other than through this repository.
+	 * @param creditCardNumber the credit card number
+	 */
+	public void invalidate(String creditCardNumber) {
+		synchronized (entries) {
+			CachedAccount entry = entries.remove(creditCardNumber);
+			if (entry != null) {
+				unindex(creditCardNumber, entry);
+			}
+		}
+	}
+
+	/**
+	 * Forgets a changed credit card now and once the current transaction completes, counting it as a write so a load
+	 * overlapping either is not cached.
+	 */
+	private void creditCardChanged(final String creditCardNumber) {
+		forget(creditCardNumber);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					forget(creditCardNumber);
+				}
+			});
+		}
+	}
+
+	private void forget(String creditCardNumber) {
+		synchronized (entries) {
+			writeCount++;
+			invalidate(creditCardNumber);
+		}
+	}
+
+	/**
+	 * Forgets all cached accounts.
+	 */
+	@ManagedOperation(description = "Forgets all cached accounts")
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+			entriesById.clear();
+			writeCount++;
+		}
+	}
+
+	@ManagedAttribute(description = "Number of credit cards cached")
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	@ManagedAttribute(description = "Most credit cards cached")
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	@ManagedAttribute(description = "Number of lookups answered from the cache")
+	public long getHitCount() {
+		synchronized (entries) {
+			return hitCount;
+		}
+	}
+
+	@ManagedAttribute(description = "Number of lookups that had to load the account")
+	public long getMissCount() {
+		synchronized (entries) {
+			return missCount;
+		}
+	}
+
+	@ManagedAttribute(description = "Fraction of lookups answered from the cache, from 0 to 1")
+	public double getHitRatio() {
+		synchronized (entries) {
+			long lookups = hitCount + missCount;
+			return lookups == 0 ? 0 : (double) hitCount / lookups;
+		}
+	}
+
+	@ManagedAttribute(description = "Number of accounts read from the cache while written by an uncompleted transaction")
+	public long getStaleReadCount() {
+		synchronized (entries) {
+			return staleReadCount;
+		}
+	}
+
+	@ManagedAttribute(description = "Number of credit cards evicted to keep within the maximum size")
+	public long getEvictionCount() {
+		synchronized (entries) {
+			return evictionCount;
+		}
+	}
+
+	@ManagedAttribute(description = "Number of accounts evicted because the transaction writing them rolled back")
+	public long getRollbackEvictionCount() {
+		synchronized (entries) {
+			return rollbackEvictionCount;
+		}
+	}
+
+	@ManagedAttribute(description = "Number of accounts evicted because their savings had changed when written")
+	public long getConflictEvictionCount() {
+		synchronized (entries) {
+			return conflictEvictionCount;
+		}
+	}
+
+	private long getWriteCount() {
+		synchronized (entries) {
+			return writeCount;
+		}
+	}
+
+	/**
+	 * Returns the cached state of the account of a credit card, or null if it has to be loaded, counting the hit or
+	 * miss.
+	 */
+	private AccountState lookup(String creditCardNumber) {
+		synchronized (entries) {
+			CachedAccount entry = entries.get(creditCardNumber);
+			if (entry == null) {
+				missCount++;
+				return null;
+			}
+			hitCount++;
+			if (pendingWrites.containsKey(entry.state.entityId)) {
+				staleReadCount++;
+			}
+			return entry.state;
+		}
+	}
+
+	/**
+	 * Caches loaded accounts by credit card, unless an account was written meanwhile: what was loaded may predate the
+	 * write.
+	 * @param accounts the accounts loaded
+	 * @param writes the write count before loading them
+	 */
+	private void cache(Map<String, Account> accounts, long writes) {
+		Map<Account, AccountState> states = new IdentityHashMap<Account, AccountState>();
+		for (Account account : accounts.values()) {
+			states.computeIfAbsent(account, AccountState::new);
+		}
+		synchronized (entries) {
+			if (writeCount != writes) {
+				return;
+			}
+			for (Map.Entry<String, Account> loaded : accounts.entrySet()) {
+				AccountState state = states.get(loaded.getValue());
+				CachedAccount entry = entriesById.computeIfAbsent(state.entityId, id -> new CachedAccount(state));
+				// add the credit card first, so evicting another credit card of the account does not unindex it
+				entry.creditCardNumbers.add(loaded.getKey());
+				entries.put(loaded.getKey(), entry);
+			}
+		}
+	}
+
+	/**
+	 * Brings the cache up to date with accounts just written: once the current transaction commits, or straight away
+	 * if there is none.
+	 */
+	private void written(List<AccountState> states) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			apply(states, true);
+			return;
+		}
+		synchronized (entries) {
+			for (AccountState state : states) {
+				pendingWrites.merge(state.entityId, 1, Integer::sum);
+			}
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				apply(states, status == TransactionSynchronization.STATUS_COMMITTED);
+			}
+		});
+	}
+
+	/**
+	 * Evicts accounts whose savings were changed by others since they were loaded, so they are loaded again.
+	 */
+	private void evictConflicting(Collection<Account> accounts) {
+		synchronized (entries) {
+			writeCount++;
+			for (Account account : accounts) {
+				if (evict(account.getEntityId())) {
+					conflictEvictionCount++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the cached state of written accounts if they were committed, unless a later state is cached already, or
+	 * evicts them if not.
+	 */
+	private void apply(List<AccountState> states, boolean committed) {
+		synchronized (entries) {
+			writeCount++;
+			for (AccountState state : states) {
+				pendingWrites.computeIfPresent(state.entityId, (id, count) -> count == 1 ? null : count - 1);
+				CachedAccount entry = entriesById.get(state.entityId);
+				if (entry == null) {
+					continue;
+				}
+				if (!committed) {
+					evict(state.entityId);
+					rollbackEvictionCount++;
+				} else if (state.version >= entry.state.version) {
+					entry.state = state;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the entry of an account and all its credit cards, returning whether it was cached.
+	 */
+	private boolean evict(Long entityId) {
+		CachedAccount entry = entriesById.remove(entityId);
+		if (entry == null) {
+			return false;
+		}
+		entries.keySet().removeAll(entry.creditCardNumbers);
+		return true;
+	}
+
+	/**
+	 * Drops the index of an entry once none of its credit cards is cached any longer.
+	 */
+	private void unindex(String creditCardNumber, CachedAccount entry) {
+		entry.creditCardNumbers.remove(creditCardNumber);
+		if (entry.creditCardNumbers.isEmpty()) {
+			entriesById.remove(entry.state.entityId);
+		}
+	}
+
+	/**
+	 * The cache entry of an account, shared by all its cached credit cards.
+	 */
+	private static class CachedAccount {
+
+		AccountState state;
+
+		final Set<String> creditCardNumbers = new HashSet<String>();
+
+		CachedAccount(AccountState state) {
+			this.state = state;
+		}
+	}
+
+	/**
+	 * An immutable copy of the state of an account, from which new Account objects are made.
+	 */
+	private static class AccountState {
+
+		final Long entityId;
+
+		final String number;
+
+		final String name;
+
+		final Long[] beneficiaryIds;
+
+		final String[] beneficiaryNames;
+
+		final Percentage[] allocationPercentages;
+
+		final MonetaryAmount[] savings;
+
+		final int[] versions;
+
+		/**
+		 * The sum of the beneficiaries' versions, which only ever grows as the account is written.
+		 */
+		final long version;
+
+		AccountState(Account account) {
+			this.entityId = account.getEntityId();
+			this.number = account.getNumber();
+			this.name = account.getName();
+			int count = account.getBeneficiaries().size();
+			this.beneficiaryIds = new Long[count];
+			this.beneficiaryNames = new String[count];
+			this.allocationPercentages = new Percentage[count];
+			this.savings = new MonetaryAmount[count];
+			this.versions = new int[count];
+			long version = 0;
+			int i = 0;
+			for (Beneficiary beneficiary : account.getBeneficiaries()) {
+				beneficiaryIds[i] = beneficiary.getEntityId();
+				beneficiaryNames[i] = beneficiary.getName();
+				allocationPercentages[i] = beneficiary.getAllocationPercentage();
+				savings[i] = beneficiary.getSavings();
+				versions[i] = beneficiary.getVersion();
+				version += versions[i];
+				i++;
+			}
+			this.version = version;
+		}
+
+		Account toAccount() {
+			Account account = new Account(number, name);
+			account.setEntityId(entityId);
+			for (int i = 0; i < beneficiaryNames.length; i++) {
+				Beneficiary beneficiary = new Beneficiary(beneficiaryNames[i], allocationPercentages[i], savings[i],
+						versions[i]);
+				beneficiary.setEntityId(beneficiaryIds[i]);
+				account.restoreBeneficiary(beneficiary);
+			}
+			return account;
+		}
+	}
+}
@@ -2,24 +2,62 @@ package rewards.internal.account;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import javax.sql.DataSource;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import common.jdbc.MoneyColumns;
 import common.money.MonetaryAmount;
 import common.money.Percentage;
+import common.repository.CreditCardIndex;
 
 /**
  * Loads accounts from a data source using the JDBC API.
  */
 public class JdbcAccountRepository implements AccountRepository {
-	
+
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int ID = 1;
+	private static final int ACCOUNT_NUMBER = 2;
+	private static final int ACCOUNT_NAME = 3;
+	private static final int CREDIT_CARD_NUMBER = 4;
+	private static final int BENEFICIARY_NAME = 5;
+	private static final int BENEFICIARY_ALLOCATION_PERCENTAGE = 6;
+	private static final int BENEFICIARY_SAVINGS = 7;
+	private static final int BENEFICIARY_ID = 8;
+	private static final int BENEFICIARY_VERSION = 9;
+
+	/**
+	 * The most credit card numbers bound to a single 'in' list; larger sets are loaded with several queries.
+	 */
+	private static final int MAX_IN_LIST_SIZE = 500;
+
 	private JdbcTemplate jdbcTemplate;
 
+	private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+	private boolean incrementSavings;
+
+	private CreditCardIndex creditCardIndex;
+
 	/**
 	 * Extracts an Account object from rows returned from a join of T_ACCOUNT and T_ACCOUNT_BENEFICIARY.
 	 */
@@ -27,17 +65,230 @@ public class JdbcAccountRepository implements AccountRepository {
 
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
 	}
 	
+	/**
+	 * Sets whether beneficiary savings are written as increments, adding what was credited to the savings in the
+	 * database, rather than as the totals computed in memory. Increments let rewards of the same account run in
+	 * overlapping transactions without losing credits. Defaults to false.
+	 * @param incrementSavings true to write increments
+	 */
+	public void setIncrementSavings(boolean incrementSavings) {
+		this.incrementSavings = incrementSavings;
+	}
+
+	/**
+	 * Sets the index of the accounts of credit cards. Accounts of the cards it holds are then loaded by id, without
+	 * looking the card up in T_ACCOUNT_CREDIT_CARD; the accounts of other cards are looked up as before and their cards
+	 * put in the index. A card held for an account that no longer exists is removed from the index. The index is trusted
+	 * otherwise, so cards must only be changed through {@link #assignCreditCard(String, Account)} and
+	 * {@link #removeCreditCard(String)}, which take them out of it. Defaults to none.
+	 * @param creditCardIndex the index, loaded
+	 */
+	public void setCreditCardIndex(CreditCardIndex creditCardIndex) {
+		this.creditCardIndex = creditCardIndex;
+	}
+
 	public Account findByCreditCard(String creditCardNumber) {
-		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c where ID = b.ACCOUNT_ID and ID = c.ACCOUNT_ID and c.NUMBER = ?";
+		if (creditCardIndex != null) {
+			long accountId = creditCardIndex.findAccountId(creditCardNumber);
+			if (accountId != CreditCardIndex.NOT_INDEXED) {
+				try {
+					return findById(accountId);
+				} catch (EmptyResultDataAccessException e) {
+					creditCardIndex.remove(creditCardNumber);
+				}
+			}
+		}
+		if (creditCardIndex == null) {
+			return findByCreditCardNumber(creditCardNumber);
+		}
+		long removals = creditCardIndex.getRemovalCount();
+		Account account = findByCreditCardNumber(creditCardNumber);
+		creditCardIndex.put(creditCardNumber, account.getEntityId(), removals);
+		return account;
+	}
+
+	/**
+	 * Loads the account of a credit card, looking the card up in T_ACCOUNT_CREDIT_CARD.
+	 */
+	private Account findByCreditCardNumber(String creditCardNumber) {
+		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS, b.ID as BENEFICIARY_ID, b.VERSION as BENEFICIARY_VERSION from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c where ID = b.ACCOUNT_ID and ID = c.ACCOUNT_ID and c.NUMBER = ?";
 		return jdbcTemplate.query(sql, new Object[] { creditCardNumber }, accountExtractor);
 	}
 
+	/**
+	 * Loads an account by its id. The credit card number column is selected as null, to keep the columns in place.
+	 */
+	private Account findById(long accountId) {
+		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, cast(null as char(16)) as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS, b.ID as BENEFICIARY_ID, b.VERSION as BENEFICIARY_VERSION from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b where a.ID = b.ACCOUNT_ID and a.ID = ?";
+		return jdbcTemplate.query(sql, new Object[] { accountId }, accountExtractor);
+	}
+
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers) {
+		List<String> numbers = new ArrayList<String>(new LinkedHashSet<String>(creditCardNumbers));
+		AccountsByCreditCardHandler handler = new AccountsByCreditCardHandler();
+		if (creditCardIndex == null) {
+			findByCreditCardNumbers(numbers, handler);
+			return handler.accountsByCreditCard;
+		}
+		Map<String, Long> indexed = new HashMap<String, Long>();
+		List<String> notIndexed = new ArrayList<String>();
+		for (String number : numbers) {
+			long accountId = creditCardIndex.findAccountId(number);
+			if (accountId == CreditCardIndex.NOT_INDEXED) {
+				notIndexed.add(number);
+			} else {
+				indexed.put(number, accountId);
+			}
+		}
+		findByIds(new ArrayList<Long>(new LinkedHashSet<Long>(indexed.values())), handler);
+		for (Map.Entry<String, Long> entry : indexed.entrySet()) {
+			Account account = handler.accountsById.get(entry.getValue());
+			if (account != null) {
+				handler.accountsByCreditCard.put(entry.getKey(), account);
+			} else {
+				creditCardIndex.remove(entry.getKey());
+				notIndexed.add(entry.getKey());
+			}
+		}
+		long removals = creditCardIndex.getRemovalCount();
+		findByCreditCardNumbers(notIndexed, handler);
+		for (String number : notIndexed) {
+			Account account = handler.accountsByCreditCard.get(number);
+			if (account != null) {
+				creditCardIndex.put(number, account.getEntityId(), removals);
+			}
+		}
+		return handler.accountsByCreditCard;
+	}
+
+	/**
+	 * Hands the handler the rows of the accounts of credit cards, looking the cards up in T_ACCOUNT_CREDIT_CARD.
+	 */
+	private void findByCreditCardNumbers(List<String> numbers, AccountsByCreditCardHandler handler) {
+		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS, b.ID as BENEFICIARY_ID, b.VERSION as BENEFICIARY_VERSION from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c where ID = b.ACCOUNT_ID and ID = c.ACCOUNT_ID and c.NUMBER in (:creditCardNumbers)";
+		for (int from = 0; from < numbers.size(); from += MAX_IN_LIST_SIZE) {
+			List<String> chunk = numbers.subList(from, Math.min(from + MAX_IN_LIST_SIZE, numbers.size()));
+			namedParameterJdbcTemplate.query(sql, Collections.singletonMap("creditCardNumbers", chunk), handler);
+		}
+	}
+
+	/**
+	 * Hands the handler the rows of accounts by their ids, with null credit card numbers.
+	 */
+	private void findByIds(List<Long> ids, AccountsByCreditCardHandler handler) {
+		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, cast(null as char(16)) as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS, b.ID as BENEFICIARY_ID, b.VERSION as BENEFICIARY_VERSION from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b where a.ID = b.ACCOUNT_ID and a.ID in (:ids)";
+		for (int from = 0; from < ids.size(); from += MAX_IN_LIST_SIZE) {
+			List<Long> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST_SIZE, ids.size()));
+			namedParameterJdbcTemplate.query(sql, Collections.singletonMap("ids", chunk), handler);
+		}
+	}
+
 	public void updateBeneficiaries(Account account) {
-		String sql = "update T_ACCOUNT_BENEFICIARY SET SAVINGS = ? where ACCOUNT_ID = ? and NAME = ?";
-		for (Beneficiary b : account.getBeneficiaries()) {
-			jdbcTemplate.update(sql, b.getSavings().asBigDecimal(), account.getEntityId(), b.getName());
+		updateBeneficiaries(Collections.singleton(account));
+	}
+
+	/**
+	 * Writes the savings of the beneficiaries credited since they were loaded, all in one batch, and marks them saved.
+	 * Beneficiaries left unchanged are not written.
+	 * 
+	 * Savings are only written over if no one has written them since they were loaded, or else an
+	 * OptimisticLockingFailureException is thrown and the transaction has to be retried with the account loaded again.
+	 * Written as increments, savings are never written over, so increments do not conflict.
+	 */
+	public void updateBeneficiaries(Collection<Account> accounts) {
+		List<Beneficiary> credited = new ArrayList<Beneficiary>();
+		for (Account account : accounts) {
+			for (Beneficiary b : account.getBeneficiaries()) {
+				if (b.isCredited()) {
+					credited.add(b);
+				}
+			}
+		}
+		if (credited.isEmpty()) {
+			return;
+		}
+		// lock the rows in the same order in every transaction, so concurrent rewards cannot deadlock
+		credited.sort(Comparator.comparing(Beneficiary::getEntityId,
+				Comparator.nullsFirst(Comparator.naturalOrder())));
+		if (incrementSavings) {
+			incrementSavings(credited);
+			return;
+		}
+		String sql = "update T_ACCOUNT_BENEFICIARY SET SAVINGS = ?, VERSION = VERSION + 1 where ID = ? and VERSION = ?";
+		List<Object[]> batchArgs = new ArrayList<Object[]>(credited.size());
+		for (Beneficiary b : credited) {
+			batchArgs.add(new Object[] { b.getSavings().asBigDecimal(), b.getEntityId(), b.getVersion() });
+		}
+		int[] updateCounts = jdbcTemplate.batchUpdate(sql, batchArgs);
+		for (int i = 0; i < updateCounts.length; i++) {
+			if (updateCounts[i] == 0) {
+				throw new OptimisticLockingFailureException("Savings of beneficiary " + credited.get(i).getEntityId()
+						+ " changed since version " + credited.get(i).getVersion() + " was loaded");
+			}
+		}
+		for (Beneficiary b : credited) {
+			b.markSaved();
+		}
+	}
+
+	/**
+	 * Adds what was credited to each beneficiary to its savings in the database, in one batch, then reads back the new
+	 * savings, which include what was credited by others meanwhile.
+	 */
+	private void incrementSavings(List<Beneficiary> credited) {
+		String sql = "update T_ACCOUNT_BENEFICIARY SET SAVINGS = SAVINGS + ?, VERSION = VERSION + 1 where ID = ?";
+		List<Object[]> batchArgs = new ArrayList<Object[]>(credited.size());
+		Map<Long, Beneficiary> beneficiariesById = new HashMap<Long, Beneficiary>();
+		for (Beneficiary b : credited) {
+			batchArgs.add(new Object[] { b.getUnsavedCredit().asBigDecimal(), b.getEntityId() });
+			beneficiariesById.put(b.getEntityId(), b);
+		}
+		jdbcTemplate.batchUpdate(sql, batchArgs);
+
+		String savingsSql = "select ID, SAVINGS, VERSION from T_ACCOUNT_BENEFICIARY where ID in (:ids)";
+		List<Long> ids = new ArrayList<Long>(beneficiariesById.keySet());
+		for (int from = 0; from < ids.size(); from += MAX_IN_LIST_SIZE) {
+			List<Long> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST_SIZE, ids.size()));
+			namedParameterJdbcTemplate.query(savingsSql, Collections.singletonMap("ids", chunk),
+					(RowCallbackHandler) rs -> beneficiariesById.get(rs.getLong(1))
+							.markSaved(MoneyColumns.getMonetaryAmount(rs, 2), rs.getInt(3)));
+		}
+	}
+
+	public void assignCreditCard(String creditCardNumber, Account account) {
+		int moved = jdbcTemplate.update("update T_ACCOUNT_CREDIT_CARD set ACCOUNT_ID = ? where NUMBER = ?",
+				account.getEntityId(), creditCardNumber);
+		if (moved == 0) {
+			jdbcTemplate.update("insert into T_ACCOUNT_CREDIT_CARD (ACCOUNT_ID, NUMBER) values (?, ?)",
+					account.getEntityId(), creditCardNumber);
+		}
+		unindex(creditCardNumber);
+	}
+
+	public void removeCreditCard(String creditCardNumber) {
+		jdbcTemplate.update("delete from T_ACCOUNT_CREDIT_CARD where NUMBER = ?", creditCardNumber);
+		unindex(creditCardNumber);
+	}
+
+	/**
+	 * Takes a changed credit card out of the index, and again once the transaction changing it completes, as lookups
+	 * on other connections still see the card unchanged until then.
+	 */
+	private void unindex(final String creditCardNumber) {
+		if (creditCardIndex == null) {
+			return;
+		}
+		creditCardIndex.remove(creditCardNumber);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					creditCardIndex.remove(creditCardNumber);
+				}
+			});
 		}
 	}
 
@@ -45,19 +296,28 @@ public class JdbcAccountRepository implements AccountRepository {
 	 * Map the rows returned from the join of T_ACCOUNT and T_ACCOUNT_BENEFICIARY to an fully-reconstituted Account
 	 * aggregate.
 	 * 
+	 * The rows may come from a query joining further tables, as long as it selects the columns selected by
+	 * {@link #findByCreditCard(String)} first and in the same order. Every row is then also handed to the given
+	 * handler, to map the columns that follow.
+	 * 
 	 * @param rs the set of rows returned from the query
+	 * @param otherColumns the handler of the columns following the account's, or null if there are none
 	 * @return the mapped Account aggregate
 	 * @throws SQLException an exception occurred extracting data from the result set
+	 * @throws EmptyResultDataAccessException if there were no rows
 	 */
-	private Account mapAccount(ResultSet rs) throws SQLException {
+	public Account mapAccount(ResultSet rs, RowCallbackHandler otherColumns) throws SQLException {
 		Account account = null;
 		while (rs.next()) {
+			if (otherColumns != null) {
+				otherColumns.processRow(rs);
+			}
 			if (account == null) {
-				String number = rs.getString("ACCOUNT_NUMBER");
-				String name = rs.getString("ACCOUNT_NAME");
+				String number = rs.getString(ACCOUNT_NUMBER);
+				String name = rs.getString(ACCOUNT_NAME);
 				account = new Account(number, name);
 				// set internal entity identifier (primary key)
-				account.setEntityId(rs.getLong("ID"));
+				account.setEntityId(rs.getLong(ID));
 			}
 			account.restoreBeneficiary(mapBeneficiary(rs));
 		}
@@ -76,17 +336,58 @@ public class JdbcAccountRepository implements AccountRepository {
 	 * @throws SQLException an exception occurred extracting data from the result set
 	 */
 	private Beneficiary mapBeneficiary(ResultSet rs) throws SQLException {
-		String name = rs.getString("BENEFICIARY_NAME");
-		MonetaryAmount savings = MonetaryAmount.valueOf(rs.getString("BENEFICIARY_SAVINGS"));
-		Percentage allocationPercentage = Percentage.valueOf(rs.getString("BENEFICIARY_ALLOCATION_PERCENTAGE"));
-		return new Beneficiary(name, allocationPercentage, savings);
+		String name = rs.getString(BENEFICIARY_NAME);
+		MonetaryAmount savings = MoneyColumns.getMonetaryAmount(rs, BENEFICIARY_SAVINGS);
+		Percentage allocationPercentage = MoneyColumns.getPercentage(rs, BENEFICIARY_ALLOCATION_PERCENTAGE);
+		Beneficiary beneficiary = new Beneficiary(name, allocationPercentage, savings, rs.getInt(BENEFICIARY_VERSION));
+		// set internal entity identifier (primary key)
+		beneficiary.setEntityId(rs.getLong(BENEFICIARY_ID));
+		return beneficiary;
 	}
 
 	private class AccountExtractor implements ResultSetExtractor<Account> {
 
 		public Account extractData(ResultSet rs) throws SQLException, DataAccessException {
-			return mapAccount(rs);
+			return mapAccount(rs, null);
 		}
 
 	}
+
+	/**
+	 * Maps the rows returned from the join of T_ACCOUNT, T_ACCOUNT_BENEFICIARY and T_ACCOUNT_CREDIT_CARD for several
+	 * credit cards to Account aggregates, creating one Account object per account however many of its credit cards
+	 * were asked for. Can be handed the rows of several queries, including rows of accounts loaded by id, whose credit
+	 * card numbers are null and mapped by the caller.
+	 */
+	private class AccountsByCreditCardHandler implements RowCallbackHandler {
+
+		private Map<String, Account> accountsByCreditCard = new HashMap<String, Account>();
+
+		private Map<Long, Account> accountsById = new HashMap<Long, Account>();
+
+		/**
+		 * The credit card whose rows the beneficiaries of each account are mapped from. The beneficiaries are repeated
+		 * for every credit card of the account.
+		 */
+		private Map<Long, String> beneficiaryCreditCards = new HashMap<Long, String>();
+
+		public void processRow(ResultSet rs) throws SQLException {
+			Long id = rs.getLong(ID);
+			String creditCardNumber = rs.getString(CREDIT_CARD_NUMBER);
+			Account account = accountsById.get(id);
+			if (account == null) {
+				account = new Account(rs.getString(ACCOUNT_NUMBER), rs.getString(ACCOUNT_NAME));
+				// set internal entity identifier (primary key)
+				account.setEntityId(id);
+				accountsById.put(id, account);
+				beneficiaryCreditCards.put(id, creditCardNumber);
+			}
+			if (creditCardNumber != null) {
+				accountsByCreditCard.put(creditCardNumber, account);
+			}
+			if (Objects.equals(creditCardNumber, beneficiaryCreditCards.get(id))) {
+				account.restoreBeneficiary(mapBeneficiary(rs));
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package rewards.internal.restaurant;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import rewards.internal.restaurant.BenefitAvailabilityRules.RuleChain;
+
+/**
+ * Maps the benefit availability policy columns of restaurants to policies, keeping the policies compiled from rules.
+ *
+ * The BENEFIT_AVAILABILITY_POLICY column holds a code of the type of policy: 'A' for 'always available', 'N' for
+ * 'never available' and 'R' for the rules in the BENEFIT_AVAILABILITY_RULES column, as described by
+ * {@link BenefitAvailabilityRules}. Rules are compiled the first time a restaurant is mapped and again only once they
+ * change, so restaurants loaded again share their policy, and the dinings counted against its monthly cap.
+ *
+ * Repositories mapping the same restaurants should share one instance.
+ */
+public class BenefitAvailabilityPolicies {
+
+	private final ConcurrentMap<String, RuleChain> compiled = new ConcurrentHashMap<String, RuleChain>();
+
+	private RewardedDinings rewardedDinings;
+
+	/**
+	 * Sets the count of the dinings rewarded before, for monthly caps to start the count of each account from. Defaults
+	 * to none: caps count from zero the dinings rewarded since they were compiled.
+	 * @param rewardedDinings the count, typically JdbcRewardRepository.countRewardedDinings
+	 */
+	public void setRewardedDinings(RewardedDinings rewardedDinings) {
+		this.rewardedDinings = rewardedDinings;
+	}
+
+	/**
+	 * Returns the policy of a restaurant.
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param policyCode the value of the BENEFIT_AVAILABILITY_POLICY column
+	 * @param rules the value of the BENEFIT_AVAILABILITY_RULES column, null unless the code is 'R'
+	 * @return the matching benefit availability policy
+	 * @throws IllegalArgumentException if the mapping could not be performed
+	 */
+	public BenefitAvailabilityPolicy policyFor(String merchantNumber, String policyCode, String rules) {
+		if ("A".equals(policyCode)) {
+			return JdbcRestaurantRepository.AlwaysAvailable.INSTANCE;
+		} else if ("N".equals(policyCode)) {
+			return JdbcRestaurantRepository.NeverAvailable.INSTANCE;
+		} else if ("R".equals(policyCode)) {
+			if (rules == null) {
+				throw new IllegalArgumentException("No benefit availability rules for merchant " + merchantNumber);
+			}
+			RuleChain policy = compiled.get(merchantNumber);
+			if (policy == null || !policy.getText().equals(rules)) {
+				RuleChain recompiled = BenefitAvailabilityRules.compile(rules, merchantNumber, rewardedDinings);
+				// should another thread have compiled the same rules meanwhile, share its policy
+				policy = compiled.merge(merchantNumber, recompiled,
+						(current, latest) -> current.getText().equals(latest.getText()) ? current : latest);
+			}
+			return policy;
+		} else {
+			throw new IllegalArgumentException("Not a supported policy code " + policyCode);
+		}
+	}
+
+	/**
+	 * Returns the number of restaurants with compiled rules.
+	 */
+	public int getCompiledCount() {
+		return compiled.size();
+	}
+}
@@ -17,4 +17,24 @@ public interface BenefitAvailabilityPolicy {
 	 * @return benefit availability status
 	 */
 	public boolean isBenefitAvailableFor(Account account, Dining dining);
+
+	/**
+	 * Tells this policy that the benefit it made available for a dining has been contributed to the account. Policies
+	 * limiting how often benefit is available hold it back for the dining as they make it available, and count the
+	 * dining for good once told it was contributed, so that dinings failing to be rewarded do not count. Does nothing
+	 * by default.
+	 * @param account the account of the member who dined
+	 * @param dining the dining event
+	 */
+	public default void benefitContributed(Account account, Dining dining) {
+	}
+
+	/**
+	 * Tells this policy that the benefit it made available for a dining will not be contributed after all, so that what
+	 * it held back for the dining is released. Does nothing by default.
+	 * @param account the account of the member who dined
+	 * @param dining the dining event
+	 */
+	public default void benefitNotContributed(Account account, Dining dining) {
+	}
 }
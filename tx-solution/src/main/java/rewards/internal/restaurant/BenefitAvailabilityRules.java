@@ -0,0 +1,524 @@
+package rewards.internal.restaurant;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import rewards.Dining;
+import rewards.internal.account.Account;
+
+import common.datetime.DateInterval;
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+import common.util.LongLongMap;
+
+/**
+ * Compiles the benefit availability rules of a restaurant into a policy. The rules are written as clauses separated by
+ * semicolons, every one of which a dining has to meet for benefit to be available:
+ *
+ * <pre>
+ * days=MON-FRI,SUN             the days of the week of the dining, as ranges or single days
+ * dates=2016-01-01..2016-06-30  the dates of the dining, both inclusive
+ * minimum=25.00                 the least amount of the dining
+ * monthlyCap=4                  the most dinings of an account rewarded in a calendar month
+ * </pre>
+ *
+ * The rules are parsed once, into a chain of predicates that test the dining with no further parsing: the days as a
+ * bit set, the dates as days since 1970 and the minimum as a monetary amount. The monthly cap is tested last.
+ *
+ * A monthly cap counts the dinings of each account rewarded a benefit, in memory. Testing the cap reserves a place
+ * under it for the dining, atomically, so dinings tested concurrently cannot exceed it. The place is kept once the
+ * benefit has been contributed to the account and the transaction it was contributed in commits; it is released
+ * should the transaction roll back, or the benefit not be contributed. The count of an account in a month starts from
+ * the dinings recorded as rewarded, when the policy is given a count of them, and otherwise from zero. Dinings
+ * rewarded through other policies of the same restaurant meanwhile, such as those of other processes, count only once
+ * the policy is compiled again. The counts cover the current month and the one before, for dinings rewarded late:
+ * dinings older than that are not capped, and dinings dated after the current month are not available.
+ */
+final class BenefitAvailabilityRules {
+
+	private BenefitAvailabilityRules() {
+	}
+
+	/**
+	 * Compiles rules into a policy whose monthly cap counts from zero.
+	 * @param rules the rules, as clauses separated by semicolons
+	 * @return the policy
+	 * @throws IllegalArgumentException if the rules could not be parsed
+	 */
+	static RuleChain compile(String rules) {
+		return compile(rules, null, null);
+	}
+
+	/**
+	 * Compiles the rules of a restaurant into a policy.
+	 * @param rules the rules, as clauses separated by semicolons
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param rewardedDinings the count of dinings rewarded before, for a monthly cap to start from, or null
+	 * @return the policy
+	 * @throws IllegalArgumentException if the rules could not be parsed
+	 */
+	static RuleChain compile(String rules, String merchantNumber, RewardedDinings rewardedDinings) {
+		List<BenefitAvailabilityPolicy> chain = new ArrayList<BenefitAvailabilityPolicy>();
+		MonthlyCap monthlyCap = null;
+		for (String clause : rules.split(";")) {
+			clause = clause.trim();
+			if (clause.isEmpty()) {
+				continue;
+			}
+			int equals = clause.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Benefit availability rule '" + clause + "' has no value");
+			}
+			String name = clause.substring(0, equals).trim();
+			String value = clause.substring(equals + 1).trim();
+			if ("days".equals(name)) {
+				chain.add(DaysOfWeek.parse(value));
+			} else if ("dates".equals(name)) {
+				chain.add(DateRange.parse(value));
+			} else if ("minimum".equals(name)) {
+				chain.add(new MinimumAmount(MonetaryAmount.valueOf(value)));
+			} else if ("monthlyCap".equals(name)) {
+				monthlyCap = new MonthlyCap(parseInt(value, clause), merchantNumber, rewardedDinings);
+			} else {
+				throw new IllegalArgumentException("Not a supported benefit availability rule '" + clause + "'");
+			}
+		}
+		if (monthlyCap != null) {
+			chain.add(monthlyCap);
+		}
+		if (chain.isEmpty()) {
+			throw new IllegalArgumentException("No benefit availability rules in '" + rules + "'");
+		}
+		return new RuleChain(chain.toArray(new BenefitAvailabilityPolicy[chain.size()]), rules);
+	}
+
+	private static int parseInt(String value, String clause) {
+		try {
+			int parsed = Integer.parseInt(value);
+			if (parsed < 0) {
+				throw new IllegalArgumentException("Benefit availability rule '" + clause + "' is negative");
+			}
+			return parsed;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Benefit availability rule '" + clause + "' is not a number", e);
+		}
+	}
+
+	/**
+	 * Available if every rule of the chain says so, tested in order.
+	 */
+	static final class RuleChain implements BenefitAvailabilityPolicy {
+
+		private final BenefitAvailabilityPolicy[] rules;
+
+		private final String text;
+
+		RuleChain(BenefitAvailabilityPolicy[] rules, String text) {
+			this.rules = rules;
+			this.text = text;
+		}
+
+		public boolean isBenefitAvailableFor(Account account, Dining dining) {
+			for (int i = 0; i < rules.length; i++) {
+				if (!rules[i].isBenefitAvailableFor(account, dining)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Tells every rule of the chain.
+		 */
+		@Override
+		public void benefitContributed(Account account, Dining dining) {
+			for (int i = 0; i < rules.length; i++) {
+				rules[i].benefitContributed(account, dining);
+			}
+		}
+
+		/**
+		 * Tells every rule of the chain.
+		 */
+		@Override
+		public void benefitNotContributed(Account account, Dining dining) {
+			for (int i = 0; i < rules.length; i++) {
+				rules[i].benefitNotContributed(account, dining);
+			}
+		}
+
+		/**
+		 * Returns the rules compiled.
+		 */
+		String getText() {
+			return text;
+		}
+
+		public String toString() {
+			return "rules '" + text + "'";
+		}
+	}
+
+	/**
+	 * Available on certain days of the week.
+	 */
+	static final class DaysOfWeek implements BenefitAvailabilityPolicy {
+
+		/**
+		 * Bit 0 for Monday to bit 6 for Sunday.
+		 */
+		private final int days;
+
+		DaysOfWeek(int days) {
+			this.days = days;
+		}
+
+		static DaysOfWeek parse(String value) {
+			int days = 0;
+			for (String range : value.split(",")) {
+				int dash = range.indexOf('-');
+				DayOfWeek from = parseDay(dash < 0 ? range : range.substring(0, dash));
+				DayOfWeek to = dash < 0 ? from : parseDay(range.substring(dash + 1));
+				// a range may wrap around the end of the week, as in FRI-MON
+				for (DayOfWeek day = from;; day = day.plus(1)) {
+					days |= 1 << day.ordinal();
+					if (day == to) {
+						break;
+					}
+				}
+			}
+			return new DaysOfWeek(days);
+		}
+
+		private static DayOfWeek parseDay(String day) {
+			String abbreviation = day.trim().toUpperCase();
+			for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+				if (dayOfWeek.name().startsWith(abbreviation) && abbreviation.length() >= 3) {
+					return dayOfWeek;
+				}
+			}
+			throw new IllegalArgumentException("Not a day of the week '" + day + "'");
+		}
+
+		public boolean isBenefitAvailableFor(Account account, Dining dining) {
+			return (days & 1 << dining.getDate().getDayOfWeek().ordinal()) != 0;
+		}
+
+		public String toString() {
+			return "daysOfWeek " + Integer.toBinaryString(days);
+		}
+	}
+
+	/**
+	 * Available for dinings within an interval of dates.
+	 */
+	static final class DateRange implements BenefitAvailabilityPolicy {
+
+		private final DateInterval interval;
+
+		DateRange(DateInterval interval) {
+			this.interval = interval;
+		}
+
+		static DateRange parse(String value) {
+			int dots = value.indexOf("..");
+			if (dots < 0) {
+				throw new IllegalArgumentException("Not a range of dates '" + value + "'");
+			}
+			return new DateRange(new DateInterval(parseDate(value.substring(0, dots)),
+					parseDate(value.substring(dots + 2))));
+		}
+
+		private static SimpleDate parseDate(String date) {
+			try {
+				LocalDate parsed = LocalDate.parse(date.trim());
+				return new SimpleDate(parsed.getMonthValue(), parsed.getDayOfMonth(), parsed.getYear());
+			} catch (DateTimeParseException e) {
+				throw new IllegalArgumentException("Not a date '" + date + "'", e);
+			}
+		}
+
+		public boolean isBenefitAvailableFor(Account account, Dining dining) {
+			return interval.contains(dining.getDate());
+		}
+
+		public String toString() {
+			return "dates " + interval.getStart() + ".." + interval.getEnd();
+		}
+	}
+
+	/**
+	 * Available for dinings of at least an amount.
+	 */
+	static final class MinimumAmount implements BenefitAvailabilityPolicy {
+
+		private final MonetaryAmount minimum;
+
+		MinimumAmount(MonetaryAmount minimum) {
+			this.minimum = minimum;
+		}
+
+		public boolean isBenefitAvailableFor(Account account, Dining dining) {
+			return !minimum.greaterThan(dining.getAmount());
+		}
+
+		public String toString() {
+			return "minimum " + minimum;
+		}
+	}
+
+	/**
+	 * Available for so many dinings of an account a month. Counts the dinings of each account in maps of account id to
+	 * count, one per month counted. The count includes the dinings reserved but not yet contributed.
+	 */
+	static final class MonthlyCap implements BenefitAvailabilityPolicy {
+
+		/**
+		 * The count of an account not yet started.
+		 */
+		private static final long NOT_COUNTED = -1;
+
+		private final int cap;
+
+		private final String merchantNumber;
+
+		private final RewardedDinings rewardedDinings;
+
+		/**
+		 * The counts of the months counted, by month. Guarded by this, as is the field below.
+		 */
+		private final Map<Integer, LongLongMap> counts = new HashMap<Integer, LongLongMap>();
+
+		/**
+		 * The earliest month counted.
+		 */
+		private int earliestMonth = Integer.MIN_VALUE;
+
+		private Clock clock;
+
+		MonthlyCap(int cap) {
+			this(cap, null, null);
+		}
+
+		MonthlyCap(int cap, String merchantNumber, RewardedDinings rewardedDinings) {
+			this.cap = cap;
+			this.merchantNumber = merchantNumber;
+			this.rewardedDinings = rewardedDinings;
+		}
+
+		/**
+		 * Sets the clock that decides the current month. For testing; today's date is used otherwise.
+		 */
+		void setClock(Clock clock) {
+			this.clock = clock;
+		}
+
+		/**
+		 * Reserves a place under the cap for the dining, unless the cap has been reached.
+		 */
+		public boolean isBenefitAvailableFor(Account account, Dining dining) {
+			long accountId = accountIdOf(account);
+			int month = dining.getDate().getEpochMonth();
+			int currentMonth = currentMonth();
+			if (month > currentMonth) {
+				return false;
+			}
+			if (month < currentMonth - 1) {
+				return true;
+			}
+			while (true) {
+				synchronized (this) {
+					LongLongMap monthCounts = countsOf(month, currentMonth);
+					long count = monthCounts.get(accountId, NOT_COUNTED);
+					if (count != NOT_COUNTED) {
+						if (count >= cap) {
+							return false;
+						}
+						monthCounts.put(accountId, count + 1);
+						break;
+					}
+				}
+				start(account, accountId, month, currentMonth);
+			}
+			Reservations reservations = reservations();
+			if (reservations != null) {
+				reservations.reserved.add(new Reservation(accountId, month));
+			}
+			return true;
+		}
+
+		/**
+		 * Keeps the place reserved for the dining, unless the transaction it was contributed in rolls back.
+		 */
+		@Override
+		public void benefitContributed(Account account, Dining dining) {
+			Reservations reservations = reservations();
+			if (reservations != null) {
+				Reservation reservation = reservations.find(accountIdOf(account), dining.getDate().getEpochMonth());
+				if (reservation != null) {
+					reservation.contributed = true;
+				}
+			}
+		}
+
+		/**
+		 * Releases the place reserved for the dining.
+		 */
+		@Override
+		public void benefitNotContributed(Account account, Dining dining) {
+			long accountId = accountIdOf(account);
+			int month = dining.getDate().getEpochMonth();
+			Reservations reservations = reservations();
+			if (reservations != null) {
+				Reservation reservation = reservations.find(accountId, month);
+				if (reservation == null) {
+					return;
+				}
+				reservations.reserved.remove(reservation);
+			}
+			add(accountId, month, -1);
+		}
+
+		private static long accountIdOf(Account account) {
+			Long entityId = account.getEntityId();
+			if (entityId == null) {
+				throw new IllegalArgumentException("Account " + account.getNumber()
+						+ " has no id to count its dinings by");
+			}
+			return entityId;
+		}
+
+		private int currentMonth() {
+			SimpleDate today = clock != null ? SimpleDate.valueOf(clock.millis()) : SimpleDate.today();
+			return today.getEpochMonth();
+		}
+
+		/**
+		 * Returns the number of dinings of an account counted in a month, including those reserved.
+		 */
+		synchronized long count(long accountId, int month) {
+			LongLongMap monthCounts = counts.get(month);
+			return monthCounts == null ? 0 : Math.max(monthCounts.get(accountId, NOT_COUNTED), 0);
+		}
+
+		/**
+		 * Starts the count of an account in a month from the dinings rewarded, unless started meanwhile. The dinings
+		 * are counted without holding the lock.
+		 */
+		private void start(Account account, long accountId, int month, int currentMonth) {
+			long rewarded = rewardedDinings != null ? rewardedDinings.count(account.getNumber(), merchantNumber, month)
+					: 0;
+			synchronized (this) {
+				LongLongMap monthCounts = countsOf(month, currentMonth);
+				if (!monthCounts.containsKey(accountId)) {
+					monthCounts.put(accountId, rewarded);
+				}
+			}
+		}
+
+		private synchronized void add(long accountId, int month, long delta) {
+			LongLongMap monthCounts = counts.get(month);
+			if (monthCounts != null) {
+				long count = monthCounts.get(accountId, NOT_COUNTED);
+				if (count != NOT_COUNTED && count + delta >= 0) {
+					monthCounts.put(accountId, count + delta);
+				}
+			}
+		}
+
+		/**
+		 * Returns the counts of a month, one of the current month and the one before, starting them if need be. Months
+		 * older than those are evicted once the current month moves on.
+		 */
+		private LongLongMap countsOf(int month, int currentMonth) {
+			if (earliestMonth < currentMonth - 1) {
+				earliestMonth = currentMonth - 1;
+				counts.keySet().removeIf(counted -> counted < earliestMonth);
+			}
+			LongLongMap monthCounts = counts.get(month);
+			if (monthCounts == null) {
+				counts.put(month, monthCounts = new LongLongMap(0));
+			}
+			return monthCounts;
+		}
+
+		/**
+		 * Returns the places reserved in the current transaction, registering them to be kept or released once it
+		 * completes, or null if there is no transaction.
+		 */
+		private Reservations reservations() {
+			if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+				return null;
+			}
+			Reservations reservations = (Reservations) TransactionSynchronizationManager.getResource(this);
+			if (reservations == null) {
+				reservations = new Reservations();
+				TransactionSynchronizationManager.bindResource(this, reservations);
+				TransactionSynchronizationManager.registerSynchronization(reservations);
+			}
+			return reservations;
+		}
+
+		/**
+		 * A place reserved for a dining of an account in a month.
+		 */
+		private static final class Reservation {
+
+			final long accountId;
+
+			final int month;
+
+			boolean contributed;
+
+			Reservation(long accountId, int month) {
+				this.accountId = accountId;
+				this.month = month;
+			}
+		}
+
+		/**
+		 * The places reserved in a transaction. Those of dinings whose benefit was contributed are kept if it commits;
+		 * all others are released once it completes.
+		 */
+		private final class Reservations extends TransactionSynchronizationAdapter {
+
+			final List<Reservation> reserved = new ArrayList<Reservation>();
+
+			/**
+			 * Returns a place reserved for a dining of the account in the month and not yet contributed, or null.
+			 */
+			Reservation find(long accountId, int month) {
+				for (Reservation reservation : reserved) {
+					if (reservation.accountId == accountId && reservation.month == month && !reservation.contributed) {
+						return reservation;
+					}
+				}
+				return null;
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(MonthlyCap.this);
+				for (Reservation reservation : reserved) {
+					if (status != TransactionSynchronization.STATUS_COMMITTED || !reservation.contributed) {
+						add(reservation.accountId, reservation.month, -1);
+					}
+				}
+			}
+		}
+
+		public String toString() {
+			return "monthlyCap " + cap;
+		}
+	}
+}
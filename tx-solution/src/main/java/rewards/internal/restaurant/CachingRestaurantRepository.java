@@ -0,0 +1,244 @@
+package rewards.internal.restaurant;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+
+/**
+ * A restaurant repository that remembers the restaurants loaded by another repository, so that the restaurant of a
+ * dining is usually found without a query.
+ *
+ * Restaurants change rarely, so a cached restaurant is reused until its time to live has passed or it is invalidated.
+ * Merchant numbers no restaurant is found for are remembered too, for their own (typically shorter) time to live, so
+ * repeated dinings at an unknown merchant do not each cost a query. At most a fixed number of merchant numbers are
+ * cached, the least recently used being evicted first.
+ *
+ * Restaurants returned are shared between callers and must not be modified. Safe for concurrent use.
+ */
+public class CachingRestaurantRepository implements RestaurantRepository {
+
+	private RestaurantRepository targetRepository;
+
+	private int maximumSize;
+
+	private long timeToLive;
+
+	private long negativeTimeToLive;
+
+	private Clock clock = Clock.systemUTC();
+
+	/**
+	 * The cached restaurants by merchant number, least recently used first. Guarded by itself.
+	 */
+	private Map<String, CacheEntry> entries;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long evictionCount;
+
+	/**
+	 * Creates a new caching restaurant repository.
+	 * @param targetRepository the repository to load restaurants with
+	 * @param maximumSize the most merchant numbers to cache
+	 * @param timeToLive how long to reuse a restaurant, or the absence of one, before loading it again
+	 * @param unit the unit of the time to live
+	 */
+	public CachingRestaurantRepository(RestaurantRepository targetRepository, int maximumSize, long timeToLive,
+			TimeUnit unit) {
+		this.targetRepository = targetRepository;
+		this.maximumSize = maximumSize;
+		this.timeToLive = unit.toMillis(timeToLive);
+		this.negativeTimeToLive = this.timeToLive;
+		this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				if (size() > CachingRestaurantRepository.this.maximumSize) {
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Sets how long to remember that no restaurant has a merchant number. Defaults to the time to live of restaurants;
+	 * shorten it for newly registered restaurants to be found sooner.
+	 * @param negativeTimeToLive how long to remember a merchant number is unknown
+	 * @param unit the unit of the time to live
+	 */
+	public void setNegativeTimeToLive(long negativeTimeToLive, TimeUnit unit) {
+		this.negativeTimeToLive = unit.toMillis(negativeTimeToLive);
+	}
+
+	/**
+	 * Sets the clock that decides when cached entries expire. For testing.
+	 */
+	void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+	public Restaurant findByMerchantNumber(String merchantNumber) {
+		CacheEntry entry = lookup(merchantNumber);
+		if (entry == null) {
+			Restaurant restaurant;
+			try {
+				restaurant = targetRepository.findByMerchantNumber(merchantNumber);
+			} catch (EmptyResultDataAccessException e) {
+				cache(merchantNumber, null);
+				throw e;
+			}
+			cache(merchantNumber, restaurant);
+			return restaurant;
+		}
+		if (entry.restaurant == null) {
+			throw new EmptyResultDataAccessException("No restaurant with merchant number " + merchantNumber, 1);
+		}
+		return entry.restaurant;
+	}
+
+	public Map<String, Restaurant> findByMerchantNumbers(Collection<String> merchantNumbers) {
+		Map<String, Restaurant> restaurants = new HashMap<String, Restaurant>();
+		List<String> missing = new ArrayList<String>();
+		for (String merchantNumber : new LinkedHashSet<String>(merchantNumbers)) {
+			CacheEntry entry = lookup(merchantNumber);
+			if (entry == null) {
+				missing.add(merchantNumber);
+			} else if (entry.restaurant != null) {
+				restaurants.put(merchantNumber, entry.restaurant);
+			}
+		}
+		if (!missing.isEmpty()) {
+			Map<String, Restaurant> loaded = targetRepository.findByMerchantNumbers(missing);
+			for (String merchantNumber : missing) {
+				cache(merchantNumber, loaded.get(merchantNumber));
+			}
+			restaurants.putAll(loaded);
+		}
+		return restaurants;
+	}
+
+	/**
+	 * Forgets the restaurant with a merchant number, so it is loaded again when next asked for. Call it when a
+	 * restaurant changes.
+	 * @param merchantNumber the merchant number
+	 */
+	public void invalidate(String merchantNumber) {
+		synchronized (entries) {
+			entries.remove(merchantNumber);
+		}
+	}
+
+	/**
+	 * Forgets all cached restaurants.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of merchant numbers cached, including expired ones not yet removed.
+	 */
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache, whether with a restaurant or with its absence.
+	 */
+	public long getHitCount() {
+		synchronized (entries) {
+			return hitCount;
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that had to load the restaurant.
+	 */
+	public long getMissCount() {
+		synchronized (entries) {
+			return missCount;
+		}
+	}
+
+	/**
+	 * Returns the number of entries removed to keep within the maximum size or because they had expired.
+	 */
+	public long getEvictionCount() {
+		synchronized (entries) {
+			return evictionCount;
+		}
+	}
+
+	/**
+	 * Returns the fraction of lookups answered from the cache, from 0 to 1.
+	 */
+	public double getHitRatio() {
+		synchronized (entries) {
+			long lookups = hitCount + missCount;
+			return lookups == 0 ? 0 : (double) hitCount / lookups;
+		}
+	}
+
+	/**
+	 * Returns the live cache entry of a merchant number, or null if it has to be loaded, counting the hit or miss.
+	 */
+	private CacheEntry lookup(String merchantNumber) {
+		synchronized (entries) {
+			CacheEntry entry = entries.get(merchantNumber);
+			if (entry != null && entry.expires <= clock.millis()) {
+				entries.remove(merchantNumber);
+				evictionCount++;
+				entry = null;
+			}
+			if (entry == null) {
+				missCount++;
+			} else {
+				hitCount++;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Caches the restaurant of a merchant number, null meaning there is none.
+	 */
+	private void cache(String merchantNumber, Restaurant restaurant) {
+		long expires = clock.millis() + (restaurant == null ? negativeTimeToLive : timeToLive);
+		synchronized (entries) {
+			entries.put(merchantNumber, new CacheEntry(restaurant, expires));
+		}
+	}
+
+	/**
+	 * A cached restaurant, or the absence of one, and when it expires.
+	 */
+	private static class CacheEntry {
+
+		final Restaurant restaurant;
+
+		final long expires;
+
+		CacheEntry(Restaurant restaurant, long expires) {
+			this.restaurant = restaurant;
+			this.expires = expires;
+		}
+	}
+}
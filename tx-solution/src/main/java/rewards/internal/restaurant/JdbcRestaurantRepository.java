@@ -2,15 +2,24 @@ package rewards.internal.restaurant;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import rewards.Dining;
 import rewards.internal.account.Account;
 
+import common.jdbc.MoneyColumns;
 import common.money.Percentage;
 
 /**
@@ -18,8 +27,24 @@ import common.money.Percentage;
  */
 public class JdbcRestaurantRepository implements RestaurantRepository {
 
+	// positions of the mapped columns in the select list, so rows are read by index rather than by label
+	private static final int MERCHANT_NUMBER = 1;
+	private static final int NAME = 2;
+	private static final int BENEFIT_PERCENTAGE = 3;
+	private static final int BENEFIT_AVAILABILITY_POLICY = 4;
+	private static final int BENEFIT_AVAILABILITY_RULES = 5;
+
+	/**
+	 * The most merchant numbers bound to a single 'in' list; larger sets are loaded with several queries.
+	 */
+	private static final int MAX_IN_LIST_SIZE = 500;
+
 	private JdbcTemplate jdbcTemplate;
 
+	private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+	private BenefitAvailabilityPolicies benefitAvailabilityPolicies = new BenefitAvailabilityPolicies();
+
 	/**
 	 * Maps a row returned from a query of T_RESTAURANT to a Restaurant object.
 	 */
@@ -27,56 +52,59 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+	}
+
+	/**
+	 * Sets the policies to map the benefit availability policy columns with. Repositories mapping the same restaurants
+	 * should share them, so that they share the policies compiled. Defaults to policies of this repository's own.
+	 * @param benefitAvailabilityPolicies the benefit availability policies
+	 */
+	public void setBenefitAvailabilityPolicies(BenefitAvailabilityPolicies benefitAvailabilityPolicies) {
+		this.benefitAvailabilityPolicies = benefitAvailabilityPolicies;
 	}
 	
 	public Restaurant findByMerchantNumber(String merchantNumber) {
-		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY from T_RESTAURANT where MERCHANT_NUMBER = ?";
+		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY, BENEFIT_AVAILABILITY_RULES from T_RESTAURANT where MERCHANT_NUMBER = ?";
 		return jdbcTemplate.queryForObject(sql, rowMapper, merchantNumber);
 	}
 
+	public Map<String, Restaurant> findByMerchantNumbers(Collection<String> merchantNumbers) {
+		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY, BENEFIT_AVAILABILITY_RULES from T_RESTAURANT where MERCHANT_NUMBER in (:merchantNumbers)";
+		List<String> numbers = new ArrayList<String>(new LinkedHashSet<String>(merchantNumbers));
+		Map<String, Restaurant> restaurants = new HashMap<String, Restaurant>();
+		for (int from = 0; from < numbers.size(); from += MAX_IN_LIST_SIZE) {
+			List<String> chunk = numbers.subList(from, Math.min(from + MAX_IN_LIST_SIZE, numbers.size()));
+			for (Restaurant restaurant : namedParameterJdbcTemplate.query(sql,
+					Collections.singletonMap("merchantNumbers", chunk), rowMapper)) {
+				restaurants.put(restaurant.getNumber(), restaurant);
+			}
+		}
+		return restaurants;
+	}
+
 	/**
-	 * Maps a row returned from a query of T_RESTAURANT to a Restaurant object.
+	 * Maps a row returned from a query of T_RESTAURANT to a Restaurant object. The query may join other tables, as long
+	 * as it selects MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY and BENEFIT_AVAILABILITY_RULES
+	 * one after another.
 	 * 
 	 * @param rs the result set with its cursor positioned at the current row
+	 * @param firstColumn the position of the MERCHANT_NUMBER column in the select list
 	 */
-	private Restaurant mapRestaurant(ResultSet rs) throws SQLException {
+	public Restaurant mapRestaurant(ResultSet rs, int firstColumn) throws SQLException {
+		int offset = firstColumn - MERCHANT_NUMBER;
 		// get the row column data
-		String name = rs.getString("NAME");
-		String number = rs.getString("MERCHANT_NUMBER");
-		Percentage benefitPercentage = Percentage.valueOf(rs.getString("BENEFIT_PERCENTAGE"));
+		String name = rs.getString(offset + NAME);
+		String number = rs.getString(offset + MERCHANT_NUMBER);
+		Percentage benefitPercentage = MoneyColumns.getPercentage(rs, offset + BENEFIT_PERCENTAGE);
 		// map to the object
 		Restaurant restaurant = new Restaurant(number, name);
 		restaurant.setBenefitPercentage(benefitPercentage);
-		restaurant.setBenefitAvailabilityPolicy(mapBenefitAvailabilityPolicy(rs));
+		restaurant.setBenefitAvailabilityPolicy(benefitAvailabilityPolicies.policyFor(number, rs.getString(offset
+				+ BENEFIT_AVAILABILITY_POLICY), rs.getString(offset + BENEFIT_AVAILABILITY_RULES)));
 		return restaurant;
 	}
 
-	/**
-	 * Helper method that maps benefit availability policy data in the ResultSet to a fully-configured
-	 * {@link BenefitAvailabilityPolicy} object. The key column is 'BENEFIT_AVAILABILITY_POLICY', which is a
-	 * discriminator column containing a string code that identifies the type of policy. Currently supported types are:
-	 * 'A' for 'always available' and 'N' for 'never available'.
-	 * 
-	 * <p>
-	 * More types could be added easily by enhancing this method. For example, 'W' for 'Weekdays only' or 'M' for 'Max
-	 * Rewards per Month'. Some of these types might require additional database column values to be configured, for
-	 * example a 'MAX_REWARDS_PER_MONTH' data column.
-	 * 
-	 * @param rs the result set used to map the policy object from database column values
-	 * @return the matching benefit availability policy
-	 * @throws IllegalArgumentException if the mapping could not be performed
-	 */
-	private BenefitAvailabilityPolicy mapBenefitAvailabilityPolicy(ResultSet rs) throws SQLException {
-		String policyCode = rs.getString("BENEFIT_AVAILABILITY_POLICY");
-		if ("A".equals(policyCode)) {
-			return AlwaysAvailable.INSTANCE;
-		} else if ("N".equals(policyCode)) {
-			return NeverAvailable.INSTANCE;
-		} else {
-			throw new IllegalArgumentException("Not a supported policy code " + policyCode);
-		}
-	}
-
 	/**
 	 * Returns true indicating benefit is always available.
 	 */
@@ -110,7 +138,7 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	private class RestaurantRowMapper implements RowMapper<Restaurant> {
 
 		public Restaurant mapRow(ResultSet rs, int rowNum) throws SQLException {
-			return mapRestaurant(rs);
+			return mapRestaurant(rs, MERCHANT_NUMBER);
 		}
 
 	}
@@ -89,12 +89,37 @@ public class Restaurant extends Entity {
 	 */
 	public MonetaryAmount calculateBenefitFor(Account account, Dining dining) {
 		if (benefitAvailabilityPolicy.isBenefitAvailableFor(account, dining)) {
-			return dining.getAmount().multiplyBy(benefitPercentage);
+			MonetaryAmount benefit = dining.getAmount().multiplyBy(benefitPercentage);
+			if (!benefit.greaterThan(MonetaryAmount.zero())) {
+				// nothing to contribute
+				benefitAvailabilityPolicy.benefitNotContributed(account, dining);
+			}
+			return benefit;
 		} else {
 			return MonetaryAmount.zero();
 		}
 	}
 
+	/**
+	 * Records that the benefit calculated for a dining at this restaurant has been contributed to the account, for the
+	 * benefit availability policy to count it.
+	 * @param account the account that dined at this restaurant
+	 * @param dining the dining rewarded
+	 */
+	public void benefitContributed(Account account, Dining dining) {
+		benefitAvailabilityPolicy.benefitContributed(account, dining);
+	}
+
+	/**
+	 * Records that the benefit calculated for a dining at this restaurant, more than zero, failed to be contributed to
+	 * the account, for the benefit availability policy to release what it held back for the dining.
+	 * @param account the account that dined at this restaurant
+	 * @param dining the dining not rewarded
+	 */
+	public void benefitNotContributed(Account account, Dining dining) {
+		benefitAvailabilityPolicy.benefitNotContributed(account, dining);
+	}
+
 	public String toString() {
 		return "Number = '" + number + "', name = '" + name + "', benefitPercentage = " + benefitPercentage
 				+ ", benefitAvailabilityPolicy = " + benefitAvailabilityPolicy;
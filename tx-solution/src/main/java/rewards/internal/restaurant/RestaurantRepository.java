@@ -1,5 +1,8 @@
 package rewards.internal.restaurant;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Loads restaurant aggregates. Called by the reward network to find and reconstitute Restaurant entities from an
  * external form such as a set of RDMS rows.
@@ -14,4 +17,11 @@ public interface RestaurantRepository {
 	 * @return the restaurant
 	 */
 	public Restaurant findByMerchantNumber(String merchantNumber);
+
+	/**
+	 * Load several Restaurant entities at once by their merchant numbers.
+	 * @param merchantNumbers the merchant numbers
+	 * @return the restaurants indexed by merchant number; merchant numbers without a restaurant are not included
+	 */
+	public Map<String, Restaurant> findByMerchantNumbers(Collection<String> merchantNumbers);
 }
@@ -0,0 +1,18 @@
+package rewards.internal.restaurant;
+
+/**
+ * Counts the dinings of an account at a restaurant rewarded a benefit in a month, so that a monthly cap starts its
+ * count from the rewards recorded before it was compiled.
+ */
+@FunctionalInterface
+public interface RewardedDinings {
+
+	/**
+	 * Returns the number of dinings of an account at a restaurant rewarded a benefit in a month.
+	 * @param accountNumber the number of the account
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param epochMonth the month of the dinings, as returned by SimpleDate.getEpochMonth()
+	 * @return the number of dinings
+	 */
+	public long count(String accountNumber, String merchantNumber, int epochMonth);
+}
@@ -0,0 +1,171 @@
+package rewards.internal.reward;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Hands out reward confirmation numbers from blocks reserved from the S_REWARD_CONFIRMATION_NUMBER sequence, so that
+ * confirming a reward does not cost a query of its own.
+ *
+ * A block is reserved by drawing a number of values from the sequence with a single query. Every value the sequence
+ * gives out is unique, so confirmation numbers stay unique across any number of nodes and restarts, whatever block
+ * size each uses, and alongside code that still draws from the sequence one value at a time. The price is a gap in the
+ * numbers for whatever is left of the block when a node stops.
+ *
+ * Numbers are taken from the current block without locking. Only the first thread finding the block used up reserves
+ * the next one, while other threads needing a number wait for it; should it fail, the next thread in need tries in
+ * turn. A block is reserved in a transaction of its own, never on the connection of the transaction asking for a
+ * number, and within a timeout, so a reward waiting for a block waits no longer than the query reserving it.
+ */
+@ManagedResource(objectName = "rewards:name=confirmationNumberAllocator")
+public class ConfirmationNumberAllocator {
+
+	/**
+	 * Seconds a block may take to reserve.
+	 */
+	private static final int RESERVE_TIMEOUT_SECONDS = 10;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private TransactionTemplate transactionTemplate;
+
+	private int blockSize;
+
+	private volatile Block block = new Block(new long[0]);
+
+	/**
+	 * The block being reserved, if any, for threads needing a number to wait for.
+	 */
+	private final AtomicReference<CompletableFuture<Block>> reservation =
+			new AtomicReference<CompletableFuture<Block>>();
+
+	private final AtomicLong allocatedCount = new AtomicLong();
+
+	private final AtomicLong blockCount = new AtomicLong();
+
+	private final AtomicLong reserveNanos = new AtomicLong();
+
+	/**
+	 * Creates a new confirmation number allocator.
+	 * @param dataSource the database with the S_REWARD_CONFIRMATION_NUMBER sequence
+	 * @param blockSize how many numbers to reserve at a time
+	 */
+	public ConfirmationNumberAllocator(DataSource dataSource, int blockSize) {
+		Assert.isTrue(blockSize > 0, "The block size must be positive");
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.transactionTemplate.setTimeout(RESERVE_TIMEOUT_SECONDS);
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Returns a confirmation number no one has had before.
+	 */
+	public String nextConfirmationNumber() {
+		while (true) {
+			Block current = block;
+			// no further increments once used up, however long the next block takes to reserve
+			if (current.next.get() < current.numbers.length) {
+				int index = current.next.getAndIncrement();
+				if (index < current.numbers.length) {
+					allocatedCount.incrementAndGet();
+					return String.valueOf(current.numbers[index]);
+				}
+			}
+			CompletableFuture<Block> reserving = new CompletableFuture<Block>();
+			if (reservation.compareAndSet(null, reserving)) {
+				try {
+					// another thread may have reserved a block since this one found it used up
+					if (block == current) {
+						block = reserveBlock();
+					}
+					reserving.complete(block);
+				} catch (RuntimeException e) {
+					reserving.completeExceptionally(e);
+					throw e;
+				} finally {
+					reservation.set(null);
+				}
+			} else {
+				CompletableFuture<Block> other = reservation.get();
+				if (other != null) {
+					try {
+						other.join();
+					} catch (CompletionException e) {
+						// the reserving thread failed; try in turn
+					}
+				}
+			}
+		}
+	}
+
+	@ManagedAttribute(description = "Number of numbers reserved at a time")
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@ManagedAttribute(description = "Number of confirmation numbers handed out")
+	public long getAllocatedCount() {
+		return allocatedCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of blocks reserved from the sequence")
+	public long getBlockCount() {
+		return blockCount.get();
+	}
+
+	@ManagedAttribute(description = "Numbers left in the current block")
+	public int getRemaining() {
+		Block current = block;
+		return Math.max(0, current.numbers.length - current.next.get());
+	}
+
+	@ManagedAttribute(description = "Average time to reserve a block, in milliseconds")
+	public double getAverageReserveTime() {
+		long blocks = blockCount.get();
+		return blocks == 0 ? 0 : reserveNanos.get() / 1e6 / blocks;
+	}
+
+	private Block reserveBlock() {
+		long start = System.nanoTime();
+		String sql = "select next value for S_REWARD_CONFIRMATION_NUMBER from UNNEST(SEQUENCE_ARRAY(1, ?, 1))";
+		List<Long> values = transactionTemplate.execute(status -> jdbcTemplate.queryForList(sql, Long.class,
+				blockSize));
+		long[] numbers = new long[values.size()];
+		for (int i = 0; i < numbers.length; i++) {
+			numbers[i] = values.get(i);
+		}
+		reserveNanos.addAndGet(System.nanoTime() - start);
+		blockCount.incrementAndGet();
+		return new Block(numbers);
+	}
+
+	/**
+	 * Reserved numbers and the index of the next one to hand out.
+	 */
+	private static class Block {
+
+		final long[] numbers;
+
+		final AtomicInteger next = new AtomicInteger();
+
+		Block(long[] numbers) {
+			this.numbers = numbers;
+		}
+	}
+}
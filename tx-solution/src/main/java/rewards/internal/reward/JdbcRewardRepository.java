@@ -1,11 +1,18 @@
 package rewards.internal.reward;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
 import javax.sql.DataSource;
 
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
 
 import rewards.AccountContribution;
 import rewards.Dining;
+import rewards.DiningFingerprint;
 import rewards.RewardConfirmation;
 
 import common.datetime.SimpleDate;
@@ -16,23 +23,126 @@ import common.datetime.SimpleDate;
  */
 public class JdbcRewardRepository implements RewardRepository {
 
+	/**
+	 * The numbers reserved at a time when no allocator is set.
+	 */
+	private static final int DEFAULT_BLOCK_SIZE = 100;
+
+	private static final String INSERT_SQL = "insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT) values (?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String INSERT_FINGERPRINTED_SQL = "insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT, DINING_FINGERPRINT) values (?, ?, ?, ?, ?, ?, ?, ?)";
+
 	private JdbcTemplate jdbcTemplate;
+
+	private boolean recordFingerprints;
+
+	private ConfirmationNumberAllocator confirmationNumberAllocator;
 	
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		if (confirmationNumberAllocator == null) {
+			confirmationNumberAllocator = new ConfirmationNumberAllocator(dataSource, DEFAULT_BLOCK_SIZE);
+		}
+	}
+
+	/**
+	 * Sets the allocator of confirmation numbers. Defaults to one reserving numbers from the data source's sequence
+	 * in blocks of 100.
+	 * @param confirmationNumberAllocator the confirmation number allocator
+	 */
+	public void setConfirmationNumberAllocator(ConfirmationNumberAllocator confirmationNumberAllocator) {
+		this.confirmationNumberAllocator = confirmationNumberAllocator;
+	}
+
+	/**
+	 * Sets whether the fingerprint of each dining rewarded is recorded along with the reward. The fingerprint column is
+	 * a unique key, so the insert of a second reward for the same dining fails with a DuplicateKeyException, rolling
+	 * back the reward transaction. Defaults to false.
+	 * @param recordFingerprints true to record dining fingerprints
+	 */
+	public void setRecordFingerprints(boolean recordFingerprints) {
+		this.recordFingerprints = recordFingerprints;
+	}
+
+	/**
+	 * Returns true if a reward was recorded for the dining with the fingerprint given. Only rewards recorded with their
+	 * fingerprint are found.
+	 * @param fingerprint the fingerprint of the dining
+	 */
+	public boolean isRecorded(DiningFingerprint fingerprint) {
+		return jdbcTemplate.queryForObject("select count(*) from T_REWARD where DINING_FINGERPRINT = ?",
+				Integer.class, fingerprint.toString()) > 0;
+	}
+
+	/**
+	 * Returns the number of dinings of an account at a restaurant rewarded a benefit in a month, by the date of the
+	 * dining. Rewards of no amount are not counted. Made for monthly caps to start their counts from.
+	 * @param accountNumber the number of the account
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param epochMonth the month of the dinings, as returned by SimpleDate.getEpochMonth()
+	 */
+	public long countRewardedDinings(String accountNumber, String merchantNumber, int epochMonth) {
+		LocalDate month = LocalDate.of(1970, 1, 1).plusMonths(epochMonth);
+		return jdbcTemplate.queryForObject("select count(*) from T_REWARD where ACCOUNT_NUMBER = ? and "
+				+ "DINING_MERCHANT_NUMBER = ? and DINING_DATE >= ? and DINING_DATE < ? and REWARD_AMOUNT > 0",
+				Long.class, accountNumber, merchantNumber, java.sql.Date.valueOf(month),
+				java.sql.Date.valueOf(month.plusMonths(1)));
 	}
 
 	public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
-		String sql = "insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT) values (?, ?, ?, ?, ?, ?, ?)";
 		String confirmationNumber = nextConfirmationNumber();
-		jdbcTemplate.update(sql, confirmationNumber, contribution.getAmount().asBigDecimal(),
-				SimpleDate.today().asDate(), contribution.getAccountNumber(), dining.getMerchantNumber(),
-				dining.getDate().asDate(), dining.getAmount().asBigDecimal());
+		jdbcTemplate.update(insertSql(), rewardRow(confirmationNumber, contribution, dining, SimpleDate.today().asDate()));
 		return new RewardConfirmation(confirmationNumber, contribution);
 	}
 
-	private String nextConfirmationNumber() {
-		String sql = "select next value for S_REWARD_CONFIRMATION_NUMBER from DUAL_REWARD_CONFIRMATION_NUMBER";
-		return jdbcTemplate.queryForObject(sql, String.class);
+	public List<RewardConfirmation> confirmRewards(List<AccountContribution> contributions, List<Dining> dinings) {
+		Assert.isTrue(contributions.size() == dinings.size(), "There must be one dining for each contribution");
+		Date rewardDate = SimpleDate.today().asDate();
+		List<Object[]> batchArgs = new ArrayList<Object[]>(contributions.size());
+		List<RewardConfirmation> confirmations = new ArrayList<RewardConfirmation>(contributions.size());
+		for (int i = 0; i < contributions.size(); i++) {
+			AccountContribution contribution = contributions.get(i);
+			String confirmationNumber = nextConfirmationNumber();
+			batchArgs.add(rewardRow(confirmationNumber, contribution, dinings.get(i), rewardDate));
+			confirmations.add(new RewardConfirmation(confirmationNumber, contribution));
+		}
+		insertRewards(batchArgs);
+		return confirmations;
+	}
+
+	String nextConfirmationNumber() {
+		return confirmationNumberAllocator.nextConfirmationNumber();
+	}
+
+	/**
+	 * Returns the column values of the T_REWARD row recording a reward, in the order of the insert statement.
+	 */
+	Object[] rewardRow(String confirmationNumber, AccountContribution contribution, Dining dining, Date rewardDate) {
+		if (recordFingerprints) {
+			return new Object[] { confirmationNumber, contribution.getAmount().asBigDecimal(), rewardDate,
+					contribution.getAccountNumber(), dining.getMerchantNumber(), dining.getDate().asDate(),
+					dining.getAmount().asBigDecimal(), DiningFingerprint.of(dining).toString() };
+		}
+		return new Object[] { confirmationNumber, contribution.getAmount().asBigDecimal(), rewardDate,
+				contribution.getAccountNumber(), dining.getMerchantNumber(), dining.getDate().asDate(),
+				dining.getAmount().asBigDecimal() };
+	}
+
+	/**
+	 * Inserts T_REWARD rows with a single JDBC batch.
+	 */
+	void insertRewards(List<Object[]> rows) {
+		insertRewards(rows, jdbcTemplate);
+	}
+
+	/**
+	 * Inserts T_REWARD rows with a single JDBC batch, through a template of another data source.
+	 */
+	void insertRewards(List<Object[]> rows, JdbcTemplate jdbcTemplate) {
+		jdbcTemplate.batchUpdate(insertSql(), rows);
+	}
+
+	private String insertSql() {
+		return recordFingerprints ? INSERT_FINGERPRINTED_SQL : INSERT_SQL;
 	}
 }
\ No newline at end of file
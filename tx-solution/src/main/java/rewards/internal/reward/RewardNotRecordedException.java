@@ -0,0 +1,21 @@
+package rewards.internal.reward;
+
+import org.springframework.dao.NonTransientDataAccessException;
+
+/**
+ * Thrown when a reward has been committed but its record in T_REWARD could not be written, or is not known to have
+ * been. Not a concurrency failure whatever caused it, so the reward is never retried: that would reward the dining
+ * twice.
+ */
+@SuppressWarnings("serial")
+public class RewardNotRecordedException extends NonTransientDataAccessException {
+
+	/**
+	 * Creates a new exception.
+	 * @param message the detail message
+	 * @param cause why the record was not written, if known
+	 */
+	public RewardNotRecordedException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
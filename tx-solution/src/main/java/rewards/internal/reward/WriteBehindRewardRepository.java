@@ -0,0 +1,612 @@
+package rewards.internal.reward;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+
+import common.datetime.SimpleDate;
+
+/**
+ * A reward repository that confirms rewards at once and records them in T_REWARD later, so that rewarding a dining
+ * does not wait for the insert.
+ *
+ * Confirmation numbers are allocated straight away by the JDBC reward repository. The reward records are put on a
+ * bounded queue once the transaction confirming them commits, and dropped if it rolls back. A single background
+ * flusher inserts them in the order they were queued, as JDBC batches of up to a number of rows, each batch committed
+ * in a transaction of its own: records queued within the flush interval of each other share a commit.
+ *
+ * How long a caller waits is set by the {@link Durability}: by default only until its records are queued, in which
+ * case records still queued are lost if the application stops abruptly, and a failed flush is only logged and counted.
+ * What happens when the queue is full is set by the {@link OverflowPolicy}. The records of a transaction are queued
+ * all together or not at all, and no caller waits longer than the maximum wait, whether for room in the queue or for
+ * its records to be committed. As the rewards are committed by then, records that cannot be written, or are not known
+ * to be, fail the caller with a {@link RewardNotRecordedException}, which is never retried.
+ *
+ * A caller waits after its transaction commits but before its connection is released. So that callers waiting hold
+ * no connection the flusher needs, the flusher can be given a connection of its own, taken from the data source as
+ * the repository is created and held until it shuts down.
+ *
+ * Shutting down stops accepting records, and waits for those accepted, including those of callers still queueing
+ * them, to be written. Whatever is still queued when the shutdown timeout runs out is failed.
+ *
+ * The time from queuing a record to committing it is tracked and exported over JMX, along with the queue depth and
+ * counts of what was flushed, written through and rejected.
+ */
+@ManagedResource(objectName = "rewards:name=rewardWriter")
+public class WriteBehindRewardRepository implements RewardRepository {
+
+	/**
+	 * How long a caller waits for its reward records.
+	 */
+	public enum Durability {
+
+		/**
+		 * Until the records are queued.
+		 */
+		QUEUED,
+
+		/**
+		 * Until the records are committed, so failures reach the caller. Callers still share commits.
+		 */
+		COMMITTED
+	}
+
+	/**
+	 * What happens to reward records that do not fit in the queue.
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * The caller waits for room in the queue, up to the maximum wait; its records are then refused as with
+		 * {@link #REJECT}.
+		 */
+		BLOCK,
+
+		/**
+		 * The caller inserts the records itself.
+		 */
+		WRITE_THROUGH,
+
+		/**
+		 * The records are refused with a RejectedExecutionException, all of them unless all fit. They are not written,
+		 * though the rewards they record have already been committed.
+		 */
+		REJECT
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindRewardRepository.class);
+
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+	private JdbcRewardRepository targetRepository;
+
+	private TransactionTemplate transactionTemplate;
+
+	/**
+	 * The flusher's own connection, or null if it takes one from the transaction manager's data source per batch.
+	 */
+	private SingleConnectionDataSource flushConnection;
+
+	private TransactionTemplate flushTransactionTemplate;
+
+	private JdbcTemplate flushJdbcTemplate;
+
+	private BlockingQueue<QueuedReward> queue = new LinkedBlockingQueue<QueuedReward>();
+
+	/**
+	 * A permit for every record the queue has room for, taken before queueing and given back as the flusher takes
+	 * the record, so the records of a transaction can be made room for all at once.
+	 */
+	private Semaphore room;
+
+	private int capacity;
+
+	private volatile int batchSize = 100;
+
+	private volatile long flushInterval = TimeUnit.MILLISECONDS.toNanos(20);
+
+	private volatile Durability durability = Durability.QUEUED;
+
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+	private volatile long maxWait = TimeUnit.SECONDS.toNanos(30);
+
+	private volatile boolean running = true;
+
+	/**
+	 * The number of callers queueing records, that the flusher does not stop before.
+	 */
+	private final AtomicInteger enqueuing = new AtomicInteger();
+
+	private Thread flusher;
+
+	private final AtomicLong flushedCount = new AtomicLong();
+
+	private final AtomicLong batchCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private final AtomicLong writeThroughCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+	/**
+	 * Creates a new write-behind reward repository and starts its flusher.
+	 * @param targetRepository the repository to allocate confirmation numbers with and insert reward records through
+	 * @param transactionManager the transaction manager of the reward database, to commit each batch with
+	 * @param capacity the most reward records queued
+	 */
+	public WriteBehindRewardRepository(JdbcRewardRepository targetRepository,
+			PlatformTransactionManager transactionManager, int capacity) {
+		this(targetRepository, transactionManager, capacity, null);
+	}
+
+	/**
+	 * Creates a new write-behind reward repository whose flusher writes through a connection of its own, and starts
+	 * the flusher.
+	 * @param targetRepository the repository to allocate confirmation numbers with and insert reward records through
+	 * @param transactionManager the transaction manager of the reward database, to commit records written through with
+	 * @param capacity the most reward records queued
+	 * @param flushDataSource the data source to take the flusher's connection from, or null to take one per batch
+	 * from the transaction manager's
+	 */
+	public WriteBehindRewardRepository(JdbcRewardRepository targetRepository,
+			PlatformTransactionManager transactionManager, int capacity, DataSource flushDataSource) {
+		this.targetRepository = targetRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+		if (flushDataSource != null) {
+			this.flushConnection = new SingleConnectionDataSource(DataSourceUtils.getConnection(flushDataSource), true);
+			this.flushTransactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(flushConnection));
+			this.flushJdbcTemplate = new JdbcTemplate(flushConnection);
+		} else {
+			this.flushTransactionTemplate = transactionTemplate;
+		}
+		this.capacity = capacity;
+		this.room = new Semaphore(capacity);
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("reward-writer-");
+		threadFactory.setDaemon(true);
+		this.flusher = threadFactory.newThread(this::flushUntilShutdown);
+		this.flusher.start();
+	}
+
+	/**
+	 * Sets the most reward records inserted with one batch and committed together. Defaults to 100.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "The batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets how long the flusher waits for more records to fill a batch, from taking the first one. Defaults to 20
+	 * milliseconds.
+	 */
+	public void setFlushInterval(long flushInterval, TimeUnit unit) {
+		this.flushInterval = unit.toNanos(flushInterval);
+	}
+
+	/**
+	 * Sets the longest a caller waits for room in the queue, or for its records to be committed. Defaults to 30
+	 * seconds.
+	 */
+	public void setMaxWait(long maxWait, TimeUnit unit) {
+		this.maxWait = unit.toNanos(maxWait);
+	}
+
+	/**
+	 * Sets how long callers wait for their reward records. Defaults to {@link Durability#QUEUED}.
+	 */
+	public void setDurability(Durability durability) {
+		this.durability = durability;
+	}
+
+	/**
+	 * Sets what happens to reward records that do not fit in the queue. Defaults to {@link OverflowPolicy#BLOCK}.
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
+		String confirmationNumber = targetRepository.nextConfirmationNumber();
+		Object[] row = targetRepository.rewardRow(confirmationNumber, contribution, dining, SimpleDate.today()
+				.asDate());
+		write(Collections.singletonList(row));
+		return new RewardConfirmation(confirmationNumber, contribution);
+	}
+
+	public List<RewardConfirmation> confirmRewards(List<AccountContribution> contributions, List<Dining> dinings) {
+		Assert.isTrue(contributions.size() == dinings.size(), "There must be one dining for each contribution");
+		Date rewardDate = SimpleDate.today().asDate();
+		List<Object[]> rows = new ArrayList<Object[]>(contributions.size());
+		List<RewardConfirmation> confirmations = new ArrayList<RewardConfirmation>(contributions.size());
+		for (int i = 0; i < contributions.size(); i++) {
+			AccountContribution contribution = contributions.get(i);
+			String confirmationNumber = targetRepository.nextConfirmationNumber();
+			rows.add(targetRepository.rewardRow(confirmationNumber, contribution, dinings.get(i), rewardDate));
+			confirmations.add(new RewardConfirmation(confirmationNumber, contribution));
+		}
+		write(rows);
+		return confirmations;
+	}
+
+	/**
+	 * Stops accepting reward records and waits for those accepted to be written. Records still queued after the
+	 * shutdown timeout are failed. The flusher's own connection, if it has one, is given back once it has stopped.
+	 */
+	public void shutdown() throws InterruptedException {
+		running = false;
+		flusher.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+		if (flushConnection != null && !flusher.isAlive()) {
+			flushConnection.destroy();
+		}
+		List<QueuedReward> left = new ArrayList<QueuedReward>();
+		queue.drainTo(left);
+		if (!left.isEmpty()) {
+			room.release(left.size());
+			failedCount.addAndGet(left.size());
+			logger.error("Reward writer shut down before writing " + left.size() + " reward records");
+			RewardNotRecordedException failure = new RewardNotRecordedException(
+					"Reward writer shut down before writing the reward record", null);
+			for (QueuedReward reward : left) {
+				if (reward.written != null) {
+					reward.written.completeExceptionally(failure);
+				}
+			}
+		}
+	}
+
+	@ManagedAttribute(description = "Number of reward records waiting to be written")
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	@ManagedAttribute(description = "Most reward records queued")
+	public int getQueueCapacity() {
+		return capacity;
+	}
+
+	@ManagedAttribute(description = "Number of reward records written by the flusher")
+	public long getFlushedCount() {
+		return flushedCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of batches committed by the flusher")
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	@ManagedAttribute(description = "Average number of reward records per batch")
+	public double getAverageBatchSize() {
+		long batches = batchCount.get();
+		return batches == 0 ? 0 : (double) flushedCount.get() / batches;
+	}
+
+	@ManagedAttribute(description = "Number of reward records the flusher failed to write")
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of reward records written by callers as the queue was full")
+	public long getWriteThroughCount() {
+		return writeThroughCount.get();
+	}
+
+	@ManagedAttribute(description = "Number of reward records refused as the queue was full")
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	@ManagedAttribute(description = "Median time from queuing a reward record to committing it, in milliseconds")
+	public double getMedianFlushLatency() {
+		return flushLatency.percentile(0.5);
+	}
+
+	@ManagedAttribute(description = "99th percentile time from queuing a reward record to committing it, in milliseconds")
+	public double getFlushLatency99thPercentile() {
+		return flushLatency.percentile(0.99);
+	}
+
+	@ManagedAttribute(description = "Longest time from queuing a reward record to committing it, in milliseconds")
+	public double getMaximumFlushLatency() {
+		return flushLatency.maximum();
+	}
+
+	@ManagedAttribute(description = "Number of reward records committed within 1, 2, 4, 8... milliseconds of queuing")
+	public long[] getFlushLatencyDistribution() {
+		return flushLatency.counts();
+	}
+
+	/**
+	 * Queues reward records once the current transaction commits, or straight away if there is none.
+	 */
+	private void write(List<Object[]> rows) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					enqueue(rows);
+				}
+			});
+		} else {
+			enqueue(rows);
+		}
+	}
+
+	private void enqueue(List<Object[]> rows) {
+		boolean waitForCommit = durability == Durability.COMMITTED;
+		List<CompletableFuture<Void>> written = new ArrayList<CompletableFuture<Void>>(rows.size());
+		// counted before checking running, so the flusher does not stop between the check and the queueing
+		enqueuing.incrementAndGet();
+		try {
+			if (!running) {
+				rejectedCount.addAndGet(rows.size());
+				throw new RejectedExecutionException("Reward writer shut down, " + rows.size()
+						+ " reward records not written");
+			}
+			if (!makeRoom(rows)) {
+				return;
+			}
+			for (Object[] row : rows) {
+				QueuedReward reward = new QueuedReward(row, waitForCommit ? new CompletableFuture<Void>() : null);
+				queue.add(reward);
+				if (waitForCommit) {
+					written.add(reward.written);
+				}
+			}
+		} finally {
+			enqueuing.decrementAndGet();
+		}
+		long deadline = System.nanoTime() + maxWait;
+		for (CompletableFuture<Void> future : written) {
+			awaitCommit(future, deadline);
+		}
+	}
+
+	/**
+	 * Makes room in the queue for all of the reward records of a transaction according to the overflow policy.
+	 * @return true if there is room for the records, false if the caller wrote them
+	 * @throws RejectedExecutionException if there is no room for the records
+	 */
+	private boolean makeRoom(List<Object[]> rows) {
+		int size = rows.size();
+		if (room.tryAcquire(size)) {
+			return true;
+		}
+		switch (overflowPolicy) {
+		case WRITE_THROUGH:
+			writeThrough(rows);
+			return false;
+		case REJECT:
+			break;
+		default:
+			try {
+				if (size <= capacity && room.tryAcquire(size, maxWait, TimeUnit.NANOSECONDS)) {
+					return true;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				rejectedCount.addAndGet(size);
+				throw new RejectedExecutionException("Interrupted waiting to queue " + size + " reward records", e);
+			}
+		}
+		rejectedCount.addAndGet(size);
+		throw new RejectedExecutionException("Reward writer queue full, " + size + " reward records not written");
+	}
+
+	/**
+	 * Inserts reward records in a transaction of their own, as the caller's has already committed.
+	 */
+	private void writeThrough(List<Object[]> rows) {
+		try {
+			transactionTemplate.execute(status -> {
+				targetRepository.insertRewards(rows);
+				return null;
+			});
+		} catch (RuntimeException e) {
+			throw new RewardNotRecordedException("Failed to write " + rows.size() + " reward records", e);
+		}
+		writeThroughCount.addAndGet(rows.size());
+	}
+
+	private void awaitCommit(CompletableFuture<Void> written, long deadline) {
+		try {
+			written.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RewardNotRecordedException("Interrupted waiting for reward records to be written", e);
+		} catch (TimeoutException e) {
+			throw new RewardNotRecordedException("Reward records not written within "
+					+ TimeUnit.NANOSECONDS.toMillis(maxWait) + "ms", e);
+		} catch (ExecutionException e) {
+			throw new RewardNotRecordedException("Reward records not written", e.getCause());
+		}
+	}
+
+	/**
+	 * The body of the flusher thread: flushes batches until shut down, no caller is queueing records and the queue is
+	 * empty.
+	 */
+	private void flushUntilShutdown() {
+		List<QueuedReward> batch = new ArrayList<QueuedReward>();
+		while (running || enqueuing.get() > 0 || !queue.isEmpty()) {
+			try {
+				QueuedReward first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + flushInterval;
+				int size = batchSize;
+				while (batch.size() < size) {
+					queue.drainTo(batch, size - batch.size());
+					long remaining = deadline - System.nanoTime();
+					if (batch.size() >= size || remaining <= 0) {
+						break;
+					}
+					QueuedReward next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next != null) {
+						batch.add(next);
+					}
+				}
+			} catch (InterruptedException e) {
+				// flush what was taken, then carry on until shut down
+			}
+			if (!batch.isEmpty()) {
+				room.release(batch.size());
+				flush(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Inserts a batch of reward records and commits them.
+	 */
+	private void flush(List<QueuedReward> batch) {
+		List<Object[]> rows = new ArrayList<Object[]>(batch.size());
+		for (QueuedReward reward : batch) {
+			rows.add(reward.row);
+		}
+		try {
+			flushTransactionTemplate.execute(status -> {
+				if (flushJdbcTemplate != null) {
+					targetRepository.insertRewards(rows, flushJdbcTemplate);
+				} else {
+					targetRepository.insertRewards(rows);
+				}
+				return null;
+			});
+		} catch (RuntimeException e) {
+			failedCount.addAndGet(batch.size());
+			logger.error("Failed to write " + batch.size() + " reward records", e);
+			for (QueuedReward reward : batch) {
+				if (reward.written != null) {
+					reward.written.completeExceptionally(e);
+				}
+			}
+			return;
+		}
+		long now = System.nanoTime();
+		for (QueuedReward reward : batch) {
+			flushLatency.record(now - reward.queued);
+		}
+		flushedCount.addAndGet(batch.size());
+		batchCount.incrementAndGet();
+		for (QueuedReward reward : batch) {
+			if (reward.written != null) {
+				reward.written.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * A reward record waiting to be written.
+	 */
+	private static class QueuedReward {
+
+		final Object[] row;
+
+		final long queued = System.nanoTime();
+
+		/**
+		 * Completed once the record is committed, if anyone waits for it.
+		 */
+		final CompletableFuture<Void> written;
+
+		QueuedReward(Object[] row, CompletableFuture<Void> written) {
+			this.row = row;
+			this.written = written;
+		}
+	}
+
+	/**
+	 * Counts latencies in buckets doubling in width, the first holding those up to a millisecond.
+	 */
+	private static class LatencyHistogram {
+
+		private static final int BUCKETS = 24;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+		private final AtomicLong maximum = new AtomicLong();
+
+		void record(long nanos) {
+			long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+			int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+			counts.incrementAndGet(bucket);
+			maximum.accumulateAndGet(nanos, Math::max);
+		}
+
+		/**
+		 * Returns the upper bound of the bucket holding the given fraction of latencies, in milliseconds.
+		 */
+		double percentile(double fraction) {
+			long[] snapshot = counts();
+			long total = 0;
+			for (long count : snapshot) {
+				total += count;
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(fraction * total);
+			long seen = 0;
+			for (int i = 0; i < snapshot.length; i++) {
+				seen += snapshot[i];
+				if (seen >= rank) {
+					return Math.min(1L << i, maximum());
+				}
+			}
+			return maximum();
+		}
+
+		double maximum() {
+			return maximum.get() / 1e6;
+		}
+
+		long[] counts() {
+			long[] snapshot = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				snapshot[i] = counts.get(i);
+			}
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package rewards;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Rewards many dinings of one account at once and checks no credit is lost, whether savings are written as increments
+ * or written over, guarded by their versions.
+ */
+public class RewardNetworkConcurrencyTests {
+
+	private static final int THREADS = 8;
+
+	private static final int DININGS_PER_THREAD = 25;
+
+	private AnnotationConfigApplicationContext context;
+
+	private RewardNetwork rewardNetwork;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@After
+	public void tearDown() {
+		context.close();
+	}
+
+	@Test
+	public void testNoCreditsLostIncrementingSavings() throws Exception {
+		startRewardNetwork(true);
+		assertEquals(THREADS * DININGS_PER_THREAD, rewardConcurrently());
+		verifySavings(THREADS * DININGS_PER_THREAD);
+	}
+
+	@Test
+	public void testNoCreditsLostWritingSavingsOver() throws Exception {
+		startRewardNetwork(false);
+		// a reward may still conflict after its last attempt, but then it has not been made at all
+		verifySavings(rewardConcurrently());
+	}
+
+	private void startRewardNetwork(boolean incrementSavings) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("rewards.incrementSavings", String.valueOf(incrementSavings));
+		properties.put("rewards.retry.enabled", "true");
+		properties.put("rewards.retry.maxAttempts", "20");
+		properties.put("rewards.retry.backOff", "1");
+		context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+		context.register(SystemTestConfig.class);
+		context.refresh();
+		rewardNetwork = context.getBean(RewardNetwork.class);
+		jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+		// row level locking, so the rewards really do overlap
+		jdbcTemplate.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+	}
+
+	/**
+	 * Rewards dinings of the same account from several threads at once, returning how many were rewarded.
+	 */
+	private int rewardConcurrently() throws Exception {
+		AtomicInteger rewarded = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int t = 0; t < THREADS; t++) {
+			futures.add(executor.submit((Callable<Void>) () -> {
+				start.await();
+				for (int i = 0; i < DININGS_PER_THREAD; i++) {
+					try {
+						rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890"));
+						rewarded.incrementAndGet();
+					} catch (ConcurrencyFailureException e) {
+						// given up retrying
+					}
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<Void> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		return rewarded.get();
+	}
+
+	private void verifySavings(int rewarded) {
+		// each dining earns $8.00, split evenly between Annabelle and Corgan
+		double expected = rewarded * 4.00;
+		assertEquals(Double.valueOf(expected), jdbcTemplate.queryForObject(
+				"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Annabelle' and ACCOUNT_ID = 0", Double.class));
+		assertEquals(Double.valueOf(expected), jdbcTemplate.queryForObject(
+				"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Corgan' and ACCOUNT_ID = 0", Double.class));
+		assertEquals(Integer.valueOf(rewarded),
+				jdbcTemplate.queryForObject("select count(*) from T_REWARD", Integer.class));
+	}
+}
@@ -0,0 +1,115 @@
+package rewards;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import rewards.internal.IdempotentRewardNetwork;
+
+/**
+ * Submits the same dining many times, at once and after a restart, and checks the account is rewarded for it once.
+ */
+public class RewardNetworkIdempotenceTests {
+
+	private static final int THREADS = 8;
+
+	private AnnotationConfigApplicationContext context;
+
+	private RewardNetwork rewardNetwork;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+	@Before
+	public void setUp() {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("rewards.idempotent.enabled", "true");
+		context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+		context.register(SystemTestConfig.class);
+		context.refresh();
+		rewardNetwork = context.getBean(RewardNetwork.class);
+		jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+	}
+
+	@After
+	public void tearDown() {
+		context.close();
+	}
+
+	@Test
+	public void testConcurrentSubmissionsRewardedOnce() throws Exception {
+		AtomicInteger rewarded = new AtomicInteger();
+		AtomicInteger duplicates = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int t = 0; t < THREADS; t++) {
+			futures.add(executor.submit((Callable<Void>) () -> {
+				start.await();
+				try {
+					rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890"));
+					rewarded.incrementAndGet();
+				} catch (DuplicateDiningException e) {
+					duplicates.incrementAndGet();
+				} catch (DiningInProgressException e) {
+					// overlapped the first submission, which did not fail
+					duplicates.incrementAndGet();
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<Void> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		assertEquals(1, rewarded.get());
+		assertEquals(THREADS - 1, duplicates.get());
+		verifyRewardedOnce();
+	}
+
+	@Test
+	public void testSubmissionAfterRestartRejected() {
+		rewardNetwork.rewardAccountFor(dining);
+
+		// a node started afresh remembers nothing, but the reward recorded is in the way
+		IdempotentRewardNetwork restarted = new IdempotentRewardNetwork(
+				context.getBean("transactionalRewardNetwork", RewardNetwork.class), 100, 10, TimeUnit.MINUTES);
+		try {
+			restarted.rewardAccountFor(dining);
+			fail("Should have thrown DuplicateDiningException for a dining rewarded before the restart");
+		} catch (DuplicateDiningException e) {
+			// expected
+		}
+		verifyRewardedOnce();
+	}
+
+	private void verifyRewardedOnce() {
+		assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("select count(*) from T_REWARD", Integer.class));
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(
+				"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Annabelle' and ACCOUNT_ID = 0", Double.class));
+	}
+}
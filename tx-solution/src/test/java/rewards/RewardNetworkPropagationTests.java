@@ -1,19 +1,32 @@
 package rewards;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
 
 import javax.sql.DataSource;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 
+import rewards.internal.RewardNetworkImplRequiresNew;
+import rewards.internal.account.AccountRepository;
+import rewards.internal.restaurant.RestaurantRepository;
+import rewards.internal.reward.RewardRepository;
+
 /**
  * A system test that demonstrates how propagation settings affect transactional execution.
  */
@@ -38,6 +51,12 @@ public class RewardNetworkPropagationTests {
 	@Autowired
 	private PlatformTransactionManager transactionManager;
 
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private RestaurantRepository restaurantRepository;
+
 	@Autowired
 	public void initJdbcTemplate(DataSource dataSource) {
 		this.template = new JdbcTemplate(dataSource);
@@ -57,4 +76,36 @@ public class RewardNetworkPropagationTests {
 		assertEquals(Double.valueOf(4.00), template.queryForObject(sql, Double.class, "Annabelle"));
 		assertEquals(Double.valueOf(4.00), template.queryForObject(sql, Double.class, "Corgan"));
 	}
+
+	@Test
+	public void testBatchRolledBackWhenRewardNotConfirmed() {
+		String sql = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ?";
+		Double savings = template.queryForObject(sql, Double.class, "Annabelle");
+		// fails after the beneficiaries of the dining are updated
+		RewardRepository failing = new RewardRepository() {
+			public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
+				throw new DataAccessResourceFailureException("Reward not recorded");
+			}
+
+			public List<RewardConfirmation> confirmRewards(List<AccountContribution> contributions,
+					List<Dining> dinings) {
+				throw new DataAccessResourceFailureException("Rewards not recorded");
+			}
+		};
+		ProxyFactory proxyFactory = new ProxyFactory(new RewardNetworkImplRequiresNew(accountRepository,
+				restaurantRepository, failing));
+		proxyFactory.addAdvice(new TransactionInterceptor(transactionManager,
+				new AnnotationTransactionAttributeSource()));
+		RewardNetwork failingNetwork = (RewardNetwork) proxyFactory.getProxy();
+
+		try {
+			failingNetwork.rewardAccountsFor(Arrays.asList(Dining.createDining("100.00", "1234123412341234",
+					"1234567890"), Dining.createDining("100.00", "bogus", "1234567890")));
+			fail("Should have thrown DataAccessResourceFailureException for the reward not confirmed");
+		} catch (DataAccessResourceFailureException e) {
+			// expected
+		}
+		// the savings of the dining reported failed are not committed
+		assertEquals(savings, template.queryForObject(sql, Double.class, "Annabelle"));
+	}
 }
\ No newline at end of file
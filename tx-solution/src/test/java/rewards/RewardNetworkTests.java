@@ -1,7 +1,16 @@
 package rewards;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
@@ -14,6 +23,8 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import rewards.internal.LaneRewardExecutor;
+
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import common.money.MonetaryAmount;
@@ -87,4 +98,59 @@ public class RewardNetworkTests {
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Annabelle").getAmount());
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Corgan").getAmount());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testRewardForDinings() {
+		Dining dining1 = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		Dining dining2 = Dining.createDining("100.00", "1234123412340003", "1234567890");
+		Dining unknownMerchant = Dining.createDining("100.00", "1234123412340003", "bogus");
+		Dining dining3 = Dining.createDining("50.00", "1234123412341234", "1234567890");
+
+		List<RewardResult> results = rewardNetwork.rewardAccountsFor(Arrays.asList(dining1, dining2,
+				unknownMerchant, dining3));
+
+		assertEquals(4, results.size());
+		assertTrue(results.get(0).isConfirmed());
+		assertTrue(results.get(1).isConfirmed());
+		assertFalse(results.get(2).isConfirmed());
+		assertTrue(results.get(3).isConfirmed());
+
+		// one reward row per rewarded dining
+		String sql = "SELECT COUNT(*) FROM T_REWARD WHERE CONFIRMATION_NUMBER in (?, ?, ?)";
+		int count = jdbcTemplate.queryForObject(sql, Integer.class, results.get(0).getConfirmation()
+				.getConfirmationNumber(), results.get(1).getConfirmation().getConfirmationNumber(), results.get(3)
+				.getConfirmation().getConfirmationNumber());
+		assertEquals(3, count);
+
+		// both dinings on account '123456789' are reflected in its beneficiaries' savings
+		sql = "SELECT SAVINGS FROM T_ACCOUNT_BENEFICIARY WHERE ACCOUNT_ID = 0 AND NAME = 'Annabelle'";
+		BigDecimal savings = jdbcTemplate.queryForObject(sql, BigDecimal.class);
+		assertEquals(results.get(3).getConfirmation().getAccountContribution().getDistribution("Annabelle")
+				.getTotalSavings(), new MonetaryAmount(savings));
+	}
+
+	@Test
+	public void testRewardForDiningsInLanes() throws Exception {
+		String sql = "SELECT SAVINGS FROM T_ACCOUNT_BENEFICIARY WHERE ACCOUNT_ID = 0 AND NAME = 'Annabelle'";
+		MonetaryAmount savingsBefore = new MonetaryAmount(jdbcTemplate.queryForObject(sql, BigDecimal.class));
+
+		LaneRewardExecutor executor = new LaneRewardExecutor(rewardNetwork, 4, 100);
+		List<CompletableFuture<RewardConfirmation>> confirmations = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		try {
+			for (int i = 0; i < 50; i++) {
+				confirmations.add(executor.rewardAccountFor(Dining.createDining("100.00", "1234123412341234",
+						"1234567890")));
+				confirmations.add(executor.rewardAccountFor(Dining.createDining("100.00", "1234123412340003",
+						"1234567890")));
+			}
+			CompletableFuture.allOf(confirmations.toArray(new CompletableFuture[confirmations.size()])).get(30,
+					TimeUnit.SECONDS);
+		} finally {
+			executor.shutdown();
+		}
+
+		// no contribution was lost: 50 rewards of 8.00 split evenly between Annabelle and Corgan
+		MonetaryAmount savings = new MonetaryAmount(jdbcTemplate.queryForObject(sql, BigDecimal.class));
+		assertEquals(savingsBefore.add(MonetaryAmount.valueOf("200.00")), savings);
+	}
+}
@@ -19,12 +19,15 @@ public class SystemTestConfig {
 	
 	/**
 	 * Creates an in-memory "rewards" database populated 
-	 * with test data for fast testing
+	 * with test data for fast testing. Each test context gets
+	 * its own database, so starting one does not reset the data
+	 * under another's cached accounts.
 	 */
 	@Bean
 	public DataSource dataSource(){
 		return
 			(new EmbeddedDatabaseBuilder())
+			.generateUniqueName(true)
 			.addScript("classpath:rewards/testdb/schema.sql")
 			.addScript("classpath:rewards/testdb/data.sql")
 			.build();
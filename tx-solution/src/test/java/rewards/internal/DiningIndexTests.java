@@ -0,0 +1,101 @@
+package rewards.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rewards.Dining;
+import rewards.DiningFingerprint;
+import rewards.internal.DiningIndex.Outcome;
+
+/**
+ * Tests remembering the dinings submitted over a window of time.
+ */
+public class DiningIndexTests {
+
+	private Clock clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+
+	private DiningIndex index;
+
+	private DiningFingerprint fingerprint = DiningFingerprint.of(Dining.createDining("100.00", "1234123412341234",
+			"1234567890", 1, 1, 2016));
+
+	@Before
+	public void setUp() {
+		index = new DiningIndex(10, 1, TimeUnit.MINUTES);
+		index.setClock(clock);
+	}
+
+	@Test
+	public void testDuplicateRecognized() {
+		assertEquals(Outcome.NEW, index.claim(fingerprint));
+		index.complete(fingerprint);
+		assertEquals(Outcome.DUPLICATE, index.claim(fingerprint));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void testClaimInProgressRecognized() {
+		assertEquals(Outcome.NEW, index.claim(fingerprint));
+		assertEquals(Outcome.IN_PROGRESS, index.claim(fingerprint));
+		// the first claim fails, so the dining may be claimed again
+		index.release(fingerprint);
+		assertEquals(Outcome.SUSPECT, index.claim(fingerprint));
+		index.complete(fingerprint);
+		assertEquals(Outcome.DUPLICATE, index.claim(fingerprint));
+	}
+
+	@Test
+	public void testReleasedClaimSuspect() {
+		index.claim(fingerprint);
+		index.release(fingerprint);
+		assertEquals(0, index.size());
+		// no longer held, but the filters remember it
+		assertEquals(Outcome.SUSPECT, index.claim(fingerprint));
+	}
+
+	@Test
+	public void testClaimsExpire() {
+		index.claim(fingerprint);
+		index.complete(fingerprint);
+		advance(Duration.ofSeconds(59));
+		assertEquals(Outcome.DUPLICATE, index.claim(fingerprint));
+
+		advance(Duration.ofSeconds(1));
+		assertEquals(Outcome.SUSPECT, index.claim(fingerprint));
+		// the filters forget it within two windows
+		advance(Duration.ofMinutes(2));
+		index.release(fingerprint);
+		assertEquals(Outcome.NEW, index.claim(fingerprint));
+		assertEquals(0, index.getEvictedCount());
+	}
+
+	@Test
+	public void testOldestEvictedWhenFull() {
+		// past their capacity the filters may answer falsely, so the outcomes of these are not certain
+		for (int i = 0; i < 15; i++) {
+			index.claim(fingerprint(i));
+			index.complete(fingerprint(i));
+		}
+		assertEquals(10, index.size());
+		assertEquals(5, index.getEvictedCount());
+		assertEquals(Outcome.SUSPECT, index.claim(fingerprint(0)));
+		assertEquals(Outcome.DUPLICATE, index.claim(fingerprint(14)));
+	}
+
+	private DiningFingerprint fingerprint(int i) {
+		return DiningFingerprint.of(Dining.createDining(i + ".00", "1234123412341234", "1234567890", 1, 1, 2016));
+	}
+
+	private void advance(Duration duration) {
+		clock = Clock.offset(clock, duration);
+		index.setClock(clock);
+	}
+}
@@ -0,0 +1,165 @@
+package rewards.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import rewards.Dining;
+import rewards.DiningFingerprint;
+import rewards.DiningInProgressException;
+import rewards.DuplicateDiningException;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+/**
+ * Tests rejecting dinings submitted again, with the stub repositories.
+ */
+public class IdempotentRewardNetworkTests {
+
+	private RewardNetwork target;
+
+	private IdempotentRewardNetwork rewardNetwork;
+
+	private Set<DiningFingerprint> recorded = new HashSet<DiningFingerprint>();
+
+	private Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+	@Before
+	public void setUp() {
+		target = new RewardNetworkImpl(new StubAccountRepository(), new StubRestaurantRepository(),
+				new StubRewardRepository());
+		rewardNetwork = new IdempotentRewardNetwork(target, 100, 10, TimeUnit.MINUTES);
+		rewardNetwork.setRecordedCheck(recorded::contains);
+	}
+
+	@Test
+	public void testDuplicateRejected() {
+		assertNotNull(rewardNetwork.rewardAccountFor(dining));
+		try {
+			rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890"));
+			fail("Should have thrown DuplicateDiningException for the same dining");
+		} catch (DuplicateDiningException e) {
+			assertEquals(DiningFingerprint.of(dining), e.getFingerprint());
+		}
+		// another amount is another dining
+		assertNotNull(rewardNetwork.rewardAccountFor(Dining.createDining("50.00", "1234123412341234", "1234567890")));
+		assertEquals(3, rewardNetwork.getSubmittedCount());
+		assertEquals(1, rewardNetwork.getDuplicateCount());
+		assertEquals(0, rewardNetwork.getSuspectCount());
+		assertEquals(2, rewardNetwork.getIndexSize());
+	}
+
+	@Test
+	public void testSubmissionInProgressRetryable() throws Exception {
+		CountDownLatch rewarding = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		IdempotentRewardNetwork rewardNetwork = new IdempotentRewardNetwork(new RewardNetwork() {
+
+			private boolean failed;
+
+			public RewardConfirmation rewardAccountFor(Dining dining) {
+				if (!failed) {
+					failed = true;
+					rewarding.countDown();
+					try {
+						release.await(5, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						throw new IllegalStateException(e);
+					}
+					throw new EmptyResultDataAccessException(1);
+				}
+				return target.rewardAccountFor(dining);
+			}
+
+			public List<RewardResult> rewardAccountsFor(List<Dining> dinings) {
+				throw new UnsupportedOperationException();
+			}
+		}, 100, 10, TimeUnit.MINUTES);
+		CompletableFuture<RewardConfirmation> first = CompletableFuture.supplyAsync(
+				() -> rewardNetwork.rewardAccountFor(dining));
+		assertTrue(rewarding.await(5, TimeUnit.SECONDS));
+		try {
+			rewardNetwork.rewardAccountFor(dining);
+			fail("Should have thrown DiningInProgressException while the first submission is rewarded");
+		} catch (DiningInProgressException e) {
+			assertEquals(DiningFingerprint.of(dining), e.getFingerprint());
+		}
+		release.countDown();
+		try {
+			first.get(5, TimeUnit.SECONDS);
+			fail("Should have failed the first submission");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof EmptyResultDataAccessException);
+		}
+		// the first submission failed, so the retried one is rewarded
+		assertNotNull(rewardNetwork.rewardAccountFor(dining));
+		assertEquals(1, rewardNetwork.getInProgressCount());
+		assertEquals(0, rewardNetwork.getDuplicateCount());
+	}
+
+	@Test
+	public void testFailedDiningMayBeSubmittedAgain() {
+		Dining unknown = Dining.createDining("100.00", "bogus", "1234567890");
+		for (int i = 0; i < 2; i++) {
+			try {
+				rewardNetwork.rewardAccountFor(unknown);
+				fail("Should have thrown EmptyResultDataAccessException for an unknown credit card");
+			} catch (EmptyResultDataAccessException e) {
+				// expected
+			}
+		}
+		// the second time, the filters remembered it, so the rewards recorded were checked
+		assertEquals(1, rewardNetwork.getSuspectCount());
+		assertEquals(0, rewardNetwork.getDuplicateCount());
+		assertEquals(0, rewardNetwork.getIndexSize());
+	}
+
+	@Test
+	public void testSuspectCheckedAgainstRecordedRewards() {
+		rewardNetwork = new IdempotentRewardNetwork(target, 1, 10, TimeUnit.MINUTES);
+		rewardNetwork.setRecordedCheck(recorded::contains);
+		rewardNetwork.rewardAccountFor(dining);
+		recorded.add(DiningFingerprint.of(dining));
+		// push the dining out of the index
+		rewardNetwork.rewardAccountFor(Dining.createDining("50.00", "1234123412341234", "1234567890"));
+		assertEquals(1, rewardNetwork.getEvictedCount());
+		try {
+			rewardNetwork.rewardAccountFor(dining);
+			fail("Should have thrown DuplicateDiningException for a dining recorded before");
+		} catch (DuplicateDiningException e) {
+			// expected
+		}
+		assertEquals(1, rewardNetwork.getSuspectCount());
+		assertEquals(1, rewardNetwork.getRecordedDuplicateCount());
+	}
+
+	@Test
+	public void testDuplicatesOfBatchFailed() {
+		Dining other = Dining.createDining("50.00", "1234123412341234", "1234567890");
+		rewardNetwork.rewardAccountFor(dining);
+		List<RewardResult> results = rewardNetwork.rewardAccountsFor(Arrays.asList(dining, other, other));
+		assertEquals(3, results.size());
+		assertFalse(results.get(0).isConfirmed());
+		assertTrue(results.get(0).getFailure() instanceof DuplicateDiningException);
+		assertTrue(results.get(1).isConfirmed());
+		assertEquals(other, results.get(1).getDining());
+		assertTrue(results.get(2).getFailure() instanceof DuplicateDiningException);
+		assertEquals(2, rewardNetwork.getDuplicateCount());
+	}
+}
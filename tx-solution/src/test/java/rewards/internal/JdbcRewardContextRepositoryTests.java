@@ -0,0 +1,111 @@
+package rewards.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import rewards.internal.account.Account;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.restaurant.Restaurant;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+import common.repository.CreditCardIndex;
+
+/**
+ * Tests loading the account and restaurant of a dining with a single query of the test database.
+ */
+public class JdbcRewardContextRepositoryTests {
+
+	private JdbcRewardContextRepository repository;
+
+	private JdbcAccountRepository accountRepository;
+
+	private DataSource dataSource;
+
+	@Before
+	public void setUp() {
+		dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+		accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		JdbcRestaurantRepository restaurantRepository = new JdbcRestaurantRepository();
+		restaurantRepository.setDataSource(dataSource);
+		repository = new JdbcRewardContextRepository(accountRepository, restaurantRepository, dataSource);
+	}
+
+	@Test
+	public void testFindRewardContext() {
+		RewardContext context = repository.findRewardContext("1234123412341234", "1234567890");
+
+		Account account = context.getAccount();
+		assertEquals("wrong entity id", Long.valueOf(0), account.getEntityId());
+		assertEquals("wrong account number", "123456789", account.getNumber());
+		assertEquals("wrong beneficiary collection size", 2, account.getBeneficiaries().size());
+		assertEquals("wrong allocation percentage", Percentage.valueOf("50%"), account.getBeneficiary("Annabelle")
+				.getAllocationPercentage());
+
+		Restaurant restaurant = context.getRestaurant();
+		assertNotNull("the restaurant should never be null", restaurant);
+		assertEquals("the merchant number is wrong", "1234567890", restaurant.getNumber());
+		assertEquals("the name is wrong", "AppleBees", restaurant.getName());
+		assertEquals("the benefitPercentage is wrong", Percentage.valueOf("8%"), restaurant.getBenefitPercentage());
+	}
+
+	@Test
+	public void testAccountLoadedCanBeWritten() {
+		Account account = repository.findRewardContext("1234123412341234", "1234567890").getAccount();
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		accountRepository.updateBeneficiaries(account);
+		assertEquals(MonetaryAmount.valueOf("4.00"), accountRepository.findByCreditCard("1234123412341234")
+				.getBeneficiary("Corgan").getSavings());
+	}
+
+	@Test
+	public void testUnknownCreditCardOrMerchant() {
+		try {
+			repository.findRewardContext("bogus", "1234567890");
+			fail("Should have thrown EmptyResultDataAccessException for a 'bogus' credit card");
+		} catch (EmptyResultDataAccessException e) {
+			// expected
+		}
+		try {
+			repository.findRewardContext("1234123412341234", "bogus");
+			fail("Should have thrown EmptyResultDataAccessException for a 'bogus' merchant number");
+		} catch (EmptyResultDataAccessException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFindRewardContextOfIndexedCreditCard() {
+		CreditCardIndex index = new CreditCardIndex();
+		index.put("1234123412341234", 0);
+		repository.setCreditCardIndex(index);
+		// gone from the table, so only found through the index
+		new JdbcTemplate(dataSource).update("delete from T_ACCOUNT_CREDIT_CARD");
+
+		RewardContext context = repository.findRewardContext("1234123412341234", "1234567890");
+		assertEquals("wrong entity id", Long.valueOf(0), context.getAccount().getEntityId());
+		assertEquals("wrong beneficiary collection size", 2, context.getAccount().getBeneficiaries().size());
+		assertEquals("the merchant number is wrong", "1234567890", context.getRestaurant().getNumber());
+		try {
+			repository.findRewardContext("1234123412341234", "bogus");
+			fail("Should have thrown EmptyResultDataAccessException for a 'bogus' merchant number");
+		} catch (EmptyResultDataAccessException e) {
+			// expected
+		}
+	}
+}
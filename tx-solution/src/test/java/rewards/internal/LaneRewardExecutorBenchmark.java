@@ -0,0 +1,113 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.SystemTestConfig;
+
+/**
+ * Throughput of rewarding dinings spread over the valid test accounts, one after another through the transactional
+ * RewardNetwork against in lanes through a {@link LaneRewardExecutor}. The test database uses multi-version concurrency
+ * control, so rewards of different accounts may overlap as they would with the row locks of a production database.
+ *
+ * Run with the test classpath, passing any JMH options:
+ *
+ * <pre>
+ * mvn -pl tx-solution test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-classpath %classpath rewards.internal.LaneRewardExecutorBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LaneRewardExecutorBenchmark {
+
+	private static final int DININGS = 400;
+
+	@Param({ "2", "4", "8" })
+	private int lanes;
+
+	private AnnotationConfigApplicationContext context;
+
+	private RewardNetwork rewardNetwork;
+
+	private LaneRewardExecutor executor;
+
+	private List<Dining> dinings = new ArrayList<Dining>(DININGS);
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+				.include(LaneRewardExecutorBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new AnnotationConfigApplicationContext(SystemTestConfig.class);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+		jdbcTemplate.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+		List<String> creditCards = jdbcTemplate.queryForList("select c.NUMBER from T_ACCOUNT_CREDIT_CARD c "
+				+ "where c.ACCOUNT_ID in (select b.ACCOUNT_ID from T_ACCOUNT_BENEFICIARY b group by b.ACCOUNT_ID "
+				+ "having sum(b.ALLOCATION_PERCENTAGE) = 1)", String.class);
+		for (int i = 0; i < DININGS; i++) {
+			dinings.add(Dining.createDining("100.00", creditCards.get(i % creditCards.size()), "1234567890"));
+		}
+		rewardNetwork = context.getBean(RewardNetwork.class);
+		executor = new LaneRewardExecutor(rewardNetwork, lanes, DININGS);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		executor.shutdown();
+		context.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DININGS)
+	public RewardConfirmation serial() {
+		RewardConfirmation confirmation = null;
+		for (Dining dining : dinings) {
+			confirmation = rewardNetwork.rewardAccountFor(dining);
+		}
+		return confirmation;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DININGS)
+	public void lanes() {
+		CompletableFuture<?>[] confirmations = new CompletableFuture<?>[DININGS];
+		for (int i = 0; i < DININGS; i++) {
+			confirmations[i] = executor.rewardAccountFor(dinings.get(i));
+		}
+		CompletableFuture.allOf(confirmations).join();
+	}
+}
@@ -0,0 +1,201 @@
+package rewards.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+import common.money.MonetaryAmount;
+import common.repository.CreditCardIndex;
+
+/**
+ * Unit tests for rewarding in parallel lanes, with stub repositories.
+ */
+public class LaneRewardExecutorTests {
+
+	private StubAccountRepository accountRepository = new StubAccountRepository();
+
+	private RewardNetwork rewardNetwork = new RewardNetworkImpl(accountRepository, new StubRestaurantRepository(),
+			new StubRewardRepository());
+
+	private LaneRewardExecutor executor;
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testRewardsOfOneCardInOrderOneAtATime() throws Exception {
+		Map<String, List<String>> rewarded = new ConcurrentHashMap<String, List<String>>();
+		Map<String, AtomicInteger> running = new ConcurrentHashMap<String, AtomicInteger>();
+		AtomicInteger overlaps = new AtomicInteger();
+		executor = new LaneRewardExecutor(network(dining -> {
+			String card = dining.getCreditCardNumber();
+			if (running.computeIfAbsent(card, c -> new AtomicInteger()).incrementAndGet() > 1) {
+				overlaps.incrementAndGet();
+			}
+			rewarded.computeIfAbsent(card, c -> new ArrayList<String>()).add(dining.getAmount().toString());
+			Thread.yield();
+			running.get(card).decrementAndGet();
+			return null;
+		}), 4, 1000);
+
+		List<CompletableFuture<RewardConfirmation>> results = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		List<String> amounts = new ArrayList<String>();
+		for (int i = 1; i <= 100; i++) {
+			String amount = i + ".00";
+			amounts.add(MonetaryAmount.valueOf(amount).toString());
+			for (int card = 0; card < 8; card++) {
+				results.add(executor.rewardAccountFor(Dining.createDining(amount, "123412341234000" + card, "1")));
+			}
+		}
+		CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).get(10, TimeUnit.SECONDS);
+
+		assertEquals("rewards of one card overlapped", 0, overlaps.get());
+		for (int card = 0; card < 8; card++) {
+			assertEquals(amounts, rewarded.get("123412341234000" + card));
+		}
+	}
+
+	@Test
+	public void testRewardsOfDifferentLanesInParallel() throws Exception {
+		CountDownLatch bothRunning = new CountDownLatch(2);
+		executor = new LaneRewardExecutor(network(dining -> {
+			bothRunning.countDown();
+			try {
+				// only goes on once the other lane is rewarding at the same time
+				if (!bothRunning.await(5, TimeUnit.SECONDS)) {
+					throw new IllegalStateException("Lanes did not reward in parallel");
+				}
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return rewardNetwork.rewardAccountFor(dining);
+		}), 2, 10);
+		// lane keys 0 and 1 hash to lanes 0 and 1
+		executor.setLaneKey(dining -> dining.getCreditCardNumber().endsWith("1") ? 1 : 0);
+
+		CompletableFuture<RewardConfirmation> first = executor.rewardAccountFor(Dining.createDining("100.00",
+				"1234123412341234", "1234567890"));
+		CompletableFuture<RewardConfirmation> second = executor.rewardAccountFor(Dining.createDining("100.00",
+				"1234123412341231", "1234567890"));
+		first.get(10, TimeUnit.SECONDS);
+		try {
+			second.get(10, TimeUnit.SECONDS);
+			fail("Should have failed for an unknown credit card");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof EmptyResultDataAccessException);
+		}
+		assertArrayEquals(new long[] { 1, 1 }, executor.getLaneCompletedCounts());
+		assertArrayEquals(new int[] { 0, 0 }, executor.getLaneDepths());
+		assertEquals(0, executor.getBusyLaneCount());
+		for (double occupancy : executor.getLaneOccupancy()) {
+			assertTrue(occupancy > 0 && occupancy <= 1);
+		}
+	}
+
+	@Test
+	public void testRewardsOfOneAccountOneAtATime() throws Exception {
+		// every card is one of the same account
+		CreditCardIndex index = new CreditCardIndex();
+		for (int card = 0; card < 8; card++) {
+			index.put("123412341234000" + card, 0);
+		}
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger overlaps = new AtomicInteger();
+		executor = new LaneRewardExecutor(network(dining -> {
+			if (running.incrementAndGet() > 1) {
+				overlaps.incrementAndGet();
+			}
+			Thread.yield();
+			running.decrementAndGet();
+			return null;
+		}), 4, 1000);
+		executor.setCreditCardIndex(index);
+
+		List<CompletableFuture<RewardConfirmation>> results = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		for (int i = 0; i < 100; i++) {
+			for (int card = 0; card < 8; card++) {
+				results.add(executor.rewardAccountFor(Dining.createDining("1.00", "123412341234000" + card, "1")));
+			}
+		}
+		CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).get(10, TimeUnit.SECONDS);
+
+		assertEquals("rewards of one account overlapped", 0, overlaps.get());
+		int lanesUsed = 0;
+		for (long completed : executor.getLaneCompletedCounts()) {
+			if (completed > 0) {
+				lanesUsed++;
+			}
+		}
+		assertEquals("rewards of one account took several lanes", 1, lanesUsed);
+	}
+
+	@Test
+	public void testFullLaneRejectsDining() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		executor = new LaneRewardExecutor(network(dining -> {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		}), 1, 1);
+		executor.setSubmitTimeout(10, TimeUnit.MILLISECONDS);
+
+		CompletableFuture<RewardConfirmation> first = executor.rewardAccountFor(Dining.createDining("100.00",
+				"1234123412341234", "1234567890"));
+		CompletableFuture<RewardConfirmation> second = executor.rewardAccountFor(Dining.createDining("100.00",
+				"1234123412341234", "1234567890"));
+		try {
+			second.get(1, TimeUnit.SECONDS);
+			fail("Should have rejected a dining for a full lane");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		release.countDown();
+		first.get(10, TimeUnit.SECONDS);
+		// room again once the lane has rewarded its dining
+		executor.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890")).get(10,
+				TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Returns a reward network rewarding single dinings with the given function.
+	 */
+	private static RewardNetwork network(Function<Dining, RewardConfirmation> reward) {
+		return new RewardNetwork() {
+
+			public RewardConfirmation rewardAccountFor(Dining dining) {
+				return reward.apply(dining);
+			}
+
+			public List<RewardResult> rewardAccountsFor(List<Dining> dinings) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,106 @@
+package rewards.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+/**
+ * Tests retrying rewards that conflict with concurrent rewards.
+ */
+public class RetryingRewardNetworkTests {
+
+	private Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+	@Test
+	public void testConflictRetried() {
+		ConflictingRewardNetwork target = new ConflictingRewardNetwork(2);
+		RetryingRewardNetwork rewardNetwork = new RetryingRewardNetwork(target, 3);
+		rewardNetwork.setBackOff(1, TimeUnit.MILLISECONDS);
+
+		assertNotNull(rewardNetwork.rewardAccountFor(dining));
+		assertEquals(3, target.attempts);
+		assertEquals(1, rewardNetwork.getInvocationCount());
+		assertEquals(3, rewardNetwork.getAttemptCount());
+		assertEquals(2, rewardNetwork.getConflictCount());
+		assertEquals(1, rewardNetwork.getRetriedCount());
+		assertEquals(0, rewardNetwork.getExhaustedCount());
+
+		rewardNetwork.rewardAccountFor(dining);
+		assertEquals(0.5, rewardNetwork.getRetryRate(), 0);
+		assertEquals(0.5, rewardNetwork.getConflictRate(), 0);
+	}
+
+	@Test
+	public void testAttemptsBounded() {
+		ConflictingRewardNetwork target = new ConflictingRewardNetwork(5);
+		RetryingRewardNetwork rewardNetwork = new RetryingRewardNetwork(target, 3);
+		rewardNetwork.setBackOff(0, TimeUnit.MILLISECONDS);
+		try {
+			rewardNetwork.rewardAccountsFor(Collections.singletonList(dining));
+			fail("Should have thrown OptimisticLockingFailureException after the last attempt");
+		} catch (OptimisticLockingFailureException e) {
+			// expected
+		}
+		assertEquals(3, target.attempts);
+		assertEquals(1, rewardNetwork.getExhaustedCount());
+	}
+
+	@Test
+	public void testOtherFailuresNotRetried() {
+		RetryingRewardNetwork rewardNetwork = new RetryingRewardNetwork(new ConflictingRewardNetwork(0), 3);
+		try {
+			rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "bogus", "1234567890"));
+			fail("Should have thrown EmptyResultDataAccessException for an unknown credit card");
+		} catch (EmptyResultDataAccessException e) {
+			// expected
+		}
+		assertEquals(1, rewardNetwork.getAttemptCount());
+		assertEquals(0, rewardNetwork.getConflictCount());
+	}
+
+	/**
+	 * Fails the first attempts on a conflict, and then rewards with the stub repositories.
+	 */
+	private static class ConflictingRewardNetwork implements RewardNetwork {
+
+		private RewardNetwork rewardNetwork = new RewardNetworkImpl(new StubAccountRepository(),
+				new StubRestaurantRepository(), new StubRewardRepository());
+
+		private int conflicts;
+
+		private int attempts;
+
+		ConflictingRewardNetwork(int conflicts) {
+			this.conflicts = conflicts;
+		}
+
+		public RewardConfirmation rewardAccountFor(Dining dining) {
+			conflict();
+			return rewardNetwork.rewardAccountFor(dining);
+		}
+
+		public List<RewardResult> rewardAccountsFor(List<Dining> dinings) {
+			conflict();
+			return rewardNetwork.rewardAccountsFor(dinings);
+		}
+
+		private void conflict() {
+			if (attempts++ < conflicts) {
+				throw new OptimisticLockingFailureException("Savings changed meanwhile");
+			}
+		}
+	}
+}
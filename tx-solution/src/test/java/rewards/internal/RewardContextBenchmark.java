@@ -0,0 +1,99 @@
+package rewards.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+
+/**
+ * Latency of loading the account and restaurant of a dining from the embedded test database: one after the other from
+ * the account and restaurant repositories, against both at once from a {@link JdbcRewardContextRepository}. The
+ * embedded database is in the same JVM, so this mostly measures the cost of a statement; over a network each query
+ * saved also saves a round trip.
+ *
+ * Run with the test classpath, passing any JMH options:
+ *
+ * <pre>
+ * mvn -pl tx-solution test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-classpath %classpath rewards.internal.RewardContextBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RewardContextBenchmark {
+
+	private static final String CREDIT_CARD_NUMBER = "1234123412341234";
+
+	private static final String MERCHANT_NUMBER = "1234567890";
+
+	private EmbeddedDatabase database;
+
+	private JdbcAccountRepository accountRepository;
+
+	private JdbcRestaurantRepository restaurantRepository;
+
+	private JdbcRewardContextRepository rewardContextRepository;
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+				.include(RewardContextBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// the database of DbConfig
+		database = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("classpath:rewards/testdb/schema.sql")
+			.addScript("classpath:rewards/testdb/data.sql")
+			.build();
+		DataSource dataSource = database;
+		accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		restaurantRepository = new JdbcRestaurantRepository();
+		restaurantRepository.setDataSource(dataSource);
+		rewardContextRepository = new JdbcRewardContextRepository(accountRepository, restaurantRepository,
+				dataSource);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		database.shutdown();
+	}
+
+	@Benchmark
+	public void separateLookups(Blackhole blackhole) {
+		blackhole.consume(accountRepository.findByCreditCard(CREDIT_CARD_NUMBER));
+		blackhole.consume(restaurantRepository.findByMerchantNumber(MERCHANT_NUMBER));
+	}
+
+	@Benchmark
+	public RewardContext combinedLookup() {
+		return rewardContextRepository.findRewardContext(CREDIT_CARD_NUMBER, MERCHANT_NUMBER);
+	}
+}
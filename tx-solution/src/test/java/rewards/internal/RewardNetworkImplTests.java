@@ -1,14 +1,22 @@
 package rewards.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
 
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
+import rewards.RewardResult;
 import rewards.internal.account.AccountRepository;
 import rewards.internal.restaurant.RestaurantRepository;
 import rewards.internal.reward.RewardRepository;
@@ -69,4 +77,45 @@ public class RewardNetworkImplTests {
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Annabelle").getAmount());
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Corgan").getAmount());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testRewardForDiningWithRewardContext() {
+		AccountRepository accountRepo = new StubAccountRepository();
+		RestaurantRepository restaurantRepo = new StubRestaurantRepository();
+		// no restaurant repository: the restaurant has to come with the account
+		rewardNetwork = new RewardNetworkImpl(accountRepo, null, new StubRewardRepository());
+		rewardNetwork.setRewardContextRepository((creditCardNumber, merchantNumber) -> new RewardContext(
+				accountRepo.findByCreditCard(creditCardNumber), restaurantRepo.findByMerchantNumber(merchantNumber)));
+
+		RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(Dining.createDining("100.00",
+				"1234123412341234", "1234567890"));
+		assertEquals(MonetaryAmount.valueOf("8.00"), confirmation.getAccountContribution().getAmount());
+	}
+
+	@Test
+	public void testRewardForDinings() {
+		Dining first = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		Dining unknownCard = Dining.createDining("100.00", "4321432143214321", "1234567890");
+		Dining second = Dining.createDining("50.00", "1234123412341234", "1234567890");
+
+		List<RewardResult> results = rewardNetwork.rewardAccountsFor(Arrays.asList(first, unknownCard, second));
+
+		// one result per dining, in the order given
+		assertEquals(3, results.size());
+		assertSame(first, results.get(0).getDining());
+		assertSame(unknownCard, results.get(1).getDining());
+		assertSame(second, results.get(2).getDining());
+
+		// the unknown credit card fails without affecting the other dinings
+		assertFalse(results.get(1).isConfirmed());
+		assertTrue(results.get(1).getFailure() instanceof EmptyResultDataAccessException);
+
+		// both dinings on the same account are rewarded, the savings accumulating across the batch
+		AccountContribution contribution = results.get(0).getConfirmation().getAccountContribution();
+		assertEquals(MonetaryAmount.valueOf("8.00"), contribution.getAmount());
+		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Annabelle").getTotalSavings());
+		contribution = results.get(2).getConfirmation().getAccountContribution();
+		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getAmount());
+		assertEquals(MonetaryAmount.valueOf("6.00"), contribution.getDistribution("Annabelle").getTotalSavings());
+	}
+}
@@ -0,0 +1,198 @@
+package rewards.internal.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Tests caching accounts in front of the JDBC account repository, in and out of transactions.
+ */
+public class CachingAccountRepositoryTests {
+
+	private static final String SAVINGS_SQL = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ?";
+
+	private CountingAccountRepository targetRepository;
+
+	private CachingAccountRepository repository;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private TransactionTemplate transactionTemplate;
+
+	@Before
+	public void setUp() {
+		DataSource dataSource = createTestDataSource();
+		targetRepository = new CountingAccountRepository();
+		targetRepository.setDataSource(dataSource);
+		repository = new CachingAccountRepository(targetRepository, 2);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+	}
+
+	@Test
+	public void testAccountCachedByCreditCard() {
+		Account account = repository.findByCreditCard("1234123412341234");
+		Account cached = repository.findByCreditCard("1234123412341234");
+		// every caller gets its own copy
+		assertNotSame(account, cached);
+		assertEquals(account.getEntityId(), cached.getEntityId());
+		assertEquals(account.getNumber(), cached.getNumber());
+		assertEquals(2, cached.getBeneficiaries().size());
+		assertEquals(1, targetRepository.count);
+		assertEquals(1, repository.getHitCount());
+		assertEquals(0.5, repository.getHitRatio(), 0);
+	}
+
+	@Test
+	public void testChangesOnlyCachedOnceWritten() {
+		Account account = repository.findByCreditCard("1234123412341234");
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		assertEquals(MonetaryAmount.valueOf("0.00"),
+				repository.findByCreditCard("1234123412341234").getBeneficiary("Annabelle").getSavings());
+
+		repository.updateBeneficiaries(account);
+		assertEquals(MonetaryAmount.valueOf("4.00"),
+				repository.findByCreditCard("1234123412341234").getBeneficiary("Annabelle").getSavings());
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		assertEquals(1, targetRepository.count);
+	}
+
+	@Test
+	public void testCommittedSavingsWrittenThrough() {
+		transactionTemplate.execute(status -> {
+			Account account = repository.findByCreditCard("1234123412341234");
+			account.makeContribution(MonetaryAmount.valueOf("8.00"));
+			repository.updateBeneficiaries(account);
+			// not committed yet
+			repository.findByCreditCard("1234123412341234");
+			assertEquals(1, repository.getStaleReadCount());
+			return null;
+		});
+
+		Account account = repository.findByCreditCard("1234123412341234");
+		assertEquals(MonetaryAmount.valueOf("4.00"), account.getBeneficiary("Annabelle").getSavings());
+		assertEquals(MonetaryAmount.valueOf("4.00"), account.getBeneficiary("Corgan").getSavings());
+		assertEquals(1, targetRepository.count);
+		repository.findByCreditCard("1234123412341234");
+		assertEquals(1, repository.getStaleReadCount());
+	}
+
+	@Test
+	public void testRolledBackAccountEvicted() {
+		transactionTemplate.execute(status -> {
+			Map<String, Account> accounts = repository.findByCreditCards(Arrays.asList("1234123412341234"));
+			accounts.get("1234123412341234").makeContribution(MonetaryAmount.valueOf("8.00"));
+			repository.updateBeneficiaries(accounts.values());
+			status.setRollbackOnly();
+			return null;
+		});
+
+		assertEquals(0, repository.getSize());
+		assertEquals(1, repository.getRollbackEvictionCount());
+		Account account = repository.findByCreditCard("1234123412341234");
+		assertEquals(MonetaryAmount.valueOf("0.00"), account.getBeneficiary("Annabelle").getSavings());
+		assertEquals(2, targetRepository.count);
+	}
+
+	@Test
+	public void testConflictingAccountEvicted() {
+		repository.findByCreditCard("1234123412341234");
+		// credited by another node
+		jdbcTemplate.update("update T_ACCOUNT_BENEFICIARY set SAVINGS = 1.00, VERSION = VERSION + 1 where ACCOUNT_ID = 0");
+
+		Account stale = repository.findByCreditCard("1234123412341234");
+		stale.makeContribution(MonetaryAmount.valueOf("8.00"));
+		try {
+			repository.updateBeneficiaries(stale);
+			fail("Should have thrown OptimisticLockingFailureException for a stale account");
+		} catch (OptimisticLockingFailureException e) {
+			// expected
+		}
+		assertEquals(0, repository.getSize());
+		assertEquals(1, repository.getConflictEvictionCount());
+
+		// retried with the account loaded again
+		Account account = repository.findByCreditCard("1234123412341234");
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		repository.updateBeneficiaries(account);
+		assertEquals(Double.valueOf(5.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		assertEquals(2, targetRepository.count);
+	}
+
+	@Test
+	public void testCreditCardsOfAnAccountShareItsEntry() {
+		jdbcTemplate.update("insert into T_ACCOUNT_CREDIT_CARD (ACCOUNT_ID, NUMBER) values (0, '1234123412349999')");
+		Map<String, Account> accounts = repository.findByCreditCards(Arrays.asList("1234123412341234",
+				"1234123412349999", "1234123412340003"));
+		assertEquals(3, accounts.size());
+		assertSame(accounts.get("1234123412341234"), accounts.get("1234123412349999"));
+
+		// only the two most recently used credit cards are kept
+		assertEquals(2, repository.getSize());
+		assertEquals(1, repository.getEvictionCount());
+
+		Account account = accounts.get("1234123412341234");
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		repository.updateBeneficiaries(account);
+		Map<String, Account> cached = repository.findByCreditCards(Arrays.asList("1234123412341234",
+				"1234123412349999"));
+		assertSame(cached.get("1234123412341234"), cached.get("1234123412349999"));
+		assertEquals(MonetaryAmount.valueOf("4.00"), cached.get("1234123412349999").getBeneficiary("Corgan")
+				.getSavings());
+	}
+
+	@Test
+	public void testMovedCreditCardForgotten() {
+		Account account3 = repository.findByCreditCard("1234123412340003");
+		repository.findByCreditCard("1234123412341234");
+
+		repository.assignCreditCard("1234123412341234", account3);
+		assertEquals(Long.valueOf(3), repository.findByCreditCard("1234123412341234").getEntityId());
+		assertEquals(3, targetRepository.count);
+	}
+
+	private DataSource createTestDataSource() {
+		return new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+	}
+
+	/**
+	 * Counts the loads from the database.
+	 */
+	private static class CountingAccountRepository extends JdbcAccountRepository {
+
+		private int count;
+
+		@Override
+		public Account findByCreditCard(String creditCardNumber) {
+			count++;
+			return super.findByCreditCard(creditCardNumber);
+		}
+
+		@Override
+		public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers) {
+			count++;
+			return super.findByCreditCards(creditCardNumbers);
+		}
+	}
+}
@@ -2,22 +2,30 @@ package rewards.internal.account;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 
 import common.money.MonetaryAmount;
 import common.money.Percentage;
+import common.repository.CreditCardIndex;
 
 /**
  * Tests the JDBC account repository with a test data source to verify data access and relational-to-object mapping
@@ -67,6 +75,138 @@ public class JdbcAccountRepositoryTests {
 		}
 	}
 
+	@Test
+	public void testFindAccountsByCreditCards() {
+		Map<String, Account> accounts = repository.findByCreditCards(Arrays.asList("1234123412341234",
+				"1234123412340003", "bogus", "1234123412341234"));
+		assertEquals("unknown credit cards should be left out", 2, accounts.size());
+		Account account = accounts.get("1234123412341234");
+		assertEquals("wrong entity id", Long.valueOf(0), account.getEntityId());
+		assertEquals("wrong beneficiary collection size", 2, account.getBeneficiaries().size());
+		assertEquals("wrong allocation percentage", Percentage.valueOf("50%"), account.getBeneficiary("Annabelle")
+				.getAllocationPercentage());
+		assertEquals("wrong entity id", Long.valueOf(3), accounts.get("1234123412340003").getEntityId());
+	}
+
+	@Test
+	public void testFindAccountsByCreditCardsSameAccount() {
+		new JdbcTemplate(dataSource).update(
+				"insert into T_ACCOUNT_CREDIT_CARD (ACCOUNT_ID, NUMBER) values (0, '1234123412349999')");
+		Map<String, Account> accounts = repository.findByCreditCards(Arrays.asList("1234123412341234",
+				"1234123412349999"));
+		assertSame("cards of one account should share the account", accounts.get("1234123412341234"),
+				accounts.get("1234123412349999"));
+		assertEquals("wrong beneficiary collection size", 2, accounts.get("1234123412349999").getBeneficiaries()
+				.size());
+	}
+
+	@Test
+	public void testFindAccountByIndexedCreditCard() {
+		CreditCardIndex index = loadCreditCardIndex();
+		// gone from the table, so only found through the index
+		new JdbcTemplate(dataSource).update("delete from T_ACCOUNT_CREDIT_CARD");
+
+		Account account = repository.findByCreditCard("1234123412341234");
+		assertEquals("wrong entity id", Long.valueOf(0), account.getEntityId());
+		assertEquals("wrong beneficiary collection size", 2, account.getBeneficiaries().size());
+		assertEquals("wrong allocation percentage", Percentage.valueOf("50%"), account.getBeneficiary("Annabelle")
+				.getAllocationPercentage());
+		assertEquals(0, index.findAccountId("1234123412341234"));
+	}
+
+	@Test
+	public void testCreditCardNotIndexedPutInIndex() {
+		CreditCardIndex index = new CreditCardIndex();
+		repository.setCreditCardIndex(index);
+
+		assertEquals("wrong entity id", Long.valueOf(0), repository.findByCreditCard("1234123412341234")
+				.getEntityId());
+		assertEquals(0, index.findAccountId("1234123412341234"));
+	}
+
+	@Test
+	public void testCreditCardOfUnknownAccountRemovedFromIndex() {
+		CreditCardIndex index = loadCreditCardIndex();
+		index.put("1234123412349999", 99);
+		try {
+			repository.findByCreditCard("1234123412349999");
+			fail("Should have thrown EmptyResultDataAccessException for a card of an unknown account");
+		} catch (EmptyResultDataAccessException e) {
+			// expected
+		}
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("1234123412349999"));
+	}
+
+	@Test
+	public void testFindAccountsByIndexedCreditCards() {
+		CreditCardIndex index = loadCreditCardIndex();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("delete from T_ACCOUNT_CREDIT_CARD where ACCOUNT_ID = 3");
+		// added since the index was loaded
+		jdbcTemplate.update("insert into T_ACCOUNT_CREDIT_CARD (ACCOUNT_ID, NUMBER) values (0, '1234123412349999')");
+
+		Map<String, Account> accounts = repository.findByCreditCards(Arrays.asList("1234123412341234",
+				"1234123412340003", "1234123412349999", "bogus"));
+		assertEquals("unknown credit cards should be left out", 3, accounts.size());
+		assertEquals("wrong entity id", Long.valueOf(3), accounts.get("1234123412340003").getEntityId());
+		assertSame("cards of one account should share the account", accounts.get("1234123412341234"),
+				accounts.get("1234123412349999"));
+		assertEquals("wrong beneficiary collection size", 2, accounts.get("1234123412341234").getBeneficiaries()
+				.size());
+		assertEquals(0, index.findAccountId("1234123412349999"));
+	}
+
+	@Test
+	public void testFindAccountByMovedCreditCard() {
+		CreditCardIndex index = loadCreditCardIndex();
+		Account account3 = repository.findByCreditCard("1234123412340003");
+		assertEquals("wrong entity id", Long.valueOf(0), repository.findByCreditCard("1234123412341234")
+				.getEntityId());
+
+		repository.assignCreditCard("1234123412341234", account3);
+		assertEquals("wrong entity id", Long.valueOf(3), repository.findByCreditCard("1234123412341234")
+				.getEntityId());
+		assertEquals(3, index.findAccountId("1234123412341234"));
+		assertEquals("wrong entity id", Long.valueOf(3),
+				repository.findByCreditCards(Collections.singleton("1234123412341234")).get("1234123412341234")
+						.getEntityId());
+
+		repository.removeCreditCard("1234123412341234");
+		try {
+			repository.findByCreditCard("1234123412341234");
+			fail("Should have thrown EmptyResultDataAccessException for a removed card");
+		} catch (EmptyResultDataAccessException e) {
+			// expected
+		}
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("1234123412341234"));
+	}
+
+	@Test
+	public void testFindAccountsByMovedCreditCard() {
+		CreditCardIndex index = loadCreditCardIndex();
+		Account account3 = repository.findByCreditCard("1234123412340003");
+
+		repository.assignCreditCard("1234123412341234", account3);
+		repository.assignCreditCard("1234123412349999", account3);
+		Map<String, Account> accounts = repository.findByCreditCards(Arrays.asList("1234123412341234",
+				"1234123412340003", "1234123412349999"));
+		assertEquals("wrong entity id", Long.valueOf(3), accounts.get("1234123412341234").getEntityId());
+		assertSame("cards of one account should share the account", accounts.get("1234123412340003"),
+				accounts.get("1234123412341234"));
+		assertSame("cards of one account should share the account", accounts.get("1234123412340003"),
+				accounts.get("1234123412349999"));
+		assertEquals(3, index.findAccountId("1234123412341234"));
+		assertEquals(3, index.findAccountId("1234123412349999"));
+	}
+
+	@Test
+	public void testUpdateBeneficiariesOfAccounts() throws SQLException {
+		Account account = repository.findByCreditCard("1234123412341234");
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		repository.updateBeneficiaries(Collections.singleton(account));
+		verifyBeneficiaryTableUpdated();
+	}
+
 	@Test
 	public void testUpdateBeneficiaries() throws SQLException {
 		Account account = repository.findByCreditCard("1234123412341234");
@@ -75,6 +215,74 @@ public class JdbcAccountRepositoryTests {
 		verifyBeneficiaryTableUpdated();
 	}
 
+	@Test
+	public void testUpdateBeneficiariesWritesCreditedOnly() throws SQLException {
+		Account unchanged = repository.findByCreditCard("1234123412340003");
+		Account account = repository.findByCreditCard("1234123412341234");
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		// changed behind the repository's back, so a rewrite of the unchanged account would show
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("update T_ACCOUNT_BENEFICIARY set SAVINGS = 1.00 where ACCOUNT_ID = 3");
+
+		repository.updateBeneficiaries(Arrays.asList(unchanged, account));
+		verifyBeneficiaryTableUpdated();
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(
+				"select sum(SAVINGS) from T_ACCOUNT_BENEFICIARY where ACCOUNT_ID = 3", Double.class));
+
+		// saved, so not written again
+		jdbcTemplate.update("update T_ACCOUNT_BENEFICIARY set SAVINGS = 1.00 where ACCOUNT_ID = 0");
+		repository.updateBeneficiaries(account);
+		assertEquals(Double.valueOf(2.00), jdbcTemplate.queryForObject(
+				"select sum(SAVINGS) from T_ACCOUNT_BENEFICIARY where ACCOUNT_ID = 0", Double.class));
+	}
+
+	@Test
+	public void testUpdateBeneficiariesDetectsConflict() throws SQLException {
+		Account account = repository.findByCreditCard("1234123412341234");
+		Account stale = repository.findByCreditCard("1234123412341234");
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		repository.updateBeneficiaries(account);
+
+		stale.makeContribution(MonetaryAmount.valueOf("8.00"));
+		try {
+			repository.updateBeneficiaries(stale);
+			fail("Should have thrown OptimisticLockingFailureException for savings written meanwhile");
+		} catch (OptimisticLockingFailureException e) {
+			// expected
+		}
+		verifyBeneficiaryTableUpdated();
+
+		// saved savings can be written again
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		repository.updateBeneficiaries(account);
+		assertEquals(MonetaryAmount.valueOf("8.00"), account.getBeneficiary("Annabelle").getSavings());
+	}
+
+	@Test
+	public void testUpdateBeneficiariesIncrementsSavings() throws SQLException {
+		repository.setIncrementSavings(true);
+		Account account = repository.findByCreditCard("1234123412341234");
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		// credited by someone else since the account was loaded
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("update T_ACCOUNT_BENEFICIARY set SAVINGS = 1.00 where NAME = 'Annabelle'");
+
+		repository.updateBeneficiaries(account);
+		assertEquals(Double.valueOf(5.00), jdbcTemplate.queryForObject(
+				"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Annabelle'", Double.class));
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(
+				"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Corgan'", Double.class));
+		// the account now holds the savings in the database
+		assertEquals(MonetaryAmount.valueOf("5.00"), account.getBeneficiary("Annabelle").getSavings());
+
+		// credited again, only the new credit is added
+		account.makeContribution(MonetaryAmount.valueOf("2.00"));
+		repository.updateBeneficiaries(account);
+		assertEquals(Double.valueOf(6.00), jdbcTemplate.queryForObject(
+				"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Annabelle'", Double.class));
+		assertEquals(MonetaryAmount.valueOf("5.00"), account.getBeneficiary("Corgan").getSavings());
+	}
+
 	private void verifyBeneficiaryTableUpdated() throws SQLException {
 		String sql = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ? and ACCOUNT_ID = ?";
 		PreparedStatement stmt = dataSource.getConnection().prepareStatement(sql);
@@ -94,6 +302,13 @@ public class JdbcAccountRepositoryTests {
 		assertEquals(MonetaryAmount.valueOf("4.00"), MonetaryAmount.valueOf(rs.getString(1)));
 	}
 
+	private CreditCardIndex loadCreditCardIndex() {
+		CreditCardIndex index = new JdbcTemplate(dataSource).query(CreditCardIndex.SELECT_CREDIT_CARDS,
+				(ResultSetExtractor<CreditCardIndex>) new CreditCardIndex()::load);
+		repository.setCreditCardIndex(index);
+		return index;
+	}
+
 	private DataSource createTestDataSource() {
 		return new EmbeddedDatabaseBuilder()
 			.setName("rewards")
@@ -0,0 +1,111 @@
+package rewards.internal.restaurant;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import rewards.Dining;
+import rewards.internal.account.Account;
+
+/**
+ * Latency of testing whether benefit is available for a dining: with the 'always available' policy, against rules
+ * compiled from a restaurant's BENEFIT_AVAILABILITY_RULES, without and with a monthly cap. The dinings are of many
+ * accounts over the days of the current month, so that every rule is tested both ways and the cap counts many
+ * accounts. With the cap, the benefit of each dining found available is contributed, as a reward would, outside of any
+ * transaction.
+ *
+ * Run with the test classpath, passing any JMH options, such as -prof gc to see what is allocated:
+ *
+ * <pre>
+ * mvn -pl tx-solution test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-classpath %classpath rewards.internal.restaurant.BenefitAvailabilityPolicyBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenefitAvailabilityPolicyBenchmark {
+
+	private static final int DININGS = 1 << 12;
+
+	private static final int ACCOUNTS = 1000;
+
+	private BenefitAvailabilityPolicy alwaysAvailable = JdbcRestaurantRepository.AlwaysAvailable.INSTANCE;
+
+	private BenefitAvailabilityPolicy rules;
+
+	private BenefitAvailabilityPolicy cappedRules;
+
+	private Account[] accounts = new Account[DININGS];
+
+	private Dining[] dinings = new Dining[DININGS];
+
+	private int next;
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+				.include(BenefitAvailabilityPolicyBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// the cap counts the current month only, so the dinings are of this month and the dates cover it
+		LocalDate today = LocalDate.now();
+		String dates = today.withDayOfMonth(2) + ".." + today.withDayOfMonth(today.lengthOfMonth());
+		rules = BenefitAvailabilityRules.compile("days=MON-SAT; dates=" + dates + "; minimum=20.00");
+		// a cap so high it is never reached, so that every dining meeting the other rules is contributed and counted
+		cappedRules = BenefitAvailabilityRules
+			.compile("days=MON-SAT; dates=" + dates + "; minimum=20.00; monthlyCap=1000000000");
+		Random random = new Random(42);
+		Account[] distinct = new Account[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			distinct[i] = new Account(String.valueOf(123456000 + i), "Account " + i);
+			distinct[i].setEntityId((long) i);
+		}
+		for (int i = 0; i < DININGS; i++) {
+			accounts[i] = distinct[random.nextInt(ACCOUNTS)];
+			dinings[i] = Dining.createDining(String.valueOf(10 + random.nextInt(90)) + ".00", "1234123412341234",
+					"1234567890", today.getMonthValue(), 1 + random.nextInt(today.lengthOfMonth()), today.getYear());
+		}
+	}
+
+	@Benchmark
+	public boolean alwaysAvailable() {
+		int i = next++ & (DININGS - 1);
+		return alwaysAvailable.isBenefitAvailableFor(accounts[i], dinings[i]);
+	}
+
+	@Benchmark
+	public boolean rules() {
+		int i = next++ & (DININGS - 1);
+		return rules.isBenefitAvailableFor(accounts[i], dinings[i]);
+	}
+
+	@Benchmark
+	public boolean cappedRules() {
+		int i = next++ & (DININGS - 1);
+		if (!cappedRules.isBenefitAvailableFor(accounts[i], dinings[i])) {
+			return false;
+		}
+		cappedRules.benefitContributed(accounts[i], dinings[i]);
+		return true;
+	}
+}
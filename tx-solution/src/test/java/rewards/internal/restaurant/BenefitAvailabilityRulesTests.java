@@ -0,0 +1,280 @@
+package rewards.internal.restaurant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import rewards.Dining;
+import rewards.internal.account.Account;
+import rewards.internal.restaurant.BenefitAvailabilityRules.DaysOfWeek;
+import rewards.internal.restaurant.BenefitAvailabilityRules.MonthlyCap;
+import rewards.internal.restaurant.BenefitAvailabilityRules.RuleChain;
+
+import common.datetime.SimpleDate;
+
+/**
+ * Unit tests for the benefit availability rules compiled into policies.
+ */
+public class BenefitAvailabilityRulesTests {
+
+	private Account account;
+
+	@Before
+	public void setUp() {
+		account = new Account("123456789", "Keith and Keri Donald");
+		account.setEntityId(0L);
+	}
+
+	@Test
+	public void testDaysOfWeek() {
+		BenefitAvailabilityPolicy policy = BenefitAvailabilityRules.compile("days=MON-FRI");
+		// 4 January 2016 was a Monday
+		assertTrue(policy.isBenefitAvailableFor(account, dining("100.00", 1, 4, 2016)));
+		assertTrue(policy.isBenefitAvailableFor(account, dining("100.00", 1, 8, 2016)));
+		assertFalse(policy.isBenefitAvailableFor(account, dining("100.00", 1, 9, 2016)));
+		assertFalse(policy.isBenefitAvailableFor(account, dining("100.00", 1, 10, 2016)));
+
+		BenefitAvailabilityPolicy weekend = BenefitAvailabilityRules.compile("days=FRI-SUN,wed");
+		assertFalse(weekend.isBenefitAvailableFor(account, dining("100.00", 1, 4, 2016)));
+		assertTrue(weekend.isBenefitAvailableFor(account, dining("100.00", 1, 6, 2016)));
+		assertTrue(weekend.isBenefitAvailableFor(account, dining("100.00", 1, 10, 2016)));
+	}
+
+	@Test
+	public void testDatesAndMinimum() {
+		BenefitAvailabilityPolicy policy = BenefitAvailabilityRules
+			.compile("dates=2016-01-01..2016-06-30; minimum=25.00");
+		assertTrue(policy.isBenefitAvailableFor(account, dining("25.00", 1, 1, 2016)));
+		assertTrue(policy.isBenefitAvailableFor(account, dining("100.00", 6, 30, 2016)));
+		assertFalse(policy.isBenefitAvailableFor(account, dining("24.99", 3, 1, 2016)));
+		assertFalse(policy.isBenefitAvailableFor(account, dining("100.00", 12, 31, 2015)));
+		assertFalse(policy.isBenefitAvailableFor(account, dining("100.00", 7, 1, 2016)));
+	}
+
+	@Test
+	public void testMonthlyCap() {
+		MonthlyCap cap = monthlyCap(2, 2, 2016);
+		BenefitAvailabilityPolicy policy = new RuleChain(new BenefitAvailabilityPolicy[] {
+				DaysOfWeek.parse("MON-FRI"), cap }, "days=MON-FRI; monthlyCap=2");
+		assertTrue(rewarded(policy, account, dining("100.00", 2, 1, 2016)));
+		// a weekend dining is not available, so never contributed nor counted
+		assertFalse(rewarded(policy, account, dining("100.00", 2, 6, 2016)));
+		assertTrue(rewarded(policy, account, dining("100.00", 2, 2, 2016)));
+		assertFalse(rewarded(policy, account, dining("100.00", 2, 3, 2016)));
+
+		Account other = new Account("123456001", "Dollie R. Adams");
+		other.setEntityId(1L);
+		assertTrue(rewarded(policy, other, dining("100.00", 2, 3, 2016)));
+		// the month before is still counted, for dinings rewarded late
+		assertTrue(rewarded(policy, account, dining("100.00", 1, 4, 2016)));
+		assertTrue(rewarded(policy, account, dining("100.00", 1, 5, 2016)));
+		assertFalse(rewarded(policy, account, dining("100.00", 1, 6, 2016)));
+		// earlier months are not
+		assertTrue(rewarded(policy, account, dining("100.00", 12, 1, 2015)));
+		assertTrue(rewarded(policy, account, dining("100.00", 12, 2, 2015)));
+		assertTrue(rewarded(policy, account, dining("100.00", 12, 3, 2015)));
+
+		// a new month
+		cap.setClock(clock(3, 2016));
+		assertTrue(rewarded(policy, account, dining("100.00", 3, 1, 2016)));
+		// January is no longer counted
+		assertTrue(rewarded(policy, account, dining("100.00", 1, 7, 2016)));
+		assertEquals(0, cap.count(0, dining("100.00", 1, 7, 2016).getDate().getEpochMonth()));
+		// February still is
+		assertFalse(rewarded(policy, account, dining("100.00", 2, 4, 2016)));
+	}
+
+	@Test
+	public void testMonthlyCapFutureMonthNotAvailable() {
+		MonthlyCap cap = monthlyCap(1, 1, 2016);
+		assertTrue(rewarded(cap, account, dining("100.00", 1, 4, 2016)));
+		// dated after the current month, which it does not displace
+		assertFalse(rewarded(cap, account, dining("100.00", 3, 1, 2016)));
+		assertFalse(rewarded(cap, account, dining("100.00", 2, 1, 2016)));
+		assertFalse(rewarded(cap, account, dining("100.00", 1, 5, 2016)));
+		assertEquals(1, cap.count(0, dining("100.00", 1, 5, 2016).getDate().getEpochMonth()));
+	}
+
+	@Test
+	public void testMonthlyCapReservesWhenTested() {
+		MonthlyCap cap = monthlyCap(1, 1, 2016);
+		Dining dining = dining("100.00", 1, 4, 2016);
+		int month = dining.getDate().getEpochMonth();
+		// a dining failing to be rewarded is tested, but never contributed
+		assertTrue(cap.isBenefitAvailableFor(account, dining));
+		assertEquals(1, cap.count(0, month));
+		assertFalse(cap.isBenefitAvailableFor(account, dining));
+		cap.benefitNotContributed(account, dining);
+		assertEquals(0, cap.count(0, month));
+		assertTrue(rewarded(cap, account, dining));
+		assertEquals(1, cap.count(0, month));
+		assertFalse(cap.isBenefitAvailableFor(account, dining));
+	}
+
+	@Test
+	public void testMonthlyCapStartsFromRewarded() {
+		Dining dining = dining("100.00", 1, 4, 2016);
+		MonthlyCap cap = new MonthlyCap(3, "1234567890", (accountNumber, merchantNumber, month) -> {
+			assertEquals("123456789", accountNumber);
+			assertEquals("1234567890", merchantNumber);
+			assertEquals(dining.getDate().getEpochMonth(), month);
+			return 2;
+		});
+		cap.setClock(clock(1, 2016));
+		assertTrue(rewarded(cap, account, dining));
+		assertFalse(cap.isBenefitAvailableFor(account, dining));
+		assertEquals(3, cap.count(0, dining.getDate().getEpochMonth()));
+	}
+
+	@Test
+	public void testMonthlyCapUncountedOnRollback() {
+		MonthlyCap cap = monthlyCap(1, 1, 2016);
+		Dining dining = dining("100.00", 1, 4, 2016);
+		int month = dining.getDate().getEpochMonth();
+		inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> {
+			assertTrue(rewarded(cap, account, dining));
+			assertEquals(1, cap.count(0, month));
+		});
+		assertEquals(0, cap.count(0, month));
+		assertTrue(rewarded(cap, account, dining));
+		assertFalse(cap.isBenefitAvailableFor(account, dining));
+	}
+
+	@Test
+	public void testMonthlyCapReleasedWhenNotContributed() {
+		MonthlyCap cap = monthlyCap(2, 1, 2016);
+		Dining dining = dining("100.00", 1, 4, 2016);
+		int month = dining.getDate().getEpochMonth();
+		inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+			assertTrue(rewarded(cap, account, dining));
+			// tested, but its benefit never contributed
+			assertTrue(cap.isBenefitAvailableFor(account, dining));
+			assertFalse(cap.isBenefitAvailableFor(account, dining));
+			assertEquals(2, cap.count(0, month));
+		});
+		assertEquals(1, cap.count(0, month));
+		inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+			assertTrue(cap.isBenefitAvailableFor(account, dining));
+			cap.benefitNotContributed(account, dining);
+			assertEquals(1, cap.count(0, month));
+			assertTrue(rewarded(cap, account, dining));
+		});
+		assertEquals(2, cap.count(0, month));
+	}
+
+	@Test
+	public void testMonthlyCapNotExceededConcurrently() throws Exception {
+		MonthlyCap cap = monthlyCap(10, 1, 2016);
+		Dining dining = dining("100.00", 1, 4, 2016);
+		AtomicInteger available = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < 1000; i++) {
+			futures.add(executor.submit(() -> {
+				if (rewarded(cap, account, dining)) {
+					available.incrementAndGet();
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertEquals(10, available.get());
+		assertEquals(10, cap.count(0, dining.getDate().getEpochMonth()));
+	}
+
+	@Test
+	public void testUnsupportedRulesRejected() {
+		for (String rules : new String[] { "weekdays", "days=MON-FUN", "dates=2016-01-01", "minimum=lots",
+				"monthlyCap=-1", "happyHour=17", " ; " }) {
+			try {
+				BenefitAvailabilityRules.compile(rules);
+				fail("Should have thrown IllegalArgumentException for '" + rules + "'");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testPoliciesCompiledOncePerRestaurant() {
+		BenefitAvailabilityPolicies policies = new BenefitAvailabilityPolicies();
+		assertSame(JdbcRestaurantRepository.AlwaysAvailable.INSTANCE, policies.policyFor("1234567890", "A", null));
+		BenefitAvailabilityPolicy policy = policies.policyFor("1234567890", "R", "monthlyCap=4");
+		assertSame(policy, policies.policyFor("1234567890", "R", "monthlyCap=4"));
+		assertNotSame(policy, policies.policyFor("1234567891", "R", "monthlyCap=4"));
+		BenefitAvailabilityPolicy changed = policies.policyFor("1234567890", "R", "monthlyCap=5");
+		assertNotSame(policy, changed);
+		assertSame(changed, policies.policyFor("1234567890", "R", "monthlyCap=5"));
+		assertEquals(2, policies.getCompiledCount());
+		try {
+			policies.policyFor("1234567890", "R", null);
+			fail("Should have thrown IllegalArgumentException for a rules policy without rules");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests a dining against a policy, and contributes its benefit if available, as a reward would.
+	 */
+	private boolean rewarded(BenefitAvailabilityPolicy policy, Account account, Dining dining) {
+		if (!policy.isBenefitAvailableFor(account, dining)) {
+			return false;
+		}
+		policy.benefitContributed(account, dining);
+		return true;
+	}
+
+	/**
+	 * Runs work in a transaction that completes with the given status, as far as synchronizations can tell.
+	 */
+	private void inTransaction(int status, Runnable work) {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			work.run();
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(status);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	/**
+	 * Returns a monthly cap whose current month is the given one.
+	 */
+	private MonthlyCap monthlyCap(int cap, int month, int year) {
+		MonthlyCap monthlyCap = new MonthlyCap(cap);
+		monthlyCap.setClock(clock(month, year));
+		return monthlyCap;
+	}
+
+	private Clock clock(int month, int year) {
+		return Clock.fixed(Instant.ofEpochMilli(new SimpleDate(month, 15, year).inMilliseconds()),
+				ZoneId.systemDefault());
+	}
+
+	private Dining dining(String amount, int month, int day, int year) {
+		return Dining.createDining(amount, "1234123412341234", "1234567890", month, day, year);
+	}
+}
@@ -0,0 +1,153 @@
+package rewards.internal.restaurant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import rewards.internal.StubRestaurantRepository;
+
+/**
+ * Unit tests for caching restaurants in front of another repository.
+ */
+public class CachingRestaurantRepositoryTests {
+
+	private CountingRestaurantRepository targetRepository = new CountingRestaurantRepository();
+
+	private Clock clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+
+	private CachingRestaurantRepository repository;
+
+	@Before
+	public void setUp() {
+		repository = new CachingRestaurantRepository(targetRepository, 2, 10, TimeUnit.MINUTES);
+		repository.setNegativeTimeToLive(1, TimeUnit.MINUTES);
+		repository.setClock(clock);
+	}
+
+	@Test
+	public void testFindRestaurantOnceLoaded() {
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		assertSame(restaurant, repository.findByMerchantNumber("1234567890"));
+		assertEquals(1, targetRepository.count);
+		assertEquals(1, repository.getHitCount());
+		assertEquals(1, repository.getMissCount());
+		assertEquals(0.5, repository.getHitRatio(), 0);
+	}
+
+	@Test
+	public void testUnknownMerchantRemembered() {
+		assertNotFound("bogus");
+		assertNotFound("bogus");
+		assertEquals(1, targetRepository.count);
+		assertEquals(1, repository.getHitCount());
+
+		// unknown merchant numbers expire sooner than restaurants
+		advance(Duration.ofMinutes(2));
+		assertNotFound("bogus");
+		assertEquals(2, targetRepository.count);
+	}
+
+	@Test
+	public void testRestaurantExpires() {
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		advance(Duration.ofMinutes(9));
+		assertSame(restaurant, repository.findByMerchantNumber("1234567890"));
+		advance(Duration.ofMinutes(1));
+		repository.findByMerchantNumber("1234567890");
+		assertEquals(2, targetRepository.count);
+		assertEquals(1, repository.getEvictionCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() {
+		repository.findByMerchantNumber("1234567890");
+		assertNotFound("bogus1");
+		repository.findByMerchantNumber("1234567890");
+		assertNotFound("bogus2");
+		assertEquals(2, repository.getSize());
+		assertEquals(1, repository.getEvictionCount());
+
+		// 'bogus1' was used least recently, so it went
+		repository.findByMerchantNumber("1234567890");
+		assertNotFound("bogus1");
+		assertEquals(4, targetRepository.count);
+	}
+
+	@Test
+	public void testFindRestaurantsLoadingOnlyThoseNotCached() {
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		Map<String, Restaurant> restaurants = repository.findByMerchantNumbers(Arrays.asList("1234567890", "bogus"));
+		assertEquals(1, restaurants.size());
+		assertSame(restaurant, restaurants.get("1234567890"));
+		assertEquals(Arrays.asList("bogus"), targetRepository.batches.get(0));
+
+		// now both are cached, the unknown merchant number as such
+		restaurants = repository.findByMerchantNumbers(Arrays.asList("1234567890", "bogus"));
+		assertEquals(1, restaurants.size());
+		assertEquals(1, targetRepository.batches.size());
+		assertNotFound("bogus");
+		assertEquals(1, targetRepository.count);
+	}
+
+	@Test
+	public void testInvalidate() {
+		repository.findByMerchantNumber("1234567890");
+		repository.invalidate("1234567890");
+		repository.findByMerchantNumber("1234567890");
+		repository.invalidateAll();
+		assertEquals(0, repository.getSize());
+		repository.findByMerchantNumber("1234567890");
+		assertEquals(3, targetRepository.count);
+	}
+
+	private void assertNotFound(String merchantNumber) {
+		try {
+			repository.findByMerchantNumber(merchantNumber);
+			fail("Should have thrown EmptyResultDataAccessException for merchant number " + merchantNumber);
+		} catch (EmptyResultDataAccessException e) {
+			// expected
+		}
+	}
+
+	private void advance(Duration duration) {
+		clock = Clock.offset(clock, duration);
+		repository.setClock(clock);
+	}
+
+	/**
+	 * Counts the restaurants loaded.
+	 */
+	private static class CountingRestaurantRepository extends StubRestaurantRepository {
+
+		private int count;
+
+		private List<Collection<String>> batches = new ArrayList<Collection<String>>();
+
+		@Override
+		public Restaurant findByMerchantNumber(String merchantNumber) {
+			count++;
+			return super.findByMerchantNumber(merchantNumber);
+		}
+
+		@Override
+		public Map<String, Restaurant> findByMerchantNumbers(Collection<String> merchantNumbers) {
+			batches.add(merchantNumbers);
+			return super.findByMerchantNumbers(merchantNumbers);
+		}
+	}
+}
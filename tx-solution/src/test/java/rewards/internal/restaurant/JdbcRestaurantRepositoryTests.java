@@ -1,17 +1,29 @@
 package rewards.internal.restaurant;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
+import java.util.Map;
+
 import javax.sql.DataSource;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.dao.EmptyResultDataAccessException;
 
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 
+import rewards.Dining;
+import rewards.internal.account.Account;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
 import common.money.Percentage;
 
 /**
@@ -22,10 +34,13 @@ public class JdbcRestaurantRepositoryTests {
 
 	private JdbcRestaurantRepository repository;
 
+	private DataSource dataSource;
+
 	@Before
 	public void setUp() throws Exception {
 		repository = new JdbcRestaurantRepository();
-		repository.setDataSource(createTestDataSource());
+		dataSource = createTestDataSource();
+		repository.setDataSource(dataSource);
 	}
 
 	@Test
@@ -49,6 +64,35 @@ public class JdbcRestaurantRepositoryTests {
 		}
 	}
 
+	@Test
+	public void testFindRestaurantsByMerchantNumbers() {
+		Map<String, Restaurant> restaurants = repository.findByMerchantNumbers(Arrays.asList("1234567890", "bogus"));
+		assertEquals("unknown merchant numbers should be left out", 1, restaurants.size());
+		Restaurant restaurant = restaurants.get("1234567890");
+		assertEquals("the name is wrong", "AppleBees", restaurant.getName());
+		assertEquals("the benefitPercentage is wrong", Percentage.valueOf("8%"), restaurant.getBenefitPercentage());
+	}
+
+	@Test
+	public void testFindRestaurantWithRules() {
+		new JdbcTemplate(dataSource).update("update T_RESTAURANT set BENEFIT_AVAILABILITY_POLICY = 'R', "
+				+ "BENEFIT_AVAILABILITY_RULES = 'minimum=25.00; monthlyCap=1' where MERCHANT_NUMBER = '1234567890'");
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		Account account = new Account("123456789", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		BenefitAvailabilityPolicy policy = restaurant.getBenefitAvailabilityPolicy();
+		// dined today, as the cap only counts the current month and the one before
+		assertFalse(policy.isBenefitAvailableFor(account, new Dining(MonetaryAmount.valueOf("24.99"),
+				"1234123412341234", "1234567890", SimpleDate.today())));
+		Dining dining = new Dining(MonetaryAmount.valueOf("100.00"), "1234123412341234", "1234567890",
+				SimpleDate.today());
+		assertTrue(policy.isBenefitAvailableFor(account, dining));
+		restaurant.benefitContributed(account, dining);
+		// loaded again, the restaurant shares the policy and its count
+		assertSame(policy, repository.findByMerchantNumber("1234567890").getBenefitAvailabilityPolicy());
+		assertFalse(policy.isBenefitAvailableFor(account, dining));
+	}
+
 	private DataSource createTestDataSource() {
 		return new EmbeddedDatabaseBuilder()
 			.setName("rewards")
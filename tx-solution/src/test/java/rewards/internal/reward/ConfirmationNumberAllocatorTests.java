@@ -0,0 +1,108 @@
+package rewards.internal.reward;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+/**
+ * Tests reserving confirmation numbers in blocks from the test database's sequence.
+ */
+public class ConfirmationNumberAllocatorTests {
+
+	private DataSource dataSource;
+
+	@Before
+	public void setUp() {
+		dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+	}
+
+	@Test
+	public void testNumbersReservedInBlocks() {
+		ConfirmationNumberAllocator allocator = new ConfirmationNumberAllocator(dataSource, 10);
+		for (int i = 1; i <= 25; i++) {
+			assertEquals(String.valueOf(i), allocator.nextConfirmationNumber());
+		}
+		assertEquals(3, allocator.getBlockCount());
+		assertEquals(25, allocator.getAllocatedCount());
+		assertEquals(5, allocator.getRemaining());
+	}
+
+	@Test
+	public void testNumbersUniqueAcrossAllocators() {
+		// two nodes sharing the database, with different block sizes
+		ConfirmationNumberAllocator first = new ConfirmationNumberAllocator(dataSource, 7);
+		ConfirmationNumberAllocator second = new ConfirmationNumberAllocator(dataSource, 3);
+		Set<String> numbers = ConcurrentHashMap.newKeySet();
+		for (int i = 0; i < 100; i++) {
+			assertTrue(numbers.add(first.nextConfirmationNumber()));
+			assertTrue(numbers.add(second.nextConfirmationNumber()));
+		}
+		// a restarted node starts with a new block
+		ConfirmationNumberAllocator restarted = new ConfirmationNumberAllocator(dataSource, 7);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(numbers.add(restarted.nextConfirmationNumber()));
+		}
+	}
+
+	@Test
+	public void testNumbersUniqueAcrossThreads() throws Exception {
+		ConfirmationNumberAllocator allocator = new ConfirmationNumberAllocator(dataSource, 16);
+		Set<String> numbers = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < 4; t++) {
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < 500; i++) {
+					numbers.add(allocator.nextConfirmationNumber());
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertEquals(2000, numbers.size());
+		assertEquals(2000, allocator.getAllocatedCount());
+		assertEquals(125, allocator.getBlockCount());
+	}
+
+	@Test
+	public void testNumbersAllocatedOnceReservingSucceedsAgain() {
+		ConfirmationNumberAllocator allocator = new ConfirmationNumberAllocator(dataSource, 10);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("drop sequence S_REWARD_CONFIRMATION_NUMBER");
+		for (int i = 0; i < 3; i++) {
+			try {
+				allocator.nextConfirmationNumber();
+				fail("Should have failed to reserve a block without a sequence");
+			} catch (DataAccessException e) {
+				// expected
+			}
+		}
+		assertEquals(0, allocator.getBlockCount());
+		assertEquals(0, allocator.getRemaining());
+		jdbcTemplate.execute("create sequence S_REWARD_CONFIRMATION_NUMBER start with 1");
+		assertEquals("1", allocator.nextConfirmationNumber());
+		assertEquals(9, allocator.getRemaining());
+	}
+}
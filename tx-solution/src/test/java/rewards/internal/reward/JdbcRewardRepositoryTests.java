@@ -1,21 +1,28 @@
 package rewards.internal.reward;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.math.BigDecimal;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 
 import rewards.AccountContribution;
 import rewards.Dining;
+import rewards.DiningFingerprint;
 import rewards.RewardConfirmation;
 import rewards.internal.account.Account;
 
@@ -60,6 +67,72 @@ public class JdbcRewardRepositoryTests {
 		verifyRewardInserted(confirmation, dining);
 	}
 
+	@Test
+	public void testCreateRewards() throws SQLException {
+		Dining dining1 = Dining.createDining("100.00", "1234123412341234", "0123456789");
+		Dining dining2 = Dining.createDining("50.00", "1234123412341234", "0123456789");
+
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("50%"));
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+
+		AccountContribution contribution1 = account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		AccountContribution contribution2 = account.makeContribution(MonetaryAmount.valueOf("4.00"));
+		List<RewardConfirmation> confirmations = repository.confirmRewards(Arrays.asList(contribution1,
+				contribution2), Arrays.asList(dining1, dining2));
+		assertEquals("wrong number of confirmations", 2, confirmations.size());
+		assertEquals("wrong contribution object", contribution1, confirmations.get(0).getAccountContribution());
+		assertEquals("wrong contribution object", contribution2, confirmations.get(1).getAccountContribution());
+		assertEquals(2, getRewardCount());
+		String sql = "select * from T_REWARD where CONFIRMATION_NUMBER = ?";
+		verifyInsertedValues(confirmations.get(0), dining1,
+				jdbcTemplate.queryForMap(sql, confirmations.get(0).getConfirmationNumber()));
+		verifyInsertedValues(confirmations.get(1), dining2,
+				jdbcTemplate.queryForMap(sql, confirmations.get(1).getConfirmationNumber()));
+	}
+
+	@Test
+	public void testSecondRewardForDiningRejected() throws SQLException {
+		repository.setRecordFingerprints(true);
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "0123456789");
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+
+		assertFalse(repository.isRecorded(DiningFingerprint.of(dining)));
+		RewardConfirmation confirmation = repository.confirmReward(account.makeContribution(MonetaryAmount
+				.valueOf("8.00")), dining);
+		verifyRewardInserted(confirmation, dining);
+		assertTrue(repository.isRecorded(DiningFingerprint.of(dining)));
+		try {
+			repository.confirmReward(account.makeContribution(MonetaryAmount.valueOf("8.00")), dining);
+			fail("Should have thrown DuplicateKeyException for a second reward of the dining");
+		} catch (DuplicateKeyException e) {
+			// expected
+		}
+		assertEquals(1, getRewardCount());
+	}
+
+	@Test
+	public void testCountRewardedDinings() {
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+		Dining january = Dining.createDining("100.00", "1234123412341234", "0123456789", 1, 31, 2016);
+		repository.confirmRewards(Arrays.asList(account.makeContribution(MonetaryAmount.valueOf("8.00")),
+				account.makeContribution(MonetaryAmount.valueOf("8.00")),
+				account.makeContribution(MonetaryAmount.zero()),
+				account.makeContribution(MonetaryAmount.valueOf("8.00")),
+				account.makeContribution(MonetaryAmount.valueOf("8.00"))), Arrays.asList(january,
+				Dining.createDining("50.00", "1234123412341234", "0123456789", 1, 1, 2016),
+				Dining.createDining("50.00", "1234123412341234", "0123456789", 1, 2, 2016),
+				Dining.createDining("50.00", "1234123412341234", "0123456789", 2, 1, 2016),
+				Dining.createDining("50.00", "1234123412341234", "9876543210", 1, 3, 2016)));
+
+		// rewards of no amount, of other months and at other restaurants are not counted
+		assertEquals(2, repository.countRewardedDinings("1", "0123456789", january.getDate().getEpochMonth()));
+		assertEquals(0, repository.countRewardedDinings("2", "0123456789", january.getDate().getEpochMonth()));
+	}
+
 	private void verifyRewardInserted(RewardConfirmation confirmation, Dining dining) throws SQLException {
 		assertEquals(1, getRewardCount());
 		String sql = "select * from T_REWARD where CONFIRMATION_NUMBER = ?";
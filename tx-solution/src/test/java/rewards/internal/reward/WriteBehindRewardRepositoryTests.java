@@ -0,0 +1,309 @@
+package rewards.internal.reward;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.internal.account.Account;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Tests writing reward records behind the reward transactions to the test database.
+ */
+public class WriteBehindRewardRepositoryTests {
+
+	private DataSource dataSource;
+
+	private StallingRewardRepository targetRepository;
+
+	private PlatformTransactionManager transactionManager;
+
+	private WriteBehindRewardRepository repository;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private Account account;
+
+	private Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+	@Before
+	public void setUp() {
+		dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+		targetRepository = new StallingRewardRepository();
+		targetRepository.setDataSource(dataSource);
+		transactionManager = new DataSourceTransactionManager(dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+
+		account = new Account("123456789", "Keith and Keri Donald");
+		account.addBeneficiary("Annabelle", Percentage.valueOf("50%"));
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		targetRepository.release.countDown();
+		repository.shutdown();
+	}
+
+	@Test
+	public void testRewardsWrittenInBatches() throws Exception {
+		repository = new WriteBehindRewardRepository(targetRepository, transactionManager, 100);
+		repository.setFlushInterval(1, TimeUnit.SECONDS);
+		repository.setBatchSize(10);
+		targetRepository.release.countDown();
+
+		List<RewardConfirmation> confirmations = new ArrayList<RewardConfirmation>();
+		for (int i = 0; i < 25; i++) {
+			confirmations.add(repository.confirmReward(contribution(), dining));
+		}
+		repository.shutdown();
+
+		assertEquals(25, getRewardCount());
+		for (RewardConfirmation confirmation : confirmations) {
+			assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+					"select count(*) from T_REWARD where CONFIRMATION_NUMBER = ?", Integer.class,
+					confirmation.getConfirmationNumber()));
+		}
+		assertEquals(25, repository.getFlushedCount());
+		assertEquals(3, repository.getBatchCount());
+		long recorded = 0;
+		for (long count : repository.getFlushLatencyDistribution()) {
+			recorded += count;
+		}
+		assertEquals(25, recorded);
+		assertTrue(repository.getFlushLatency99thPercentile() <= repository.getMaximumFlushLatency());
+	}
+
+	@Test
+	public void testCommittedDurabilityWaitsForTheRecords() throws Exception {
+		repository = new WriteBehindRewardRepository(targetRepository, transactionManager, 100);
+		repository.setDurability(WriteBehindRewardRepository.Durability.COMMITTED);
+		targetRepository.release.countDown();
+
+		repository.confirmRewards(Arrays.asList(contribution(), contribution()), Arrays.asList(dining, dining));
+		assertEquals(2, getRewardCount());
+	}
+
+	@Test
+	public void testFlusherWritesThroughItsOwnConnection() throws Exception {
+		// every other connection is held by callers waiting for their records, so the flusher gets none
+		DataSource exhausted = new DelegatingDataSource(dataSource) {
+			@Override
+			public Connection getConnection() throws SQLException {
+				if (Thread.currentThread().getName().startsWith("reward-writer-")) {
+					throw new SQLException("No connection left in the pool");
+				}
+				return super.getConnection();
+			}
+		};
+		JdbcRewardRepository rewards = new JdbcRewardRepository();
+		rewards.setDataSource(exhausted);
+		PlatformTransactionManager exhaustedTransactionManager = new DataSourceTransactionManager(exhausted);
+		repository = new WriteBehindRewardRepository(rewards, exhaustedTransactionManager, 100, exhausted);
+		repository.setDurability(WriteBehindRewardRepository.Durability.COMMITTED);
+		repository.setMaxWait(5, TimeUnit.SECONDS);
+
+		new TransactionTemplate(exhaustedTransactionManager).execute(status -> repository.confirmReward(
+				contribution(), dining));
+		assertEquals(1, getRewardCount());
+	}
+
+	@Test
+	public void testRecordsOnlyQueuedOnCommit() throws Exception {
+		repository = new WriteBehindRewardRepository(targetRepository, transactionManager, 100);
+		targetRepository.release.countDown();
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+		transactionTemplate.execute(status -> {
+			repository.confirmReward(contribution(), dining);
+			status.setRollbackOnly();
+			return null;
+		});
+		transactionTemplate.execute(status -> repository.confirmReward(contribution(), dining));
+		repository.shutdown();
+
+		assertEquals(1, getRewardCount());
+	}
+
+	@Test
+	public void testOverflowWrittenThrough() throws Exception {
+		repository = fullRepository(WriteBehindRewardRepository.OverflowPolicy.WRITE_THROUGH);
+		repository.confirmReward(contribution(), dining);
+		assertEquals(1, repository.getWriteThroughCount());
+		assertEquals(1, getRewardCount());
+
+		targetRepository.release.countDown();
+		repository.shutdown();
+		assertEquals(3, getRewardCount());
+	}
+
+	@Test
+	public void testOverflowRejected() throws Exception {
+		repository = fullRepository(WriteBehindRewardRepository.OverflowPolicy.REJECT);
+		try {
+			repository.confirmReward(contribution(), dining);
+			fail("Should have thrown RejectedExecutionException for a full queue");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(1, repository.getRejectedCount());
+	}
+
+	@Test
+	public void testOverflowRejectedWhole() throws Exception {
+		repository = new WriteBehindRewardRepository(targetRepository, transactionManager, 3);
+		repository.setOverflowPolicy(WriteBehindRewardRepository.OverflowPolicy.REJECT);
+		repository.confirmReward(contribution(), dining);
+		assertTrue(targetRepository.stalled.await(5, TimeUnit.SECONDS));
+		repository.confirmReward(contribution(), dining);
+		try {
+			// room for two records, not three
+			repository.confirmRewards(Arrays.asList(contribution(), contribution(), contribution()),
+					Arrays.asList(dining, dining, dining));
+			fail("Should have thrown RejectedExecutionException for records that do not all fit");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(1, repository.getQueueDepth());
+		assertEquals(3, repository.getRejectedCount());
+	}
+
+	@Test
+	public void testOverflowBlockedWithinMaxWait() throws Exception {
+		repository = fullRepository(WriteBehindRewardRepository.OverflowPolicy.BLOCK);
+		repository.setMaxWait(50, TimeUnit.MILLISECONDS);
+		try {
+			repository.confirmReward(contribution(), dining);
+			fail("Should have thrown RejectedExecutionException for a queue full past the maximum wait");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(1, repository.getRejectedCount());
+	}
+
+	@Test
+	public void testCommittedDurabilityWaitsWithinMaxWait() throws Exception {
+		repository = new WriteBehindRewardRepository(targetRepository, transactionManager, 100);
+		repository.setDurability(WriteBehindRewardRepository.Durability.COMMITTED);
+		repository.setMaxWait(50, TimeUnit.MILLISECONDS);
+		try {
+			repository.confirmReward(contribution(), dining);
+			fail("Should have thrown RewardNotRecordedException for records not written in time");
+		} catch (RewardNotRecordedException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFailedFlushNotRetryable() throws Exception {
+		repository = new WriteBehindRewardRepository(targetRepository, transactionManager, 100);
+		repository.setDurability(WriteBehindRewardRepository.Durability.COMMITTED);
+		targetRepository.failure = new CannotAcquireLockException("Deadlock");
+		targetRepository.release.countDown();
+		try {
+			repository.confirmReward(contribution(), dining);
+			fail("Should have thrown RewardNotRecordedException for a failed flush");
+		} catch (RewardNotRecordedException e) {
+			// a concurrency failure would have the committed reward made again
+			assertTrue(e.getCause() instanceof CannotAcquireLockException);
+		}
+		assertEquals(1, repository.getFailedCount());
+	}
+
+	@Test
+	public void testShutdownRejectsRecords() throws Exception {
+		repository = new WriteBehindRewardRepository(targetRepository, transactionManager, 100);
+		targetRepository.release.countDown();
+		repository.confirmReward(contribution(), dining);
+		repository.shutdown();
+		try {
+			repository.confirmReward(contribution(), dining);
+			fail("Should have thrown RejectedExecutionException once shut down");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(1, getRewardCount());
+	}
+
+	/**
+	 * Returns a repository with a queue of one, its flusher stalled writing one record and another queued.
+	 */
+	private WriteBehindRewardRepository fullRepository(WriteBehindRewardRepository.OverflowPolicy overflowPolicy)
+			throws InterruptedException {
+		WriteBehindRewardRepository repository = new WriteBehindRewardRepository(targetRepository,
+				transactionManager, 1);
+		repository.setOverflowPolicy(overflowPolicy);
+		repository.confirmReward(contribution(), dining);
+		assertTrue(targetRepository.stalled.await(5, TimeUnit.SECONDS));
+		repository.confirmReward(contribution(), dining);
+		assertEquals(1, repository.getQueueDepth());
+		return repository;
+	}
+
+	private AccountContribution contribution() {
+		return account.makeContribution(MonetaryAmount.valueOf("8.00"));
+	}
+
+	private int getRewardCount() {
+		return jdbcTemplate.queryForObject("select count(*) from T_REWARD", Integer.class);
+	}
+
+	/**
+	 * Holds up the flusher until released.
+	 */
+	private static class StallingRewardRepository extends JdbcRewardRepository {
+
+		private CountDownLatch stalled = new CountDownLatch(1);
+
+		private CountDownLatch release = new CountDownLatch(1);
+
+		private volatile RuntimeException failure;
+
+		@Override
+		void insertRewards(List<Object[]> rows) {
+			if (Thread.currentThread().getName().startsWith("reward-writer-")) {
+				stalled.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				if (failure != null) {
+					throw failure;
+				}
+			}
+			super.insertRewards(rows);
+		}
+	}
+}